@@ -35,6 +35,8 @@ public class ContentIndexConfig
 
     public static final String ENABLE_INDEX_WARMER = "index.warmer.enabled";
 
+    public static final String INDEX_WARMER_BATCH_SIZE = "index.warmer.batch.size";
+
     private static final String ENABLE = "enabled";
 
     private static final Boolean DEFAULT_AUTHORITATIVE_INDEXES = Boolean.FALSE;
@@ -43,10 +45,14 @@ public class ContentIndexConfig
 
     private static final Boolean DEFAULT_ENABLED = Boolean.FALSE;
 
+    private static final int DEFAULT_WARMER_BATCH_SIZE = 1000;
+
     private Boolean authoritativeIndex;
 
     private Boolean warmerEnabled;
 
+    private Integer warmerBatchSize;
+
     private Boolean enabled;
 
     public ContentIndexConfig()
@@ -80,6 +86,20 @@ public class ContentIndexConfig
         this.warmerEnabled = warmerEnabled;
     }
 
+    /**
+     * How many paths the warmer indexes between checkpoints of a store.
+     */
+    public int getWarmerBatchSize()
+    {
+        return warmerBatchSize == null || warmerBatchSize < 1 ? DEFAULT_WARMER_BATCH_SIZE : warmerBatchSize;
+    }
+
+    @ConfigName( ContentIndexConfig.INDEX_WARMER_BATCH_SIZE )
+    public void setWarmerBatchSize( Integer warmerBatchSize )
+    {
+        this.warmerBatchSize = warmerBatchSize;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
@@ -17,31 +17,59 @@ package org.commonjava.indy.content.index.warmer;
 
 import org.commonjava.cdi.util.weft.ExecutorConfig;
 import org.commonjava.cdi.util.weft.WeftManaged;
-import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.index.ContentIndexManager;
 import org.commonjava.indy.content.index.conf.ContentIndexConfig;
+import org.commonjava.indy.content.index.warmer.WarmerCheckpoints.Checkpoint;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.io.SpecialPathManager;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.Gauge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Loads the content index from storage at startup. The storage of each concrete store is walked lazily (see
+ * {@link StorageWalker}), so only a batch of paths is in flight at a time rather than the listing of the whole store.
+ * After each batch the store's checkpoint is saved; if Indy restarts before the warm-up finishes, the next warm-up
+ * resumes each store after its checkpoint, as long as the index still holds the checkpointed path. Each path is also
+ * indexed in every group containing the store as it is walked, so member storage is walked only once. A group keeps
+ * the path of its first member in order, whichever member is walked first.
+ * <p>
+ * Per-store progress (and an ETA, based on the previous complete warm-up) is logged periodically, and summed up in
+ * the "warmup" gauges: stores started and done, paths indexed, and the longest ETA.
+ */
 @ApplicationScoped
 public class ContentIndexWarmer
 {
+    private static final String CHECKPOINTS_DIR = "content-index-warmer";
+
+    private static final long PROGRESS_LOG_INTERVAL = TimeUnit.SECONDS.toMillis( 30 );
+
+    private static final int GROUP_LOCKS = 64;
+
     @Inject
     private ContentIndexManager indexManager;
 
@@ -54,13 +82,49 @@ public class ContentIndexWarmer
     @Inject
     private DownloadManager downloadManager;
 
+    @Inject
+    private SpecialPathManager specialPathManager;
+
+    @Inject
+    private DataFileManager dataFileManager;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
     @WeftManaged
     @ExecutorConfig( named = "content-index-warmer", priority = 6, threads = 12 )
     @Inject
     private ExecutorService executor;
 
+    private final Map<StoreKey, WarmerProgress> progress = new ConcurrentHashMap<>();
+
+    // stores are walked concurrently, so the check and update of a group's entry for a path must be atomic
+    private final Object[] groupLocks = new Object[GROUP_LOCKS];
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    public ContentIndexWarmer()
+    {
+        for ( int i = 0; i < groupLocks.length; i++ )
+        {
+            groupLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void registerGauges()
+    {
+        if ( metricsManager != null )
+        {
+            Map<String, Gauge<Integer>> gauges = new HashMap<>();
+            gauges.put( "stores", progress::size );
+            gauges.put( "done", () -> (int) progress.values().stream().filter( WarmerProgress::isDone ).count() );
+            gauges.put( "indexed", this::getIndexed );
+            gauges.put( "eta", this::getEtaSeconds );
+            metricsManager.addGauges( getClass(), "warmup", gauges );
+        }
+    }
+
     public void warmCaches()
     {
         if ( indexConfig.isWarmerEnabled() )
@@ -71,10 +135,12 @@ public class ContentIndexWarmer
                 indexConfig.setAuthoritativeIndex( false );
                 try
                 {
-                    Map<StoreKey, List<Transfer>> transferMap = new ConcurrentHashMap<>();
+                    WarmerCheckpoints checkpoints = new WarmerCheckpoints(
+                            new File( dataFileManager.getDetachedWorkBasedir(), CHECKPOINTS_DIR ) );
 
                     try
                     {
+                        GroupPositions groups = getGroupPositions();
                         List<ArtifactStore> concreteStores =
                                 storeDataManager.query().storeTypes( StoreType.hosted, StoreType.remote ).getAll();
 
@@ -83,14 +149,11 @@ public class ContentIndexWarmer
                         concreteStores.forEach( store -> executor.submit( () -> {
                             try
                             {
-                                List<Transfer> transfers =
-                                        downloadManager.listRecursively( store.getKey(), DownloadManager.ROOT_PATH );
-                                transferMap.put( store.getKey(), transfers );
-                                transfers.forEach( t -> indexManager.indexTransferIn( t, store.getKey() ) );
+                                warmStore( store, groups, checkpoints );
                             }
-                            catch ( IndyWorkflowException e )
+                            catch ( RuntimeException e )
                             {
-                                logger.warn( "Failed to retrieve root directory of storage for: " + store.getKey(), e );
+                                logger.warn( "Failed to warm content index of: " + store.getKey(), e );
                             }
                             finally
                             {
@@ -105,47 +168,7 @@ public class ContentIndexWarmer
                         catch ( InterruptedException e )
                         {
                             logger.info(
-                                    "Manager thread interrupted while waiting for concrete store indexing to complete." );
-                            return;
-                        }
-
-                        List<Group> groups = storeDataManager.query().storeType( Group.class ).getAll();
-                        CountDownLatch groupLatch = new CountDownLatch( groups.size() );
-
-                        groups.forEach( g -> executor.submit( () -> {
-                            StoreKey gkey = g.getKey();
-
-                            try
-                            {
-                                List<ArtifactStore> stores = storeDataManager.query().getOrderedConcreteStoresInGroup( g.getPackageType(), g.getName() );
-
-                                stores.forEach( s -> {
-                                    List<Transfer> txfrs = transferMap.get( s.getKey() );
-                                    txfrs.forEach( t -> {
-                                        if ( indexManager.getIndexedStoreKey( gkey, t.getPath() ) == null )
-                                        {
-                                            indexManager.indexTransferIn( t, gkey );
-                                        }
-                                    } );
-                                } );
-                            }
-                            catch ( IndyDataException e )
-                            {
-                                logger.warn( "Failed to get ordered concrete stores for group: " + g.getName(), e );
-                            }
-                            finally
-                            {
-                                groupLatch.countDown();
-                            }
-                        } ) );
-
-                        try
-                        {
-                            groupLatch.await();
-                        }
-                        catch ( InterruptedException e )
-                        {
-                            logger.info( "Manager thread interrupted while waiting for group indexing to complete." );
+                                    "Manager thread interrupted while waiting for content indexing to complete." );
                             return;
                         }
 
@@ -169,4 +192,174 @@ public class ContentIndexWarmer
             logger.info( "Content index warmer is not enabled." );
         }
     }
+
+    private int getIndexed()
+    {
+        long indexed = progress.values().stream().mapToLong( WarmerProgress::getIndexed ).sum();
+        return (int) Math.min( Integer.MAX_VALUE, indexed );
+    }
+
+    /**
+     * Longest ETA of the stores being warmed, 0 when all are done, or -1 if unknown.
+     */
+    private int getEtaSeconds()
+    {
+        long eta = 0;
+        for ( WarmerProgress p : progress.values() )
+        {
+            if ( p.getEtaSeconds() < 0 )
+            {
+                return -1;
+            }
+            eta = Math.max( eta, p.getEtaSeconds() );
+        }
+        return (int) Math.min( Integer.MAX_VALUE, eta );
+    }
+
+    private GroupPositions getGroupPositions()
+            throws IndyDataException
+    {
+        GroupPositions positions = new GroupPositions();
+        for ( Group g : storeDataManager.query().storeType( Group.class ).getAll() )
+        {
+            try
+            {
+                List<ArtifactStore> members =
+                        storeDataManager.query().getOrderedConcreteStoresInGroup( g.getPackageType(), g.getName() );
+                for ( int i = 0; i < members.size(); i++ )
+                {
+                    positions.add( g.getKey(), members.get( i ).getKey(), i );
+                }
+            }
+            catch ( IndyDataException e )
+            {
+                logger.warn( "Failed to get ordered concrete stores for group: " + g.getName(), e );
+            }
+        }
+        return positions;
+    }
+
+    private void warmStore( final ArtifactStore store, final GroupPositions groups,
+                            final WarmerCheckpoints checkpoints )
+    {
+        final StoreKey key = store.getKey();
+        final List<StoreKey> containingGroups = groups.getGroupsOf( key );
+        String resumeAfter = null;
+        long indexed = 0;
+        long expected = -1;
+
+        Checkpoint checkpoint = checkpoints.load( key );
+        if ( checkpoint != null )
+        {
+            expected = checkpoint.isComplete() ? checkpoint.getIndexed() : checkpoint.getExpected();
+            if ( !checkpoint.isComplete() && checkpoint.getLastPath() != null )
+            {
+                // the index may not have survived the restart (e.g. a non-persistent cache)
+                if ( indexManager.getIndexedStoreKey( key, checkpoint.getLastPath() ) != null )
+                {
+                    resumeAfter = checkpoint.getLastPath();
+                    indexed = checkpoint.getIndexed();
+                    logger.info( "Resuming content index warm-up of: {} after: {} ({} paths indexed)", key,
+                                 resumeAfter, indexed );
+                }
+                else
+                {
+                    logger.info( "Content index no longer holds the warm-up checkpoint of: {}, starting over", key );
+                }
+            }
+        }
+
+        final WarmerProgress storeProgress = new WarmerProgress( key, indexed, expected );
+        progress.put( key, storeProgress );
+
+        final int batchSize = indexConfig.getWarmerBatchSize();
+        final StorageWalker walker = walk( store, resumeAfter );
+        String lastPath = resumeAfter;
+        int inBatch = 0;
+        long lastLog = System.currentTimeMillis();
+        while ( walker.hasNext() )
+        {
+            Transfer t = walker.next();
+            indexManager.indexTransferIn( t, key );
+            indexInGroups( t, key, containingGroups, groups );
+            lastPath = t.getPath();
+            indexed++;
+
+            if ( ++inBatch >= batchSize )
+            {
+                checkpoints.save( key, new Checkpoint( lastPath, indexed, expected, false ) );
+                storeProgress.setIndexed( indexed );
+                inBatch = 0;
+
+                if ( System.currentTimeMillis() - lastLog > PROGRESS_LOG_INTERVAL )
+                {
+                    logger.info( "Content index warm-up progress of {}", storeProgress );
+                    lastLog = System.currentTimeMillis();
+                }
+            }
+        }
+
+        storeProgress.setIndexed( indexed );
+        storeProgress.setDone();
+        checkpoints.save( key, new Checkpoint( lastPath, indexed, indexed, true ) );
+        logger.debug( "Content index warm-up of: {} done, {} paths in {}ms", key, indexed,
+                      storeProgress.getElapsedMillis() );
+    }
+
+    /**
+     * Index the path in each group unless the group already has it from a member that comes earlier.
+     */
+    private void indexInGroups( final Transfer t, final StoreKey key, final List<StoreKey> containingGroups,
+                                final GroupPositions groups )
+    {
+        for ( StoreKey gkey : containingGroups )
+        {
+            synchronized ( groupLocks[Math.floorMod( Objects.hash( gkey, t.getPath() ), groupLocks.length )] )
+            {
+                StoreKey current = indexManager.getIndexedStoreKey( gkey, t.getPath() );
+                if ( current == null || groups.getPosition( gkey, current ) > groups.getPosition( gkey, key ) )
+                {
+                    indexManager.indexTransferIn( t, gkey );
+                }
+            }
+        }
+    }
+
+    private StorageWalker walk( final ArtifactStore store, final String resumeAfter )
+    {
+        return new StorageWalker( downloadManager.getStorageReference( store, DownloadManager.ROOT_PATH ),
+                                  specialPathManager, resumeAfter );
+    }
+
+    /**
+     * The position of each concrete store in the (flattened, ordered) members of the groups containing it.
+     */
+    private static final class GroupPositions
+    {
+        private final Map<StoreKey, Map<StoreKey, Integer>> positions = new HashMap<>();
+
+        private final Map<StoreKey, List<StoreKey>> groupsOf = new HashMap<>();
+
+        void add( final StoreKey group, final StoreKey member, final int position )
+        {
+            // a store reached through several nested groups keeps its first position
+            if ( positions.computeIfAbsent( group, k -> new HashMap<>() ).putIfAbsent( member, position ) == null )
+            {
+                groupsOf.computeIfAbsent( member, k -> new ArrayList<>() ).add( group );
+            }
+        }
+
+        List<StoreKey> getGroupsOf( final StoreKey member )
+        {
+            return groupsOf.getOrDefault( member, Collections.emptyList() );
+        }
+
+        /**
+         * Position of the member in the group, or {@link Integer#MAX_VALUE} if it is not (or no longer) a member.
+         */
+        int getPosition( final StoreKey group, final StoreKey member )
+        {
+            return positions.getOrDefault( group, Collections.emptyMap() ).getOrDefault( member, Integer.MAX_VALUE );
+        }
+    }
 }
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.warmer;
+
+import org.commonjava.maven.galley.model.SpecialPathInfo;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.io.SpecialPathManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily walks the listable files under a storage directory, depth-first with the entries of each directory sorted
+ * by name. Only the listings of the directories on the current path are held in memory, never the whole tree.
+ * <p>
+ * Because the order is stable, a walk can resume after a path reached by an earlier walk: subtrees that sort
+ * entirely before it are skipped without listing them.
+ */
+final class StorageWalker
+        implements Iterator<Transfer>
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final SpecialPathManager specialPathManager;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private String resumeAfter;
+
+    private Transfer next;
+
+    StorageWalker( final Transfer root, final SpecialPathManager specialPathManager, final String resumeAfter )
+    {
+        this.specialPathManager = specialPathManager;
+        this.resumeAfter = resumeAfter;
+        if ( root != null )
+        {
+            frames.push( new Frame( root ) );
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while ( next == null && !frames.isEmpty() )
+        {
+            Frame frame = frames.peek();
+            Transfer transfer = frame.next();
+            if ( transfer == null )
+            {
+                frames.pop();
+                continue;
+            }
+
+            // skip what sorts entirely before the resume point; a directory at the resume point itself (the file
+            // there was replaced by one) still holds paths that sort after it
+            if ( resumeAfter != null && isAfter( resumeAfter, transfer.getPath() ) && !isAncestor(
+                    transfer.getPath(), resumeAfter ) )
+            {
+                continue;
+            }
+
+            if ( transfer.isDirectory() )
+            {
+                frames.push( new Frame( transfer ) );
+            }
+            else if ( transfer.exists() && isListable( transfer ) && ( resumeAfter == null || isAfter(
+                    transfer.getPath(), resumeAfter ) ) )
+            {
+                // everything still to come sorts after this path
+                resumeAfter = null;
+                next = transfer;
+            }
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public Transfer next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+
+        Transfer result = next;
+        next = null;
+        return result;
+    }
+
+    private boolean isListable( final Transfer transfer )
+    {
+        if ( specialPathManager == null )
+        {
+            return true;
+        }
+
+        SpecialPathInfo spi = specialPathManager.getSpecialPathInfo( transfer.getPath() );
+        return spi == null || spi.isListable();
+    }
+
+    /**
+     * True if the path sorts after the other path in walk order, i.e. segment by segment.
+     */
+    static boolean isAfter( final String path, final String other )
+    {
+        String[] a = segments( path );
+        String[] b = segments( other );
+        for ( int i = 0; i < Math.min( a.length, b.length ); i++ )
+        {
+            int cmp = a[i].compareTo( b[i] );
+            if ( cmp != 0 )
+            {
+                return cmp > 0;
+            }
+        }
+
+        return a.length > b.length;
+    }
+
+    /**
+     * True if the path is a directory above the other path.
+     */
+    static boolean isAncestor( final String path, final String other )
+    {
+        String[] a = segments( path );
+        String[] b = segments( other );
+        if ( a.length >= b.length )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < a.length; i++ )
+        {
+            if ( !a[i].equals( b[i] ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String[] segments( final String path )
+    {
+        return Arrays.stream( path.split( "/" ) ).filter( s -> !s.isEmpty() ).toArray( String[]::new );
+    }
+
+    private final class Frame
+    {
+        private final Transfer directory;
+
+        private String[] children;
+
+        private int idx;
+
+        private Frame( final Transfer directory )
+        {
+            this.directory = directory;
+        }
+
+        private Transfer next()
+        {
+            if ( children == null )
+            {
+                children = list();
+            }
+
+            return idx < children.length ? directory.getChild( children[idx++] ) : null;
+        }
+
+        private String[] list()
+        {
+            if ( !directory.isDirectory() )
+            {
+                return new String[0];
+            }
+
+            try
+            {
+                String[] names = directory.list();
+                if ( names == null )
+                {
+                    return new String[0];
+                }
+
+                Arrays.sort( names );
+                return names;
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to list: {}, skipping it. Reason: {}", directory, e.getMessage() );
+                return new String[0];
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.warmer;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Per-store warm-up checkpoints, one small properties file per store. A checkpoint records the last path indexed
+ * (in {@link StorageWalker} order) and how many paths were indexed so far. The total of the last complete warm-up
+ * is kept too, to estimate the remaining time of the next one.
+ */
+final class WarmerCheckpoints
+{
+    private static final String LAST_PATH = "last.path";
+
+    private static final String INDEXED = "indexed";
+
+    private static final String EXPECTED = "expected";
+
+    private static final String COMPLETE = "complete";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final File dir;
+
+    WarmerCheckpoints( final File dir )
+    {
+        this.dir = dir;
+    }
+
+    Checkpoint load( final StoreKey key )
+    {
+        File file = getFile( key );
+        if ( !file.exists() )
+        {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream( file.toPath() ))
+        {
+            props.load( in );
+            return new Checkpoint( props.getProperty( LAST_PATH ),
+                                   Long.parseLong( props.getProperty( INDEXED, "0" ) ),
+                                   Long.parseLong( props.getProperty( EXPECTED, "-1" ) ),
+                                   Boolean.parseBoolean( props.getProperty( COMPLETE ) ) );
+        }
+        catch ( IOException | NumberFormatException e )
+        {
+            logger.warn( "Ignoring unreadable warm-up checkpoint: {}. Reason: {}", file, e.getMessage() );
+            return null;
+        }
+    }
+
+    void save( final StoreKey key, final Checkpoint checkpoint )
+    {
+        Properties props = new Properties();
+        if ( checkpoint.getLastPath() != null )
+        {
+            props.setProperty( LAST_PATH, checkpoint.getLastPath() );
+        }
+        props.setProperty( INDEXED, Long.toString( checkpoint.getIndexed() ) );
+        props.setProperty( EXPECTED, Long.toString( checkpoint.getExpected() ) );
+        props.setProperty( COMPLETE, Boolean.toString( checkpoint.isComplete() ) );
+
+        File file = getFile( key );
+        File tmp = new File( dir, file.getName() + ".tmp" );
+        try
+        {
+            Files.createDirectories( dir.toPath() );
+            try (OutputStream out = Files.newOutputStream( tmp.toPath() ))
+            {
+                props.store( out, "Content index warm-up checkpoint for " + key );
+            }
+            Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to save warm-up checkpoint: {}. Reason: {}", file, e.getMessage() );
+        }
+    }
+
+    private File getFile( final StoreKey key )
+    {
+        return new File( dir, key.toString().replaceAll( "[^A-Za-z0-9._-]", "_" ) + ".checkpoint" );
+    }
+
+    static final class Checkpoint
+    {
+        private final String lastPath;
+
+        private final long indexed;
+
+        private final long expected;
+
+        private final boolean complete;
+
+        Checkpoint( final String lastPath, final long indexed, final long expected, final boolean complete )
+        {
+            this.lastPath = lastPath;
+            this.indexed = indexed;
+            this.expected = expected;
+            this.complete = complete;
+        }
+
+        String getLastPath()
+        {
+            return lastPath;
+        }
+
+        long getIndexed()
+        {
+            return indexed;
+        }
+
+        /**
+         * Paths indexed by the last complete warm-up of the store, or -1 if there was none.
+         */
+        long getExpected()
+        {
+            return expected;
+        }
+
+        boolean isComplete()
+        {
+            return complete;
+        }
+    }
+}
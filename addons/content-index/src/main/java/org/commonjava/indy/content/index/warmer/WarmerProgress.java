@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.warmer;
+
+import org.commonjava.indy.model.core.StoreKey;
+
+/**
+ * Warm-up progress of one store. The expected total comes from the last complete warm-up of the store, so the ETA is
+ * unknown (-1) the first time a store is warmed.
+ */
+final class WarmerProgress
+{
+    private final StoreKey key;
+
+    private final long expected;
+
+    private final long resumedFrom;
+
+    private final long started = System.currentTimeMillis();
+
+    private volatile long indexed;
+
+    private volatile boolean done;
+
+    WarmerProgress( final StoreKey key, final long resumedFrom, final long expected )
+    {
+        this.key = key;
+        this.resumedFrom = resumedFrom;
+        this.indexed = resumedFrom;
+        this.expected = expected;
+    }
+
+    void setIndexed( final long indexed )
+    {
+        this.indexed = indexed;
+    }
+
+    void setDone()
+    {
+        this.done = true;
+    }
+
+    public StoreKey getKey()
+    {
+        return key;
+    }
+
+    public long getIndexed()
+    {
+        return indexed;
+    }
+
+    /**
+     * Paths expected in the store, or -1 if unknown.
+     */
+    public long getExpected()
+    {
+        return expected;
+    }
+
+    public boolean isDone()
+    {
+        return done;
+    }
+
+    public long getElapsedMillis()
+    {
+        return System.currentTimeMillis() - started;
+    }
+
+    /**
+     * Paths indexed per second by this warm-up (not counting what an interrupted warm-up indexed before).
+     */
+    public double getRate()
+    {
+        long elapsed = getElapsedMillis();
+        return elapsed < 1 ? 0 : ( indexed - resumedFrom ) * 1000.0 / elapsed;
+    }
+
+    /**
+     * Estimated seconds left, 0 when done, or -1 if unknown.
+     */
+    public long getEtaSeconds()
+    {
+        if ( done )
+        {
+            return 0;
+        }
+
+        double rate = getRate();
+        if ( expected < 0 || rate <= 0 )
+        {
+            return -1;
+        }
+
+        return (long) Math.ceil( Math.max( 0, expected - indexed ) / rate );
+    }
+
+    @Override
+    public String toString()
+    {
+        return key + ": " + indexed + ( expected < 0 ? "" : "/" + expected ) + " paths, eta: " + (
+                getEtaSeconds() < 0 ? "unknown" : getEtaSeconds() + "s" );
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.warmer;
+
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.HashedLocationPathGenerator;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class StorageWalkerTest
+{
+    // in walk order: segment by segment, so everything under bar/ comes before bar-parent/
+    private static final List<String> PATHS = Arrays.asList( "org/foo/baa/9/baa-9.jar",
+                                                             "org/foo/bar/1/bar-1.jar",
+                                                             "org/foo/bar/1/bar-1.pom",
+                                                             "org/foo/bar/2/bar-2.jar",
+                                                             "org/foo/bar-parent/1/bar-parent-1.pom",
+                                                             "org/foo/baz/1/baz-1.jar",
+                                                             "org/zzz/zzz.txt" );
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileCacheProvider cache;
+
+    private Location location;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cache = new FileCacheProvider( temp.newFolder( "storage" ), new HashedLocationPathGenerator(),
+                                       new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new NoOpTransferDecorator() ), false );
+        location = new SimpleLocation( "test", "http://foo.bar" );
+
+        // written out of order, the walk must not depend on it
+        List<String> shuffled = new ArrayList<>( PATHS );
+        shuffled.sort( ( a, b ) -> b.compareTo( a ) );
+        for ( String path : shuffled )
+        {
+            try (OutputStream out = cache.getTransfer( new ConcreteResource( location, path ) )
+                                         .openOutputStream( TransferOperation.UPLOAD ))
+            {
+                out.write( path.getBytes() );
+            }
+        }
+    }
+
+    @Test
+    public void walksEveryFileInOrder()
+    {
+        assertThat( walk( null ), equalTo( PATHS ) );
+    }
+
+    @Test
+    public void resumesAfterEveryCheckpointWithoutSkippingOrRepeating()
+    {
+        for ( int i = 0; i < PATHS.size(); i++ )
+        {
+            assertThat( "resuming after: " + PATHS.get( i ), walk( PATHS.get( i ) ),
+                        equalTo( PATHS.subList( i + 1, PATHS.size() ) ) );
+        }
+    }
+
+    @Test
+    public void resumesAfterACheckpointThatIsGone()
+    {
+        // deleted since the checkpoint was saved, or replaced by a directory
+        assertThat( walk( "org/foo/bar/1/bar-1.jar.md5" ), equalTo( PATHS.subList( 2, PATHS.size() ) ) );
+        assertThat( walk( "org/foo/bar/3/bar-3.jar" ), equalTo( PATHS.subList( 4, PATHS.size() ) ) );
+        assertThat( walk( "org/foo/bar-parent" ), equalTo( PATHS.subList( 4, PATHS.size() ) ) );
+    }
+
+    private List<String> walk( final String resumeAfter )
+    {
+        StorageWalker walker =
+                new StorageWalker( cache.getTransfer( new ConcreteResource( location, "/" ) ), null, resumeAfter );
+
+        List<String> paths = new ArrayList<>();
+        walker.forEachRemaining( t -> paths.add( t.getPath().replaceFirst( "^/+", "" ) ) );
+        return paths;
+    }
+}
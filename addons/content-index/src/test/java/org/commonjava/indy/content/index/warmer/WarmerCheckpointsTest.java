@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.warmer;
+
+import org.commonjava.indy.content.index.warmer.WarmerCheckpoints.Checkpoint;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.commonjava.indy.content.index.warmer.StorageWalker.isAfter;
+import static org.commonjava.indy.content.index.warmer.StorageWalker.isAncestor;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class WarmerCheckpointsTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoadPerStore()
+            throws Exception
+    {
+        File dir = new File( temp.getRoot(), "checkpoints" );
+        WarmerCheckpoints checkpoints = new WarmerCheckpoints( dir );
+
+        StoreKey hosted = new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "local" );
+        StoreKey remote = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" );
+
+        assertThat( checkpoints.load( hosted ), nullValue() );
+
+        checkpoints.save( hosted, new Checkpoint( "org/foo/bar/1/bar-1.jar", 2000, -1, false ) );
+        checkpoints.save( remote, new Checkpoint( "org/foo/baz/2/baz-2.pom", 35, 35, true ) );
+
+        Checkpoint loaded = new WarmerCheckpoints( dir ).load( hosted );
+        assertThat( loaded.getLastPath(), equalTo( "org/foo/bar/1/bar-1.jar" ) );
+        assertThat( loaded.getIndexed(), equalTo( 2000L ) );
+        assertThat( loaded.getExpected(), equalTo( -1L ) );
+        assertThat( loaded.isComplete(), equalTo( false ) );
+
+        loaded = checkpoints.load( remote );
+        assertThat( loaded.getIndexed(), equalTo( 35L ) );
+        assertThat( loaded.isComplete(), equalTo( true ) );
+    }
+
+    @Test
+    public void walkOrderComparesSegments()
+    {
+        String checkpoint = "org/foo/bar/1/bar-1.jar";
+
+        assertThat( isAfter( "org/foo/bar/1/bar-1.pom", checkpoint ), equalTo( true ) );
+        assertThat( isAfter( "org/foo/bar/2", checkpoint ), equalTo( true ) );
+        assertThat( isAfter( "org/foo/bar/1/bar-1.jar", checkpoint ), equalTo( false ) );
+        assertThat( isAfter( "org/foo/bar/1/bar-1.jar.md5", checkpoint ), equalTo( true ) );
+        assertThat( isAfter( "org/foo/bar-parent/1/bar-parent-1.pom", checkpoint ), equalTo( true ) );
+        assertThat( isAfter( "org/foo/baa/9/baa-9.jar", checkpoint ), equalTo( false ) );
+        assertThat( isAfter( "/org/foo", checkpoint ), equalTo( false ) );
+
+        assertThat( isAncestor( "/org/foo", checkpoint ), equalTo( true ) );
+        assertThat( isAncestor( "org/foo/bar/1", checkpoint ), equalTo( true ) );
+        assertThat( isAncestor( "org/foo/ba", checkpoint ), equalTo( false ) );
+        assertThat( isAncestor( checkpoint, checkpoint ), equalTo( false ) );
+    }
+}
@@ -3,6 +3,8 @@ package org.commonjava.indy.event.publisher;
 import org.commonjava.event.file.FileEvent;
 import org.commonjava.event.file.FileEventType;
 import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.change.event.AsyncFileEventObserver;
+import org.commonjava.indy.change.event.FileEventBatchListener;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.core.conf.IndyEventHandlerConfig;
@@ -26,12 +28,19 @@ import org.commonjava.maven.galley.model.Transfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import java.util.Date;
-
+import java.util.List;
+
+/**
+ * Publishes file storage / deletion events to Kafka. Events are delivered asynchronously, so the checksum calculation
+ * and Kafka send happen off the request thread. Only storage and deletion events are queued for it; access events,
+ * which are by far the most frequent, never reach its queue.
+ */
+@AsyncFileEventObserver( name = "kafka-event-publisher",
+                         eventTypes = { FileStorageEvent.class, FileDeletionEvent.class } )
 public class KafkaEventPublisher
-                implements FileEventPublisher
+                implements FileEventPublisher, FileEventBatchListener
 {
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
@@ -57,7 +66,23 @@ public class KafkaEventPublisher
     @Inject
     IndyObjectMapper objectMapper;
 
-    public void onFileDelete( @Observes final FileDeletionEvent event )
+    @Override
+    public void onFileEvents( final List<org.commonjava.maven.galley.event.FileEvent> events )
+    {
+        for ( org.commonjava.maven.galley.event.FileEvent event : events )
+        {
+            if ( event instanceof FileStorageEvent )
+            {
+                onFileUpload( (FileStorageEvent) event );
+            }
+            else if ( event instanceof FileDeletionEvent )
+            {
+                onFileDelete( (FileDeletionEvent) event );
+            }
+        }
+    }
+
+    public void onFileDelete( final FileDeletionEvent event )
     {
 
         if ( !IndyEventHandlerConfig.HANDLER_KAFKA.equals( handlerConfig.getFileEventHandler() ))
@@ -70,7 +95,7 @@ public class KafkaEventPublisher
 
     }
 
-    public void onFileUpload( @Observes final FileStorageEvent event )
+    public void onFileUpload( final FileStorageEvent event )
     {
 
         if ( !IndyEventHandlerConfig.HANDLER_KAFKA.equals( handlerConfig.getFileEventHandler() ))
@@ -26,6 +26,7 @@ import org.commonjava.indy.client.core.IndyResponseErrorDetails;
 import org.commonjava.indy.client.core.helper.HttpResources;
 import org.commonjava.indy.client.core.util.UrlUtils;
 import org.commonjava.indy.folo.dto.TrackedContentDTO;
+import org.commonjava.indy.folo.dto.TrackedContentPageDTO;
 import org.commonjava.indy.folo.dto.TrackingIdsDTO;
 import org.commonjava.indy.folo.model.TrackedContentRecord;
 import org.commonjava.indy.model.core.BatchDeleteRequest;
@@ -33,6 +34,10 @@ import org.commonjava.indy.model.core.StoreType;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class IndyFoloAdminClientModule
     extends IndyClientModule
@@ -63,6 +68,57 @@ public class IndyFoloAdminClientModule
         return http.get( UrlUtils.buildUrl( "/folo/admin", trackingId, "report" ), TrackedContentDTO.class );
     }
 
+    /**
+     * Retrieve one page of a tracking record. Pass the {@link TrackedContentPageDTO#getNextCursor()} of a page to
+     * retrieve the next one, until it is null.
+     *
+     * @param cursor cursor of the page to retrieve, or null for the first page.
+     * @return the page, or null if there is no such tracking record.
+     */
+    public TrackedContentPageDTO getTrackingRecordPage( final String trackingId, final String cursor,
+                                                        final int limit )
+            throws IndyClientException
+    {
+        final String encodedCursor;
+        try
+        {
+            // cursors are opaque to clients, and nothing guarantees they stay URL-safe
+            encodedCursor = cursor == null ? null : URLEncoder.encode( cursor, "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IndyClientException( "Failed to encode cursor: %s", e, cursor );
+        }
+
+        return http.get( UrlUtils.buildUrl( "folo/admin", () -> {
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put( "limit", Integer.toString( limit ) );
+            if ( encodedCursor != null )
+            {
+                params.put( "cursor", encodedCursor );
+            }
+            return params;
+        }, trackingId, "record/page" ), TrackedContentPageDTO.class );
+    }
+
+    /**
+     * Retrieve the tracking report (in the same format as {@link #getTrackingReport(String)}) as a stream, which the
+     * server writes incrementally. Use this for huge records, which would not fit in memory as a
+     * {@link TrackedContentDTO}.
+     */
+    public InputStream streamTrackingReport( final String trackingId )
+            throws IndyClientException, IOException
+    {
+        HttpResources resources = http.getRaw( UrlUtils.buildUrl( "folo/admin", trackingId, "report/stream" ) );
+        if ( resources.getStatusCode() != HttpStatus.SC_OK )
+        {
+            throw new IndyClientException( resources.getStatusCode(), "Error streaming tracking report: %s.\n%s",
+                                           trackingId, new IndyResponseErrorDetails( resources.getResponse() ) );
+        }
+
+        return resources.getResponseEntityContent();
+    }
+
     public InputStream exportTrackingReportZip() throws IndyClientException, IOException
     {
         HttpResources resources = http.getRaw( UrlUtils.buildUrl( "folo/admin/report/export" ) );
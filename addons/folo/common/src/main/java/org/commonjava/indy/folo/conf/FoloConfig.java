@@ -37,6 +37,9 @@ public class FoloConfig
     public static final boolean DEFAULT_DISABLED =  false;
     public static final String DEFAULT_FOLO_CASSANDRA_KEYSPACE =  "folo";
     public static final String DEFAULT_FOLO_CASSANDRA_TABLENAME =  "records";
+    public static final int DEFAULT_FOLO_CASSANDRA_WRITE_BATCH_SIZE = 100;
+    public static final long DEFAULT_FOLO_CASSANDRA_WRITE_FLUSH_MILLIS = 1000;
+    public static final int DEFAULT_FOLO_CASSANDRA_WRITE_CONCURRENCY = 8;
 
     private Boolean enabled;
 
@@ -48,6 +51,12 @@ public class FoloConfig
 
     private String foloCassandraTablename;
 
+    private Integer foloCassandraWriteBatchSize;
+
+    private Long foloCassandraWriteFlushMillis;
+
+    private Integer foloCassandraWriteConcurrency;
+
     public FoloConfig()
     {
     }
@@ -103,6 +112,39 @@ public class FoloConfig
         this.foloCassandraTablename = foloCassandraTablename;
     }
 
+    public int getFoloCassandraWriteBatchSize() {
+        return foloCassandraWriteBatchSize == null ?
+                DEFAULT_FOLO_CASSANDRA_WRITE_BATCH_SIZE :
+                foloCassandraWriteBatchSize;
+    }
+
+    @ConfigName("folo.cassandra.write.batch.size")
+    public void setFoloCassandraWriteBatchSize(Integer foloCassandraWriteBatchSize) {
+        this.foloCassandraWriteBatchSize = foloCassandraWriteBatchSize;
+    }
+
+    public long getFoloCassandraWriteFlushMillis() {
+        return foloCassandraWriteFlushMillis == null ?
+                DEFAULT_FOLO_CASSANDRA_WRITE_FLUSH_MILLIS :
+                foloCassandraWriteFlushMillis;
+    }
+
+    @ConfigName("folo.cassandra.write.flush.millis")
+    public void setFoloCassandraWriteFlushMillis(Long foloCassandraWriteFlushMillis) {
+        this.foloCassandraWriteFlushMillis = foloCassandraWriteFlushMillis;
+    }
+
+    public int getFoloCassandraWriteConcurrency() {
+        return foloCassandraWriteConcurrency == null ?
+                DEFAULT_FOLO_CASSANDRA_WRITE_CONCURRENCY :
+                foloCassandraWriteConcurrency;
+    }
+
+    @ConfigName("folo.cassandra.write.concurrency")
+    public void setFoloCassandraWriteConcurrency(Integer foloCassandraWriteConcurrency) {
+        this.foloCassandraWriteConcurrency = foloCassandraWriteConcurrency;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
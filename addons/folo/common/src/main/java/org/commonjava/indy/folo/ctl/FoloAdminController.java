@@ -28,8 +28,10 @@ import org.commonjava.indy.folo.data.FoloContentException;
 import org.commonjava.indy.folo.data.FoloFiler;
 import org.commonjava.indy.folo.data.FoloRecord;
 import org.commonjava.indy.folo.data.FoloRecordCache;
+import org.commonjava.indy.folo.data.TrackedContentPage;
 import org.commonjava.indy.folo.dto.TrackedContentDTO;
 import org.commonjava.indy.folo.dto.TrackedContentEntryDTO;
+import org.commonjava.indy.folo.dto.TrackedContentPageDTO;
 import org.commonjava.indy.folo.dto.TrackingIdsDTO;
 import org.commonjava.indy.folo.model.StoreEffect;
 import org.commonjava.indy.folo.model.TrackedContent;
@@ -280,6 +282,53 @@ public class FoloAdminController
         return constructContentDTO( recordManager.get( tk ), baseUrl );
     }
 
+    /**
+     * Retrieve a page of the entries of a tracking record, without loading the whole record. Returns null if there is
+     * no such record.
+     *
+     * @param cursor cursor returned with the previous page, or null for the first page.
+     * @param limit maximum number of entries in the page, capped at {@link FoloConstants#MAX_RECORD_PAGE_SIZE}.
+     */
+    public TrackedContentPageDTO getRecordPage( final String id, final String cursor, final int limit,
+                                                final String baseUrl )
+            throws IndyWorkflowException
+    {
+        final TrackingKey tk = new TrackingKey( id );
+        final TrackedContentPage page;
+        try
+        {
+            page = recordManager.getPage( tk, cursor, Math.min( limit, FoloConstants.MAX_RECORD_PAGE_SIZE ) );
+        }
+        catch ( FoloContentException e )
+        {
+            throw new IndyWorkflowException( ApplicationStatus.BAD_REQUEST.code(),
+                                             "Cannot retrieve page of tracking record: %s. Reason: %s", e, id,
+                                             e.getMessage() );
+        }
+
+        if ( page == null )
+        {
+            return null;
+        }
+
+        final List<TrackedContentEntryDTO> uploads = new ArrayList<>();
+        final List<TrackedContentEntryDTO> downloads = new ArrayList<>();
+        for ( TrackedContentEntry entry : page.getEntries() )
+        {
+            TrackedContentEntryDTO dto = constructContentEntryDTO( entry, baseUrl );
+            if ( entry.getEffect() == StoreEffect.UPLOAD )
+            {
+                uploads.add( dto );
+            }
+            else
+            {
+                downloads.add( dto );
+            }
+        }
+
+        return new TrackedContentPageDTO( tk, uploads, downloads, page.getNextCursor() );
+    }
+
     public void clearRecord( final String id )
             throws FoloContentException
     {
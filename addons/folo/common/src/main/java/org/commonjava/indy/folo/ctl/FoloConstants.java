@@ -24,6 +24,11 @@ public class FoloConstants
 
     public static final String ALL = "all";
 
+    /**
+     * Most entries returned in one page of a tracking record, whatever the requested limit.
+     */
+    public static final int MAX_RECORD_PAGE_SIZE = 5000;
+
     public enum TRACKING_TYPE
     {
         IN_PROGRESS("in_progress"),
@@ -21,6 +21,8 @@ import org.commonjava.indy.folo.model.TrackedContentEntry;
 import org.commonjava.indy.folo.model.TrackingKey;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public interface FoloRecord {
@@ -42,6 +44,37 @@ public interface FoloRecord {
 
     TrackedContent get(TrackingKey key);
 
+    /**
+     * Retrieve a page of at most limit entries (uploads and downloads) of the given record, starting at the cursor
+     * returned with the previous page (null for the first page). Returns null if there is no such record.
+     * <p>
+     * This default pages through the result of {@link #get(TrackingKey)}, with the entry offset as cursor, so it loads
+     * and sorts the whole record for every page. Implementations should override it, to read records incrementally or
+     * at least reuse what they loaded for the previous page.
+     */
+    default TrackedContentPage getPage( TrackingKey key, String cursor, int limit )
+            throws FoloContentException
+    {
+        TrackedContent content = get( key );
+        if ( content == null )
+        {
+            return null;
+        }
+
+        return TrackedContentPage.of( key, sortedEntries( content ), cursor, limit );
+    }
+
+    /**
+     * All the entries (uploads and downloads) of the record, in the order they are paged in.
+     */
+    static List<TrackedContentEntry> sortedEntries( final TrackedContent content )
+    {
+        List<TrackedContentEntry> all = new ArrayList<>( content.getUploads() );
+        all.addAll( content.getDownloads() );
+        all.sort( null );
+        return all;
+    }
+
     @Measure
     TrackedContent seal(TrackingKey trackingKey);
 
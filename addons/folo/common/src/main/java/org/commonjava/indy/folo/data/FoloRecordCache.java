@@ -37,9 +37,13 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Default;
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
@@ -47,8 +51,26 @@ import java.util.stream.Collectors;
 @FoloStoretoInfinispan
 public class FoloRecordCache implements FoloRecord {
 
+    private static final int MAX_PAGED_RECORDS = 20;
+
+    private static final long PAGED_RECORD_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    /**
+     * Sorted entries of the sealed records being paged through, so each record is loaded and sorted once per walk
+     * instead of once per page.
+     */
+    private final Map<TrackingKey, PagedRecord> pagedRecords =
+            Collections.synchronizedMap( new LinkedHashMap<TrackingKey, PagedRecord>( 16, 0.75f, true )
+            {
+                @Override
+                protected boolean removeEldestEntry( final Map.Entry<TrackingKey, PagedRecord> eldest )
+                {
+                    return size() > MAX_PAGED_RECORDS;
+                }
+            } );
+
     @FoloInprogressCache
     @Inject
     private CacheHandle<TrackedContentEntry, TrackedContentEntry> inProgressRecordCache;
@@ -127,6 +149,7 @@ public class FoloRecordCache implements FoloRecord {
     public synchronized void delete(final TrackingKey key)
     {
         sealedRecordCache.remove( key );
+        pagedRecords.remove( key );
         inProgressByTrackingKey( key, (qb, ch)->{
             qb.build().list().forEach( item -> ch.execute( cache -> cache.remove( item ) ) );
             return false;
@@ -137,6 +160,7 @@ public class FoloRecordCache implements FoloRecord {
     public synchronized void replaceTrackingRecord(final TrackedContent record)
     {
         sealedRecordCache.put( record.getKey(), record );
+        pagedRecords.remove( record.getKey() );
     }
 
     @Override
@@ -164,6 +188,38 @@ public class FoloRecordCache implements FoloRecord {
         return sealedRecordCache.get( key );
     }
 
+    /**
+     * The first page (null cursor) loads and sorts the record, and later pages are cut from that same list, so a walk
+     * sees one consistent record. Changes made on this node drop the list; one from another node is only seen by a
+     * walk started after it, or once the list is older than {@link #PAGED_RECORD_MILLIS}.
+     */
+    @Override
+    public TrackedContentPage getPage( final TrackingKey key, final String cursor, final int limit )
+            throws FoloContentException
+    {
+        PagedRecord paged = cursor == null ? null : pagedRecords.get( key );
+        if ( paged == null || paged.isExpired() )
+        {
+            TrackedContent content = get( key );
+            if ( content == null )
+            {
+                pagedRecords.remove( key );
+                return null;
+            }
+
+            paged = new PagedRecord( FoloRecord.sortedEntries( content ) );
+            pagedRecords.put( key, paged );
+        }
+
+        TrackedContentPage page = TrackedContentPage.of( key, paged.entries, cursor, limit );
+        if ( page.getNextCursor() == null )
+        {
+            pagedRecords.remove( key, paged );
+        }
+
+        return page;
+    }
+
     @Override
     @Measure
     public TrackedContent seal(final TrackingKey trackingKey)
@@ -248,5 +304,23 @@ public class FoloRecordCache implements FoloRecord {
     public void addSealedRecord(TrackedContent record)
     {
         sealedRecordCache.put( record.getKey(), record );
+        pagedRecords.remove( record.getKey() );
+    }
+
+    private static final class PagedRecord
+    {
+        private final List<TrackedContentEntry> entries;
+
+        private final long loaded = System.currentTimeMillis();
+
+        PagedRecord( final List<TrackedContentEntry> entries )
+        {
+            this.entries = entries;
+        }
+
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() - loaded > PAGED_RECORD_MILLIS;
+        }
     }
 }
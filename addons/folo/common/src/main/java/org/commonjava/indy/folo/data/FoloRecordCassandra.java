@@ -16,10 +16,12 @@
 package org.commonjava.indy.folo.data;
 
 import com.datastax.driver.core.*;
+import com.datastax.driver.core.exceptions.PagingStateException;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.action.IndyLifecycleException;
+import org.commonjava.indy.action.ShutdownAction;
 import org.commonjava.indy.action.StartupAction;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.folo.conf.FoloConfig;
@@ -37,17 +39,48 @@ import javax.inject.Inject;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.UriInfo;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static org.commonjava.indy.folo.data.DtxTrackingRecord.fromCassandraRow;
-
+/**
+ * Cassandra-backed tracking records.
+ * <p>
+ * Recorded entries are buffered per tracking key (repeated accesses of the same path are coalesced), and written
+ * behind in unlogged batches, which all target the same partition. Buffered entries of a key are flushed when the
+ * buffer fills up, periodically, and before any read or seal of that key. Flushes of a key are serialized, so a read
+ * that flushes first also waits for batches another thread already has in flight for that key.
+ * <p>
+ * Sealing inserts the key into the seals table, a single write however many rows the record has. The sealed flag of
+ * the record rows is left alone; it's only set on records sealed before the seals table existed, and still honoured
+ * for them. Once a seal has started, new entries of the key are rejected, and the ones accepted before are written
+ * before the seal. The seal state of recently used keys is kept in memory (a bounded LRU), so recording doesn't need
+ * to read anything for each entry; keys not in memory are looked up in the seals table again.
+ */
 @ApplicationScoped
 @FoloStoreToCassandra
-public class FoloRecordCassandra implements FoloRecord,StartupAction {
+public class FoloRecordCassandra implements FoloRecord,StartupAction,ShutdownAction {
 
     private final static String DOWNLOADS = "DOWNLOAD";
     private final static String UPLOADS = "UPLOAD";
 
+    /**
+     * How long a "not sealed" answer from the database is trusted, before it's checked again. Seals done on this node
+     * are seen immediately; this only bounds how long it takes to notice a seal done by another node.
+     */
+    private final static long UNSEALED_CHECK_MILLIS = TimeUnit.SECONDS.toMillis( 10 );
+
+    private final static int READ_FETCH_SIZE = 1000;
+
+    private final static int FLUSH_LOCK_STRIPES = 64;
+
+    private final static int MAX_CACHED_SEAL_STATES = 10000;
+
     private final Logger logger = LoggerFactory.getLogger( this.getClass() );
 
     @Inject
@@ -65,10 +98,21 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
     private Session session;
     private Mapper<DtxTrackingRecord> trackingMapper;
 
-    private PreparedStatement getTrackingRecordByBuildIdAndPath;
     private PreparedStatement getTrackingKeys;
     private PreparedStatement getTrackingRecordsByTrackingKey;
     private PreparedStatement isTrackingRecordExist;
+    private PreparedStatement getRecordSealedState;
+    private PreparedStatement getSeal;
+    private PreparedStatement insertSeal;
+
+    private final Map<String, Map<String, DtxTrackingRecord>> pendingWrites = new ConcurrentHashMap<>();
+    private final Set<String> sealedKeys = Collections.newSetFromMap( lruMap() );
+    private final Map<String, Long> unsealedCheckedAt = lruMap();
+    private final Set<String> sealingKeys = ConcurrentHashMap.newKeySet();
+    private final Object[] flushLocks = Stream.generate( Object::new ).limit( FLUSH_LOCK_STRIPES ).toArray();
+
+    private ScheduledExecutorService flushService;
+    private Semaphore writePermits;
 
 
     private static String createFoloRecordsTable( String keyspace )
@@ -92,6 +136,15 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
                 + ");";
     }
 
+    private static String createFoloSealsTable( String keyspace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keyspace + ".seals ("
+                + "tracking_key text,"
+                + "sealed_at bigint,"
+                + "PRIMARY KEY (tracking_key)"
+                + ");";
+    }
+
     @PostConstruct
     public void initialize() {
 
@@ -102,12 +155,11 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
         session = cassandraClient.getSession(foloCassandraKeyspace);
         session.execute( SchemaUtils.getSchemaCreateKeyspace( foloCassandraKeyspace, indyConfig.getKeyspaceReplicas() ));
         session.execute(createFoloRecordsTable(foloCassandraKeyspace));
+        session.execute(createFoloSealsTable(foloCassandraKeyspace));
 
         MappingManager mappingManager = new MappingManager(session);
         trackingMapper = mappingManager.mapper(DtxTrackingRecord.class,foloCassandraKeyspace);
 
-        getTrackingRecordByBuildIdAndPath =
-                session.prepare("SELECT * FROM " + foloCassandraKeyspace + ".records WHERE tracking_key=? AND path=?;");
         getTrackingKeys =
                 session.prepare("SELECT distinct tracking_key FROM " +  foloCassandraKeyspace + ".records;");
 
@@ -117,6 +169,26 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
         isTrackingRecordExist =
                 session.prepare("SELECT count(*) FROM "  + foloCassandraKeyspace + ".records WHERE tracking_key=?;");
 
+        // records sealed before the seals table existed (or migrated as sealed) have the flag on every row
+        getRecordSealedState =
+                session.prepare("SELECT sealed FROM "  + foloCassandraKeyspace + ".records WHERE tracking_key=? LIMIT 1;");
+
+        getSeal =
+                session.prepare("SELECT sealed_at FROM "  + foloCassandraKeyspace + ".seals WHERE tracking_key=?;");
+
+        insertSeal =
+                session.prepare("INSERT INTO "  + foloCassandraKeyspace + ".seals (tracking_key, sealed_at) VALUES (?, ?) IF NOT EXISTS;");
+
+        writePermits = new Semaphore( Math.max( 1, config.getFoloCassandraWriteConcurrency() ) );
+
+        long flushMillis = config.getFoloCassandraWriteFlushMillis();
+        flushService = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "folo-cassandra-flush" );
+            t.setDaemon( true );
+            return t;
+        } );
+        flushService.scheduleWithFixedDelay( this::flushAll, flushMillis, flushMillis, TimeUnit.MILLISECONDS );
+
         logger.info("-- Cassandra Folo Records Keyspace and Tables created");
     }
 
@@ -126,37 +198,39 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
         String buildId = entry.getTrackingKey().getId();
         String path = entry.getPath();
 
-        BoundStatement bind = getTrackingRecordByBuildIdAndPath.bind(buildId,path);
-        ResultSet trackingRecord = session.execute(bind);
-        Row one = trackingRecord.one();
-
-        if(one!=null) {
+        if ( isSealed( buildId ) ) {
+            throw new FoloContentException( "Tracking record: {} is already sealed!", entry.getTrackingKey() );
+        }
 
-            DtxTrackingRecord dtxTrackingRecord = fromCassandraRow(one);
+        DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord(entry);
+        boolean[] rejected = { false };
+        Map<String, DtxTrackingRecord> pending = pendingWrites.compute( buildId, ( k, records ) -> {
+            // checked while holding the key, so the flush of a seal that just started is sure to see this entry
+            if ( sealingKeys.contains( buildId ) || sealedKeys.contains( buildId ) ) {
+                rejected[0] = true;
+                return records;
+            }
 
-            Boolean state = dtxTrackingRecord.getState();
+            Map<String, DtxTrackingRecord> result = records == null ? new LinkedHashMap<>() : records;
+            // later accesses of the same path replace the earlier ones, just like the row would be overwritten.
+            result.put( path, dtxTrackingRecord );
+            return result;
+        } );
 
-            if(state) {
-                throw new FoloContentException( "Tracking record: {} is already sealed!", entry.getTrackingKey() );
-            }  else {
-                DtxTrackingRecord dtxTrackingRecord1 =
-                        DtxTrackingRecord.fromTrackedContentEntry(entry,false);
+        if ( rejected[0] ) {
+            throw new FoloContentException( "Tracking record: {} is already sealed!", entry.getTrackingKey() );
+        }
 
-                if(dtxTrackingRecord.getTrackingKey().equals(dtxTrackingRecord1.getTrackingKey()) &&
-                    dtxTrackingRecord.getPath().equals(dtxTrackingRecord1.getPath())) {
-                    trackingMapper.save(dtxTrackingRecord1);
-                    return true;
-                } else {
-                    return false;
-                }
+        if ( pending.size() >= config.getFoloCassandraWriteBatchSize() ) {
+            try {
+                flushService.execute( () -> flush( buildId ) );
+            } catch ( RejectedExecutionException e ) {
+                // shutting down
+                flush( buildId );
             }
-
-        } else {
-
-            DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord(entry);
-            trackingMapper.save(dtxTrackingRecord); //  optional Options with TTL, timestamp...
-            return true;
         }
+
+        return true;
     }
 
     @Override
@@ -170,11 +244,13 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
 
     @Override
     public void replaceTrackingRecord(TrackedContent record) {
+        flush( record.getKey().getId() );
         saveTrackedContentRecords(record);
     }
 
     @Override
     public boolean hasRecord(TrackingKey key) {
+        flush( key.getId() );
         BoundStatement bind = isTrackingRecordExist.bind(key);
         ResultSet result = session.execute(bind);
         Row row = result.one();
@@ -190,29 +266,45 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
 
     @Override
     public TrackedContent get(TrackingKey key) {
+        flush( key.getId() );
         List<DtxTrackingRecord> trackingRecords =  getDtxTrackingRecordsFromDb(key);
         return transformDtxTrackingRecordToTrackingContent(key,trackingRecords);
     }
 
     @Override
     public TrackedContent seal(TrackingKey trackingKey) {
-        List<DtxTrackingRecord> trackingRecords =  getDtxTrackingRecordsFromDb(trackingKey);
-
-        if(trackingRecords == null ||  trackingRecords.isEmpty()) {
-            logger.debug( "Tracking record: {} doesn't exist! Returning empty record.", trackingKey );
-            return new TrackedContent(trackingKey,new HashSet<>() ,  new HashSet<>());
-        }
+        String buildId = trackingKey.getId();
+        flush( buildId );
 
-        DtxTrackingRecord recordCheck = trackingRecords.get(0);
-        if(recordCheck.getState()) {
+        if(isSealed(buildId)) {
             logger.debug( "Tracking record: {} already sealed! Returning sealed record.", trackingKey );
-            return transformDtxTrackingRecordToTrackingContent(trackingKey,trackingRecords);
+            return transformDtxTrackingRecordToTrackingContent(trackingKey,getDtxTrackingRecordsFromDb(trackingKey));
         }
-        logger.debug( "Sealing record for: {}", trackingKey );
-        for(DtxTrackingRecord record : trackingRecords) {
-            record.setState(true);
-            trackingMapper.save(record);
+
+        List<DtxTrackingRecord> trackingRecords;
+        sealingKeys.add( buildId );
+        try {
+            // write the entries accepted since the flush above (none are accepted from here on), so the rows read
+            // below are all the ones sealed
+            flush( buildId );
+            trackingRecords = getDtxTrackingRecordsFromDb( trackingKey );
+
+            if(trackingRecords.isEmpty()) {
+                logger.debug( "Tracking record: {} doesn't exist! Returning empty record.", trackingKey );
+                return new TrackedContent(trackingKey,new HashSet<>() ,  new HashSet<>());
+            }
+
+            logger.debug( "Sealing record for: {}", trackingKey );
+            ResultSet result = session.execute( insertSeal.bind( buildId, System.currentTimeMillis() ) );
+            if ( !result.wasApplied() ) {
+                logger.debug( "Tracking record: {} was sealed concurrently.", trackingKey );
+            }
+            markSealed( buildId );
+        } finally {
+            sealingKeys.remove( buildId );
         }
+
+        trackingRecords.forEach( record -> record.setState( true ) );
         return transformDtxTrackingRecordToTrackingContent(trackingKey,trackingRecords);
     }
 
@@ -259,6 +351,20 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
         return 0;
     }
 
+    @Override
+    public void stop() throws IndyLifecycleException {
+        logger.info("--- FoloRecordsCassandra flushing buffered records");
+        if ( flushService != null ) {
+            flushService.shutdown();
+        }
+        flushAll();
+    }
+
+    @Override
+    public int getShutdownPriority() {
+        return 50;
+    }
+
     @Override
     public String getId() {
         return "Folo2Cassandra";
@@ -293,33 +399,196 @@ public class FoloRecordCassandra implements FoloRecord,StartupAction {
         List<DtxTrackingRecord> trackingRecords =  new ArrayList<>();
 
         BoundStatement bind = getTrackingRecordsByTrackingKey.bind(trackingKey.getId());
-        ResultSet execute = session.execute(bind);
-        List<Row> allTrackingRecordsByTrackingKey = execute.all();
-
-//        logger.warn("-- Fetched {} tracking  records from key {}",allTrackingRecordsByTrackingKey.size(),trackingKey);
-
-        Iterator<Row> iteratorDtxTrackingRecords = allTrackingRecordsByTrackingKey.iterator();
-        while (iteratorDtxTrackingRecords.hasNext()) {
-            Row next = iteratorDtxTrackingRecords.next();
-            DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord();
-            dtxTrackingRecord.setTrackingKey(next.getString("tracking_key"));
-            dtxTrackingRecord.setState(next.getBool("sealed"));
-            dtxTrackingRecord.setLocalUrl(next.getString("local_url"));
-            dtxTrackingRecord.setOriginUrl(next.getString("origin_url"));
-            dtxTrackingRecord.setTimestamps(next.getSet("timestamps",Long.class));
-            dtxTrackingRecord.setPath(next.getString("path"));
-            dtxTrackingRecord.setStoreEffect(next.getString("store_effect"));
-            dtxTrackingRecord.setSha256(next.getString("sha256"));
-            dtxTrackingRecord.setSha1(next.getString("sha1"));
-            dtxTrackingRecord.setMd5(next.getString("md5"));
-            dtxTrackingRecord.setSize(next.getLong("size"));
-            dtxTrackingRecord.setStoreKey(next.getString("store_key"));
-            dtxTrackingRecord.setAccessChannel(next.getString("access_channel"));
-            trackingRecords.add(dtxTrackingRecord);
+        bind.setFetchSize( READ_FETCH_SIZE );
+
+        // the rows don't carry the seal (only legacy ones do), it comes from the seals table
+        boolean sealed = isSealed( trackingKey.getId() );
+
+        // iterating fetches the rows page by page, instead of holding both all rows and all records at once
+        for ( Row next : session.execute(bind) ) {
+            DtxTrackingRecord record = toDtxTrackingRecord( next );
+            if ( sealed ) {
+                record.setState( true );
+            }
+            trackingRecords.add( record );
         }
         return trackingRecords;
     }
 
+    @Override
+    public TrackedContentPage getPage(TrackingKey key, String cursor, int limit) throws FoloContentException {
+        flush( key.getId() );
+
+        BoundStatement bind = getTrackingRecordsByTrackingKey.bind(key.getId());
+        bind.setFetchSize( Math.max( 1, limit ) );
+        if ( cursor != null ) {
+            try {
+                bind.setPagingState( PagingState.fromString( cursor ) );
+            } catch ( PagingStateException e ) {
+                throw new FoloContentException( "Invalid cursor: {}", e, cursor );
+            }
+        }
+
+        ResultSet resultSet = session.execute(bind);
+        // only consume the rows of this page, iterating further would fetch the next one
+        int available = resultSet.getAvailableWithoutFetching();
+        List<TrackedContentEntry> entries = new ArrayList<>( available );
+        for ( int i = 0; i < available; i++ ) {
+            entries.add( DtxTrackingRecord.toTrackingContentEntry( toDtxTrackingRecord( resultSet.one() ) ) );
+        }
+
+        if ( cursor == null && entries.isEmpty() ) {
+            return null;
+        }
+
+        PagingState next = resultSet.getExecutionInfo().getPagingState();
+        return new TrackedContentPage( key, entries, next == null ? null : next.toString() );
+    }
+
+    private DtxTrackingRecord toDtxTrackingRecord( Row next ) {
+        DtxTrackingRecord dtxTrackingRecord = new DtxTrackingRecord();
+        dtxTrackingRecord.setTrackingKey(next.getString("tracking_key"));
+        dtxTrackingRecord.setState(next.getBool("sealed"));
+        dtxTrackingRecord.setLocalUrl(next.getString("local_url"));
+        dtxTrackingRecord.setOriginUrl(next.getString("origin_url"));
+        dtxTrackingRecord.setTimestamps(next.getSet("timestamps",Long.class));
+        dtxTrackingRecord.setPath(next.getString("path"));
+        dtxTrackingRecord.setStoreEffect(next.getString("store_effect"));
+        dtxTrackingRecord.setSha256(next.getString("sha256"));
+        dtxTrackingRecord.setSha1(next.getString("sha1"));
+        dtxTrackingRecord.setMd5(next.getString("md5"));
+        dtxTrackingRecord.setSize(next.getLong("size"));
+        dtxTrackingRecord.setStoreKey(next.getString("store_key"));
+        dtxTrackingRecord.setAccessChannel(next.getString("access_channel"));
+        return dtxTrackingRecord;
+    }
+
+    private boolean isSealed( String buildId ) {
+        if ( sealedKeys.contains( buildId ) ) {
+            return true;
+        }
+
+        Long checked = unsealedCheckedAt.get( buildId );
+        if ( checked != null && System.currentTimeMillis() - checked < UNSEALED_CHECK_MILLIS ) {
+            return false;
+        }
+
+        Row legacy = session.execute( getRecordSealedState.bind( buildId ) ).one();
+        boolean sealed = ( legacy != null && legacy.getBool( "sealed" ) )
+                || session.execute( getSeal.bind( buildId ) ).one() != null;
+
+        if ( sealed ) {
+            markSealed( buildId );
+        } else {
+            unsealedCheckedAt.put( buildId, System.currentTimeMillis() );
+        }
+
+        return sealed;
+    }
+
+    private void markSealed( String buildId ) {
+        sealedKeys.add( buildId );
+        unsealedCheckedAt.remove( buildId );
+    }
+
+    private void flushAll() {
+        for ( String buildId : new ArrayList<>( pendingWrites.keySet() ) ) {
+            try {
+                flush( buildId );
+            } catch ( RuntimeException e ) {
+                logger.error( String.format( "Failed to flush tracking records for: %s. Reason: %s", buildId,
+                                             e.getMessage() ), e );
+            }
+        }
+    }
+
+    /**
+     * Write all buffered entries of the given tracking key, in unlogged batches of at most the configured batch size.
+     * Returns once all of them are written, including entries of the key that another thread was already flushing.
+     */
+    private void flush( String buildId ) {
+        synchronized ( flushLocks[( buildId.hashCode() & Integer.MAX_VALUE ) % flushLocks.length] ) {
+            doFlush( buildId );
+        }
+    }
+
+    private void doFlush( String buildId ) {
+        Map<String, DtxTrackingRecord> pending = pendingWrites.remove( buildId );
+        if ( pending == null || pending.isEmpty() ) {
+            return;
+        }
+
+        if ( sealedKeys.contains( buildId ) ) {
+            // only when another node sealed the key while this one still trusted an earlier "not sealed" answer;
+            // seals done here reject new entries first, and write the accepted ones before sealing
+            logger.warn( "Tracking record: {} was sealed by another node! Dropping {} buffered entries.", buildId,
+                         pending.size() );
+            return;
+        }
+
+        int batchSize = Math.max( 1, config.getFoloCassandraWriteBatchSize() );
+        List<List<DtxTrackingRecord>> chunks = new ArrayList<>();
+        List<DtxTrackingRecord> chunk = new ArrayList<>( batchSize );
+        for ( DtxTrackingRecord record : pending.values() ) {
+            chunk.add( record );
+            if ( chunk.size() >= batchSize ) {
+                chunks.add( chunk );
+                chunk = new ArrayList<>( batchSize );
+            }
+        }
+        if ( !chunk.isEmpty() ) {
+            chunks.add( chunk );
+        }
+
+        List<ResultSetFuture> futures = new ArrayList<>( chunks.size() );
+        for ( List<DtxTrackingRecord> records : chunks ) {
+            BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+            records.forEach( record -> batch.add( trackingMapper.saveQuery( record ) ) );
+
+            futures.add( executeWithPermit( batch ) );
+        }
+
+        RuntimeException error = null;
+        for ( int i = 0; i < futures.size(); i++ ) {
+            try {
+                futures.get( i ).getUninterruptibly();
+            } catch ( RuntimeException e ) {
+                // put the failed entries back, unless they were recorded again in the meantime.
+                List<DtxTrackingRecord> failed = chunks.get( i );
+                pendingWrites.compute( buildId, ( k, records ) -> {
+                    Map<String, DtxTrackingRecord> result = records == null ? new LinkedHashMap<>() : records;
+                    failed.forEach( record -> result.putIfAbsent( record.getPath(), record ) );
+                    return result;
+                } );
+                error = e;
+            }
+        }
+
+        if ( error != null ) {
+            throw error;
+        }
+
+        logger.trace( "Flushed {} tracking entries for: {}", pending.size(), buildId );
+    }
+
+    private ResultSetFuture executeWithPermit( Statement statement ) {
+        writePermits.acquireUninterruptibly();
+        ResultSetFuture future = session.executeAsync( statement );
+        future.addListener( writePermits::release, Runnable::run );
+        return future;
+    }
+
+    private static <V> Map<String, V> lruMap() {
+        return Collections.synchronizedMap( new LinkedHashMap<String, V>( 16, 0.75f, true ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, V> eldest ) {
+                return size() > MAX_CACHED_SEAL_STATES;
+            }
+        } );
+    }
+
     private void saveTrackedContentRecords(TrackedContent record) {
         Set<TrackedContentEntry> downloads = record.getDownloads();
         Set<TrackedContentEntry> uploads = record.getUploads();
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data;
+
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the entries (uploads and downloads) of a tracking record, see {@link FoloRecord#getPage}.
+ */
+public class TrackedContentPage
+{
+    private final TrackingKey key;
+
+    private final List<TrackedContentEntry> entries;
+
+    private final String nextCursor;
+
+    public TrackedContentPage( final TrackingKey key, final List<TrackedContentEntry> entries,
+                               final String nextCursor )
+    {
+        this.key = key;
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Cut the page starting at the cursor (an entry offset, null for the first page) out of all the entries of a
+     * record, in a fixed order.
+     */
+    static TrackedContentPage of( final TrackingKey key, final List<TrackedContentEntry> all, final String cursor,
+                                  final int limit )
+            throws FoloContentException
+    {
+        int from;
+        try
+        {
+            from = cursor == null ? 0 : Integer.parseInt( cursor );
+        }
+        catch ( NumberFormatException e )
+        {
+            from = -1;
+        }
+
+        if ( from < 0 )
+        {
+            throw new FoloContentException( "Invalid cursor: {}", cursor );
+        }
+
+        int to = Math.min( all.size(), from + Math.max( 1, limit ) );
+        List<TrackedContentEntry> entries =
+                from >= all.size() ? new ArrayList<>() : new ArrayList<>( all.subList( from, to ) );
+        return new TrackedContentPage( key, entries, to < all.size() ? Integer.toString( to ) : null );
+    }
+
+    public TrackingKey getKey()
+    {
+        return key;
+    }
+
+    public List<TrackedContentEntry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Opaque cursor to pass to {@link FoloRecord#getPage} for the next page, or null if this is the last one.
+     */
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+}
@@ -31,6 +31,10 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -163,6 +167,86 @@ public class FoloRecordCacheTest
         assertThat( cache.hasRecord( key ), equalTo( false ) );
     }
 
+    @Test
+    public void pageThroughSealedRecord()
+            throws Exception
+    {
+        final TrackingKey key = newKey();
+        for ( int i = 0; i < 5; i++ )
+        {
+            cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                           AccessChannel.MAVEN_REPO, "", "/path/" + i,
+                                                           i < 2 ? StoreEffect.UPLOAD : StoreEffect.DOWNLOAD, 1L, "",
+                                                           "", "" ) );
+        }
+        cache.seal( key );
+
+        Set<TrackedContentEntry> seen = new HashSet<>();
+        List<String> cursors = new ArrayList<>();
+        String cursor = null;
+        do
+        {
+            TrackedContentPage page = cache.getPage( key, cursor, 2 );
+            assertThat( page.getEntries().size() <= 2, equalTo( true ) );
+            seen.addAll( page.getEntries() );
+            cursor = page.getNextCursor();
+            cursors.add( cursor );
+        }
+        while ( cursor != null );
+
+        assertThat( cursors, equalTo( Arrays.asList( "2", "4", null ) ) );
+        TrackedContent record = cache.get( key );
+        Set<TrackedContentEntry> all = new HashSet<>( record.getUploads() );
+        all.addAll( record.getDownloads() );
+        assertThat( seen, equalTo( all ) );
+    }
+
+    @Test
+    public void pagesOfOneWalkComeFromOneLoadOfTheRecord()
+            throws Exception
+    {
+        final TrackingKey key = newKey();
+        for ( int i = 0; i < 4; i++ )
+        {
+            cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                           AccessChannel.MAVEN_REPO, "", "/path/" + i,
+                                                           StoreEffect.DOWNLOAD, 1L, "", "", "" ) );
+        }
+        cache.seal( key );
+
+        TrackedContentPage first = cache.getPage( key, null, 2 );
+
+        // changed behind the record manager's back, as another node would; the walk under way doesn't see it
+        sealed.put( key, new TrackedContent( key, new HashSet<>(), new HashSet<>() ) );
+
+        TrackedContentPage second = cache.getPage( key, first.getNextCursor(), 2 );
+        assertThat( second.getEntries().size(), equalTo( 2 ) );
+        assertThat( second.getNextCursor(), nullValue() );
+
+        TrackedContentPage fresh = cache.getPage( key, null, 2 );
+        assertThat( fresh.getEntries().size(), equalTo( 0 ) );
+        assertThat( fresh.getNextCursor(), nullValue() );
+    }
+
+    @Test( expected = FoloContentException.class )
+    public void pageWithInvalidCursorFails()
+            throws Exception
+    {
+        final TrackingKey key = newKey();
+        cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                       AccessChannel.MAVEN_REPO, "", "/path", StoreEffect.DOWNLOAD,
+                                                       1L, "", "", "" ) );
+        cache.seal( key );
+        cache.getPage( key, "not-a-cursor", 2 );
+    }
+
+    @Test
+    public void pageOfMissingRecordIsNull()
+            throws Exception
+    {
+        assertThat( cache.getPage( newKey(), null, 2 ), nullValue() );
+    }
+
     private TrackingKey newKey()
     {
         final String id = "track";
@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data;
+
+import com.datastax.driver.core.Row;
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.commonjava.indy.cassandra.testcat.CassandraTest;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.folo.conf.FoloConfig;
+import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.model.TrackedContent;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.subsys.cassandra.CassandraClient;
+import org.commonjava.indy.subsys.cassandra.config.CassandraConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+@Category( CassandraTest.class )
+public class FoloRecordCassandraTest
+{
+    private CassandraClient client;
+
+    private FoloRecordCassandra records;
+
+    private FoloConfig foloConfig;
+
+    @Before
+    public void start()
+            throws Exception
+    {
+        EmbeddedCassandraServerHelper.startEmbeddedCassandra();
+
+        CassandraConfig config = new CassandraConfig();
+        config.setEnabled( true );
+        config.setCassandraHost( "localhost" );
+        config.setCassandraPort( 9142 );
+        client = new CassandraClient( config );
+
+        DefaultIndyConfiguration indyConfig = new DefaultIndyConfiguration();
+        indyConfig.setKeyspaceReplicas( 1 );
+
+        foloConfig = new FoloConfig();
+        foloConfig.setFoloCassandraKeyspace( "folo" );
+        // nothing is written behind on a timer during the tests
+        foloConfig.setFoloCassandraWriteFlushMillis( 60000L );
+        foloConfig.setFoloCassandraWriteBatchSize( 1000 );
+
+        records = new FoloRecordCassandra();
+        records.cassandraClient = client;
+        records.config = foloConfig;
+        records.indyConfig = indyConfig;
+    }
+
+    @After
+    public void stop()
+            throws Exception
+    {
+        records.stop();
+        client.close();
+        EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
+    }
+
+    @Test
+    public void bufferedEntriesAreWrittenBeforeRead()
+            throws Exception
+    {
+        records.initialize();
+        TrackingKey key = new TrackingKey( "buffered" );
+        for ( int i = 0; i < 50; i++ )
+        {
+            records.recordArtifact( entry( key, "/path/" + i, i ) );
+        }
+
+        assertThat( records.get( key ).getDownloads().size(), equalTo( 50 ) );
+    }
+
+    @Test
+    public void laterEntryForSamePathWins()
+            throws Exception
+    {
+        records.initialize();
+        TrackingKey key = new TrackingKey( "ordering" );
+        records.recordArtifact( entry( key, "/path/foo.jar", 1 ) );
+        records.recordArtifact( entry( key, "/path/foo.jar", 2 ) );
+
+        Set<TrackedContentEntry> downloads = records.get( key ).getDownloads();
+        assertThat( downloads.size(), equalTo( 1 ) );
+        assertThat( downloads.iterator().next().getSize(), equalTo( 2L ) );
+    }
+
+    @Test
+    public void sealWritesBufferedEntriesAndRejectsLaterOnes()
+            throws Exception
+    {
+        records.initialize();
+        TrackingKey key = new TrackingKey( "sealing" );
+        for ( int i = 0; i < 3; i++ )
+        {
+            records.recordArtifact( entry( key, "/path/" + i, i ) );
+        }
+
+        TrackedContent sealed = records.seal( key );
+        assertThat( sealed.getDownloads().size(), equalTo( 3 ) );
+
+        try
+        {
+            records.recordArtifact( entry( key, "/path/late", 4 ) );
+            fail( "Recording into a sealed record should fail" );
+        }
+        catch ( FoloContentException e )
+        {
+            // expected
+        }
+
+        assertThat( records.get( key ).getDownloads().size(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void sealIsOneWriteToTheSealsTable()
+            throws Exception
+    {
+        records.initialize();
+        TrackingKey key = new TrackingKey( "sealed-rows" );
+        for ( int i = 0; i < 5; i++ )
+        {
+            records.recordArtifact( entry( key, "/path/" + i, i ) );
+        }
+
+        records.seal( key );
+
+        List<Row> rows = client.getSession( "folo" )
+                               .execute( "SELECT sealed FROM folo.records WHERE tracking_key='sealed-rows';" )
+                               .all();
+        assertThat( rows.size(), equalTo( 5 ) );
+        rows.forEach( row -> assertThat( row.getBool( "sealed" ), equalTo( false ) ) );
+
+        // another node, knowing nothing of this seal, sees it in the seals table
+        FoloRecordCassandra other = new FoloRecordCassandra();
+        other.cassandraClient = client;
+        other.config = foloConfig;
+        other.indyConfig = records.indyConfig;
+        other.initialize();
+        try
+        {
+            other.recordArtifact( entry( key, "/path/late", 6 ) );
+            fail( "Recording into a record sealed by another node should fail" );
+        }
+        catch ( FoloContentException e )
+        {
+            // expected
+        }
+        finally
+        {
+            other.stop();
+        }
+    }
+
+    @Test
+    public void readWaitsForBatchesAlreadyInFlight()
+            throws Exception
+    {
+        // every 10th entry hands the buffer to the flush thread, so batches are in flight while we read
+        foloConfig.setFoloCassandraWriteBatchSize( 10 );
+        foloConfig.setFoloCassandraWriteConcurrency( 1 );
+        records.initialize();
+
+        TrackingKey key = new TrackingKey( "in-flight" );
+        for ( int i = 0; i < 200; i++ )
+        {
+            records.recordArtifact( entry( key, "/path/" + i, i ) );
+        }
+
+        assertThat( records.get( key ).getDownloads().size(), equalTo( 200 ) );
+    }
+
+    @Test
+    public void pagesCoverTheWholeRecord()
+            throws Exception
+    {
+        records.initialize();
+        TrackingKey key = new TrackingKey( "paging" );
+        for ( int i = 0; i < 25; i++ )
+        {
+            records.recordArtifact( entry( key, "/path/" + i, i ) );
+        }
+
+        Set<String> paths = new HashSet<>();
+        int pages = 0;
+        String cursor = null;
+        do
+        {
+            TrackedContentPage page = records.getPage( key, cursor, 10 );
+            page.getEntries().forEach( e -> paths.add( e.getPath() ) );
+            cursor = page.getNextCursor();
+            pages++;
+        }
+        while ( cursor != null );
+
+        assertThat( paths.size(), equalTo( 25 ) );
+        assertThat( pages >= 3, equalTo( true ) );
+    }
+
+    private static TrackedContentEntry entry( final TrackingKey key, final String path, final long size )
+    {
+        return new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ), AccessChannel.MAVEN_REPO, "",
+                                        path, StoreEffect.DOWNLOAD, size, "", "", "" );
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.ftest.report;
+
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.commonjava.indy.folo.client.IndyFoloAdminClientModule;
+import org.commonjava.indy.folo.client.IndyFoloContentClientModule;
+import org.commonjava.indy.folo.dto.TrackedContentDTO;
+import org.commonjava.indy.folo.dto.TrackedContentEntryDTO;
+import org.commonjava.indy.folo.dto.TrackedContentPageDTO;
+import org.commonjava.indy.ftest.core.category.EventDependent;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Pages through a sealed record a few entries at a time, and streams the whole report, checking both against the
+ * regular report.
+ */
+@Category( EventDependent.class )
+public class PageAndStreamTrackingReportTest
+    extends AbstractTrackingReportTest
+{
+
+    private static final int ENTRIES = 5;
+
+    @Test
+    public void run()
+        throws Exception
+    {
+        final String trackingId = newName();
+
+        IndyFoloContentClientModule content = client.module( IndyFoloContentClientModule.class );
+        for ( int i = 0; i < ENTRIES; i++ )
+        {
+            final InputStream stream =
+                new ByteArrayInputStream( ( "This is a test: " + i + " " + System.nanoTime() ).getBytes() );
+            content.store( trackingId, hosted, STORE, "/path/to/foo-" + i + ".class", stream );
+        }
+
+        IndyFoloAdminClientModule adminModule = client.module( IndyFoloAdminClientModule.class );
+        assertThat( adminModule.sealTrackingRecord( trackingId ), equalTo( true ) );
+
+        final TrackedContentDTO report = adminModule.getTrackingReport( trackingId );
+        assertThat( report, notNullValue() );
+        assertThat( report.getUploads().size(), equalTo( ENTRIES ) );
+
+        final Set<TrackedContentEntryDTO> paged = new HashSet<>();
+        int pages = 0;
+        String cursor = null;
+        do
+        {
+            final TrackedContentPageDTO page = adminModule.getTrackingRecordPage( trackingId, cursor, 2 );
+            assertThat( page, notNullValue() );
+            assertThat( page.getUploads().size() + page.getDownloads().size() <= 2, equalTo( true ) );
+
+            paged.addAll( page.getUploads() );
+            paged.addAll( page.getDownloads() );
+            cursor = page.getNextCursor();
+            pages++;
+        }
+        while ( cursor != null );
+
+        assertThat( pages, equalTo( 3 ) );
+        assertThat( paged, equalTo( report.getUploads() ) );
+
+        final TrackedContentDTO streamed;
+        try (InputStream in = adminModule.streamTrackingReport( trackingId ))
+        {
+            streamed = new IndyObjectMapper( true ).readValue( in, TrackedContentDTO.class );
+        }
+
+        assertThat( streamed.getKey(), equalTo( report.getKey() ) );
+        assertThat( streamed.getUploads(), equalTo( report.getUploads() ) );
+        assertThat( streamed.getDownloads() == null || streamed.getDownloads().isEmpty(), equalTo( true ) );
+    }
+}
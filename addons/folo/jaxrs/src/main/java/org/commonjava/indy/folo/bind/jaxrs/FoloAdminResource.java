@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.folo.bind.jaxrs;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiOperation;
@@ -33,6 +34,7 @@ import org.commonjava.indy.folo.ctl.FoloConstants;
 import org.commonjava.indy.folo.data.FoloContentException;
 import org.commonjava.indy.folo.dto.TrackedContentDTO;
 import org.commonjava.indy.folo.dto.TrackedContentEntryDTO;
+import org.commonjava.indy.folo.dto.TrackedContentPageDTO;
 import org.commonjava.indy.folo.dto.TrackingIdsDTO;
 import org.commonjava.indy.model.core.BatchDeleteRequest;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
@@ -44,18 +46,23 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -74,6 +81,8 @@ public class FoloAdminResource
         implements IndyResources
 {
 
+    private static final int STREAM_PAGE_SIZE = 1000;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -187,6 +196,136 @@ public class FoloAdminResource
         return response;
     }
 
+    @ApiOperation( "Stream the tracking record for the specified key. This returns the same content as /{id}/report, "
+                           + "but reads and writes the record entries incrementally, so it can be used for huge records." )
+    @ApiResponses( { @ApiResponse( code = 404, message = "No such tracking record exists." ),
+                           @ApiResponse( code = 200, message = "Tracking record",
+                                         response = TrackedContentDTO.class ), } )
+    @Path( "/{id}/report/stream" )
+    @GET
+    @Produces( application_json )
+    public Response streamReport( @ApiParam( "User-assigned tracking session key" ) final @PathParam( "id" ) String id,
+                                  @Context final UriInfo uriInfo )
+    {
+        Response response;
+        try
+        {
+            final String baseUrl = uriInfo.getBaseUriBuilder().path( "api" ).build().toString();
+            final TrackedContentPageDTO first = controller.getRecordPage( id, null, STREAM_PAGE_SIZE, baseUrl );
+            if ( first == null )
+            {
+                response = Response.status( Status.NOT_FOUND ).build();
+            }
+            else
+            {
+                StreamingOutput out = output -> writeReport( id, baseUrl, first, output );
+                response = Response.ok( out ).type( application_json ).build();
+            }
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            logger.error( String.format( "Failed to stream tracking report for: %s. Reason: %s", id, e.getMessage() ),
+                          e );
+
+            response = responseHelper.formatResponse( e );
+        }
+
+        return response;
+    }
+
+    @ApiOperation( "Retrieve one page of the tracking record for the specified key" )
+    @ApiResponses( { @ApiResponse( code = 404, message = "No such tracking record exists." ),
+                           @ApiResponse( code = 200, message = "Tracking record page",
+                                         response = TrackedContentPageDTO.class ), } )
+    @Path( "/{id}/record/page" )
+    @GET
+    @Produces( application_json )
+    public Response getRecordPage( @ApiParam( "User-assigned tracking session key" ) final @PathParam( "id" ) String id,
+                                   @ApiParam( "Cursor returned with the previous page; omit for the first page" )
+                                   final @QueryParam( "cursor" ) String cursor,
+                                   @ApiParam( "Maximum number of entries in the page (at most 5000)" ) final @QueryParam( "limit" )
+                                   @DefaultValue( "1000" ) int limit, @Context final UriInfo uriInfo )
+    {
+        Response response;
+        try
+        {
+            final String baseUrl = uriInfo.getBaseUriBuilder().path( "api" ).build().toString();
+            final TrackedContentPageDTO page = controller.getRecordPage( id, cursor, limit, baseUrl );
+            if ( page == null )
+            {
+                response = Response.status( Status.NOT_FOUND ).build();
+            }
+            else
+            {
+                response = responseHelper.formatOkResponseWithJsonEntity( page );
+            }
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            logger.error( String.format( "Failed to retrieve tracking record page for: %s. Reason: %s", id,
+                                         e.getMessage() ), e );
+
+            response = responseHelper.formatResponse( e );
+        }
+
+        return response;
+    }
+
+    /**
+     * Write the record in the same format as {@link TrackedContentDTO}, reading it one page at a time, just once.
+     * Downloads are written as each page arrives; uploads (usually far fewer) are held until the record is read, and
+     * written after them.
+     */
+    private void writeReport( final String id, final String baseUrl, final TrackedContentPageDTO first,
+                              final OutputStream output )
+            throws IOException
+    {
+        final List<TrackedContentEntryDTO> uploads = new ArrayList<>();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator( output ))
+        {
+            generator.writeStartObject();
+            generator.writeObjectField( "key", first.getKey() );
+
+            generator.writeArrayFieldStart( "downloads" );
+            TrackedContentPageDTO page = first;
+            while ( page != null )
+            {
+                uploads.addAll( page.getUploads() );
+                for ( TrackedContentEntryDTO entry : page.getDownloads() )
+                {
+                    generator.writeObject( entry );
+                }
+                generator.flush();
+
+                page = page.hasNext() ? nextPage( id, baseUrl, page ) : null;
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart( "uploads" );
+            for ( TrackedContentEntryDTO entry : uploads )
+            {
+                generator.writeObject( entry );
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+        }
+    }
+
+    private TrackedContentPageDTO nextPage( final String id, final String baseUrl, final TrackedContentPageDTO page )
+            throws IOException
+    {
+        try
+        {
+            return controller.getRecordPage( id, page.getNextCursor(), STREAM_PAGE_SIZE, baseUrl );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            throw new IOException(
+                    String.format( "Failed to read tracking record: %s. Reason: %s", id, e.getMessage() ), e );
+        }
+    }
+
     @ApiOperation(
             "Explicitly setup a new tracking record for the specified key, to prevent 404 if the record is never used." )
     @ApiResponses( { @ApiResponse( code = 201, message = "Tracking record was created",
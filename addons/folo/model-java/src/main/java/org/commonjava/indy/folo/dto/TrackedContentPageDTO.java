@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.dto;
+
+import io.swagger.annotations.ApiModelProperty;
+import org.commonjava.indy.folo.model.TrackingKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the entries of a tracking record. Pass {@link #getNextCursor()} back to retrieve the next page; it is
+ * null on the last page.
+ */
+public class TrackedContentPageDTO
+{
+    @ApiModelProperty( "Session key (specified by the user) to track this record." )
+    private TrackingKey key;
+
+    private List<TrackedContentEntryDTO> uploads = new ArrayList<>();
+
+    private List<TrackedContentEntryDTO> downloads = new ArrayList<>();
+
+    @ApiModelProperty( "Opaque, URL-safe cursor for the next page, or null if this is the last page." )
+    private String nextCursor;
+
+    public TrackedContentPageDTO()
+    {
+    }
+
+    public TrackedContentPageDTO( final TrackingKey key, final List<TrackedContentEntryDTO> uploads,
+                                  final List<TrackedContentEntryDTO> downloads, final String nextCursor )
+    {
+        this.key = key;
+        this.uploads = uploads;
+        this.downloads = downloads;
+        this.nextCursor = nextCursor;
+    }
+
+    public TrackingKey getKey()
+    {
+        return key;
+    }
+
+    public void setKey( final TrackingKey key )
+    {
+        this.key = key;
+    }
+
+    public List<TrackedContentEntryDTO> getUploads()
+    {
+        return uploads;
+    }
+
+    public void setUploads( final List<TrackedContentEntryDTO> uploads )
+    {
+        this.uploads = uploads;
+    }
+
+    public List<TrackedContentEntryDTO> getDownloads()
+    {
+        return downloads;
+    }
+
+    public void setDownloads( final List<TrackedContentEntryDTO> downloads )
+    {
+        this.downloads = downloads;
+    }
+
+    public String getNextCursor()
+    {
+        return nextCursor;
+    }
+
+    public void setNextCursor( final String nextCursor )
+    {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext()
+    {
+        return nextCursor != null;
+    }
+}
@@ -182,7 +182,7 @@ public class ProxyAcceptHandler
                         new ProxyResponseWriter( config, storeManager, contentController, proxyAuthenticator,
                                                  cacheProvider, mdcManager, creator, accepted,
                                                  metricsConfig, metricsManager, sliMetricSet, cacheProducer, start,
-                                                 proxyExecutor.getExecutor() );
+                                                 proxyExecutor.getExecutor(), proxyExecutor.getTunnelEngine() );
 
         logger.debug( "Setting writer: {}", writer );
         sink.getWriteSetter().set( writer );
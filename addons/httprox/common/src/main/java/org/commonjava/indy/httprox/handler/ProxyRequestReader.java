@@ -106,7 +106,7 @@ public final class ProxyRequestReader
             if ( sslTunnel != null )
             {
                 logger.debug( "Send to ssl tunnel, {}, bytes:\n\n {}\n", new String( bytes ), Hex.encodeHexString( bytes ) );
-                directTo( sslTunnel );
+                directTo( sslTunnel, sourceChannel );
                 return;
             }
 
@@ -176,11 +176,11 @@ public final class ProxyRequestReader
         this.sslTunnel = sslTunnel;
     }
 
-    private void directTo( ProxySSLTunnel sslTunnel ) throws IOException
+    private void directTo( ProxySSLTunnel sslTunnel, ConduitStreamSourceChannel sourceChannel ) throws IOException
     {
         byte[] bytes = bReq.toByteArray();
         logger.trace( "Write client data to ssl tunnel, size: {}", bytes.length );
-        sslTunnel.write( bytes );
+        sslTunnel.write( bytes, sourceChannel );
     }
 
     private int doRead( final ConduitStreamSourceChannel channel )
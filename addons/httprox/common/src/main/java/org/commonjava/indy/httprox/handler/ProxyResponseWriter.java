@@ -126,6 +126,8 @@ public final class ProxyResponseWriter
 
     private final WeftExecutorService tunnelAndMITMExecutor;
 
+    private final ProxyTunnelEngine tunnelEngine;
+
     private boolean summaryReported;
 
     private Optional<SpanAdapter> span;
@@ -139,7 +141,8 @@ public final class ProxyResponseWriter
                                 final StreamConnection accepted, final IndyMetricsConfig metricsConfig,
                                 final MetricsManager metricManager, final IndyGoldenSignalsMetricSet sliMetricSet,
                                 final CacheProducer cacheProducer,
-                                final long start, final WeftExecutorService executor )
+                                final long start, final WeftExecutorService executor,
+                                final ProxyTunnelEngine tunnelEngine )
     {
         this.config = config;
         this.contentController = contentController;
@@ -157,6 +160,7 @@ public final class ProxyResponseWriter
         this.cls = ClassUtils.getAbbreviatedName( getClass().getName(), 1 ); // e.g., foo.bar.ClassA -> f.b.ClassA
         this.proxyAuthCache = cacheProducer.getCache( HTTP_PROXY_AUTH_CACHE );
         this.tunnelAndMITMExecutor = executor;
+        this.tunnelEngine = tunnelEngine;
     }
 
     public void setProxyRequestReader( ProxyRequestReader proxyRequestReader )
@@ -363,8 +367,10 @@ public final class ProxyResponseWriter
                                         break;
                                     }
 
-                                    sslTunnel = new ProxySSLTunnel( sinkChannel, socketChannel, config );
-                                    tunnelAndMITMExecutor.submit( sslTunnel );
+                                    sslTunnel = new ProxySSLTunnel( sinkChannel, socketChannel, config,
+                                                                    tunnelEngine, metricManager, metricsConfig,
+                                                                    cls );
+                                    tunnelEngine.register( sslTunnel );
                                     proxyRequestReader.setProxySSLTunnel( sslTunnel ); // client input will be directed to target socket
 
                                     // When all is ready, send the 200 to client. Client send the SSL handshake to reader,
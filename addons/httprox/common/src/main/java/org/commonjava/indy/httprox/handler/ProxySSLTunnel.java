@@ -16,229 +16,439 @@
 package org.commonjava.indy.httprox.handler;
 
 import org.commonjava.indy.httprox.conf.HttproxConfig;
-import org.commonjava.indy.httprox.util.ChannelUtils;
+import org.commonjava.indy.httprox.util.DirectBufferPool;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.o11yphant.metrics.MetricsManager;
+import org.commonjava.o11yphant.metrics.api.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xnio.ChannelListeners;
 import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
-import static org.commonjava.indy.httprox.util.ChannelUtils.flush;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 
 /**
+ * Relays the bytes of a CONNECT tunnel between the client (an XNIO sink channel) and the target socket (normally the
+ * MITM server). Nothing blocks: the target side is driven by the shared {@link ProxyTunnelEngine} selector, and the
+ * client side uses the sink channel's write-readiness callbacks. While the client can't take more data, the tunnel
+ * stops reading from the target; once more than {@link #MAX_PENDING_TO_TARGET} client bytes wait for the target, it
+ * suspends reads on the client channel until they are written. A slow peer throttles the other one instead of
+ * piling up data.
+ *
  * Created by ruhan on 9/6/18.
  */
-public class ProxySSLTunnel implements Runnable
+public class ProxySSLTunnel
 {
-    private final Logger logger = LoggerFactory.getLogger( getClass() );
-
-    //private volatile Selector selector; // selecting READ events for target channel
+    static final int MAX_PENDING_TO_TARGET = 1024 * 1024;
 
-    //private static final long SELECTOR_TIMEOUT = 60 * 1000; // 60 seconds
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final ConduitStreamSinkChannel sinkChannel;
 
     private final SocketChannel socketChannel;
 
-    private volatile boolean closed;
-
     private final HttproxConfig config;
 
-    public ProxySSLTunnel( ConduitStreamSinkChannel sinkChannel, SocketChannel socketChannel, HttproxConfig config )
+    private final ProxyTunnelEngine engine;
+
+    private final DirectBufferPool bufferPool;
+
+    private final MetricsManager metricsManager;
+
+    private final IndyMetricsConfig metricsConfig;
+
+    private final String cls;
+
+    private final AtomicBoolean closed = new AtomicBoolean( false );
+
+    // client -> target bytes the target socket did not accept yet; guarded by 'this'
+    private final Deque<ByteBuffer> pendingToTarget = new ArrayDeque<>();
+
+    // bytes left in pendingToTarget; guarded by 'this'
+    private long pendingToTargetBytes;
+
+    // client channel whose reads are suspended until pendingToTarget drains, or null; guarded by 'this'
+    private ConduitStreamSourceChannel suspendedSource;
+
+    // target -> client bytes the sink channel did not accept yet. Whoever takes the buffer out owns it: the writer
+    // takes it for the duration of a write and puts it back if the sink is still full, close() takes it to release it.
+    private final AtomicReference<ByteBuffer> pendingToClient = new AtomicReference<>();
+
+    private volatile SelectionKey selectionKey;
+
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    private final Timer.Context tunnelTimer;
+
+    private Timer.Context relayTimer;
+
+    private final AtomicLong bytesToClient = new AtomicLong();
+
+    private final AtomicLong bytesToTarget = new AtomicLong();
+
+    public ProxySSLTunnel( final ConduitStreamSinkChannel sinkChannel, final SocketChannel socketChannel,
+                           final HttproxConfig config, final ProxyTunnelEngine engine,
+                           final MetricsManager metricsManager, final IndyMetricsConfig metricsConfig,
+                           final String cls )
     {
         this.sinkChannel = sinkChannel;
         this.socketChannel = socketChannel;
         this.config = config;
+        this.engine = engine;
+        this.bufferPool = engine.getBufferPool();
+        this.metricsManager = metricsManager;
+        this.metricsConfig = metricsConfig;
+        this.cls = cls;
+        this.tunnelTimer = startTimer( "tunnel" );
+
+        sinkChannel.getWriteSetter().set( c -> onClientWritable() );
     }
 
-    @Override
-    public void run()
+    SocketChannel getSocketChannel()
+    {
+        return socketChannel;
+    }
+
+    void setSelectionKey( final SelectionKey selectionKey )
+    {
+        this.selectionKey = selectionKey;
+    }
+
+    boolean isIdle()
     {
+        long timeout = TimeUnit.MINUTES.toMillis( config.getMITMSoTimeoutMinutes() );
+        return timeout > 0 && System.currentTimeMillis() - lastActivity > timeout;
+    }
+
+    /**
+     * Called on the selector thread when the target has data for the client.
+     */
+    void onTargetReadable()
+    {
+        ByteBuffer buf = bufferPool.acquire();
+        int read;
+        try
+        {
+            read = socketChannel.read( buf );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Read target channel breaks, {}", e.toString() );
+            bufferPool.release( buf );
+            close();
+            return;
+        }
+
+        if ( read < 0 )
+        {
+            bufferPool.release( buf );
+            finishClient();
+            return;
+        }
+
+        if ( read == 0 )
+        {
+            bufferPool.release( buf );
+            return;
+        }
+
+        lastActivity = System.currentTimeMillis();
+        relayTimer = startTimer( "tunnel.relay" );
+        buf.flip();
         try
         {
-            pipeTargetToSinkChannel( sinkChannel, socketChannel );
+            bytesToClient.addAndGet( sinkChannel.write( buf ) );
+            if ( buf.hasRemaining() )
+            {
+                // client is not keeping up; stop reading the target until the sink drains
+                changeTargetInterest( SelectionKey.OP_READ, false );
+                handBackToClient( buf );
+                sinkChannel.resumeWrites();
+                return;
+            }
+
+            sinkChannel.flush();
         }
-        catch ( Exception e )
+        catch ( IOException e )
         {
-            logger.error( "Pipe to sink channel failed", e );
+            logger.debug( "Write to sink channel breaks, {}", e.toString() );
+            bufferPool.release( buf );
+            close();
+            return;
         }
+
+        stopRelayTimer();
+        bufferPool.release( buf );
     }
 
-    private void pipeTargetToSinkChannel( ConduitStreamSinkChannel sinkChannel, SocketChannel targetChannel )
-                    throws IOException
+    /**
+     * Called on an XNIO I/O thread when the client sink can take more data.
+     */
+    private void onClientWritable()
     {
-        targetChannel.socket().setSoTimeout( (int) TimeUnit.MINUTES.toMillis( config.getMITMSoTimeoutMinutes() ) );
-        InputStream inStream = new BufferedInputStream( targetChannel.socket().getInputStream() );
-        ReadableByteChannel wrappedChannel = Channels.newChannel( inStream );
+        ByteBuffer buf = pendingToClient.getAndSet( null );
+        try
+        {
+            if ( buf != null )
+            {
+                bytesToClient.addAndGet( sinkChannel.write( buf ) );
+                if ( buf.hasRemaining() )
+                {
+                    handBackToClient( buf );
+                    return;
+                }
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate( DEFAULT_READ_BUF_SIZE );
+                ByteBuffer done = buf;
+                buf = null;
+                bufferPool.release( done );
+                stopRelayTimer();
+                lastActivity = System.currentTimeMillis();
+            }
 
-        int total = 0;
-        while ( true )
-        {
-            if ( closed )
+            if ( !sinkChannel.flush() )
             {
-                logger.debug( "Tunnel closed" );
-                break;
+                return;
             }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Write to sink channel breaks, {}", e.toString() );
+            bufferPool.release( buf );
+            close();
+            return;
+        }
+
+        // the sink is drained; target reads were paused while it was full (re-enabling them is harmless otherwise)
+        sinkChannel.suspendWrites();
+        if ( !closed.get() )
+        {
+            changeTargetInterest( SelectionKey.OP_READ, true );
+        }
+    }
 
-            int read = -1;
+    /**
+     * Called on the selector thread when the target can take the client data queued by {@link #write(byte[])}.
+     */
+    void onTargetWritable()
+    {
+        synchronized ( this )
+        {
             try
             {
-                read = wrappedChannel.read( byteBuffer );
+                while ( !pendingToTarget.isEmpty() )
+                {
+                    ByteBuffer buf = pendingToTarget.peek();
+                    int written = socketChannel.write( buf );
+                    bytesToTarget.addAndGet( written );
+                    pendingToTargetBytes -= written;
+                    if ( buf.hasRemaining() )
+                    {
+                        return;
+                    }
+                    pendingToTarget.poll();
+                }
             }
             catch ( IOException e )
             {
-                logger.debug( "Read target channel breaks, {}", e.toString() );
-                break;
+                logger.debug( "Write to target channel breaks, {}", e.toString() );
+                close();
+                return;
             }
 
-            if ( read <= 0 )
+            selectionKey.interestOps( selectionKey.interestOps() & ~SelectionKey.OP_WRITE );
+            if ( suspendedSource != null )
             {
-                logger.debug( "Read breaks, read: {}", read );
-                break;
+                logger.trace( "Target caught up, resuming client reads" );
+                suspendedSource.resumeReads();
+                suspendedSource = null;
             }
+        }
+    }
 
-            //limit is set to current position and position is set to zero
-            byteBuffer.flip();
+    /**
+     * Relay client data to the target. Whatever the target doesn't accept right away is queued and written when the
+     * target socket becomes writable, preserving order. When too much is queued, reads on the client source channel
+     * are suspended until the queue drains.
+     */
+    public void write( final byte[] bytes, final ConduitStreamSourceChannel source ) throws IOException
+    {
+        if ( closed.get() )
+        {
+            throw new IOException( "Tunnel is closed" );
+        }
 
-            //final byte[] bytes = new byte[byteBuffer.limit()];
-            //byteBuffer.get( bytes );
+        lastActivity = System.currentTimeMillis();
+        ByteBuffer buf = ByteBuffer.wrap( bytes );
+        synchronized ( this )
+        {
+            if ( pendingToTarget.isEmpty() )
+            {
+                bytesToTarget.addAndGet( socketChannel.write( buf ) );
+                if ( !buf.hasRemaining() )
+                {
+                    return;
+                }
+            }
 
-            logger.debug( "Write to sink channel, size: {}", byteBuffer.limit() );
-            ChannelUtils.write( sinkChannel, byteBuffer );
-            sinkChannel.flush();
-            byteBuffer.clear();
+            pendingToTarget.add( buf );
+            pendingToTargetBytes += buf.remaining();
+            if ( pendingToTargetBytes > MAX_PENDING_TO_TARGET && suspendedSource == null )
+            {
+                logger.trace( "{} bytes wait for the target, suspending client reads", pendingToTargetBytes );
+                source.suspendReads();
+                suspendedSource = source;
+            }
+        }
+
+        changeTargetInterest( SelectionKey.OP_WRITE, true );
+    }
 
-            total += read;
+    public void close()
+    {
+        if ( !closed.compareAndSet( false, true ) )
+        {
+            return;
         }
 
-        logger.debug( "Write to sink channel complete, transferred: {}", total );
+        engine.unregister( this );
+        engine.execute( () -> {
+            SelectionKey key = selectionKey;
+            if ( key != null )
+            {
+                key.cancel();
+            }
+        } );
 
-        flush( sinkChannel );
-        sinkChannel.shutdownWrites();
-        sinkChannel.close();
+        try
+        {
+            socketChannel.close();
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Close tunnel target channel failed", e );
+        }
+
+        releasePendingToClient();
 
-        closed = true;
+        if ( tunnelTimer != null )
+        {
+            tunnelTimer.stop();
+        }
 
+        updateHistogram( "tunnel.to_client.bytes", bytesToClient.get() );
+        updateHistogram( "tunnel.to_target.bytes", bytesToTarget.get() );
+        logger.debug( "Tunnel closed, to client: {} bytes, to target: {} bytes", bytesToClient, bytesToTarget );
     }
 
-/*
-    private void pipeTargetToSinkChannel( ConduitStreamSinkChannel sinkChannel, SocketChannel targetChannel )
-                    throws IOException
+    /**
+     * Park a partly written buffer until the client sink can take more. If the tunnel closed meanwhile, close() may
+     * already have looked for it, so take it back out and release it here; only one side gets it from the reference.
+     */
+    private void handBackToClient( final ByteBuffer buf )
     {
-        logger.trace( "Start target to sink channel pipe" );
-        selector = Selector.open();
+        pendingToClient.set( buf );
+        if ( closed.get() )
+        {
+            releasePendingToClient();
+        }
+    }
 
-        targetChannel.configureBlocking( false );
-        targetChannel.register( selector, SelectionKey.OP_READ );
+    private void releasePendingToClient()
+    {
+        ByteBuffer buf = pendingToClient.getAndSet( null );
+        if ( buf != null )
+        {
+            bufferPool.release( buf );
+        }
+    }
 
-        breakPipe:
-        while ( true )
+    /**
+     * Target closed its side; flush what the client has not taken yet and close the client connection.
+     */
+    private void finishClient()
+    {
+        logger.debug( "Target closed, finishing tunnel" );
+        changeTargetInterest( SelectionKey.OP_READ, false );
+        try
         {
-            if ( closed )
+            sinkChannel.shutdownWrites();
+            if ( sinkChannel.flush() )
             {
-                break;
+                sinkChannel.close();
             }
-
-            logger.trace( "Select on target channel" );
-            int readyChannels = selector.select( SELECTOR_TIMEOUT );
-
-            logger.trace( "Select returns, {} ready channels", readyChannels );
-            if ( readyChannels == 0 || !selector.isOpen() )
+            else
             {
-                logger.trace( "No ready channel or selector closed, break" );
-                break;
+                sinkChannel.getWriteSetter()
+                           .set( ChannelListeners.flushingChannelListener(
+                                   ChannelListeners.closingChannelListener(),
+                                   ChannelListeners.closingChannelExceptionHandler() ) );
+                sinkChannel.resumeWrites();
             }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Finishing sink channel failed, {}", e.toString() );
+        }
 
-            Set<SelectionKey> selectedKeys = selector.selectedKeys();
-            Iterator<SelectionKey> iterator = selectedKeys.iterator();
-            while ( iterator.hasNext() )
-            {
-                SelectionKey key = iterator.next();
-                if ( key.isReadable() )
-                {
-                    logger.trace( "Read from target channel" );
-                    byte[] bytes;
-                    try
-                    {
-                        bytes = doRead( (SocketChannel) key.channel() );
-                    }
-                    catch ( IOException e )
-                    {
-                        if ( e.getMessage().contains( "Connection reset by peer" ) )
-                        {
-                            logger.warn( e.getMessage() );
-                            break breakPipe;
-                        }
-                        else
-                        {
-                            throw e;
-                        }
-                    }
+        close();
+    }
 
-                    logger.trace( "Read done, write to sink channel, bytes: {}", bytes.length );
-                    if ( bytes.length > 0 && sinkChannel.isOpen() )
-                    {
-                        sinkChannel.write( ByteBuffer.wrap( bytes ) );
-                    }
-                    else
-                    {
-                        // read 0 or -1 means the other side have closed the socket
-                        logger.debug( "Peer closed socket" );
-                        break breakPipe;
-                    }
-                }
-                iterator.remove();
+    private void changeTargetInterest( final int op, final boolean enable )
+    {
+        engine.execute( () -> {
+            SelectionKey key = selectionKey;
+            if ( key != null && key.isValid() )
+            {
+                key.interestOps( enable ? key.interestOps() | op : key.interestOps() & ~op );
             }
-        }
+        } );
     }
 
-    private byte[] doRead( SocketChannel channel ) throws IOException
+    private Timer.Context startTimer( final String metric )
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-        ByteBuffer buf = ByteBuffer.allocate( DEFAULT_READ_BUF_SIZE );
-        int read = -1;
-        while ( ( read = channel.read( buf ) ) > 0 )
+        if ( metricsManager == null || metricsConfig == null )
         {
-            buf.flip();
-            final byte[] bbuf = new byte[buf.limit()];
-            buf.get( bbuf );
-            bos.write( bbuf );
+            return null;
         }
-        return bos.toByteArray();
-    }
-*/
 
-    public void write( byte[] bytes ) throws IOException
-    {
-        socketChannel.write( ByteBuffer.wrap( bytes ) );
+        return metricsManager.startTimer( name( metricsConfig.getNodePrefix(), cls, metric ) );
     }
 
-    public void close()
+    private void updateHistogram( final String metric, final long value )
     {
-        try
+        if ( metricsManager == null || metricsConfig == null )
         {
-            //selector.close(); // wake it up to complete the tunnel
-            socketChannel.close();
+            return;
         }
-        catch ( IOException e )
+
+        metricsManager.getHistogram( name( metricsConfig.getNodePrefix(), cls, metric ) ).update( value );
+    }
+
+    private void stopRelayTimer()
+    {
+        Timer.Context timer = relayTimer;
+        relayTimer = null;
+        if ( timer != null )
         {
-            logger.error( "Close tunnel selector failed", e );
+            timer.stop();
         }
     }
+
+    @Override
+    public String toString()
+    {
+        return "ProxySSLTunnel{target=" + socketChannel + '}';
+    }
 }
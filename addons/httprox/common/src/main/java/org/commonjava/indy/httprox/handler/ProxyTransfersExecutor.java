@@ -17,6 +17,7 @@ package org.commonjava.indy.httprox.handler;
 
 import static org.commonjava.cdi.util.weft.ExecutorConfig.BooleanLiteral.FALSE;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
@@ -35,6 +36,8 @@ public class ProxyTransfersExecutor {
     @ExecutorConfig( named = "mitm-transfers", threads = 0, priority = 5, loadSensitive = FALSE )
     private WeftExecutorService executor;
 
+    private ProxyTunnelEngine tunnelEngine;
+
     protected ProxyTransfersExecutor() 
     {
     }
@@ -48,4 +51,25 @@ public class ProxyTransfersExecutor {
     {
         return executor;
     }
+
+    /**
+     * Shared selector that relays the target side of all CONNECT tunnels.
+     */
+    public synchronized ProxyTunnelEngine getTunnelEngine()
+    {
+        if ( tunnelEngine == null )
+        {
+            tunnelEngine = new ProxyTunnelEngine();
+        }
+        return tunnelEngine;
+    }
+
+    @PreDestroy
+    public synchronized void stopTunnels()
+    {
+        if ( tunnelEngine != null )
+        {
+            tunnelEngine.stop();
+        }
+    }
 }
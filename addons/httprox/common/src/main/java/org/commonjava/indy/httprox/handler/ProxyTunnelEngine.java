@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.httprox.util.DirectBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
+
+/**
+ * Drives the target side of all {@link ProxySSLTunnel}s from a single selector thread, instead of one blocked worker
+ * thread per tunnel. The target sockets are non-blocking; reads are relayed to the client through pooled direct
+ * buffers, and a tunnel stops reading its target while the client is not accepting writes (and resumes when the
+ * client channel reports it is writable again).
+ * <p>
+ * Interest-set changes requested from other threads are queued and applied on the selector thread.
+ */
+public class ProxyTunnelEngine
+        implements Runnable
+{
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    private static final long IDLE_CHECK_MILLIS = TimeUnit.SECONDS.toMillis( 10 );
+
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final DirectBufferPool bufferPool = new DirectBufferPool( DEFAULT_READ_BUF_SIZE, MAX_POOLED_BUFFERS );
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final Set<ProxySSLTunnel> tunnels = ConcurrentHashMap.newKeySet();
+
+    private volatile Selector selector;
+
+    private volatile Thread selectorThread;
+
+    private volatile boolean stopped;
+
+    public DirectBufferPool getBufferPool()
+    {
+        return bufferPool;
+    }
+
+    /**
+     * Start relaying data from the tunnel's target socket to its client.
+     */
+    public void register( final ProxySSLTunnel tunnel )
+            throws IOException
+    {
+        start();
+
+        final SocketChannel target = tunnel.getSocketChannel();
+        target.configureBlocking( false );
+        tunnels.add( tunnel );
+
+        execute( () -> {
+            try
+            {
+                tunnel.setSelectionKey( target.register( selector, SelectionKey.OP_READ, tunnel ) );
+            }
+            catch ( ClosedChannelException e )
+            {
+                logger.debug( "Tunnel target closed before it was registered" );
+                tunnel.close();
+            }
+        } );
+    }
+
+    void unregister( final ProxySSLTunnel tunnel )
+    {
+        tunnels.remove( tunnel );
+    }
+
+    /**
+     * Run the task on the selector thread.
+     */
+    void execute( final Runnable task )
+    {
+        if ( Thread.currentThread() == selectorThread )
+        {
+            task.run();
+        }
+        else
+        {
+            tasks.offer( task );
+            Selector sel = selector;
+            if ( sel != null )
+            {
+                sel.wakeup();
+            }
+        }
+    }
+
+    public synchronized void stop()
+    {
+        stopped = true;
+        tunnels.forEach( ProxySSLTunnel::close );
+        if ( selector != null )
+        {
+            selector.wakeup();
+        }
+    }
+
+    private synchronized void start()
+            throws IOException
+    {
+        if ( selectorThread != null )
+        {
+            return;
+        }
+
+        stopped = false;
+        selector = Selector.open();
+        selectorThread = new Thread( this, "httprox-tunnel-selector" );
+        selectorThread.setDaemon( true );
+        selectorThread.start();
+    }
+
+    @Override
+    public void run()
+    {
+        long lastIdleCheck = System.currentTimeMillis();
+        try
+        {
+            while ( !stopped )
+            {
+                selector.select( SELECT_TIMEOUT_MILLIS );
+
+                Runnable task;
+                while ( ( task = tasks.poll() ) != null )
+                {
+                    runQuietly( task );
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while ( keys.hasNext() )
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle( key );
+                }
+
+                long now = System.currentTimeMillis();
+                if ( now - lastIdleCheck > IDLE_CHECK_MILLIS )
+                {
+                    lastIdleCheck = now;
+                    closeIdleTunnels();
+                }
+            }
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            logger.error( "Tunnel selector failed. Closing all tunnels.", e );
+            tunnels.forEach( ProxySSLTunnel::close );
+        }
+        finally
+        {
+            try
+            {
+                selector.close();
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Failed to close tunnel selector", e );
+            }
+
+            synchronized ( this )
+            {
+                selectorThread = null;
+            }
+        }
+    }
+
+    private void handle( final SelectionKey key )
+    {
+        ProxySSLTunnel tunnel = (ProxySSLTunnel) key.attachment();
+        try
+        {
+            if ( key.isValid() && key.isReadable() )
+            {
+                tunnel.onTargetReadable();
+            }
+
+            if ( key.isValid() && key.isWritable() )
+            {
+                tunnel.onTargetWritable();
+            }
+        }
+        catch ( CancelledKeyException e )
+        {
+            logger.trace( "Tunnel key cancelled" );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.error( "Tunnel relay failed. Closing tunnel.", e );
+            tunnel.close();
+        }
+    }
+
+    private void closeIdleTunnels()
+    {
+        for ( ProxySSLTunnel tunnel : tunnels )
+        {
+            if ( tunnel.isIdle() )
+            {
+                logger.debug( "Closing idle tunnel: {}", tunnel );
+                tunnel.close();
+            }
+        }
+    }
+
+    private void runQuietly( final Runnable task )
+    {
+        try
+        {
+            task.run();
+        }
+        catch ( CancelledKeyException e )
+        {
+            logger.trace( "Tunnel key cancelled" );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.error( "Tunnel selector task failed", e );
+        }
+    }
+}
@@ -17,11 +17,16 @@ package org.commonjava.indy.httprox.util;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xnio.XnioIoThread;
 import org.xnio.channels.StreamSinkChannel;
+import org.xnio.channels.SuspendableWriteChannel;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ruhan on 11/5/18.
@@ -49,7 +54,7 @@ public class ChannelUtils
             }
             if ( !flushed )
             {
-                wait( 100 );
+                wait( channel, 100 );
             }
         }
     }
@@ -63,15 +68,53 @@ public class ChannelUtils
             written += channel.write( bbuf );
             if ( written < size )
             {
-                wait( 100 );
+                wait( channel, 100 );
             }
         }
         while ( written < size );
     }
 
-    private static void wait( int milliseconds )
+    /**
+     * Send the whole file to the channel with {@link StreamSinkChannel#transferFrom(FileChannel, long, long)}, which
+     * lets the kernel move the bytes without copying them through heap buffers. Nothing sent means either the channel
+     * can't take more yet, or the file ended early; the latter fails rather than waiting for bytes that never come.
+     */
+    public static long transfer( StreamSinkChannel channel, FileChannel file ) throws IOException
+    {
+        long size = file.size();
+        long position = 0;
+        while ( position < size )
+        {
+            long sent = channel.transferFrom( file, position, size - position );
+            if ( sent > 0 )
+            {
+                position += sent;
+            }
+            else if ( file.size() <= position )
+            {
+                throw new EOFException( "File ended after " + position + " of " + size + " bytes" );
+            }
+            else
+            {
+                wait( channel, 100 );
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Wait until the channel reports it is writable (or the timeout passes), rather than sleeping blindly. Blocking
+     * waits are not allowed on an XNIO I/O thread, so those (and plain channels) still fall back to sleeping.
+     */
+    private static void wait( WritableByteChannel channel, int milliseconds ) throws IOException
     {
         logger.debug( "Waiting for channel to flush..." );
+        if ( channel instanceof SuspendableWriteChannel && !( Thread.currentThread() instanceof XnioIoThread ) )
+        {
+            ( (SuspendableWriteChannel) channel ).awaitWritable( milliseconds, TimeUnit.MILLISECONDS );
+            return;
+        }
+
         try
         {
             Thread.sleep( milliseconds );
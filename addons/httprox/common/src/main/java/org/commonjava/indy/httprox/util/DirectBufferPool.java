@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small pool of fixed-size direct buffers, so relaying data between sockets neither allocates per read nor copies
+ * between heap and native memory. At most maxPooled buffers are kept; any extra buffers released are left to the
+ * garbage collector.
+ */
+public class DirectBufferPool
+{
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private final int bufferSize;
+
+    private final int maxPooled;
+
+    public DirectBufferPool( final int bufferSize, final int maxPooled )
+    {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buf = buffers.poll();
+        if ( buf == null )
+        {
+            return ByteBuffer.allocateDirect( bufferSize );
+        }
+
+        pooled.decrementAndGet();
+        return buf;
+    }
+
+    public void release( final ByteBuffer buf )
+    {
+        if ( buf == null || !buf.isDirect() || buf.capacity() != bufferSize )
+        {
+            return;
+        }
+
+        if ( pooled.incrementAndGet() > maxPooled )
+        {
+            pooled.decrementAndGet();
+            return;
+        }
+
+        buf.clear();
+        buffers.offer( buf );
+    }
+}
@@ -24,6 +24,7 @@ import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.util.HttpUtils;
 import org.commonjava.indy.util.ApplicationHeader;
 import org.commonjava.indy.util.ApplicationStatus;
+import org.commonjava.indy.util.ObservingInputStream;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
@@ -32,17 +33,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xnio.channels.StreamSinkChannel;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static org.commonjava.indy.util.ContentUtils.forEachObserver;
+import static org.commonjava.indy.util.ContentUtils.getLocalFile;
 import static org.commonjava.indy.util.RequestContextHelper.HTTP_STATUS;
 import static org.commonjava.indy.util.RequestContextHelper.setContext;
 import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
 import static org.commonjava.indy.httprox.util.ChannelUtils.flush;
+import static org.commonjava.indy.httprox.util.ChannelUtils.transfer;
 import static org.commonjava.indy.httprox.util.ChannelUtils.write;
 
 /**
@@ -212,18 +219,21 @@ public class HttpConduitWrapper
             {
                 sinkChannel.write( ByteBuffer.wrap( "\r\n".getBytes() ) );
 
-                int capacity = DEFAULT_READ_BUF_SIZE;
-                ByteBuffer bbuf = ByteBuffer.allocate( capacity );
-                byte[] buf = new byte[capacity];
-                int read = -1;
-                logger.trace( "Read transfer..." );
-                while ( ( read = in.read( buf ) ) > -1 )
+                File localFile = getLocalFile( txfr, eventMetadata );
+                if ( localFile != null && localFile.length() == bytes )
                 {
-                    logger.trace( "Read transfer and write to channel, size: {}", read );
-                    bbuf.clear();
-                    bbuf.put( buf, 0, read );
-                    bbuf.flip();
-                    write( sinkChannel, bbuf );
+                    // the stream is still held open (above) so the content stays locked while we send the file
+                    try (FileChannel channel = FileChannel.open( localFile.toPath(), StandardOpenOption.READ ))
+                    {
+                        forEachObserver( in, ObservingInputStream::transferStarted );
+                        long sent = transfer( sinkChannel, channel );
+                        forEachObserver( in, o -> o.transferred( sent ) );
+                        logger.trace( "Transferred {} bytes from local file: {}", sent, localFile );
+                    }
+                }
+                else
+                {
+                    writeBody( in );
                 }
             }
         }
@@ -235,6 +245,26 @@ public class HttpConduitWrapper
         logger.debug( "Write transfer DONE." );
     }
 
+    private void writeBody( final InputStream in )
+            throws IOException
+    {
+        Logger logger = LoggerFactory.getLogger( getClass() );
+
+        int capacity = DEFAULT_READ_BUF_SIZE;
+        ByteBuffer bbuf = ByteBuffer.allocate( capacity );
+        byte[] buf = new byte[capacity];
+        int read = -1;
+        logger.trace( "Read transfer..." );
+        while ( ( read = in.read( buf ) ) > -1 )
+        {
+            logger.trace( "Read transfer and write to channel, size: {}", read );
+            bbuf.clear();
+            bbuf.put( buf, 0, read );
+            bbuf.flip();
+            write( sinkChannel, bbuf );
+        }
+    }
+
     @Override
     public boolean isOpen()
     {
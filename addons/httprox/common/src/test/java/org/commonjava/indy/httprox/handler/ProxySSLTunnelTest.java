@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.util.DirectBufferPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xnio.ChannelListeners;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+import org.xnio.conduits.StreamSinkConduit;
+import org.xnio.conduits.StreamSourceConduit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ProxySSLTunnelTest
+{
+    private static final int CHUNK = 64 * 1024;
+
+    private ServerSocketChannel server;
+
+    private SocketChannel target;
+
+    private SocketChannel peer;
+
+    private ProxyTunnelEngine engine;
+
+    private ProxySSLTunnel tunnel;
+
+    private final List<String> sourceCalls = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        server = ServerSocketChannel.open();
+        server.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+        target = SocketChannel.open( server.getLocalAddress() );
+        peer = server.accept();
+
+        engine = new ProxyTunnelEngine();
+        tunnel = new ProxySSLTunnel( new ConduitStreamSinkChannel( null, stub( StreamSinkConduit.class, null ) ),
+                                     target, new HttproxConfig(), engine, null, null, "test" );
+        engine.register( tunnel );
+    }
+
+    @After
+    public void teardown()
+            throws Exception
+    {
+        engine.stop();
+        peer.close();
+        server.close();
+    }
+
+    @Test
+    public void slowTargetSuspendsClientReadsUntilDrained()
+            throws Exception
+    {
+        ConduitStreamSourceChannel source =
+                new ConduitStreamSourceChannel( null, stub( StreamSourceConduit.class, sourceCalls ) );
+
+        // the peer reads nothing yet, so once the socket buffers fill up the tunnel has to queue
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        int chunks = 0;
+        while ( !sourceCalls.contains( "suspendReads" ) )
+        {
+            assertTrue( "Client reads never suspended", chunks < 1024 );
+            byte[] bytes = new byte[CHUNK];
+            Arrays.fill( bytes, (byte) chunks++ );
+            tunnel.write( bytes, source );
+            sent.write( bytes );
+        }
+
+        assertThat( sourceCalls, equalTo( Arrays.asList( "suspendReads" ) ) );
+
+        // a slow sink: drain the peer a little at a time
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        try (InputStream in = peer.socket().getInputStream())
+        {
+            while ( received.size() < sent.size() )
+            {
+                int read = in.read( buf );
+                assertTrue( "Target connection closed early", read > 0 );
+                received.write( buf, 0, read );
+            }
+        }
+
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 5 );
+        while ( sourceCalls.size() < 2 && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+
+        assertThat( sourceCalls, equalTo( Arrays.asList( "suspendReads", "resumeReads" ) ) );
+        assertTrue( "Bytes reached the target out of order",
+                    Arrays.equals( received.toByteArray(), sent.toByteArray() ) );
+    }
+
+    @Test
+    public void fastTargetNeverSuspendsClientReads()
+            throws Exception
+    {
+        ConduitStreamSourceChannel source =
+                new ConduitStreamSourceChannel( null, stub( StreamSourceConduit.class, sourceCalls ) );
+
+        tunnel.write( new byte[CHUNK], source );
+
+        assertThat( sourceCalls.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void closeWhileClientIsSlowReleasesTheBufferOnce()
+            throws Exception
+    {
+        // a client that takes one byte and then nothing more
+        List<String> sinkCalls = new CopyOnWriteArrayList<>();
+        StreamSinkConduit conduit = stub( StreamSinkConduit.class, sinkCalls, ( m, args ) -> {
+            if ( "write".equals( m.getName() ) && args[0] instanceof ByteBuffer && sinkCalls.isEmpty() )
+            {
+                ByteBuffer src = (ByteBuffer) args[0];
+                src.position( src.position() + 1 );
+                return 1;
+            }
+            return null;
+        } );
+
+        ConduitStreamSinkChannel sink = new ConduitStreamSinkChannel( null, conduit );
+        SocketChannel slowTarget = SocketChannel.open( server.getLocalAddress() );
+        ProxySSLTunnel slowTunnel =
+                new ProxySSLTunnel( sink, slowTarget, new HttproxConfig(), engine, null, null, "test" );
+        engine.register( slowTunnel );
+
+        try (SocketChannel slowPeer = server.accept())
+        {
+            slowPeer.write( ByteBuffer.wrap( new byte[1024] ) );
+        }
+
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 5 );
+        while ( !sinkCalls.contains( "resumeWrites" ) && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+        assertTrue( "Target data never parked for the client", sinkCalls.contains( "resumeWrites" ) );
+
+        slowTunnel.close();
+        ChannelListeners.invokeChannelListener( sink, sink.getWriteListener() );
+
+        // a buffer released twice would be handed out twice
+        DirectBufferPool pool = engine.getBufferPool();
+        Set<ByteBuffer> acquired = Collections.newSetFromMap( new IdentityHashMap<>() );
+        for ( int i = 0; i < 8; i++ )
+        {
+            assertTrue( "Pooled buffer handed out twice", acquired.add( pool.acquire() ) );
+        }
+    }
+
+    private static <T> T stub( final Class<T> type, final List<String> calls )
+    {
+        return stub( type, calls, ( m, args ) -> null );
+    }
+
+    /**
+     * Conduit that does nothing (unless the answer says otherwise), recording the names of the suspend/resume calls
+     * it gets.
+     */
+    private static <T> T stub( final Class<T> type, final List<String> calls,
+                               final BiFunction<Method, Object[], Object> answer )
+    {
+        return type.cast( Proxy.newProxyInstance( type.getClassLoader(), new Class<?>[] { type }, ( p, m, args ) -> {
+            Object answered = answer.apply( m, args );
+            if ( answered != null )
+            {
+                return answered;
+            }
+
+            if ( calls != null && m.getName().matches( "(suspend|resume)(Reads|Writes)" ) )
+            {
+                calls.add( m.getName() );
+            }
+
+            Class<?> ret = m.getReturnType();
+            if ( ret == boolean.class )
+            {
+                return false;
+            }
+            else if ( ret == int.class )
+            {
+                return 0;
+            }
+            else if ( ret == long.class )
+            {
+                return 0L;
+            }
+            return null;
+        } ) );
+    }
+}
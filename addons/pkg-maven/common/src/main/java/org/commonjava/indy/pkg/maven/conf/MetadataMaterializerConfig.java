@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.conf;
+
+import org.commonjava.indy.conf.IndyConfigInfo;
+import org.commonjava.propulsor.config.annotation.ConfigName;
+import org.commonjava.propulsor.config.annotation.SectionName;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.InputStream;
+
+/**
+ * Configures the background materialization of merged maven-metadata.xml files for the most requested paths of each
+ * group. See {@link org.commonjava.indy.pkg.maven.content.MetadataMaterializer}.
+ */
+@SectionName( MetadataMaterializerConfig.SECTION )
+@ApplicationScoped
+public class MetadataMaterializerConfig
+        implements IndyConfigInfo
+{
+    public static final String SECTION = "metadata-materializer";
+
+    public static final String ENABLED_PARAM = "enabled";
+
+    public static final String HOT_PATHS_PARAM = "hot.paths";
+
+    public static final String MIN_REQUESTS_PARAM = "min.requests";
+
+    public static final String DELAY_MILLIS_PARAM = "delay.millis";
+
+    public static final boolean DEFAULT_ENABLED = false;
+
+    public static final int DEFAULT_HOT_PATHS = 1000;
+
+    public static final int DEFAULT_MIN_REQUESTS = 5;
+
+    public static final long DEFAULT_DELAY_MILLIS = 500;
+
+    private Boolean enabled;
+
+    private Integer hotPaths;
+
+    private Integer minRequests;
+
+    private Long delayMillis;
+
+    public MetadataMaterializerConfig()
+    {
+    }
+
+    public MetadataMaterializerConfig( final boolean enabled, final int hotPaths, final int minRequests,
+                                       final long delayMillis )
+    {
+        this.enabled = enabled;
+        this.hotPaths = hotPaths;
+        this.minRequests = minRequests;
+        this.delayMillis = delayMillis;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled == null ? DEFAULT_ENABLED : enabled;
+    }
+
+    @ConfigName( ENABLED_PARAM )
+    public void setEnabled( final boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Maximum number of group metadata paths tracked as candidates for materialization.
+     */
+    public int getHotPaths()
+    {
+        return hotPaths == null ? DEFAULT_HOT_PATHS : hotPaths;
+    }
+
+    @ConfigName( HOT_PATHS_PARAM )
+    public void setHotPaths( final int hotPaths )
+    {
+        this.hotPaths = hotPaths;
+    }
+
+    /**
+     * Number of requests a group metadata path needs before it is re-merged in the background on member changes.
+     */
+    public int getMinRequests()
+    {
+        return minRequests == null ? DEFAULT_MIN_REQUESTS : minRequests;
+    }
+
+    @ConfigName( MIN_REQUESTS_PARAM )
+    public void setMinRequests( final int minRequests )
+    {
+        this.minRequests = minRequests;
+    }
+
+    /**
+     * How long to wait after a member change before re-merging, so a burst of changes results in a single merge.
+     */
+    public long getDelayMillis()
+    {
+        return delayMillis == null ? DEFAULT_DELAY_MILLIS : delayMillis;
+    }
+
+    @ConfigName( DELAY_MILLIS_PARAM )
+    public void setDelayMillis( final long delayMillis )
+    {
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public String getDefaultConfigFileName()
+    {
+        return "conf.d/metadata-materializer.conf";
+    }
+
+    @Override
+    public InputStream getDefaultConfig()
+    {
+        return Thread.currentThread()
+                     .getContextClassLoader()
+                     .getResourceAsStream( "default-metadata-materializer.conf" );
+    }
+}
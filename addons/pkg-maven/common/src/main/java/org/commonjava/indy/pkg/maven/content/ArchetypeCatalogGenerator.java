@@ -36,12 +36,15 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_GENERIC_HTTP;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
 import static org.commonjava.maven.galley.util.PathUtils.parentPath;
 
@@ -49,6 +52,9 @@ public class ArchetypeCatalogGenerator
         extends AbstractMergedContentGenerator
 {
 
+    private static final Set<String> HANDLED_PACKAGE_TYPES =
+            Collections.unmodifiableSet( new HashSet<>( Arrays.asList( PKG_TYPE_MAVEN, PKG_TYPE_GENERIC_HTTP ) ) );
+
     private static final Set<String> HANDLED_FILENAMES = Collections.unmodifiableSet( new HashSet<String>()
     {
 
@@ -78,6 +84,18 @@ public class ArchetypeCatalogGenerator
         this.helper = mergeHelper;
     }
 
+    @Override
+    public Set<String> getHandledPackageTypes()
+    {
+        return HANDLED_PACKAGE_TYPES;
+    }
+
+    @Override
+    public Set<String> getHandledPathSuffixes()
+    {
+        return HANDLED_FILENAMES;
+    }
+
     @Override
     public boolean canProcess( final String path )
     {
@@ -0,0 +1,368 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.atlas.maven.ident.util.ArtifactPathInfo;
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.LOCAL_SNAPSHOT_VERSION_PART;
+
+/**
+ * What {@link MavenMetadataGenerator} builds the maven-metadata.xml of hosted repositories from, so it doesn't have to
+ * walk their directories: per artifact (GA) directory, its versions and the .pom files in each; per snapshot version
+ * directory, its build list (the artifact files in it).
+ * <p>
+ * A directory is only known once it has been scanned in full ({@link #startScan}); from then on the files stored and
+ * deleted through this node update it in place. A scan that overlaps a change to its directory isn't kept, since it
+ * may have missed the change.
+ * <p>
+ * The index is local to each node, and never sees the files stored or deleted through other nodes (or behind Indy's
+ * back). So a directory is scanned again once it is older than {@link #MAX_AGE_MILLIS}, which bounds how long a
+ * version deleted elsewhere can still be listed; a store rescan drops what is known of the store right away, see
+ * {@link MavenMetadataGenerator#repairVersionMetadata}. The least recently used directories are evicted beyond
+ * {@link #MAX_DIRECTORIES}.
+ */
+final class HostedVersionIndex
+{
+    static final int MAX_DIRECTORIES = 20000;
+
+    static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+
+    private final long maxAgeMillis;
+
+    // artifact directory -> version -> paths of its .pom files
+    private final Map<Directory, Known<Map<String, Set<String>>>> versions = lru();
+
+    // snapshot version directory -> paths of its artifact files
+    private final Map<Directory, Known<Set<String>>> builds = lru();
+
+    private final List<Scan> scans = new ArrayList<>();
+
+    HostedVersionIndex()
+    {
+        this( MAX_AGE_MILLIS );
+    }
+
+    HostedVersionIndex( final long maxAgeMillis )
+    {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Return the versions of the artifact directory that hold a valid .pom, each with the paths of its .pom files, or
+     * null if the directory isn't known (any more) and has to be scanned.
+     */
+    synchronized Map<String, Set<String>> getVersions( final StoreKey key, final String artifactDir )
+    {
+        Known<Map<String, Set<String>>> known = get( versions, new Directory( key, artifactDir ) );
+        if ( known == null )
+        {
+            return null;
+        }
+
+        Map<String, Set<String>> result = new HashMap<>();
+        known.value.forEach( ( version, poms ) -> result.put( version, new HashSet<>( poms ) ) );
+        return result;
+    }
+
+    /**
+     * Return the paths of the artifact files in the snapshot version directory, or null if the directory isn't known
+     * (any more) and has to be scanned.
+     */
+    synchronized Set<String> getBuilds( final StoreKey key, final String snapshotDir )
+    {
+        Known<Set<String>> known = get( builds, new Directory( key, snapshotDir ) );
+        return known == null ? null : new HashSet<>( known.value );
+    }
+
+    /**
+     * Start a full scan of the directory. Pass the result to {@link #versionsScanned} or {@link #buildsScanned}, and
+     * always end with {@link #endScan}.
+     */
+    synchronized Scan startScan( final StoreKey key, final String dir )
+    {
+        Scan scan = new Scan( new Directory( key, dir ) );
+        scans.add( scan );
+        return scan;
+    }
+
+    /**
+     * @param found versions of the artifact directory holding a valid .pom, each with the paths of its .pom files.
+     */
+    synchronized void versionsScanned( final Scan scan, final Map<String, Set<String>> found )
+    {
+        if ( scans.remove( scan ) && !scan.changed )
+        {
+            Map<String, Set<String>> value = new HashMap<>();
+            found.forEach( ( version, poms ) -> {
+                Set<String> paths = new HashSet<>();
+                poms.forEach( pom -> paths.add( trim( pom ) ) );
+                if ( !paths.isEmpty() )
+                {
+                    value.put( version, paths );
+                }
+            } );
+            versions.put( scan.dir, new Known<>( value ) );
+        }
+    }
+
+    /**
+     * @param found paths of the artifact files in the snapshot version directory.
+     */
+    synchronized void buildsScanned( final Scan scan, final Set<String> found )
+    {
+        if ( scans.remove( scan ) && !scan.changed )
+        {
+            Set<String> value = new HashSet<>();
+            found.forEach( path -> value.add( trim( path ) ) );
+            builds.put( scan.dir, new Known<>( value ) );
+        }
+    }
+
+    synchronized void endScan( final Scan scan )
+    {
+        scans.remove( scan );
+    }
+
+    /**
+     * A file was stored: a .pom adds its version to the artifact directory, and an artifact file in a snapshot version
+     * directory adds a build.
+     */
+    synchronized void fileStored( final StoreKey key, final String path )
+    {
+        String file = trim( path );
+        changed( key, file );
+
+        if ( ArtifactPathInfo.parse( file ) == null )
+        {
+            return;
+        }
+
+        String versionDir = parentOf( file );
+        if ( file.endsWith( ".pom" ) )
+        {
+            Known<Map<String, Set<String>>> known = versions.get( new Directory( key, parentOf( versionDir ) ) );
+            if ( known != null )
+            {
+                known.value.computeIfAbsent( nameOf( versionDir ), v -> new HashSet<>() ).add( file );
+            }
+        }
+
+        if ( versionDir.endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
+        {
+            Known<Set<String>> known = builds.get( new Directory( key, versionDir ) );
+            if ( known != null )
+            {
+                known.value.add( file );
+            }
+        }
+    }
+
+    /**
+     * A file or directory was deleted: forget everything known at or below it, the version it was (if it was a
+     * version directory), and the .pom or build it was (if it was a file in a version directory). A version is gone
+     * once its last .pom is.
+     */
+    synchronized void pathRemoved( final StoreKey key, final String path )
+    {
+        String removed = trim( path );
+        changed( key, removed );
+        clear( key, removed );
+        if ( removed.isEmpty() )
+        {
+            return;
+        }
+
+        String parent = parentOf( removed );
+        Known<Map<String, Set<String>>> artifact = versions.get( new Directory( key, parent ) );
+        if ( artifact != null )
+        {
+            artifact.value.remove( nameOf( removed ) );
+        }
+
+        artifact = versions.get( new Directory( key, parentOf( parent ) ) );
+        if ( artifact != null )
+        {
+            Set<String> poms = artifact.value.get( nameOf( parent ) );
+            if ( poms != null && poms.remove( removed ) && poms.isEmpty() )
+            {
+                artifact.value.remove( nameOf( parent ) );
+            }
+        }
+
+        Known<Set<String>> snapshot = builds.get( new Directory( key, parent ) );
+        if ( snapshot != null )
+        {
+            snapshot.value.remove( removed );
+        }
+    }
+
+    /**
+     * Forget every directory known at or below the given path of the store (all of them for an empty path), so they
+     * are scanned again.
+     */
+    synchronized void clear( final StoreKey key, final String path )
+    {
+        String dir = trim( path );
+        versions.keySet().removeIf( d -> d.key.equals( key ) && d.isAtOrBelow( dir ) );
+        builds.keySet().removeIf( d -> d.key.equals( key ) && d.isAtOrBelow( dir ) );
+    }
+
+    private void changed( final StoreKey key, final String path )
+    {
+        for ( Scan scan : scans )
+        {
+            Directory dir = scan.dir;
+            if ( dir.key.equals( key ) && ( dir.isAtOrBelow( path ) || new Directory( key, path ).isAtOrBelow(
+                    dir.dir ) ) )
+            {
+                scan.changed = true;
+            }
+        }
+    }
+
+    private <V> Known<V> get( final Map<Directory, Known<V>> directories, final Directory dir )
+    {
+        Known<V> known = directories.get( dir );
+        if ( known != null && System.currentTimeMillis() - known.scanned > maxAgeMillis )
+        {
+            directories.remove( dir );
+            return null;
+        }
+        return known;
+    }
+
+    /**
+     * Strip the leading and trailing slashes of the path.
+     */
+    private static String trim( final String path )
+    {
+        String result = path;
+        while ( result.startsWith( "/" ) )
+        {
+            result = result.substring( 1 );
+        }
+        while ( result.endsWith( "/" ) )
+        {
+            result = result.substring( 0, result.length() - 1 );
+        }
+        return result;
+    }
+
+    /**
+     * The parent of a trimmed path, or the empty string for a top-level one.
+     */
+    private static String parentOf( final String dir )
+    {
+        int idx = dir.lastIndexOf( '/' );
+        return idx < 0 ? "" : dir.substring( 0, idx );
+    }
+
+    /**
+     * The last segment of a trimmed path.
+     */
+    private static String nameOf( final String dir )
+    {
+        return dir.substring( dir.lastIndexOf( '/' ) + 1 );
+    }
+
+    private static <V> Map<Directory, V> lru()
+    {
+        return new LinkedHashMap<Directory, V>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<Directory, V> eldest )
+            {
+                return size() > MAX_DIRECTORIES;
+            }
+        };
+    }
+
+    static final class Scan
+    {
+        private final Directory dir;
+
+        private boolean changed;
+
+        private Scan( final Directory dir )
+        {
+            this.dir = dir;
+        }
+    }
+
+    private static final class Known<V>
+    {
+        private final V value;
+
+        private final long scanned = System.currentTimeMillis();
+
+        private Known( final V value )
+        {
+            this.value = value;
+        }
+    }
+
+    private static final class Directory
+    {
+        private final StoreKey key;
+
+        private final String dir;
+
+        private Directory( final StoreKey key, final String dir )
+        {
+            this.key = key;
+            this.dir = trim( dir );
+        }
+
+        private boolean isAtOrBelow( final String path )
+        {
+            return path.isEmpty() || dir.equals( path ) || dir.startsWith( path + "/" );
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            Directory that = (Directory) o;
+            return Objects.equals( key, that.key ) && Objects.equals( dir, that.dir );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( key, dir );
+        }
+    }
+}
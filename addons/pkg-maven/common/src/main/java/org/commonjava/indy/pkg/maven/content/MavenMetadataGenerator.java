@@ -15,7 +15,6 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.Plugin;
@@ -32,7 +31,6 @@ import org.commonjava.atlas.maven.ident.version.SingleVersion;
 import org.commonjava.atlas.maven.ident.version.part.SnapshotPart;
 import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
 import org.commonjava.cdi.util.weft.ExecutorConfig;
-import org.commonjava.cdi.util.weft.Locker;
 import org.commonjava.cdi.util.weft.WeftExecutorService;
 import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
@@ -47,6 +45,7 @@ import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.pkg.maven.content.group.MavenMetadataAccumulator;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataProvider;
 import org.commonjava.indy.util.LocationUtils;
@@ -66,14 +65,13 @@ import org.w3c.dom.Element;
 import javax.annotation.PostConstruct;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringReader;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -95,6 +93,9 @@ import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.getCurrentTime
 import static org.commonjava.indy.core.content.group.GroupMergeHelper.GROUP_METADATA_EXISTS;
 import static org.commonjava.indy.core.content.group.GroupMergeHelper.GROUP_METADATA_GENERATED;
 import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_GENERIC_HTTP;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.commonjava.indy.pkg.maven.content.MetadataMaterializer.MATERIALIZING;
 import static org.commonjava.maven.galley.io.SpecialPathConstants.HTTP_METADATA_EXT;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
 import static org.commonjava.maven.galley.util.PathUtils.parentPath;
@@ -133,6 +134,9 @@ public class MavenMetadataGenerator
     @Inject
     private MetadataCacheManager cacheManager;
 
+    private static final Set<String> HANDLED_PACKAGE_TYPES =
+            Collections.unmodifiableSet( new HashSet<>( Arrays.asList( PKG_TYPE_MAVEN, PKG_TYPE_GENERIC_HTTP ) ) );
+
     private static final Set<String> HANDLED_FILENAMES = Collections.unmodifiableSet( new HashSet<String>()
     {
 
@@ -166,8 +170,9 @@ public class MavenMetadataGenerator
     @ExecutorConfig( named="maven-metadata-generator", threads=50, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE, maxLoadFactor = 10000 )
     private WeftExecutorService mavenMDGeneratorService;
 
-    // don't need to inject since it's only used internally
-    private final Locker<String> mergerLocks = new Locker<>();
+    // merge locks, hosted version index and request counts, shared by all generator instances
+    @Inject
+    private MavenMetadataState metadataState;
 
     private static final int THREAD_WAITING_TIME_SECONDS = 300;
 
@@ -186,6 +191,7 @@ public class MavenMetadataGenerator
         this.typeMapper = typeMapper;
         this.merger = merger;
         this.mavenMDGeneratorService = mavenMDGeneratorService;
+        this.metadataState = new MavenMetadataState( null );
         start();
     }
 
@@ -225,39 +231,41 @@ public class MavenMetadataGenerator
         // TODO: Generation of plugin metadata files (groupId-level) is harder, and requires cracking open the jar file
         // This is because that's the only place the plugin prefix can be reliably retrieved from.
 
-        // regardless, we will need this first level of listings. What we do with it will depend on the logic below...
         final String parentPath = Paths.get( path )
                                        .getParent()
                                        .toString();
 
-        List<StoreResource> firstLevel;
-        try
-        {
-            firstLevel = fileManager.listRaw( store, parentPath );
-        }
-        catch ( final IndyWorkflowException e )
-        {
-            logger.error( String.format( "SKIP: Failed to generate maven-metadata.xml from listing of directory contents for: %s under path: %s",
-                                         store, parentPath ), e );
-            return null;
-        }
-
         String toGenPath = path;
         if ( !path.endsWith( MavenMetadataMerger.METADATA_NAME ) )
         {
             toGenPath = normalize( normalize( parentPath( toGenPath ) ), MavenMetadataMerger.METADATA_NAME );
         }
 
+        // hosted metadata comes from the version index; directories are only listed to (re)fill it
+        final HostedVersionIndex versionIndex =
+                StoreType.hosted == store.getKey().getType() ? metadataState.getVersionIndex() : null;
+
         ArtifactPathInfo snapshotPomInfo = null;
+        Set<String> builds = null;
 
         if ( parentPath.endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
         {
-            // If we're in a version directory, first-level listing should include a .pom file
-            for ( final StoreResource resource : firstLevel )
+            builds = versionIndex == null ? null : versionIndex.getBuilds( store.getKey(), parentPath );
+            if ( builds == null )
+            {
+                builds = scanBuilds( store, parentPath, versionIndex );
+                if ( builds == null )
+                {
+                    return null;
+                }
+            }
+
+            // If we're in a version directory, it should include a .pom file
+            for ( final String build : builds )
             {
-                if ( resource.getPath().endsWith( ".pom" ) )
+                if ( build.endsWith( ".pom" ) )
                 {
-                    snapshotPomInfo = ArtifactPathInfo.parse( resource.getPath() );
+                    snapshotPomInfo = ArtifactPathInfo.parse( build );
                     break;
                 }
             }
@@ -266,12 +274,23 @@ public class MavenMetadataGenerator
         if ( snapshotPomInfo != null )
         {
             logger.debug( "Generating maven-metadata.xml for snapshots, store: {}", store.getKey() );
-            generated = writeSnapshotMetadata( snapshotPomInfo, firstLevel, store, toGenPath, eventMetadata );
+            generated = writeSnapshotMetadata( snapshotPomInfo, builds, store, toGenPath, eventMetadata );
         }
         else
         {
+            Map<String, Set<String>> versions =
+                    versionIndex == null ? null : versionIndex.getVersions( store.getKey(), parentPath );
+            if ( versions == null )
+            {
+                versions = scanVersions( store, parentPath, versionIndex );
+                if ( versions == null )
+                {
+                    return null;
+                }
+            }
+
             logger.debug( "Generating maven-metadata.xml for releases, store: {}", store.getKey() );
-            generated = writeVersionMetadata( firstLevel, store, toGenPath, eventMetadata );
+            generated = writeVersionMetadata( versions, store, toGenPath, eventMetadata );
         }
 
         logger.debug( "[Result] Generating maven-metadata.xml for store: {}, result: {}", store.getKey(), generated );
@@ -369,6 +388,13 @@ public class MavenMetadataGenerator
                                               final EventMetadata eventMetadata )
             throws IndyWorkflowException
     {
+        // The metadata itself whatever the path is
+        String toMergePath = path;
+        if ( !path.endsWith( MavenMetadataMerger.METADATA_NAME ) )
+        {
+            toMergePath = normalize( normalize( parentPath( toMergePath ) ), MavenMetadataMerger.METADATA_NAME );
+        }
+
         final Transfer rawTarget = fileManager.getTransfer( group, path );
         // First we check the metadata and all of its siblings metadata files
         if ( canProcess( path ) && exists( rawTarget ) )
@@ -377,16 +403,10 @@ public class MavenMetadataGenerator
             logger.trace( "Raw metadata file exists for group {} of path {}, no need to regenerate.", group.getKey(),
                           path );
             eventMetadata.set( GROUP_METADATA_EXISTS, true );
+            recordRequest( group, toMergePath, eventMetadata, false );
             return rawTarget;
         }
 
-        // Then changed back to the metadata itself whatever the path is
-        String toMergePath = path;
-        if ( !path.endsWith( MavenMetadataMerger.METADATA_NAME ) )
-        {
-            toMergePath = normalize( normalize( parentPath( toMergePath ) ), MavenMetadataMerger.METADATA_NAME );
-        }
-
         final Transfer target = fileManager.getTransfer( group, toMergePath );
         if ( exists( target ) )
         {
@@ -394,12 +414,15 @@ public class MavenMetadataGenerator
             logger.trace( "Merged metadata file exists for group {} of path {}, no need to regenerate.", group.getKey(),
                           toMergePath );
             eventMetadata.set( GROUP_METADATA_EXISTS, true );
+            recordRequest( group, toMergePath, eventMetadata, false );
             return target;
         }
+
+        recordRequest( group, toMergePath, eventMetadata, true );
         
         AtomicReference<IndyWorkflowException> wfEx = new AtomicReference<>();
         final String mergePath = toMergePath;
-        boolean mergingDone = mergerLocks.ifUnlocked( computeKey(group, toMergePath), p->{
+        boolean mergingDone = metadataState.getMergerLocks().ifUnlocked( computeKey(group, toMergePath), p->{
             try
             {
                 logger.debug( "Start metadata generation for metadata file {} in group {}", path, group );
@@ -412,35 +435,25 @@ public class MavenMetadataGenerator
                             "Regenerated Metadata for group {} of path {}: latest version: {}, versions: {}",
                             group.getKey(), mergePath, versioning != null ? versioning.getLatest() : null,
                             versioning != null ? versioning.getVersions() : null );
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    try
+                    logger.trace( "Regenerate lost metadata, group: {}, path: {}", group.getKey(), path );
+                    try (final OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true,
+                                                                           eventMetadata ))
                     {
-                        logger.trace( "Regenerate lost metadata, group: {}, path: {}", group.getKey(), path );
-                        new MetadataXpp3Writer().write( baos, md );
-
-                        final byte[] merged = baos.toByteArray();
-                        try (final OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true,
-                                                                               eventMetadata ))
-                        {
-                            fos.write( merged );
-                        }
-                        catch ( final IOException e )
-                        {
-                            throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e,
-                                                             target, e.getMessage() );
-                        }
-
-                        String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
-                        eventMetadata.set( GROUP_METADATA_GENERATED, true );
-                        MetadataInfo info = new MetadataInfo( md );
-                        info.setMetadataMergeInfo( mergeInfo );
-                        putToMetadataCache( group.getKey(), mergePath, info );
+                        new MetadataXpp3Writer().write( fos, md );
                     }
                     catch ( final IOException e )
                     {
-                        logger.error( String.format( "Cannot write consolidated metadata: %s to: %s. Reason: %s", path,
-                                                     group.getKey(), e.getMessage() ), e );
+                        // don't leave a truncated file behind, it would be served as the merged metadata
+                        deleteQuietly( target );
+                        throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e,
+                                                         target, e.getMessage() );
                     }
+
+                    String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
+                    eventMetadata.set( GROUP_METADATA_GENERATED, true );
+                    MetadataInfo info = new MetadataInfo( md );
+                    info.setMetadataMergeInfo( mergeInfo );
+                    putToMetadataCache( group.getKey(), mergePath, info );
                 }
             }
             catch ( IndyWorkflowException e )
@@ -455,7 +468,7 @@ public class MavenMetadataGenerator
                     "The metadata generation is still in process by another thread for the metadata file for this path {} in group {}, so block current thread to wait for result",
                     path, group );
 
-            return mergerLocks.waitForLock( THREAD_WAITING_TIME_SECONDS, mergerLock );
+            return metadataState.getMergerLocks().waitForLock( THREAD_WAITING_TIME_SECONDS, mergerLock );
         } );
 
         IndyWorkflowException ex = wfEx.get();
@@ -494,6 +507,15 @@ public class MavenMetadataGenerator
         return null;
     }
 
+    private void recordRequest( final Group group, final String path, final EventMetadata eventMetadata,
+                                final boolean merged )
+    {
+        if ( !Boolean.TRUE.equals( eventMetadata.get( MATERIALIZING ) ) )
+        {
+            metadataState.requested( group.getKey(), path, merged );
+        }
+    }
+
     private String computeKey( final Group group, final String path )
     {
         return group.getKey().toString() + "-" + path;
@@ -555,11 +577,9 @@ public class MavenMetadataGenerator
             return meta;
         }
 
-        Metadata master = new Metadata();
-        master.setVersioning( new Versioning() );
-
         MetadataIncrementalResult incrementalResult =
-                new MetadataIncrementalResult( new HashSet<>( members ), Collections.emptySet(), master );
+                new MetadataIncrementalResult( new HashSet<>( members ), Collections.emptySet(),
+                                               new MavenMetadataAccumulator( group, toMergePath ) );
 
         incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "cached", this::retrieveCached );
 
@@ -575,13 +595,11 @@ public class MavenMetadataGenerator
 
         if ( metadataProviders != null )
         {
-            master = mergeProviderMetadata( group, incrementalResult.result, toMergePath );
-        }
-        else
-        {
-            master = incrementalResult.result;
+            mergeProviderMetadata( group, incrementalResult.result, toMergePath );
         }
 
+        Metadata master = incrementalResult.result.build();
+
         if ( !incrementalResult.missing.isEmpty() )
         {
             logger.warn(
@@ -642,8 +660,7 @@ public class MavenMetadataGenerator
 
                     try (InputStream in = memberMetaTxfr.openInputStream())
                     {
-                        String content = IOUtils.toString( in );
-                        Metadata memberMeta = reader.read( new StringReader( content ), false );
+                        Metadata memberMeta = reader.read( in, false );
 
                         clearObsoleteFiles( memberMetaTxfr );
 
@@ -669,6 +686,18 @@ public class MavenMetadataGenerator
         };
     }
 
+    private void deleteQuietly( final Transfer item )
+    {
+        try
+        {
+            item.delete();
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to delete {}", item.getResource() );
+        }
+    }
+
     /**
      * Clear obsolete files after a meta is generated. This may be http download metadata, etc.
      * @param item
@@ -724,10 +753,10 @@ public class MavenMetadataGenerator
     {
         private final Set<ArtifactStore> missing;
         private final Set<StoreKey> merged;
-        private final Metadata result;
+        private final MavenMetadataAccumulator result;
 
         public MetadataIncrementalResult( final Set<ArtifactStore> missing, final Set<StoreKey> merged,
-                                          final Metadata result )
+                                          final MavenMetadataAccumulator result )
         {
             this.missing = missing;
             this.merged = merged;
@@ -742,7 +771,7 @@ public class MavenMetadataGenerator
             throws IndyWorkflowException
     {
         Set<ArtifactStore> missing = incrementalResult.missing;
-        Metadata master = incrementalResult.result;
+        MavenMetadataAccumulator master = incrementalResult.result;
 
         logger.debug( "Merge member metadata for {}, {}, missing: {}, size: {}", group.getKey(), description,
                       missing, missing.size() );
@@ -766,7 +795,7 @@ public class MavenMetadataGenerator
                     else
                     {
                         included.add( mr.store.getKey() );
-                        merger.merge( master, mr.metadata, group, toMergePath );
+                        master.add( mr.metadata );
                         putToMetadataCache( mr.store.getKey(), toMergePath, new MetadataInfo( mr.metadata ) );
                     }
                 }
@@ -784,8 +813,8 @@ public class MavenMetadataGenerator
         return new MetadataIncrementalResult( resultingMissing, included, master );
     }
 
-    private Metadata mergeProviderMetadata( final Group group, final Metadata master,
-                                                             final String toMergePath )
+    private void mergeProviderMetadata( final Group group, final MavenMetadataAccumulator master,
+                                        final String toMergePath )
             throws IndyWorkflowException
     {
 
@@ -815,7 +844,7 @@ public class MavenMetadataGenerator
             svc.drain( metadata -> {
                 if ( metadata != null )
                 {
-                    merger.merge( master, metadata, group, toMergePath );
+                    master.add( metadata );
                 }
             } );
         }
@@ -827,8 +856,6 @@ public class MavenMetadataGenerator
         {
             throw new IndyWorkflowException( "Failed to merge provider member metadata.", e );
         }
-
-        return master;
     }
 
     private Callable<MetadataResult> downloadMissing( ArtifactStore store, String toMergePath )
@@ -848,8 +875,7 @@ public class MavenMetadataGenerator
 
                     try (InputStream in = memberMetaTxfr.openInputStream())
                     {
-                        String content = IOUtils.toString( in );
-                        Metadata memberMeta = reader.read( new StringReader( content ), false );
+                        Metadata memberMeta = reader.read( in, false );
                         return new MetadataResult( store, memberMeta );
                     }
                 }
@@ -895,6 +921,18 @@ public class MavenMetadataGenerator
         return cacheManager.get( new MetadataKey( key, path ) );
     }
 
+    @Override
+    public Set<String> getHandledPackageTypes()
+    {
+        return HANDLED_PACKAGE_TYPES;
+    }
+
+    @Override
+    public Set<String> getHandledPathSuffixes()
+    {
+        return HANDLED_FILENAMES;
+    }
+
     @Override
     public boolean canProcess( final String path )
     {
@@ -923,43 +961,185 @@ public class MavenMetadataGenerator
         return MavenMetadataMerger.METADATA_NAME;
     }
 
-    private boolean writeVersionMetadata( final List<StoreResource> firstLevelFiles, final ArtifactStore store,
-                                          final String path, final EventMetadata eventMetadata )
+    /**
+     * Regenerate the maven-metadata.xml of a hosted store from a full rescan of the storage, dropping whatever the
+     * version index knew about the artifact (or snapshot version) directory. Use this if files were changed behind
+     * Indy's back, or through another node less than {@link HostedVersionIndex#MAX_AGE_MILLIS} ago.
+     */
+    public Transfer repairVersionMetadata( final ArtifactStore store, final String path,
+                                           final EventMetadata eventMetadata )
         throws IndyWorkflowException
     {
-        ArtifactPathInfo samplePomInfo = null;
+        final String parentPath = Paths.get( path ).getParent().toString();
+        metadataState.getVersionIndex().clear( store.getKey(), parentPath );
 
-        logger.debug( "writeVersionMetadata, firstLevelFiles:{}, store:{}", firstLevelFiles, store.getKey() );
+        return generateFileContent( store, path, eventMetadata );
+    }
 
-        // first level will contain version directories...for each directory, we need to verify the presence of a .pom file before including
-        // as a valid version
-        final List<SingleVersion> versions = new ArrayList<>();
-        nextTopResource: for ( final StoreResource topResource : firstLevelFiles )
+    /**
+     * Drop whatever the version index knew about the store, so each of its maven-metadata.xml files is generated from
+     * a full rescan the next time. This is done whenever the store is rescanned.
+     */
+    public void repairVersionMetadata( final ArtifactStore store )
+    {
+        metadataState.getVersionIndex().clear( store.getKey(), "" );
+    }
+
+    @Override
+    protected void contentStored( final ArtifactStore store, final String path, final Transfer result,
+                                  final EventMetadata eventMetadata )
+    {
+        if ( StoreType.hosted == store.getKey().getType() )
         {
-            final String topPath = topResource.getPath();
-            if ( topPath.endsWith( "/" ) )
+            metadataState.getVersionIndex().fileStored( store.getKey(), path );
+        }
+    }
+
+    @Override
+    protected void contentDeleted( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
+    {
+        if ( StoreType.hosted == store.getKey().getType() )
+        {
+            metadataState.getVersionIndex().pathRemoved( store.getKey(), path );
+        }
+    }
+
+    /**
+     * List the artifact directory and each of its version directories, to find the versions that hold a valid .pom.
+     * If the store is hosted, the result goes to the version index, so this only has to be done again if the index
+     * loses track of the directory.
+     *
+     * @return each version with the paths of its .pom files, or null if the artifact directory can't be listed.
+     */
+    private Map<String, Set<String>> scanVersions( final ArtifactStore store, final String dir,
+                                                   final HostedVersionIndex versionIndex )
+        throws IndyWorkflowException
+    {
+        final HostedVersionIndex.Scan scan = versionIndex == null ? null : versionIndex.startScan( store.getKey(), dir );
+        try
+        {
+            final List<StoreResource> firstLevelFiles = listDirectory( store, dir );
+            if ( firstLevelFiles == null )
+            {
+                return null;
+            }
+
+            logger.debug( "scanVersions, firstLevelFiles:{}, store:{}", firstLevelFiles, store.getKey() );
+
+            // first level will contain version directories...for each directory, we need to verify the presence of a .pom file before including
+            // as a valid version
+            final Map<String, Set<String>> versions = new HashMap<>();
+            for ( final StoreResource topResource : firstLevelFiles )
             {
-                final List<StoreResource> secondLevelListing = fileManager.listRaw( store, topPath );
-                for ( final StoreResource fileResource : secondLevelListing )
+                final String topPath = topResource.getPath();
+                if ( topPath.endsWith( "/" ) )
                 {
-                    if ( fileResource.getPath()
-                                     .endsWith( ".pom" ) )
+                    final List<StoreResource> secondLevelListing = fileManager.listRaw( store, topPath );
+                    for ( final StoreResource fileResource : secondLevelListing )
                     {
-                        ArtifactPathInfo filePomInfo = ArtifactPathInfo.parse( fileResource.getPath() );
                         // check if the pom is valid for the path
-                        if ( filePomInfo != null )
+                        if ( fileResource.getPath().endsWith( ".pom" )
+                                && ArtifactPathInfo.parse( fileResource.getPath() ) != null )
                         {
-                            versions.add( VersionUtils.createSingleVersion( new File( topPath ).getName() ) );
-                            if ( samplePomInfo == null )
-                            {
-                                samplePomInfo = filePomInfo;
-                            }
-
-                            continue nextTopResource;
+                            versions.computeIfAbsent( new File( topPath ).getName(), v -> new HashSet<>() )
+                                    .add( fileResource.getPath() );
                         }
                     }
                 }
             }
+
+            if ( scan != null )
+            {
+                versionIndex.versionsScanned( scan, versions );
+            }
+
+            return versions;
+        }
+        finally
+        {
+            if ( scan != null )
+            {
+                versionIndex.endScan( scan );
+            }
+        }
+    }
+
+    /**
+     * List the snapshot version directory, to find its builds. If the store is hosted, the result goes to the version
+     * index, so this only has to be done again if the index loses track of the directory.
+     *
+     * @return the paths of the artifact files in the directory, or null if it can't be listed.
+     */
+    private Set<String> scanBuilds( final ArtifactStore store, final String dir,
+                                    final HostedVersionIndex versionIndex )
+    {
+        final HostedVersionIndex.Scan scan = versionIndex == null ? null : versionIndex.startScan( store.getKey(), dir );
+        try
+        {
+            final List<StoreResource> files = listDirectory( store, dir );
+            if ( files == null )
+            {
+                return null;
+            }
+
+            final Set<String> builds = new HashSet<>();
+            for ( final StoreResource resource : files )
+            {
+                if ( ArtifactPathInfo.parse( resource.getPath() ) != null )
+                {
+                    builds.add( resource.getPath() );
+                }
+            }
+
+            if ( scan != null )
+            {
+                versionIndex.buildsScanned( scan, builds );
+            }
+
+            return builds;
+        }
+        finally
+        {
+            if ( scan != null )
+            {
+                versionIndex.endScan( scan );
+            }
+        }
+    }
+
+    private List<StoreResource> listDirectory( final ArtifactStore store, final String dir )
+    {
+        try
+        {
+            return fileManager.listRaw( store, dir );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            logger.error( String.format( "SKIP: Failed to generate maven-metadata.xml from listing of directory contents for: %s under path: %s",
+                                         store, dir ), e );
+            return null;
+        }
+    }
+
+    private boolean writeVersionMetadata( final Map<String, Set<String>> versionPoms, final ArtifactStore store,
+                                          final String path, final EventMetadata eventMetadata )
+        throws IndyWorkflowException
+    {
+        ArtifactPathInfo samplePomInfo = null;
+
+        final List<SingleVersion> versions = new ArrayList<>();
+        for ( final Map.Entry<String, Set<String>> version : versionPoms.entrySet() )
+        {
+            if ( version.getValue().isEmpty() )
+            {
+                continue;
+            }
+
+            versions.add( VersionUtils.createSingleVersion( version.getKey() ) );
+            if ( samplePomInfo == null )
+            {
+                samplePomInfo = ArtifactPathInfo.parse( version.getValue().iterator().next() );
+            }
         }
 
         if ( versions.isEmpty() )
@@ -1047,18 +1227,18 @@ public class MavenMetadataGenerator
     }
 
     /**
-     * First level will contain files that have the timestamp-buildNumber version suffix, e.g., 'o11yphant-metrics-api-1.0-20200805.065728-1.pom'
+     * Builds are files that have the timestamp-buildNumber version suffix, e.g., 'o11yphant-metrics-api-1.0-20200805.065728-1.pom'
      * we need to parse each this info and add them to snapshot versions.
      */
-    private boolean writeSnapshotMetadata( final ArtifactPathInfo info, final List<StoreResource> firstLevelFiles,
+    private boolean writeSnapshotMetadata( final ArtifactPathInfo info, final Set<String> builds,
                                            final ArtifactStore store, final String path,
                                            final EventMetadata eventMetadata )
         throws IndyWorkflowException
     {
         final Map<SnapshotPart, Set<ArtifactPathInfo>> infosBySnap = new HashMap<>();
-        for ( final StoreResource resource : firstLevelFiles )
+        for ( final String build : builds )
         {
-            final ArtifactPathInfo resInfo = ArtifactPathInfo.parse( resource.getPath() );
+            final ArtifactPathInfo resInfo = ArtifactPathInfo.parse( build );
             if ( resInfo != null )
             {
                 final SnapshotPart snap = resInfo.getSnapshotInfo();
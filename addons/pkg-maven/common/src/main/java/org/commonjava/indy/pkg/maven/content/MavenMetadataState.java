@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.cdi.util.weft.Locker;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.conf.MetadataMaterializerConfig;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.pkg.maven.content.MetadataMaterializer.METRIC_NAME;
+import static org.commonjava.indy.pkg.maven.content.MetadataMaterializer.MISSES;
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
+
+/**
+ * State shared by all {@link MavenMetadataGenerator}s. The generator is a dependent bean, so every injection point gets
+ * its own instance; the merge locks, the hosted version index and the group metadata request counts only work if they
+ * are shared. The request counts tell {@link MetadataMaterializer} which paths are hot: a path is hot once it has been
+ * requested {@link MetadataMaterializerConfig#getMinRequests()} times.
+ */
+@ApplicationScoped
+public class MavenMetadataState
+{
+    private final Locker<String> mergerLocks = new Locker<>();
+
+    private final HostedVersionIndex versionIndex = new HostedVersionIndex();
+
+    private final Map<MetadataKey, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    @Inject
+    private MetadataMaterializerConfig config;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    protected MavenMetadataState()
+    {
+    }
+
+    /**
+     * @param config materializer config; if null, requests are not tracked.
+     */
+    public MavenMetadataState( final MetadataMaterializerConfig config )
+    {
+        this.config = config;
+    }
+
+    Locker<String> getMergerLocks()
+    {
+        return mergerLocks;
+    }
+
+    HostedVersionIndex getVersionIndex()
+    {
+        return versionIndex;
+    }
+
+    /**
+     * Count a client request for the group metadata path. If the path was already hot and the merged file was missing
+     * (the client had to wait for the merge), that's a miss.
+     *
+     * @return true if the request was a miss
+     */
+    boolean requested( final StoreKey group, final String path, final boolean merged )
+    {
+        if ( config == null || !config.isEnabled() )
+        {
+            return false;
+        }
+
+        MetadataKey key = new MetadataKey( group, path );
+        boolean miss = merged && isHot( key );
+        requests.computeIfAbsent( key, k -> new AtomicInteger() ).incrementAndGet();
+        if ( miss )
+        {
+            mark( metricsManager, metricsConfig, MetadataMaterializer.class, METRIC_NAME, MISSES, 1 );
+        }
+
+        if ( requests.size() > config.getHotPaths() * 2 )
+        {
+            trimRequests();
+        }
+
+        return miss;
+    }
+
+    boolean isHot( final MetadataKey key )
+    {
+        AtomicInteger count = requests.get( key );
+        return count != null && config != null && count.get() >= config.getMinRequests();
+    }
+
+    /**
+     * Halve all the request counts, forgetting the paths that drop to zero, and then the least requested paths until
+     * no more than the configured number is tracked.
+     */
+    private synchronized void trimRequests()
+    {
+        int max = config.getHotPaths();
+        if ( requests.size() <= max * 2 )
+        {
+            return;
+        }
+
+        requests.entrySet().removeIf( e -> e.getValue().updateAndGet( c -> c / 2 ) < 1 );
+
+        if ( requests.size() > max )
+        {
+            List<Map.Entry<MetadataKey, AtomicInteger>> entries = new ArrayList<>( requests.entrySet() );
+            entries.sort( ( a, b ) -> Integer.compare( a.getValue().get(), b.getValue().get() ) );
+            entries.subList( 0, entries.size() - max ).forEach( e -> requests.remove( e.getKey() ) );
+        }
+    }
+}
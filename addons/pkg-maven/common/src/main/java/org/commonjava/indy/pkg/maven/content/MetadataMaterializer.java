@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.pkg.maven.conf.MetadataMaterializerConfig;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger.METADATA_NAME;
+import static org.commonjava.indy.subsys.metrics.IndyMeters.getMetricName;
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.HISTOGRAM;
+
+/**
+ * Keeps the merged maven-metadata.xml of the most requested paths of each group materialized. The generator counts
+ * every group metadata request in {@link MavenMetadataState}; once a path has been requested
+ * {@link MetadataMaterializerConfig#getMinRequests()} times it is "hot". When {@link MetadataMergeListener} clears a
+ * hot path because member metadata changed, the path is re-merged in the background (after a short delay that
+ * coalesces bursts of changes), so the next client request finds the merged file instead of blocking on the merge.
+ * <p>
+ * Metrics: <code>materialized</code>, <code>failed</code> and <code>misses</code> (client requests for hot paths that
+ * still had to merge) are metered; <code>lag</code> is a histogram of the time from invalidation to re-merged file;
+ * the <code>stale</code> gauges give the number of hot paths waiting for a re-merge and the age of the oldest one.
+ */
+@ApplicationScoped
+public class MetadataMaterializer
+{
+    /**
+     * Set in the {@link EventMetadata} of background merges, so they are not counted as client requests.
+     */
+    public static final String MATERIALIZING = "metadata-materializing";
+
+    static final String METRIC_NAME = "indy.maven.metadata.materializer.";
+
+    private static final String MATERIALIZED = "materialized";
+
+    private static final String FAILED = "failed";
+
+    static final String MISSES = "misses";
+
+    private static final String LAG = "lag";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private MetadataMaterializerConfig config;
+
+    @Inject
+    private MavenMetadataState metadataState;
+
+    @Inject
+    private MavenMetadataGenerator metadataGenerator;
+
+    @Inject
+    private StoreDataManager storeManager;
+
+    @Inject
+    private GroupRepositoryFilterManager repositoryFilterManager;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "maven-metadata-materializer", threads = 4, priority = 3,
+                     loadSensitive = ExecutorConfig.BooleanLiteral.FALSE )
+    private WeftExecutorService materializeService;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    // hot paths waiting for a re-merge, with the time they were invalidated
+    private final Map<MetadataKey, Long> stale = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService delayService;
+
+    protected MetadataMaterializer()
+    {
+    }
+
+    public MetadataMaterializer( final MetadataMaterializerConfig config, final MavenMetadataState metadataState,
+                                 final MavenMetadataGenerator metadataGenerator, final StoreDataManager storeManager,
+                                 final WeftExecutorService materializeService )
+    {
+        this.config = config;
+        this.metadataState = metadataState;
+        this.metadataGenerator = metadataGenerator;
+        this.storeManager = storeManager;
+        this.materializeService = materializeService;
+        start();
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if ( !config.isEnabled() )
+        {
+            logger.info( "Group metadata materializer is disabled" );
+            return;
+        }
+
+        delayService = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "maven-metadata-materializer-delay" );
+            t.setDaemon( true );
+            return t;
+        } );
+
+        if ( metricsManager != null )
+        {
+            Map<String, Gauge<Integer>> gauges = new HashMap<>();
+            gauges.put( "count", stale::size );
+            gauges.put( "age", () -> (int) Math.min( Integer.MAX_VALUE, getOldestStaleAge() ) );
+            metricsManager.addGauges( getClass(), "stale", gauges );
+        }
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( delayService != null )
+        {
+            delayService.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return delayService != null;
+    }
+
+    /**
+     * Member metadata changed at the given path, and the merged files of the affected groups were cleared. Schedule
+     * the hot ones for a re-merge.
+     */
+    public void invalidated( final Set<Group> groups, final String path )
+    {
+        if ( !isEnabled() || !path.endsWith( METADATA_NAME ) )
+        {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for ( Group group : groups )
+        {
+            MetadataKey key = new MetadataKey( group.getKey(), path );
+            if ( isHot( key ) && stale.putIfAbsent( key, now ) == null )
+            {
+                logger.debug( "Scheduling materialization of: {} in: {}", path, group.getKey() );
+                try
+                {
+                    delayService.schedule( () -> submit( key ), config.getDelayMillis(), TimeUnit.MILLISECONDS );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    stale.remove( key );
+                }
+            }
+        }
+    }
+
+    boolean isHot( final MetadataKey key )
+    {
+        return metadataState.isHot( key );
+    }
+
+    private void submit( final MetadataKey key )
+    {
+        try
+        {
+            materializeService.execute( () -> materialize( key ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.warn( "Cannot materialize: {} in: {}. Reason: {}", key.getPath(), key.getStoreKey(),
+                         e.getMessage() );
+            stale.remove( key );
+            mark( metricsManager, metricsConfig, MetadataMaterializer.class, METRIC_NAME, FAILED, 1 );
+        }
+    }
+
+    private void materialize( final MetadataKey key )
+    {
+        Long since = stale.remove( key );
+        if ( since == null )
+        {
+            return;
+        }
+
+        try
+        {
+            ArtifactStore store = storeManager.getArtifactStore( key.getStoreKey() );
+            if ( !( store instanceof Group ) || store.isDisabled() )
+            {
+                return;
+            }
+
+            Group group = (Group) store;
+            List<ArtifactStore> members = storeManager.query()
+                                                      .enabledState( true )
+                                                      .getOrderedConcreteStoresInGroup( group.getPackageType(),
+                                                                                        group.getName() );
+            if ( repositoryFilterManager != null )
+            {
+                members = repositoryFilterManager.filter( key.getPath(), group, members );
+            }
+
+            EventMetadata eventMetadata = new EventMetadata();
+            eventMetadata.set( MATERIALIZING, true );
+            metadataGenerator.generateGroupFileContent( group, members, key.getPath(), eventMetadata );
+
+            long lag = System.currentTimeMillis() - since;
+            logger.debug( "Materialized: {} in: {}, {}ms after invalidation", key.getPath(), key.getStoreKey(), lag );
+            mark( metricsManager, metricsConfig, MetadataMaterializer.class, METRIC_NAME, MATERIALIZED, 1 );
+            update( LAG, lag );
+        }
+        catch ( IndyDataException | IndyWorkflowException e )
+        {
+            logger.warn( "Failed to materialize: {} in: {}. Reason: {}", key.getPath(), key.getStoreKey(),
+                         e.getMessage() );
+            mark( metricsManager, metricsConfig, MetadataMaterializer.class, METRIC_NAME, FAILED, 1 );
+        }
+    }
+
+    private long getOldestStaleAge()
+    {
+        long now = System.currentTimeMillis();
+        return stale.values().stream().mapToLong( since -> now - since ).max().orElse( 0 );
+    }
+
+    private void update( final String metric, final long value )
+    {
+        if ( metricsManager == null || metricsConfig == null )
+        {
+            return;
+        }
+
+        String name = getMetricName( metricsConfig, MetadataMaterializer.class, METRIC_NAME, metric, HISTOGRAM );
+        metricsManager.getHistogram( name ).update( value );
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Set;
  * This listener will do these tasks:
  * <ul>
  *     <li>When the metadata file changed of a member in a group, delete correspond cache of that file path of the member and group (cascaded)</li>
+ *     <li>Let {@link MetadataMaterializer} re-merge that file in the affected groups if it's requested often</li>
  * </ul>
  */
 @ApplicationScoped
@@ -45,6 +46,9 @@ public class MetadataMergeListener
     @Inject
     private MetadataCacheManager cacheManager;
 
+    @Inject
+    private MetadataMaterializer metadataMaterializer;
+
     /**
      * Will clear the both merge path and merge info file of member and group contains that member(cascaded)
      * if that path of file changed in the member of #originatingStore
@@ -58,6 +62,11 @@ public class MetadataMergeListener
         affectedGroups.forEach( group -> {
             cacheManager.remove( new MetadataKey( group.getKey(), path ) );
         } );
+
+        if ( metadataMaterializer != null )
+        {
+            metadataMaterializer.invalidated( affectedGroups, path );
+        }
     }
 
 }
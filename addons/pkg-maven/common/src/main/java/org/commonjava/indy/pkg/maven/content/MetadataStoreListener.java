@@ -15,10 +15,12 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
+import org.commonjava.indy.change.event.ArtifactStorePreRescanEvent;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
@@ -97,4 +99,19 @@ public class MetadataStoreListener
         }
     }
 
+    /**
+     * Rescanning a hosted store is the way to repair its metadata after files were changed behind Indy's back, so
+     * the version index has to forget what it knew of the store too.
+     */
+    public void onStoreRescan( @Observes final ArtifactStorePreRescanEvent event )
+    {
+        for ( ArtifactStore store : event.getStores() )
+        {
+            if ( StoreType.hosted == store.getKey().getType() )
+            {
+                logger.debug( "Dropping indexed versions of: {} for rescan", store.getKey() );
+                metadataGenerator.repairVersionMetadata( store );
+            }
+        }
+    }
 }
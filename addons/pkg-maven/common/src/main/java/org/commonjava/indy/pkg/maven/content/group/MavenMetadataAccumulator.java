@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the maven-metadata.xml of many group members in one pass. Unlike {@link MavenMetadataMerger#merge}, which
+ * checks every incoming version against the merged list and re-sorts the snapshot versions after each member, this
+ * collects versions and snapshot versions into de-duplicating sets and only builds (and sorts) the lists once, in
+ * {@link #build()}. Everything else (coordinates, plugins, lastUpdated, release / latest, snapshot) is merged as
+ * {@link MavenMetadataMerger#merge} does.
+ * <p>
+ * Not thread-safe; members are expected to be added from a single thread.
+ */
+public class MavenMetadataAccumulator
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Group group;
+
+    private final String path;
+
+    private final Metadata master = new Metadata();
+
+    private final Set<String> versions = new LinkedHashSet<>();
+
+    private final Map<String, SnapshotVersion> snapshotVersions = new LinkedHashMap<>();
+
+    public MavenMetadataAccumulator( final Group group, final String path )
+    {
+        this.group = group;
+        this.path = path;
+        master.setVersioning( new Versioning() );
+    }
+
+    public MavenMetadataAccumulator add( final Metadata src )
+    {
+        if ( src == null )
+        {
+            return this;
+        }
+
+        logger.debug( "Merge metadata, group: {}, path: {}, src: {}", group.getKey(), path, src );
+
+        if ( src.getGroupId() != null )
+        {
+            master.setGroupId( src.getGroupId() );
+        }
+
+        if ( src.getArtifactId() != null )
+        {
+            master.setArtifactId( src.getArtifactId() );
+        }
+
+        if ( src.getVersion() != null )
+        {
+            master.setVersion( src.getVersion() );
+        }
+
+        Versioning srcVersioning = src.getVersioning();
+
+        // let Metadata.merge() handle the scalar fields and plugins, but keep the version lists out of it.
+        Metadata view = new Metadata();
+        view.setPlugins( src.getPlugins() );
+        if ( srcVersioning != null )
+        {
+            Versioning viewVersioning = new Versioning();
+            viewVersioning.setLastUpdated( srcVersioning.getLastUpdated() );
+            viewVersioning.setLatest( srcVersioning.getLatest() );
+            viewVersioning.setRelease( srcVersioning.getRelease() );
+            viewVersioning.setSnapshot( srcVersioning.getSnapshot() );
+            view.setVersioning( viewVersioning );
+
+            versions.addAll( srcVersioning.getVersions() );
+        }
+
+        master.merge( view );
+
+        if ( srcVersioning != null && srcVersioning.getSnapshot() != null )
+        {
+            logger.trace( "INCLUDING snapshot information from: {} in: {}:{}", src, group.getKey(), path );
+            master.getVersioning().setSnapshot( srcVersioning.getSnapshot() );
+
+            for ( final SnapshotVersion snap : srcVersioning.getSnapshotVersions() )
+            {
+                snapshotVersions.merge( snapshotKey( snap ), snap, MavenMetadataAccumulator::newer );
+            }
+        }
+        else
+        {
+            logger.warn( "SKIPPING snapshot information from: {} in: {}:{})", src, group.getKey(), path );
+        }
+
+        return this;
+    }
+
+    /**
+     * Build the merged metadata. The versions are de-duplicated but left in encounter order; use
+     * {@link MavenMetadataMerger#sortVersions(Metadata)} to sort them.
+     */
+    public Metadata build()
+    {
+        Versioning versioning = master.getVersioning();
+        versioning.setVersions( new ArrayList<>( versions ) );
+
+        List<SnapshotVersion> snaps = new ArrayList<>( snapshotVersions.values() );
+        snaps.sort( new MavenMetadataMerger.SnapshotVersionComparator() );
+        versioning.setSnapshotVersions( snaps );
+
+        return master;
+    }
+
+    private static String snapshotKey( final SnapshotVersion snap )
+    {
+        return snap.getClassifier() + ":" + snap.getExtension() + ":" + snap.getVersion();
+    }
+
+    private static SnapshotVersion newer( final SnapshotVersion existing, final SnapshotVersion candidate )
+    {
+        String existingUpdated = existing.getUpdated();
+        String candidateUpdated = candidate.getUpdated();
+        if ( existingUpdated == null )
+        {
+            return candidate;
+        }
+
+        return candidateUpdated != null && candidateUpdated.compareTo( existingUpdated ) > 0 ? candidate : existing;
+    }
+}
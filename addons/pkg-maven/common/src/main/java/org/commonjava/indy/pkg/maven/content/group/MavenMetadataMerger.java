@@ -39,7 +39,7 @@ import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.LOCAL_SNAPSHOT
 public class MavenMetadataMerger
 {
 
-    private static final class SnapshotVersionComparator
+    static final class SnapshotVersionComparator
             implements Comparator<SnapshotVersion>
     {
         @Override
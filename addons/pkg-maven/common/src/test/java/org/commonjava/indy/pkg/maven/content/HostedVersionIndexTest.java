@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class HostedVersionIndexTest
+{
+    private static final StoreKey KEY = new StoreKey( MAVEN_PKG_KEY, hosted, "test" );
+
+    private static final StoreKey OTHER = new StoreKey( MAVEN_PKG_KEY, hosted, "other" );
+
+    private static final String BAR = "org/foo/bar";
+
+    private static final String SNAPSHOT = "org/foo/bar/1.1-SNAPSHOT";
+
+    private final HostedVersionIndex index = new HostedVersionIndex();
+
+    @Test
+    public void directoriesAreOnlyKnownOnceScanned()
+    {
+        assertThat( index.getVersions( KEY, BAR ), nullValue() );
+
+        index.fileStored( KEY, "/org/foo/bar/1.0/bar-1.0.pom" );
+        assertThat( index.getVersions( KEY, BAR ), nullValue() );
+
+        scanVersions( KEY, BAR, "org/foo/bar/1.0/bar-1.0.pom" );
+        assertThat( index.getVersions( KEY, "/org/foo/bar/" ), equalTo( versions( "org/foo/bar/1.0/bar-1.0.pom" ) ) );
+        assertThat( index.getVersions( OTHER, BAR ), nullValue() );
+    }
+
+    @Test
+    public void storedAndDeletedFilesUpdateVersions()
+    {
+        scanVersions( KEY, BAR, "org/foo/bar/1.0/bar-1.0.pom" );
+
+        index.fileStored( KEY, "/org/foo/bar/1.1/bar-1.1.pom" );
+        index.fileStored( KEY, "/org/foo/bar/1.1/bar-1.1.jar" );
+        index.fileStored( KEY, "/org/foo/bar/1.2/not-a-pom-of-bar.pom" );
+        assertThat( index.getVersions( KEY, BAR ),
+                    equalTo( versions( "org/foo/bar/1.0/bar-1.0.pom", "org/foo/bar/1.1/bar-1.1.pom" ) ) );
+
+        index.pathRemoved( KEY, "/org/foo/bar/1.0/bar-1.0.jar" );
+        assertThat( index.getVersions( KEY, BAR ).keySet(), equalTo( set( "1.0", "1.1" ) ) );
+
+        index.pathRemoved( KEY, "/org/foo/bar/1.0/bar-1.0.pom" );
+        assertThat( index.getVersions( KEY, BAR ), equalTo( versions( "org/foo/bar/1.1/bar-1.1.pom" ) ) );
+
+        index.pathRemoved( KEY, "/org/foo/bar/1.1/" );
+        assertThat( index.getVersions( KEY, BAR ), equalTo( Collections.emptyMap() ) );
+
+        index.pathRemoved( KEY, "/org/foo/bar" );
+        assertThat( index.getVersions( KEY, BAR ), nullValue() );
+    }
+
+    @Test
+    public void storedAndDeletedFilesUpdateSnapshotBuilds()
+    {
+        String first = SNAPSHOT + "/bar-1.1-20200805.065728-1.pom";
+        String second = SNAPSHOT + "/bar-1.1-20200806.065728-2.pom";
+
+        assertThat( index.getBuilds( KEY, SNAPSHOT ), nullValue() );
+
+        HostedVersionIndex.Scan scan = index.startScan( KEY, SNAPSHOT );
+        index.buildsScanned( scan, set( "/" + first ) );
+        index.endScan( scan );
+        assertThat( index.getBuilds( KEY, SNAPSHOT ), equalTo( set( first ) ) );
+
+        index.fileStored( KEY, "/" + second );
+        index.fileStored( KEY, "/" + SNAPSHOT + "/maven-metadata.xml" );
+        assertThat( index.getBuilds( KEY, SNAPSHOT ), equalTo( set( first, second ) ) );
+
+        index.pathRemoved( KEY, "/" + first );
+        assertThat( index.getBuilds( KEY, SNAPSHOT ), equalTo( set( second ) ) );
+
+        index.pathRemoved( KEY, "/org/foo" );
+        assertThat( index.getBuilds( KEY, SNAPSHOT ), nullValue() );
+    }
+
+    @Test
+    public void scanOverlappingChangeIsNotKept()
+    {
+        HostedVersionIndex.Scan scan = index.startScan( KEY, BAR );
+        index.fileStored( KEY, "/org/foo/bar/1.1/bar-1.1.pom" );
+        index.versionsScanned( scan, versions( "org/foo/bar/1.0/bar-1.0.pom" ) );
+        index.endScan( scan );
+
+        assertThat( index.getVersions( KEY, BAR ), nullValue() );
+
+        // changes elsewhere don't matter
+        scan = index.startScan( KEY, BAR );
+        index.fileStored( KEY, "/org/foo/baz/1.0/baz-1.0.pom" );
+        index.fileStored( OTHER, "/org/foo/bar/1.1/bar-1.1.pom" );
+        index.versionsScanned( scan, versions( "org/foo/bar/1.0/bar-1.0.pom" ) );
+        index.endScan( scan );
+
+        assertThat( index.getVersions( KEY, BAR ), equalTo( versions( "org/foo/bar/1.0/bar-1.0.pom" ) ) );
+    }
+
+    @Test
+    public void clearDirectoriesAtOrBelowPath()
+    {
+        scanVersions( KEY, BAR, "org/foo/bar/1.0/bar-1.0.pom" );
+        scanVersions( KEY, "org/foo/baz", "org/foo/baz/1.0/baz-1.0.pom" );
+        scanVersions( OTHER, BAR, "org/foo/bar/1.0/bar-1.0.pom" );
+
+        index.clear( KEY, "/org/foo/bar/" );
+        assertThat( index.getVersions( KEY, BAR ), nullValue() );
+        assertThat( index.getVersions( KEY, "org/foo/baz" ), equalTo( versions( "org/foo/baz/1.0/baz-1.0.pom" ) ) );
+
+        index.clear( KEY, "" );
+        assertThat( index.getVersions( KEY, "org/foo/baz" ), nullValue() );
+        assertThat( index.getVersions( OTHER, BAR ), equalTo( versions( "org/foo/bar/1.0/bar-1.0.pom" ) ) );
+    }
+
+    @Test
+    public void expiredDirectoriesAreScannedAgain()
+    {
+        HostedVersionIndex expiring = new HostedVersionIndex( -1 );
+        HostedVersionIndex.Scan scan = expiring.startScan( KEY, BAR );
+        expiring.versionsScanned( scan, versions( "org/foo/bar/1.0/bar-1.0.pom" ) );
+        expiring.endScan( scan );
+
+        assertThat( expiring.getVersions( KEY, BAR ), nullValue() );
+    }
+
+    private void scanVersions( final StoreKey key, final String dir, final String... poms )
+    {
+        HostedVersionIndex.Scan scan = index.startScan( key, dir );
+        index.versionsScanned( scan, versions( poms ) );
+        index.endScan( scan );
+    }
+
+    private static Map<String, Set<String>> versions( final String... poms )
+    {
+        Map<String, Set<String>> versions = new HashMap<>();
+        for ( String pom : poms )
+        {
+            String versionDir = pom.substring( 0, pom.lastIndexOf( '/' ) );
+            versions.computeIfAbsent( versionDir.substring( versionDir.lastIndexOf( '/' ) + 1 ), v -> new HashSet<>() )
+                    .add( pom );
+        }
+        return versions;
+    }
+
+    private static Set<String> set( final String... values )
+    {
+        return new HashSet<>( Arrays.asList( values ) );
+    }
+}
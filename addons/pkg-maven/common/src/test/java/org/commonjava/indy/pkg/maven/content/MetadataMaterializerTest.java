@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.conf.MetadataMaterializerConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.commonjava.indy.model.core.StoreType.group;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MetadataMaterializerTest
+{
+    private static final StoreKey GROUP = new StoreKey( MAVEN_PKG_KEY, group, "test" );
+
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private MavenMetadataState state;
+
+    private MetadataMaterializer materializer;
+
+    @After
+    public void stop()
+    {
+        if ( materializer != null )
+        {
+            materializer.stop();
+        }
+    }
+
+    @Test
+    public void pathBecomesHotAfterMinRequests()
+    {
+        init( new MetadataMaterializerConfig( true, 10, 3, 10 ) );
+        MetadataKey key = new MetadataKey( GROUP, PATH );
+
+        state.requested( GROUP, PATH, true );
+        state.requested( GROUP, PATH, false );
+        assertThat( materializer.isHot( key ), equalTo( false ) );
+
+        state.requested( GROUP, PATH, false );
+        assertThat( materializer.isHot( key ), equalTo( true ) );
+    }
+
+    @Test
+    public void leastRequestedPathsAreForgotten()
+    {
+        init( new MetadataMaterializerConfig( true, 2, 1, 10 ) );
+
+        for ( int i = 0; i < 8; i++ )
+        {
+            state.requested( GROUP, PATH, false );
+        }
+
+        for ( int i = 0; i < 4; i++ )
+        {
+            state.requested( GROUP, "org/foo/other" + i + "/maven-metadata.xml", false );
+        }
+
+        // tracked paths went over twice the limit: counts were halved and the least requested dropped
+        assertThat( materializer.isHot( new MetadataKey( GROUP, PATH ) ), equalTo( true ) );
+        assertThat( materializer.isHot( new MetadataKey( GROUP, "org/foo/other0/maven-metadata.xml" ) ),
+                    equalTo( false ) );
+    }
+
+    @Test
+    public void onlyRequestsForPathsAlreadyHotAreMisses()
+    {
+        init( new MetadataMaterializerConfig( true, 10, 2, 10 ) );
+        MetadataKey key = new MetadataKey( GROUP, PATH );
+
+        assertThat( state.requested( GROUP, PATH, true ), equalTo( false ) );
+        assertThat( state.requested( GROUP, PATH, true ), equalTo( false ) );
+        assertThat( materializer.isHot( key ), equalTo( true ) );
+
+        // hot now: a request that still had to merge is a miss, one that found the merged file is not
+        assertThat( state.requested( GROUP, PATH, false ), equalTo( false ) );
+        assertThat( state.requested( GROUP, PATH, true ), equalTo( true ) );
+    }
+
+    @Test
+    public void disabledMaterializerTracksNothing()
+    {
+        init( new MetadataMaterializerConfig( false, 10, 1, 10 ) );
+
+        state.requested( GROUP, PATH, false );
+        assertThat( materializer.isEnabled(), equalTo( false ) );
+        assertThat( materializer.isHot( new MetadataKey( GROUP, PATH ) ), equalTo( false ) );
+    }
+
+    private void init( final MetadataMaterializerConfig config )
+    {
+        state = new MavenMetadataState( config );
+        materializer = new MetadataMaterializer( config, state, null, null, null );
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MavenMetadataAccumulatorTest
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "test" );
+
+    @Test
+    public void versionsAreMergedOnceAndSorted()
+    {
+        Metadata merged = new MavenMetadataAccumulator( group, PATH ).add( versionMetadata( "1.1", "1.0" ) )
+                                                                     .add( null )
+                                                                     .add( versionMetadata( "1.0", "2.0", "1.2" ) )
+                                                                     .build();
+
+        assertThat( merged.getGroupId(), equalTo( "org.foo" ) );
+        assertThat( merged.getArtifactId(), equalTo( "bar" ) );
+        assertThat( merged.getVersioning().getVersions(), equalTo( Arrays.asList( "1.1", "1.0", "2.0", "1.2" ) ) );
+
+        new MavenMetadataMerger().sortVersions( merged );
+        assertThat( merged.getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "1.1", "1.2", "2.0" ) ) );
+        assertThat( merged.getVersioning().getLatest(), equalTo( "2.0" ) );
+        assertThat( merged.getVersioning().getRelease(), equalTo( "2.0" ) );
+    }
+
+    @Test
+    public void snapshotVersionsKeepNewestPerArtifact()
+    {
+        Metadata first = snapshotMetadata( snapshotVersion( "jar", "1.0-20200101.000000-1", "20200101000000" ),
+                                           snapshotVersion( "pom", "1.0-20200101.000000-1", "20200101000000" ) );
+        Metadata second = snapshotMetadata( snapshotVersion( "jar", "1.0-20200101.000000-1", "20200102000000" ),
+                                            snapshotVersion( "jar", "1.0-20200102.000000-2", "20200102000000" ) );
+
+        Metadata merged = new MavenMetadataAccumulator( group, PATH ).add( first ).add( second ).build();
+
+        List<SnapshotVersion> snaps = merged.getVersioning().getSnapshotVersions();
+        assertThat( snaps.size(), equalTo( 3 ) );
+        assertThat( snaps.get( 0 ).getExtension(), equalTo( "jar" ) );
+        assertThat( snaps.get( 0 ).getUpdated(), equalTo( "20200102000000" ) );
+        assertThat( snaps.get( 1 ).getExtension(), equalTo( "pom" ) );
+        assertThat( snaps.get( 2 ).getVersion(), equalTo( "1.0-20200102.000000-2" ) );
+    }
+
+    @Test
+    public void matchesMergerWhenSnapshotVersionsDontOverlap()
+    {
+        Metadata first = snapshotMetadata( snapshotVersion( "pom", "1.0-20200101.000000-1", "20200101000000" ),
+                                           snapshotVersion( "jar", "1.0-20200101.000000-1", "20200101000000" ) );
+        Metadata second = snapshotMetadata( snapshotVersion( "jar", "1.0-20200102.000000-2", "20200102000000" ) );
+
+        List<String> old = render( mergeTheOldWay( first, second ) );
+        List<String> merged = render( new MavenMetadataAccumulator( group, PATH ).add( first ).add( second ).build() );
+
+        assertThat( merged, equalTo( old ) );
+    }
+
+    @Test
+    public void keepsOnlyNewestWhereMergerKeptDuplicates()
+    {
+        Metadata first = snapshotMetadata( snapshotVersion( "jar", "1.0-20200101.000000-1", "20200101000000" ) );
+        Metadata second = snapshotMetadata( snapshotVersion( "jar", "1.0-20200101.000000-1", "20200102000000" ) );
+
+        // MavenMetadataMerger appended every member's entry, so the same jar was listed twice
+        assertThat( render( mergeTheOldWay( first, second ) ),
+                    equalTo( Arrays.asList( "jar:1.0-20200101.000000-1:20200101000000",
+                                            "jar:1.0-20200101.000000-1:20200102000000" ) ) );
+
+        assertThat( render( new MavenMetadataAccumulator( group, PATH ).add( first ).add( second ).build() ),
+                    equalTo( Arrays.asList( "jar:1.0-20200101.000000-1:20200102000000" ) ) );
+    }
+
+    private Metadata mergeTheOldWay( final Metadata... members )
+    {
+        Metadata master = new Metadata();
+        master.setVersioning( new Versioning() );
+
+        MavenMetadataMerger merger = new MavenMetadataMerger();
+        for ( Metadata member : members )
+        {
+            merger.merge( master, member, group, PATH );
+        }
+        return master;
+    }
+
+    private static List<String> render( final Metadata md )
+    {
+        List<String> result = new ArrayList<>();
+        md.getVersioning()
+          .getSnapshotVersions()
+          .forEach( s -> result.add( s.getExtension() + ":" + s.getVersion() + ":" + s.getUpdated() ) );
+        return result;
+    }
+
+    private Metadata versionMetadata( final String... versions )
+    {
+        Metadata md = new Metadata();
+        md.setGroupId( "org.foo" );
+        md.setArtifactId( "bar" );
+
+        Versioning versioning = new Versioning();
+        versioning.setVersions( Arrays.asList( versions ) );
+        md.setVersioning( versioning );
+        return md;
+    }
+
+    private Metadata snapshotMetadata( final SnapshotVersion... snaps )
+    {
+        Metadata md = new Metadata();
+        md.setGroupId( "org.foo" );
+        md.setArtifactId( "bar" );
+        md.setVersion( "1.0-SNAPSHOT" );
+
+        Versioning versioning = new Versioning();
+        versioning.setSnapshot( new Snapshot() );
+        versioning.setSnapshotVersions( Arrays.asList( snaps ) );
+        md.setVersioning( versioning );
+        return md;
+    }
+
+    private SnapshotVersion snapshotVersion( final String extension, final String version, final String updated )
+    {
+        SnapshotVersion snap = new SnapshotVersion();
+        snap.setExtension( extension );
+        snap.setVersion( version );
+        snap.setUpdated( updated );
+        return snap;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Compares merging the maven-metadata.xml of many group members with {@link MavenMetadataMerger} (one member at a
+ * time, as group metadata was generated before) and with {@link MavenMetadataAccumulator}. Members overlap heavily,
+ * as the members of a large group usually do for a popular artifact.
+ * <p>
+ * Not run by the build; run it from the IDE, or with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.commonjava.indy.pkg.maven.content.group.MavenMetadataMergeBenchmark
+ * </pre>
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MavenMetadataMergeBenchmark
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    @Param( { "50", "300" } )
+    private int members;
+
+    @Param( { "200" } )
+    private int versionsPerMember;
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "benchmark" );
+
+    private final MavenMetadataMerger merger = new MavenMetadataMerger();
+
+    private List<Metadata> versionMembers;
+
+    private List<Metadata> snapshotMembers;
+
+    @Setup
+    public void setup()
+    {
+        versionMembers = new ArrayList<>( members );
+        snapshotMembers = new ArrayList<>( members );
+        for ( int i = 0; i < members; i++ )
+        {
+            // each member has most of the versions of the one before it, and a few newer ones
+            versionMembers.add( versionMetadata( i, versionsPerMember ) );
+            snapshotMembers.add( snapshotMetadata( i, versionsPerMember ) );
+        }
+    }
+
+    @Benchmark
+    public Metadata mergerVersions()
+    {
+        return mergeAll( versionMembers );
+    }
+
+    @Benchmark
+    public Metadata accumulatorVersions()
+    {
+        return accumulateAll( versionMembers );
+    }
+
+    @Benchmark
+    public Metadata mergerSnapshots()
+    {
+        return mergeAll( snapshotMembers );
+    }
+
+    @Benchmark
+    public Metadata accumulatorSnapshots()
+    {
+        return accumulateAll( snapshotMembers );
+    }
+
+    private Metadata mergeAll( final List<Metadata> sources )
+    {
+        Metadata master = new Metadata();
+        master.setVersioning( new Versioning() );
+        for ( Metadata src : sources )
+        {
+            merger.merge( master, src, group, PATH );
+        }
+
+        merger.sortVersions( master );
+        return master;
+    }
+
+    private Metadata accumulateAll( final List<Metadata> sources )
+    {
+        MavenMetadataAccumulator accumulator = new MavenMetadataAccumulator( group, PATH );
+        sources.forEach( accumulator::add );
+
+        Metadata master = accumulator.build();
+        merger.sortVersions( master );
+        return master;
+    }
+
+    private static Metadata versionMetadata( final int member, final int count )
+    {
+        Versioning versioning = new Versioning();
+        int first = member * 5;
+        for ( int v = first; v < first + count; v++ )
+        {
+            versioning.addVersion( "1." + v );
+        }
+        versioning.setLastUpdated( String.format( "2020%010d", member ) );
+
+        Metadata metadata = coordinates();
+        metadata.setVersioning( versioning );
+        return metadata;
+    }
+
+    private static Metadata snapshotMetadata( final int member, final int count )
+    {
+        Versioning versioning = new Versioning();
+        Snapshot snapshot = new Snapshot();
+        snapshot.setTimestamp( String.format( "20200101.%06d", member ) );
+        snapshot.setBuildNumber( member + 1 );
+        versioning.setSnapshot( snapshot );
+
+        int first = member * 5;
+        for ( int b = first; b < first + count; b++ )
+        {
+            SnapshotVersion snap = new SnapshotVersion();
+            snap.setExtension( b % 2 == 0 ? "jar" : "pom" );
+            snap.setVersion( "1.0-20200101." + String.format( "%06d", b / 2 ) + "-" + ( b / 2 + 1 ) );
+            snap.setUpdated( String.format( "20200101%06d", b / 2 ) );
+            versioning.addSnapshotVersion( snap );
+        }
+        versioning.setLastUpdated( String.format( "2020%010d", member ) );
+
+        Metadata metadata = coordinates();
+        metadata.setVersion( "1.0-SNAPSHOT" );
+        metadata.setVersioning( versioning );
+        return metadata;
+    }
+
+    private static Metadata coordinates()
+    {
+        Metadata metadata = new Metadata();
+        metadata.setGroupId( "org.foo" );
+        metadata.setArtifactId( "bar" );
+        return metadata;
+    }
+
+    public static void main( final String[] args )
+            throws RunnerException
+    {
+        new Runner( new OptionsBuilder().include( MavenMetadataMergeBenchmark.class.getSimpleName() ).build() ).run();
+    }
+}
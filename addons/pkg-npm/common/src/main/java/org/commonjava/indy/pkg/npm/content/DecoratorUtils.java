@@ -15,14 +15,15 @@
  */
 package org.commonjava.indy.pkg.npm.content;
 
-import org.commonjava.maven.galley.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 
 public class DecoratorUtils
@@ -36,56 +37,17 @@ public class DecoratorUtils
     public static String updatePackageJson( String raw, String contextURL )
             throws IOException
     {
-        final String TARBALL = "\"tarball\"";
-        StringBuilder sb = new StringBuilder();
-        int index;
-        while ( ( index = raw.indexOf( TARBALL ) ) >= 0 )
-        {
-            int colon = raw.indexOf( ":", index );
-            boolean found;
-            int indexWithTarball = index + TARBALL.length();
-            String lag;
-            if ( indexWithTarball == colon )
-            {
-                found = true; // there is no extra characters between "tarball" and :
-            }
-            else
-            {
-                lag = raw.substring( indexWithTarball, colon );
-                found = "".equals( lag.trim() ); // only whitespace between "tarball" and :
-            }
-            if ( !found )
-            {   // This means found "tarball" with no trailing colon, not the real case to replace
-                sb.append( raw, 0, indexWithTarball );
-                raw = raw.substring( indexWithTarball );
-                continue;
-            }
-
-            final String before = raw.substring( 0, colon + 1 );
-            sb.append( before );
-            raw = raw.substring( colon + 1 );
-
-            int quote = raw.indexOf( "\"" );
-            final String extra = raw.substring( 0, quote ); // blanks between : and "
-            sb.append( extra );
+        byte[] bytes = raw.getBytes( UTF_8 );
+        ByteArrayOutputStream out = new ByteArrayOutputStream( bytes.length );
 
-            int nextQuote = raw.indexOf( "\"", quote + 1 );
+        TarballUrlRewriter rewriter = new TarballUrlRewriter( contextURL );
+        rewriter.rewrite( bytes, 0, bytes.length, out );
+        rewriter.finish( out );
 
-            String url = raw.substring( quote + 1, nextQuote );
-            String path = getPath( url );
-            if ( path != null )
-            {
-                url = UrlUtils.buildUrl( contextURL, path );
-            }
-            final String value = "\"" + url + "\"";
-            sb.append( value );
-            raw = raw.substring( nextQuote + 1 );
-        }
-        sb.append( raw );
-        return sb.toString();
+        return new String( out.toByteArray(), UTF_8 );
     }
 
-    private static String getPath( String url )
+    static String getPath( String url )
     {
         URL url1;
         try
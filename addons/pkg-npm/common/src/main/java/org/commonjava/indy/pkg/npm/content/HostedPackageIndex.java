@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.npm.model.VersionMetadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link PackageMetadataGenerator} builds the package.json of hosted npm packages from, so it doesn't have to
+ * list their tarballs and read their version metadata on every generation: per package directory (e.g.
+ * <code>jquery</code> or <code>@types/jquery</code>), the tarball of each version, and the version metadata read for
+ * it so far.
+ * <p>
+ * A package is only known once its tarballs have been listed in full ({@link #startScan}); from then on the tarballs
+ * and version files stored and deleted through this node update it in place. A stored or deleted version drops its
+ * metadata, so it is read again on the next generation. A listing that overlaps a change to its package isn't kept,
+ * since it may have missed the change.
+ * <p>
+ * Version metadata is handed out as it was read, not copied; callers must not modify it.
+ * <p>
+ * The index is local to each node, and never sees the files stored or deleted through other nodes (or behind Indy's
+ * back). So a package is listed again once it is older than {@link #MAX_AGE_MILLIS}, which bounds how long a version
+ * deleted elsewhere can still be listed. The least recently used packages are evicted beyond {@link #MAX_PACKAGES}.
+ */
+final class HostedPackageIndex
+{
+    static final int MAX_PACKAGES = 1000;
+
+    static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+
+    private final long maxAgeMillis;
+
+    private final Map<Package, Known> packages = new LinkedHashMap<Package, Known>( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<Package, Known> eldest )
+        {
+            return size() > MAX_PACKAGES;
+        }
+    };
+
+    private final List<Scan> scans = new ArrayList<>();
+
+    HostedPackageIndex()
+    {
+        this( MAX_AGE_MILLIS );
+    }
+
+    HostedPackageIndex( final long maxAgeMillis )
+    {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Return the tarball path of each version of the package, or null if the package isn't known (any more) and its
+     * tarballs have to be listed.
+     */
+    synchronized Map<String, String> getTarballs( final StoreKey key, final String packageDir )
+    {
+        Known known = get( new Package( key, packageDir ) );
+        return known == null ? null : new HashMap<>( known.tarballs );
+    }
+
+    /**
+     * Return the metadata read so far for versions of the package, by version; versions not read yet (or changed
+     * since) are missing.
+     */
+    synchronized Map<String, VersionMetadata> getVersions( final StoreKey key, final String packageDir )
+    {
+        Known known = get( new Package( key, packageDir ) );
+        return known == null ? new HashMap<>() : new HashMap<>( known.versions );
+    }
+
+    /**
+     * Start a full listing of the tarballs of the package. Pass the result to {@link #tarballsListed}, and always end
+     * with {@link #endScan}.
+     */
+    synchronized Scan startScan( final StoreKey key, final String packageDir )
+    {
+        Scan scan = new Scan( new Package( key, packageDir ) );
+        scans.add( scan );
+        return scan;
+    }
+
+    /**
+     * @param tarPaths paths of the tarballs of the package, e.g. <code>jquery/-/jquery-1.0.0.tgz</code>
+     */
+    synchronized void tarballsListed( final Scan scan, final Collection<String> tarPaths )
+    {
+        if ( scans.remove( scan ) && !scan.changed )
+        {
+            Known known = new Known();
+            tarPaths.stream()
+                    .map( PackagePath::new )
+                    .filter( p -> p.getVersion() != null )
+                    .forEach( p -> known.tarballs.put( p.getVersion(), p.getTarPath() ) );
+
+            // metadata read before is still good for the versions that are still there
+            Known previous = packages.get( scan.pkg );
+            if ( previous != null )
+            {
+                previous.versions.forEach( ( version, metadata ) -> {
+                    if ( known.tarballs.containsKey( version ) )
+                    {
+                        known.versions.put( version, metadata );
+                    }
+                } );
+            }
+            packages.put( scan.pkg, known );
+        }
+    }
+
+    synchronized void endScan( final Scan scan )
+    {
+        scans.remove( scan );
+    }
+
+    /**
+     * Keep the metadata read for a version of a known package.
+     */
+    synchronized void versionFound( final StoreKey key, final String packageDir, final String version,
+                                    final VersionMetadata versionMetadata )
+    {
+        Known known = packages.get( new Package( key, packageDir ) );
+        if ( known != null && known.tarballs.containsKey( version ) )
+        {
+            known.versions.put( version, versionMetadata );
+        }
+    }
+
+    /**
+     * A tarball or version metadata file of the package was stored: a tarball adds its version, and either way the
+     * metadata of the version is read again.
+     */
+    synchronized void versionStored( final StoreKey key, final String packageDir, final String version,
+                                     final String tarPath )
+    {
+        Package pkg = new Package( key, packageDir );
+        changed( pkg );
+
+        Known known = packages.get( pkg );
+        if ( known != null )
+        {
+            if ( tarPath != null )
+            {
+                known.tarballs.put( version, tarPath );
+            }
+            known.versions.remove( version );
+        }
+    }
+
+    /**
+     * A tarball or version metadata file of the package was deleted: a tarball removes its version, and either way
+     * the metadata of the version is read again.
+     */
+    synchronized void versionDeleted( final StoreKey key, final String packageDir, final String version,
+                                      final boolean tarball )
+    {
+        Package pkg = new Package( key, packageDir );
+        changed( pkg );
+
+        Known known = packages.get( pkg );
+        if ( known != null )
+        {
+            if ( tarball )
+            {
+                known.tarballs.remove( version );
+            }
+            known.versions.remove( version );
+        }
+    }
+
+    private void changed( final Package pkg )
+    {
+        scans.stream().filter( s -> s.pkg.equals( pkg ) ).forEach( s -> s.changed = true );
+    }
+
+    private Known get( final Package pkg )
+    {
+        Known known = packages.get( pkg );
+        if ( known != null && System.currentTimeMillis() - known.listed > maxAgeMillis )
+        {
+            packages.remove( pkg );
+            return null;
+        }
+        return known;
+    }
+
+    static final class Scan
+    {
+        private final Package pkg;
+
+        private boolean changed;
+
+        private Scan( final Package pkg )
+        {
+            this.pkg = pkg;
+        }
+    }
+
+    private static final class Known
+    {
+        // version -> tarball path
+        private final Map<String, String> tarballs = new HashMap<>();
+
+        // version -> metadata, for the versions read so far
+        private final Map<String, VersionMetadata> versions = new HashMap<>();
+
+        private final long listed = System.currentTimeMillis();
+    }
+
+    private static final class Package
+    {
+        private final StoreKey key;
+
+        private final String dir;
+
+        private Package( final StoreKey key, final String dir )
+        {
+            this.key = key;
+            this.dir = trim( dir );
+        }
+
+        private static String trim( final String path )
+        {
+            String result = path;
+            while ( result.startsWith( "/" ) )
+            {
+                result = result.substring( 1 );
+            }
+            while ( result.endsWith( "/" ) )
+            {
+                result = result.substring( 0, result.length() - 1 );
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            Package that = (Package) o;
+            return Objects.equals( key, that.key ) && Objects.equals( dir, that.dir );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( key, dir );
+        }
+    }
+}
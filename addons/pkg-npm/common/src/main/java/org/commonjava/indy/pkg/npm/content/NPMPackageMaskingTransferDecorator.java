@@ -34,10 +34,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
-import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.jsoup.helper.StringUtil.isBlank;
 
@@ -90,105 +88,132 @@ public class NPMPackageMaskingTransferDecorator
         return new PackageMaskingInputStream( stream, contextURL, metricsManager );
     }
 
+    /**
+     * Rewrites the tarball URLs chunk by chunk as the metadata is read, so only a chunk (plus the tarball URL being
+     * rewritten) is held in memory at a time. The timer covers the whole document, from the first read to the end of
+     * the stream (or its close, if that comes first).
+     */
     private static class PackageMaskingInputStream
             extends IdempotentCloseInputStream
     {
         private static final String TIMER = "io.npm.metadata.in.filter";
 
-        final Logger logger = LoggerFactory.getLogger( this.getClass() );
+        private static final int SIZE = 16 * 1024;
 
-        int position;
+        private final DefaultMetricsManager metricsManager;
 
-        private String contextURL;
+        private final TarballUrlRewriter rewriter;
 
-        private DefaultMetricsManager metricsManager;
+        private final byte[] buffer = new byte[SIZE];
 
-        private byte[] bytes;
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream( SIZE );
 
-        boolean masked;
+        private byte[] bytes = new byte[0];
 
-        private static final int SIZE = 1024;
+        private int position;
+
+        private boolean eof;
+
+        private Timer.Context timer;
 
         private PackageMaskingInputStream( final InputStream stream, final String contextURL,
                                            final DefaultMetricsManager metricsManager )
         {
             super( stream );
-            this.contextURL = contextURL;
             this.metricsManager = metricsManager;
+            this.rewriter = new TarballUrlRewriter( contextURL );
         }
 
         @Override
         public synchronized int read() throws IOException
         {
-            if ( !masked )
+            if ( !fill() )
             {
-                mask( contextURL );
-            }
-            if ( position < bytes.length )
-            {
-                return bytes[position++];
+                return -1;
             }
-            return -1;
+            return bytes[position++] & 0xff;
         }
 
         @Override
         public synchronized int read( byte[] b, int off, int len ) throws IOException
         {
-            if ( !masked )
+            if ( len == 0 )
             {
-                mask( contextURL );
+                return 0;
             }
-            if ( position >= bytes.length )
+            if ( !fill() )
             {
                 return -1;
             }
-            int read = 0;
-            for ( int i = 0; i < len; i++ )
+            int read = Math.min( len, bytes.length - position );
+            System.arraycopy( bytes, position, b, off, read );
+            position += read;
+            return read;
+        }
+
+        @Override
+        public synchronized int available()
+        {
+            return bytes.length - position;
+        }
+
+        /**
+         * Make sure there are rewritten bytes to return, reading and rewriting the next chunk if needed.
+         *
+         * @return false at the end of the stream
+         */
+        private boolean fill() throws IOException
+        {
+            while ( position >= bytes.length )
             {
-                if ( position < bytes.length )
+                if ( eof )
+                {
+                    return false;
+                }
+
+                if ( timer == null && metricsManager != null )
+                {
+                    timer = metricsManager.startTimer( TIMER );
+                }
+
+                out.reset();
+                int read = super.read( buffer, 0, buffer.length );
+                if ( read < 0 )
                 {
-                    b[off + i] = bytes[position++];
-                    read++;
+                    eof = true;
+                    rewriter.finish( out );
+                    stopTimer();
                 }
                 else
                 {
-                    break;
+                    rewriter.rewrite( buffer, 0, read, out );
                 }
+
+                bytes = out.toByteArray();
+                position = 0;
             }
-            return read;
+            return true;
         }
 
-        private void mask( String contextURL ) throws IOException
+        @Override
+        public synchronized void close() throws IOException
         {
-            Timer.Context timer = metricsManager == null ? null : metricsManager.startTimer( TIMER );
             try
             {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                int read;
-                {
-                    byte[] buffer = new byte[SIZE];
-                    while ( ( read = super.read(buffer, 0, buffer.length) ) >= 0 )
-                    {
-                        bos.write( buffer, 0, read );
-                    }
-                }
-                byte[] rawBytes = bos.toByteArray();
-                String raw = new String( rawBytes, UTF_8 );
-
-                logger.trace( "Mask for raw:\n{}", raw );
-
-                String s = updatePackageJson( raw, contextURL );
-
-                logger.trace( "Masked:\n{}", s );
-                bytes = s.getBytes();
-                masked = true;
+                super.close();
             }
             finally
             {
-                if ( timer != null )
-                {
-                    metricsManager.stopTimer( TIMER );
-                }
+                stopTimer();
+            }
+        }
+
+        private void stopTimer()
+        {
+            if ( timer != null )
+            {
+                timer.stop();
+                timer = null;
             }
         }
     }
@@ -51,14 +51,18 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.commonjava.indy.data.StoreDataManager.IGNORE_READONLY;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
 import static org.commonjava.maven.galley.util.PathUtils.parentPath;
@@ -82,6 +86,9 @@ public class PackageMetadataGenerator
     @Inject
     private DownloadManager downloadManager;
 
+    // hosted packages only, and only this generator reads and updates it
+    private final HostedPackageIndex versionIndex = new HostedPackageIndex();
+
     protected PackageMetadataGenerator()
     {
     }
@@ -210,34 +217,59 @@ public class PackageMetadataGenerator
                                        .getParent()
                                        .toString();
 
-        List<StoreResource> firstLevel;
-        try
+        // for hosted stores, the tarballs listed by an earlier generation (and kept up to date since) are not listed again
+        final boolean indexed = StoreType.hosted == store.getKey().getType();
+        final Map<String, String> known = indexed ? versionIndex.getTarballs( store.getKey(), parentPath ) : null;
+
+        List<String> tarPaths;
+        if ( known != null )
         {
-            logger.debug( "List first level resources(package tgz list) from path: {}/-", parentPath );
-            firstLevel =fileManager.listRaw( store, normalize( parentPath, "-" ) );
+            logger.debug( "Package tgz list of: {} in: {} is indexed", parentPath, store.getKey() );
+            tarPaths = new ArrayList<>( known.values() );
         }
-        catch ( final IndyWorkflowException e )
+        else
         {
-            logger.error( String.format( "SKIP: Failed to list .tgz from listing of directory contents for: %s under path: %s/-",
-                                         store, parentPath ), e );
-            return null;
+            final HostedPackageIndex.Scan scan = indexed ? versionIndex.startScan( store.getKey(), parentPath ) : null;
+            try
+            {
+                logger.debug( "List first level resources(package tgz list) from path: {}/-", parentPath );
+                List<StoreResource> firstLevel = fileManager.listRaw( store, normalize( parentPath, "-" ) );
+                tarPaths = firstLevel.stream().map( StoreResource::getPath ).collect( Collectors.toList() );
+                if ( scan != null )
+                {
+                    versionIndex.tarballsListed( scan, tarPaths );
+                }
+            }
+            catch ( final IndyWorkflowException e )
+            {
+                logger.error( String.format( "SKIP: Failed to list .tgz from listing of directory contents for: %s under path: %s/-",
+                                             store, parentPath ), e );
+                return null;
+            }
+            finally
+            {
+                if ( scan != null )
+                {
+                    versionIndex.endScan( scan );
+                }
+            }
         }
 
         logger.info( "Generating package metadata package.json in store: {}", store.getKey() );
-        generated = writePackageMetadata( firstLevel, store, storagePath, eventMetadata );
+        generated = writePackageMetadata( tarPaths, store, storagePath, eventMetadata );
 
         logger.debug( "[Result] Generating package.json for store: {}, result: {}", store.getKey(), generated );
         return generated ? fileManager.getTransfer( store, path ) : null;
     }
 
-    private boolean writePackageMetadata( List<StoreResource> firstLevelFiles, ArtifactStore store, String path, EventMetadata eventMetadata ) throws IndyWorkflowException
+    private boolean writePackageMetadata( List<String> tarPaths, ArtifactStore store, String path, EventMetadata eventMetadata ) throws IndyWorkflowException
     {
-        logger.debug( "writePackageMetadata, firstLevelFiles:{}, store:{}", firstLevelFiles, store.getKey() );
+        logger.debug( "writePackageMetadata, tarPaths:{}, store:{}", tarPaths, store.getKey() );
 
         // Parse the path of the tar (e.g.: jquery/-/jquery-7.6.1.tgz or @types/jquery/-/jquery-2.2.3.tgz)
         // to get the version, then try to get the version metadata by the path (@scoped/)package/version
-        List<PackagePath> packagePaths = firstLevelFiles.stream()
-                       .map( (res) -> new PackagePath( res.getPath() ) )
+        List<PackagePath> packagePaths = tarPaths.stream()
+                       .map( PackagePath::new )
                        .sorted( Comparator.comparing( PackagePath::getVersion ) )
                        .collect( Collectors.toList());
 
@@ -250,94 +282,63 @@ public class PackageMetadataGenerator
 
         final PackageMetadata packageMetadata = new PackageMetadata();
         final IndyObjectMapper mapper = new IndyObjectMapper( true );
-        List<String> keywords = new ArrayList<>(  );
+        Set<String> keywords = new LinkedHashSet<>();
 
         DistTag distTags = new DistTag();
         Map<String, VersionMetadata> versions = new LinkedHashMap<>(  );
 
         PackagePath latest = packagePaths.get( packagePaths.size() - 1 );
 
+        // for hosted stores, versions read by an earlier generation (and not changed since) are not read again
+        final String packageDir = Paths.get( path ).getParent().toString();
+        final Map<String, VersionMetadata> indexed = StoreType.hosted == store.getKey().getType() ?
+                versionIndex.getVersions( store.getKey(), packageDir ) :
+                null;
+
         for ( PackagePath packagePath : packagePaths )
         {
-            String versionPath = packagePath.getVersionPath();
-            logger.debug( "Retrieving the version file {} from store {}", versionPath, store );
-            Transfer metaFile = fileManager.retrieveRaw( store, versionPath, eventMetadata );
-            if ( metaFile == null )
+            VersionMetadata versionMetadata = indexed == null ? null : indexed.get( packagePath.getVersion() );
+            if ( versionMetadata == null )
             {
-                // The metadata file (@scoped/)package/version for the specific version is missing, still need to extract it from tarball
-                String tarPath = packagePath.getTarPath();
-                Transfer tar = fileManager.retrieveRaw( store, tarPath, eventMetadata );
-                if ( tar == null )
+                versionMetadata = readVersionMetadata( store, packagePath, mapper, eventMetadata );
+                if ( versionMetadata == null )
                 {
-                    logger.warn( "Tarball file {} is missing in the store {}.", tarPath, store.getKey() );
                     continue;
                 }
-                logger.info( "Extracting package metadata package.json from tarball {} and store it in {}/{}", tarPath, store.getKey(), versionPath );
-                metaFile = extractMetaFileFromTarballAndStore( store, versionPath, tar );
 
-                if ( metaFile == null )
+                if ( indexed != null )
                 {
-                    logger.warn( "Package metadata is missing in tarball {}/{}.", store.getKey(), tarPath );
-                    continue;
+                    versionIndex.versionFound( store.getKey(), packageDir, packagePath.getVersion(),
+                                               versionMetadata );
                 }
-
             }
 
-            try ( InputStream input = metaFile.openInputStream() )
-            {
-                VersionMetadata versionMetadata = mapper.readValue( input, VersionMetadata.class );
+            versions.put( versionMetadata.getVersion(), versionMetadata );
 
-                if ( versionMetadata == null )
-                {
-                    continue;
-                }
-
-                versions.put( versionMetadata.getVersion(), versionMetadata );
-
-                if ( versionMetadata.getKeywords() != null )
-                {
-                    for ( String keyword : versionMetadata.getKeywords() )
-                    {
-                        if ( !keywords.contains( keyword ) )
-                        {
-                            keywords.add( keyword );
-                        }
-                    }
-                }
-
-                // Set couple of attributes based on the latest version metadata
-                if ( packagePath.getVersion().equals( latest.getVersion() ) )
-                {
-                    packageMetadata.setName( versionMetadata.getName() );
-                    packageMetadata.setDescription( versionMetadata.getDescription() );
-                    packageMetadata.setAuthor( versionMetadata.getAuthor() );
-                    if ( versionMetadata.getLicense() != null )
-                    {
-                        packageMetadata.setLicense( versionMetadata.getLicense() );
-                    }
-                    packageMetadata.setRepository( versionMetadata.getRepository() );
-                    packageMetadata.setBugs( versionMetadata.getBugs() );
-                    distTags.setLatest( versionMetadata.getVersion() );
-                }
+            if ( versionMetadata.getKeywords() != null )
+            {
+                keywords.addAll( versionMetadata.getKeywords() );
+            }
 
-                // Generate tarball url if missing
-                if ( versionMetadata.getDist() == null )
+            // Set couple of attributes based on the latest version metadata
+            if ( packagePath.getVersion().equals( latest.getVersion() ) )
+            {
+                packageMetadata.setName( versionMetadata.getName() );
+                packageMetadata.setDescription( versionMetadata.getDescription() );
+                packageMetadata.setAuthor( versionMetadata.getAuthor() );
+                if ( versionMetadata.getLicense() != null )
                 {
-                    String tarball = "http://indy/" + packagePath.getTarPath(); // here we use mock host. indy will amend it with the right hostname
-                    //logger.debug( "Generate dist tarball: {}", tarball );
-                    versionMetadata.setDist( new Dist( null, tarball ) );
+                    packageMetadata.setLicense( versionMetadata.getLicense() );
                 }
-            }
-            catch ( IOException e )
-            {
-                logger.error( "Get the version metadata error from path {}", versionPath, e );
-                throw new IndyWorkflowException( "Get the version metadata error from path {}", versionPath );
+                packageMetadata.setRepository( versionMetadata.getRepository() );
+                packageMetadata.setBugs( versionMetadata.getBugs() );
+                distTags.setLatest( versionMetadata.getVersion() );
             }
         }
 
         if ( !keywords.isEmpty() )
         {
-            packageMetadata.setKeywords( keywords );
+            packageMetadata.setKeywords( new ArrayList<>( keywords ) );
         }
 
         versions = sortVersions( versions );
@@ -364,6 +365,104 @@ public class PackageMetadataGenerator
         return true;
     }
 
+    /**
+     * Read the metadata of one version from its (@scoped/)package/version file, extracting that file from the tarball
+     * first if it's missing. Returns null if neither is available.
+     */
+    private VersionMetadata readVersionMetadata( ArtifactStore store, PackagePath packagePath, IndyObjectMapper mapper,
+                                                 EventMetadata eventMetadata )
+                    throws IndyWorkflowException
+    {
+        String versionPath = packagePath.getVersionPath();
+        logger.debug( "Retrieving the version file {} from store {}", versionPath, store );
+        Transfer metaFile = fileManager.retrieveRaw( store, versionPath, eventMetadata );
+        if ( metaFile == null )
+        {
+            // The metadata file (@scoped/)package/version for the specific version is missing, still need to extract it from tarball
+            String tarPath = packagePath.getTarPath();
+            Transfer tar = fileManager.retrieveRaw( store, tarPath, eventMetadata );
+            if ( tar == null )
+            {
+                logger.warn( "Tarball file {} is missing in the store {}.", tarPath, store.getKey() );
+                return null;
+            }
+            logger.info( "Extracting package metadata package.json from tarball {} and store it in {}/{}", tarPath, store.getKey(), versionPath );
+            metaFile = extractMetaFileFromTarballAndStore( store, versionPath, tar );
+
+            if ( metaFile == null )
+            {
+                logger.warn( "Package metadata is missing in tarball {}/{}.", store.getKey(), tarPath );
+                return null;
+            }
+
+        }
+
+        try ( InputStream input = metaFile.openInputStream() )
+        {
+            VersionMetadata versionMetadata = mapper.readValue( input, VersionMetadata.class );
+
+            // Generate tarball url if missing
+            if ( versionMetadata != null && versionMetadata.getDist() == null )
+            {
+                String tarball = "http://indy/" + packagePath.getTarPath(); // here we use mock host. indy will amend it with the right hostname
+                //logger.debug( "Generate dist tarball: {}", tarball );
+                versionMetadata.setDist( new Dist( null, tarball ) );
+            }
+
+            return versionMetadata;
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Get the version metadata error from path {}", versionPath, e );
+            throw new IndyWorkflowException( "Get the version metadata error from path {}", versionPath );
+        }
+    }
+
+    @Override
+    protected void contentStored( final ArtifactStore store, final String path, final Transfer result,
+                                  final EventMetadata eventMetadata )
+    {
+        versionChanged( store, path, false );
+    }
+
+    @Override
+    protected void contentDeleted( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
+    {
+        versionChanged( store, path, true );
+    }
+
+    /**
+     * A tarball or version metadata file of a hosted package was stored or deleted; update the tarballs known for
+     * the package, and make sure the version is read again.
+     */
+    private void versionChanged( final ArtifactStore store, final String path, final boolean deleted )
+    {
+        if ( StoreType.hosted != store.getKey().getType() || path.contains( NPM_METADATA_NAME ) )
+        {
+            return;
+        }
+
+        // only tarballs (pkg/-/pkg-1.0.tgz) and version files (pkg/1.0) name a version
+        if ( path.contains( "/-/" ) && !path.endsWith( ".tgz" ) )
+        {
+            return;
+        }
+
+        PackagePath.parse( path ).filter( p -> p.getVersion() != null ).ifPresent( p -> {
+            String packageDir = p.isScoped() ? normalize( p.getScopedName(), p.getPackageName() ) : p.getPackageName();
+            boolean tarball = path.endsWith( ".tgz" );
+            if ( deleted )
+            {
+                versionIndex.versionDeleted( store.getKey(), packageDir, p.getVersion(), tarball );
+            }
+            else
+            {
+                versionIndex.versionStored( store.getKey(), packageDir, p.getVersion(),
+                                            tarball ? p.getTarPath() : null );
+            }
+        } );
+    }
+
     private Map<String, VersionMetadata> sortVersions( Map<String, VersionMetadata> versions )
     {
         final Map<String, VersionMetadata> sorted = new LinkedHashMap<>( versions.size() );
@@ -410,6 +509,16 @@ public class PackageMetadataGenerator
         return path.endsWith( NPM_METADATA_NAME );
     }
 
+    /**
+     * Only npm stores. Paths are not filtered by suffix, since package requests like <code>/jquery</code> only map to
+     * a package.json by their storage path.
+     */
+    @Override
+    public Set<String> getHandledPackageTypes()
+    {
+        return Collections.singleton( PKG_TYPE_NPM );
+    }
+
     @Override
     protected String getMergedMetadataName()
     {
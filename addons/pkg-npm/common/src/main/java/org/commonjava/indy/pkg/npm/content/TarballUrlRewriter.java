@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.commonjava.maven.galley.util.UrlUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Rewrites the values of <code>"tarball"</code> keys in package metadata JSON to point at the given context URL, as
+ * the bytes stream through. Everything else is passed through unchanged. It only tracks enough JSON syntax (strings
+ * and their escapes) to recognize the keys, and only buffers the tarball values themselves, so memory use doesn't
+ * depend on the size of the document.
+ * <p>
+ * Values longer than {@link #MAX_VALUE_LENGTH} bytes are passed through as they are.
+ */
+final class TarballUrlRewriter
+{
+    static final int MAX_VALUE_LENGTH = 8 * 1024;
+
+    private static final byte[] TARBALL = "tarball".getBytes( StandardCharsets.US_ASCII );
+
+    private enum State
+    {
+        OUTSIDE, STRING, AFTER_KEY, AFTER_COLON, VALUE, LONG_VALUE
+    }
+
+    private final String contextURL;
+
+    private State state = State.OUTSIDE;
+
+    private boolean escaped;
+
+    // how many bytes of the current string matched "tarball" so far; -1 once it can't match any more
+    private int keyMatch;
+
+    private final ByteArrayOutputStream value = new ByteArrayOutputStream();
+
+    TarballUrlRewriter( final String contextURL )
+    {
+        this.contextURL = contextURL;
+    }
+
+    /**
+     * Process the next chunk of the document, writing the rewritten bytes to the output.
+     */
+    void rewrite( final byte[] b, final int off, final int len, final ByteArrayOutputStream out )
+            throws MalformedURLException
+    {
+        for ( int i = off; i < off + len; i++ )
+        {
+            process( b[i], out );
+        }
+    }
+
+    /**
+     * Flush whatever is still buffered at the end of the document (only possible if it is truncated).
+     */
+    void finish( final ByteArrayOutputStream out )
+    {
+        if ( state == State.VALUE )
+        {
+            flushValue( out );
+        }
+        state = State.OUTSIDE;
+    }
+
+    private void process( final byte c, final ByteArrayOutputStream out )
+            throws MalformedURLException
+    {
+        switch ( state )
+        {
+            case STRING:
+            {
+                out.write( c );
+                if ( escaped )
+                {
+                    escaped = false;
+                    keyMatch = -1;
+                }
+                else if ( c == '\\' )
+                {
+                    escaped = true;
+                    keyMatch = -1;
+                }
+                else if ( c == '"' )
+                {
+                    state = keyMatch == TARBALL.length ? State.AFTER_KEY : State.OUTSIDE;
+                }
+                else if ( keyMatch >= 0 && keyMatch < TARBALL.length && TARBALL[keyMatch] == c )
+                {
+                    keyMatch++;
+                }
+                else
+                {
+                    keyMatch = -1;
+                }
+                break;
+            }
+            case AFTER_KEY:
+            {
+                if ( c == ':' )
+                {
+                    out.write( c );
+                    state = State.AFTER_COLON;
+                }
+                else if ( isWhitespace( c ) )
+                {
+                    out.write( c );
+                }
+                else
+                {
+                    outside( c, out );
+                }
+                break;
+            }
+            case AFTER_COLON:
+            {
+                if ( c == '"' )
+                {
+                    out.write( c );
+                    value.reset();
+                    escaped = false;
+                    state = State.VALUE;
+                }
+                else if ( isWhitespace( c ) )
+                {
+                    out.write( c );
+                }
+                else
+                {
+                    outside( c, out );
+                }
+                break;
+            }
+            case VALUE:
+            {
+                if ( escaped )
+                {
+                    escaped = false;
+                    value.write( c );
+                }
+                else if ( c == '\\' )
+                {
+                    escaped = true;
+                    value.write( c );
+                }
+                else if ( c == '"' )
+                {
+                    writeUrl( out );
+                    out.write( c );
+                    state = State.OUTSIDE;
+                }
+                else
+                {
+                    value.write( c );
+                    if ( value.size() > MAX_VALUE_LENGTH )
+                    {
+                        // not a URL we'd want to rewrite; pass the rest of the string through
+                        flushValue( out );
+                        state = State.LONG_VALUE;
+                    }
+                }
+                break;
+            }
+            case LONG_VALUE:
+            {
+                out.write( c );
+                if ( escaped )
+                {
+                    escaped = false;
+                }
+                else if ( c == '\\' )
+                {
+                    escaped = true;
+                }
+                else if ( c == '"' )
+                {
+                    state = State.OUTSIDE;
+                }
+                break;
+            }
+            default:
+            {
+                outside( c, out );
+            }
+        }
+    }
+
+    private void outside( final byte c, final ByteArrayOutputStream out )
+    {
+        out.write( c );
+        state = State.OUTSIDE;
+        if ( c == '"' )
+        {
+            escaped = false;
+            keyMatch = 0;
+            state = State.STRING;
+        }
+    }
+
+    private void writeUrl( final ByteArrayOutputStream out )
+            throws MalformedURLException
+    {
+        String url = new String( value.toByteArray(), StandardCharsets.UTF_8 );
+        value.reset();
+
+        String path = DecoratorUtils.getPath( url );
+        if ( path != null )
+        {
+            url = UrlUtils.buildUrl( contextURL, path );
+        }
+
+        byte[] bytes = url.getBytes( StandardCharsets.UTF_8 );
+        out.write( bytes, 0, bytes.length );
+    }
+
+    private void flushValue( final ByteArrayOutputStream out )
+    {
+        byte[] bytes = value.toByteArray();
+        out.write( bytes, 0, bytes.length );
+        value.reset();
+    }
+
+    private static boolean isWhitespace( final byte c )
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+}
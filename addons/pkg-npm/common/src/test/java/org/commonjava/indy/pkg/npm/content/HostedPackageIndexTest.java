@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.npm.model.VersionMetadata;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class HostedPackageIndexTest
+{
+    private static final StoreKey KEY = new StoreKey( NPM_PKG_KEY, hosted, "test" );
+
+    private static final String TAR_1_0 = "jquery/-/jquery-1.0.0.tgz";
+
+    private static final String TAR_1_1 = "jquery/-/jquery-1.1.0.tgz";
+
+    private final HostedPackageIndex index = new HostedPackageIndex();
+
+    @Test
+    public void packageIsKnownOnceListed()
+    {
+        assertThat( index.getTarballs( KEY, "jquery" ), nullValue() );
+
+        list( "/jquery/", TAR_1_0, TAR_1_1 );
+
+        assertThat( index.getTarballs( KEY, "jquery" ).get( "1.1.0" ), equalTo( TAR_1_1 ) );
+        assertThat( index.getTarballs( KEY, "@types/jquery" ), nullValue() );
+        assertThat( index.getTarballs( new StoreKey( NPM_PKG_KEY, hosted, "other" ), "jquery" ), nullValue() );
+    }
+
+    @Test
+    public void metadataIsKeptForListedVersions()
+    {
+        list( "jquery", TAR_1_0 );
+
+        VersionMetadata found = new VersionMetadata( "jquery", "1.0.0" );
+        index.versionFound( KEY, "jquery", "1.0.0", found );
+        index.versionFound( KEY, "jquery", "1.1.0", new VersionMetadata( "jquery", "1.1.0" ) );
+        index.versionFound( KEY, "other", "1.0.0", new VersionMetadata( "other", "1.0.0" ) );
+
+        assertThat( index.getVersions( KEY, "jquery" ).get( "1.0.0" ), sameInstance( found ) );
+        assertThat( index.getVersions( KEY, "jquery" ).keySet(), equalTo( Collections.singleton( "1.0.0" ) ) );
+        assertThat( index.getVersions( KEY, "other" ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void storedAndDeletedFilesUpdateThePackage()
+    {
+        list( "jquery", TAR_1_0 );
+        index.versionFound( KEY, "jquery", "1.0.0", new VersionMetadata( "jquery", "1.0.0" ) );
+
+        // a new version file of a known version: the tarball stays, the metadata is read again
+        index.versionStored( KEY, "jquery", "1.0.0", null );
+        assertThat( index.getTarballs( KEY, "jquery" ).get( "1.0.0" ), equalTo( TAR_1_0 ) );
+        assertThat( index.getVersions( KEY, "jquery" ).get( "1.0.0" ), nullValue() );
+
+        index.versionStored( KEY, "jquery", "1.1.0", TAR_1_1 );
+        assertThat( index.getTarballs( KEY, "jquery" ).get( "1.1.0" ), equalTo( TAR_1_1 ) );
+
+        index.versionFound( KEY, "jquery", "1.0.0", new VersionMetadata( "jquery", "1.0.0" ) );
+        index.versionDeleted( KEY, "jquery", "1.0.0", false );
+        assertThat( index.getTarballs( KEY, "jquery" ).get( "1.0.0" ), notNullValue() );
+        assertThat( index.getVersions( KEY, "jquery" ).get( "1.0.0" ), nullValue() );
+
+        index.versionDeleted( KEY, "jquery", "1.0.0", true );
+        assertThat( index.getTarballs( KEY, "jquery" ).keySet(), equalTo( Collections.singleton( "1.1.0" ) ) );
+    }
+
+    @Test
+    public void listingThatOverlapsAChangeIsNotKept()
+    {
+        HostedPackageIndex.Scan scan = index.startScan( KEY, "jquery" );
+        index.versionStored( KEY, "jquery", "1.1.0", TAR_1_1 );
+        index.tarballsListed( scan, Collections.singletonList( TAR_1_0 ) );
+        index.endScan( scan );
+
+        assertThat( index.getTarballs( KEY, "jquery" ), nullValue() );
+    }
+
+    @Test
+    public void relistingKeepsMetadataOfVersionsStillThere()
+    {
+        list( "jquery", TAR_1_0, TAR_1_1 );
+        index.versionFound( KEY, "jquery", "1.0.0", new VersionMetadata( "jquery", "1.0.0" ) );
+        index.versionFound( KEY, "jquery", "1.1.0", new VersionMetadata( "jquery", "1.1.0" ) );
+
+        list( "jquery", TAR_1_1 );
+
+        assertThat( index.getVersions( KEY, "jquery" ).keySet(), equalTo( Collections.singleton( "1.1.0" ) ) );
+    }
+
+    @Test
+    public void oldPackagesAreListedAgain()
+    {
+        HostedPackageIndex expiring = new HostedPackageIndex( -1 );
+        HostedPackageIndex.Scan scan = expiring.startScan( KEY, "jquery" );
+        expiring.tarballsListed( scan, Collections.singletonList( TAR_1_0 ) );
+        expiring.endScan( scan );
+
+        assertThat( expiring.getTarballs( KEY, "jquery" ), nullValue() );
+    }
+
+    private void list( final String packageDir, final String... tarPaths )
+    {
+        HostedPackageIndex.Scan scan = index.startScan( KEY, packageDir );
+        try
+        {
+            index.tarballsListed( scan, Arrays.asList( tarPaths ) );
+        }
+        finally
+        {
+            index.endScan( scan );
+        }
+    }
+}
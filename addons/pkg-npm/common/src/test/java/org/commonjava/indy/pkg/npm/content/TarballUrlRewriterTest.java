@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class TarballUrlRewriterTest
+{
+    private static final String CONTEXT_URL = "http://indy.psi.redhat.com/api/content/group/a";
+
+    @Test
+    public void rewriteAcrossChunkBoundaries() throws Exception
+    {
+        String raw = "{\"dist\":{\"shasum\":\"abc\",\"tarball\" : \"http://registry.npmjs.org/jquery/-/jquery-1.5.1.tgz\"}}";
+        String expected = "{\"dist\":{\"shasum\":\"abc\",\"tarball\" : \"" + CONTEXT_URL
+                        + "/jquery/-/jquery-1.5.1.tgz\"}}";
+
+        byte[] bytes = raw.getBytes( UTF_8 );
+        for ( int chunk = 1; chunk < bytes.length; chunk++ )
+        {
+            assertEquals( "chunk size: " + chunk, expected, rewrite( bytes, chunk ) );
+        }
+    }
+
+    @Test
+    public void leaveOtherStringsAlone() throws Exception
+    {
+        String raw = "{\"description\":\"the \\\"tarball\\\": \\\"http://x/y.tgz\\\" key\",\"tarballs\":\"http://x/z.tgz\","
+                        + "\"name\":\"t\u00e4r\"}";
+
+        assertEquals( raw, rewrite( raw.getBytes( UTF_8 ), 3 ) );
+    }
+
+    @Test
+    public void passLongValueThrough() throws Exception
+    {
+        StringBuilder sb = new StringBuilder( "{\"tarball\":\"http://registry.npmjs.org/" );
+        for ( int i = 0; i < TarballUrlRewriter.MAX_VALUE_LENGTH; i++ )
+        {
+            sb.append( 'a' );
+        }
+        String raw = sb.append( ".tgz\"}" ).toString();
+
+        assertEquals( raw, rewrite( raw.getBytes( UTF_8 ), 1000 ) );
+    }
+
+    private String rewrite( final byte[] bytes, final int chunk ) throws Exception
+    {
+        TarballUrlRewriter rewriter = new TarballUrlRewriter( CONTEXT_URL );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for ( int off = 0; off < bytes.length; off += chunk )
+        {
+            rewriter.rewrite( bytes, off, Math.min( chunk, bytes.length - off ), out );
+        }
+        rewriter.finish( out );
+        return new String( out.toByteArray(), UTF_8 );
+    }
+}
@@ -48,6 +48,7 @@ import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -64,6 +65,7 @@ import java.util.function.Supplier;
 import static java.lang.Thread.sleep;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.commonjava.indy.IndyRequestConstants.TRANSFER_SIZE;
+import static org.commonjava.indy.util.ContentUtils.getLocalFile;
 import static org.commonjava.o11yphant.trace.TraceManager.addFieldToActiveSpan;
 
 @ApplicationScoped
@@ -357,8 +359,12 @@ public class NPMContentAccessHandler
                         InputStream in = openInputStreamSafe( item, eventMetadata );
 
                         addFieldToActiveSpan( TRANSFER_SIZE, item.length() );
-                        final Response.ResponseBuilder builder =
-                                Response.ok( new TransferStreamingOutput( in, metricsManager, metricsConfig ) );
+
+                        // decorated content (e.g. package.json, rewritten by the masking decorator) goes through the stream
+                        File localFile = handleLocking ? getLocalFile( item, eventMetadata ) : null;
+
+                        final Response.ResponseBuilder builder = Response.ok(
+                                new TransferStreamingOutput( in, localFile, metricsManager, metricsConfig ) );
 
                         responseHelper.setInfoHeaders( builder, item, sk, path, false, getNPMContentType( path ),
                                         contentController.getHttpMetadata( item ) );
@@ -21,63 +21,81 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletOutputStream;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
- * This output stream will cache the original stream and do replacing based on the passed
- * in candidates in content of original stream during flushing
+ * This output stream does the replacing based on the passed in candidates while the content of the original stream
+ * passes through, all of them in one pass (see {@link MultiPatternReplacer}). Only the few bytes that might be the
+ * start of a candidate are held back until the next write, flush or close.
  */
 class ContentReplacingOutputStream
         extends ServletOutputStream
 {
     private static final Logger logger = LoggerFactory.getLogger( ContentReplacingOutputStream.class );
 
-    private StringBuffer buffer = new StringBuffer();
-
     private final ServletOutputStream originalStream;
 
-    private final Map<String, String> reposReplacing;
+    private final MultiPatternReplacer replacer;
+
+    private boolean closed;
 
+    /**
+     * @param reposReplacing replace-to to origin, i.e. each value found in the content is replaced with its key
+     */
     ContentReplacingOutputStream( final ServletOutputStream originalStream, final Map<String, String> reposReplacing )
     {
         this.originalStream = originalStream;
-        this.reposReplacing = reposReplacing;
+
+        final Map<String, String> patterns = new HashMap<>( reposReplacing.size() );
+        for ( Map.Entry<String, String> repoReplacing : reposReplacing.entrySet() )
+        {
+            final String replaceTo = repoReplacing.getKey();
+            final String origin = repoReplacing.getValue();
+            logger.trace( "Repository Proxy: Content rewriting: Replacing {} to {}", origin, replaceTo );
+            patterns.put( origin, replaceTo );
+        }
+        this.replacer = new MultiPatternReplacer( patterns, originalStream );
     }
 
     @Override
     public void write( int b )
+            throws IOException
     {
-        buffer.append( (char) b );
+        replacer.write( b );
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len )
+            throws IOException
+    {
+        replacer.write( b, off, len );
     }
 
     @Override
     public void flush()
             throws IOException
     {
-        try
-        {
-            String content = buffer.toString();
-            for ( Map.Entry<String, String> repoReplacing : reposReplacing.entrySet() )
-            {
-                final String replaceTo = repoReplacing.getKey();
-                final String origin = repoReplacing.getValue();
-                logger.trace( "Repository Proxy: Content rewriting: Replacing {} to {}", origin, replaceTo );
-                content = RepoProxyUtils.replaceAllWithNoRegex( content, origin, replaceTo );
-            }
-            originalStream.write( content.getBytes() );
-            originalStream.flush();
-        }
-        finally
-        {
-            buffer = new StringBuffer();
-        }
+        replacer.flush();
     }
 
     @Override
     public void close()
             throws IOException
     {
-        flush();
-        IOUtils.closeQuietly( originalStream );
+        if ( closed )
+        {
+            return;
+        }
+
+        closed = true;
+        try
+        {
+            replacer.flush();
+        }
+        finally
+        {
+            IOUtils.closeQuietly( originalStream );
+        }
     }
 }
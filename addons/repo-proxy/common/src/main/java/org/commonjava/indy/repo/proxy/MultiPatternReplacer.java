@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.repo.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Replaces any number of literal patterns in a byte stream in a single pass. The patterns are kept in a byte trie;
+ * at each position the longest pattern starting there wins, and scanning resumes after the replaced bytes (so
+ * replacements are never re-scanned). Only the bytes that may still turn out to be the start of a pattern are held
+ * back between writes, so memory is bounded by the longest pattern and the output buffer, not by the size of the
+ * content.
+ * <p>
+ * Patterns and replacements are matched and written as UTF-8; all other bytes pass through untouched, so content in
+ * any ASCII-compatible encoding is left intact.
+ */
+final class MultiPatternReplacer
+{
+    private static final int OUTPUT_BUFFER_SIZE = 8 * 1024;
+
+    private final Node root = new Node();
+
+    private final OutputStream out;
+
+    private final byte[] pending;
+
+    private int pendingLength;
+
+    private final byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+
+    private int outputLength;
+
+    /**
+     * @param replacements pattern to replacement
+     */
+    MultiPatternReplacer( final Map<String, String> replacements, final OutputStream out )
+    {
+        this.out = out;
+
+        int maxLength = 1;
+        for ( Map.Entry<String, String> entry : replacements.entrySet() )
+        {
+            if ( entry.getKey() == null || entry.getKey().isEmpty() )
+            {
+                continue;
+            }
+
+            byte[] pattern = entry.getKey().getBytes( UTF_8 );
+            root.add( pattern, entry.getValue() == null ? new byte[0] : entry.getValue().getBytes( UTF_8 ) );
+            maxLength = Math.max( maxLength, pattern.length );
+        }
+
+        this.pending = new byte[maxLength];
+    }
+
+    void write( final int b )
+            throws IOException
+    {
+        pending[pendingLength++] = (byte) b;
+        drain( false );
+    }
+
+    void write( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        for ( int i = off; i < off + len; i++ )
+        {
+            pending[pendingLength++] = b[i];
+            drain( false );
+        }
+    }
+
+    /**
+     * Write out everything written so far. Like the buffered replacing this replaces, a flush is treated as a content
+     * boundary: held-back bytes are settled (replaced or passed through) rather than waiting for more input, so
+     * nothing is left behind if the stream is never closed.
+     */
+    void flush()
+            throws IOException
+    {
+        drain( true );
+        flushOutput();
+        out.flush();
+    }
+
+    private void drain( final boolean end )
+            throws IOException
+    {
+        while ( pendingLength > 0 )
+        {
+            Node node = root;
+            Node matched = null;
+            int matchedLength = 0;
+            int i = 0;
+            while ( i < pendingLength )
+            {
+                node = node.next( pending[i++] );
+                if ( node == null )
+                {
+                    break;
+                }
+                if ( node.replacement != null )
+                {
+                    matched = node;
+                    matchedLength = i;
+                }
+            }
+
+            if ( node != null && !end && node.hasChildren() )
+            {
+                // a (longer) pattern may still start here; wait for more bytes
+                return;
+            }
+
+            if ( matched != null )
+            {
+                emit( matched.replacement, 0, matched.replacement.length );
+                consume( matchedLength );
+            }
+            else
+            {
+                emit( pending, 0, 1 );
+                consume( 1 );
+            }
+        }
+    }
+
+    private void consume( final int count )
+    {
+        pendingLength -= count;
+        System.arraycopy( pending, count, pending, 0, pendingLength );
+    }
+
+    private void emit( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( outputLength + len > output.length )
+        {
+            flushOutput();
+        }
+
+        if ( len > output.length )
+        {
+            out.write( b, off, len );
+        }
+        else
+        {
+            System.arraycopy( b, off, output, outputLength, len );
+            outputLength += len;
+        }
+    }
+
+    private void flushOutput()
+            throws IOException
+    {
+        if ( outputLength > 0 )
+        {
+            out.write( output, 0, outputLength );
+            outputLength = 0;
+        }
+    }
+
+    private static final class Node
+    {
+        private Node[] children;
+
+        private byte[] replacement;
+
+        void add( final byte[] pattern, final byte[] replacement )
+        {
+            Node node = this;
+            for ( byte b : pattern )
+            {
+                if ( node.children == null )
+                {
+                    node.children = new Node[256];
+                }
+
+                int idx = b & 0xff;
+                if ( node.children[idx] == null )
+                {
+                    node.children[idx] = new Node();
+                }
+                node = node.children[idx];
+            }
+            node.replacement = replacement;
+        }
+
+        Node next( final byte b )
+        {
+            return children == null ? null : children[b & 0xff];
+        }
+
+        boolean hasChildren()
+        {
+            return children != null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.repo.proxy;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MultiPatternReplacerTest
+{
+    @Test
+    public void replaceAllPatternsInOnePass()
+            throws Exception
+    {
+        Map<String, String> patterns = new HashMap<>();
+        patterns.put( "remote/proxy-abc", "group/abc" );
+        patterns.put( "maven:remote:proxy-abc", "maven:group:abc" );
+
+        String content = "<a href=\"/api/browse/maven/remote/proxy-abc/org/\">maven:remote:proxy-abc</a>";
+        String expected = "<a href=\"/api/browse/maven/group/abc/org/\">maven:group:abc</a>";
+
+        byte[] bytes = content.getBytes( UTF_8 );
+        for ( int chunk = 1; chunk <= bytes.length; chunk++ )
+        {
+            assertThat( "chunk size: " + chunk, replace( patterns, bytes, chunk ), equalTo( expected ) );
+        }
+    }
+
+    @Test
+    public void longestPatternWinsAndReplacementIsNotRescanned()
+            throws Exception
+    {
+        Map<String, String> patterns = new HashMap<>();
+        patterns.put( "ab", "x" );
+        patterns.put( "abc", "abcabc" );
+
+        assertThat( replace( patterns, "ab abc abd ab".getBytes( UTF_8 ), 1 ), equalTo( "x abcabc xd x" ) );
+    }
+
+    @Test
+    public void keepNonAsciiContentIntact()
+            throws Exception
+    {
+        Map<String, String> patterns = new HashMap<>();
+        patterns.put( "npm/remote/r", "npm/group/g" );
+
+        String content = "{\"description\":\"\u00fcber \u4e2d\u6587\",\"tarball\":\"http://indy/api/content/npm/remote/r/x.tgz\"}";
+        String expected = "{\"description\":\"\u00fcber \u4e2d\u6587\",\"tarball\":\"http://indy/api/content/npm/group/g/x.tgz\"}";
+
+        assertThat( replace( patterns, content.getBytes( UTF_8 ), 3 ), equalTo( expected ) );
+    }
+
+    private String replace( final Map<String, String> patterns, final byte[] bytes, final int chunk )
+            throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MultiPatternReplacer replacer = new MultiPatternReplacer( patterns, out );
+        for ( int off = 0; off < bytes.length; off += chunk )
+        {
+            if ( chunk == 1 )
+            {
+                replacer.write( bytes[off] );
+            }
+            else
+            {
+                replacer.write( bytes, off, Math.min( chunk, bytes.length - off ) );
+            }
+        }
+        replacer.flush();
+        return new String( out.toByteArray(), UTF_8 );
+    }
+}
@@ -15,18 +15,22 @@
  */
 package org.commonjava.indy.schedule;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.schedule.conf.ScheduleDBConfig;
 import org.commonjava.indy.schedule.datastax.model.DtxExpiration;
 import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
-import org.commonjava.indy.schedule.event.ScheduleTriggerEvent;
+import org.commonjava.indy.schedule.event.ScheduleTriggerBatchEvent;
 import org.commonjava.indy.subsys.cassandra.CassandraClient;
 import org.commonjava.indy.subsys.cassandra.util.SchemaUtils;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
@@ -42,13 +46,21 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 @ApplicationScoped
 public class ScheduleDB
@@ -67,7 +79,7 @@ public class ScheduleDB
     private CacheProducer cacheProducer;
 
     @Inject
-    Event<ScheduleTriggerEvent> eventDispatcher;
+    Event<ScheduleTriggerBatchEvent> eventDispatcher;
 
     private final Logger logger = LoggerFactory.getLogger( this.getClass() );
 
@@ -81,7 +93,9 @@ public class ScheduleDB
 
     private PreparedStatement preparedSingleScheduleQuery;
 
-    private PreparedStatement preparedExpiredUpdate;
+    private PreparedStatement preparedSchedulesByJobNamesQuery;
+
+    private PreparedStatement preparedExpiredBulkUpdate;
 
     private PreparedStatement preparedScheduleByTypeQuery;
 
@@ -89,6 +103,8 @@ public class ScheduleDB
 
     private PreparedStatement preparedScheduleByStoreKeyAndTypeQuery;
 
+    private Semaphore requestPermits;
+
     ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
 
     public ScheduleDB() {}
@@ -129,8 +145,14 @@ public class ScheduleDB
                                         + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                         + " WHERE storekey = ? and  jobname = ?" );
 
-        preparedExpiredUpdate = session.prepare( "UPDATE " + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
-                                                                 + " SET expired = true WHERE  storekey = ? and  jobname = ?" );
+        preparedSchedulesByJobNamesQuery = session.prepare(
+                        "SELECT storekey, jobtype, jobname, scheduletime, scheduleuid, payload, lifespan, expired FROM "
+                                        + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
+                                        + " WHERE storekey = ? and jobname IN ?" );
+
+        preparedExpiredBulkUpdate = session.prepare(
+                        "UPDATE " + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
+                                        + " SET expired = true WHERE storekey = ? and jobname IN ?" );
 
         preparedScheduleByTypeQuery = session.prepare(
                         "SELECT storekey, jobtype, jobname, scheduletime, scheduleuid, payload, lifespan, expired FROM "
@@ -147,6 +169,8 @@ public class ScheduleDB
                                         + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                         + " WHERE storekey = ? " );
 
+        requestPermits = new Semaphore( Math.max( 1, config.getWriteConcurrency() ) );
+
         StrongCounter remoteCounter = cacheProducer.getStrongCounter( "scheduleCounter" );
         AtomicLong localCounter = new AtomicLong( 0 );
         if ( remoteCounter != null )
@@ -211,6 +235,92 @@ public class ScheduleDB
 
     }
 
+    /**
+     * Write the given (new) schedules and their expiration entries. Rows are grouped by partition (store key for the
+     * schedules, expiration time range for the expirations) into unlogged batches of at most
+     * {@link ScheduleDBConfig#getWriteBatchSize()} rows, which are sent asynchronously.
+     *
+     * @return the schedules that could not be (completely) written, empty if all of them were.
+     */
+    public Collection<DtxSchedule> createSchedules( Collection<DtxSchedule> schedules )
+    {
+        Map<String, List<DtxSchedule>> byStore = new LinkedHashMap<>();
+        Map<Long, List<DtxSchedule>> byExpiration = new LinkedHashMap<>();
+        for ( DtxSchedule schedule : schedules )
+        {
+            byStore.computeIfAbsent( schedule.getStoreKey(), k -> new ArrayList<>() ).add( schedule );
+
+            Date expirationTime = calculateExpirationTime( schedule.getScheduleTime(), schedule.getLifespan() );
+            byExpiration.computeIfAbsent( calculateExpirationPID( expirationTime ), k -> new ArrayList<>() )
+                        .add( schedule );
+        }
+
+        int batchSize = Math.max( 1, config.getWriteBatchSize() );
+        List<List<DtxSchedule>> chunks = new ArrayList<>();
+        List<ResultSetFuture> futures = new ArrayList<>();
+        for ( List<DtxSchedule> partition : byStore.values() )
+        {
+            for ( int i = 0; i < partition.size(); i += batchSize )
+            {
+                List<DtxSchedule> chunk = partition.subList( i, Math.min( partition.size(), i + batchSize ) );
+                chunks.add( chunk );
+                futures.add( executeBatch( chunk, scheduleMapper::saveQuery ) );
+            }
+        }
+
+        for ( List<DtxSchedule> partition : byExpiration.values() )
+        {
+            for ( int i = 0; i < partition.size(); i += batchSize )
+            {
+                List<DtxSchedule> chunk = partition.subList( i, Math.min( partition.size(), i + batchSize ) );
+                chunks.add( chunk );
+                futures.add( executeBatch( chunk,
+                                           schedule -> expirationMapper.saveQuery( toExpiration( schedule ) ) ) );
+            }
+        }
+
+        Set<DtxSchedule> failed = Collections.newSetFromMap( new IdentityHashMap<>() );
+        for ( int i = 0; i < futures.size(); i++ )
+        {
+            try
+            {
+                futures.get( i ).getUninterruptibly();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to write {} schedules. Reason: {}", chunks.get( i ).size(), e.getMessage() );
+                failed.addAll( chunks.get( i ) );
+            }
+        }
+
+        return failed;
+    }
+
+    private ResultSetFuture executeBatch( List<DtxSchedule> schedules,
+                                          Function<DtxSchedule, Statement> toStatement )
+    {
+        BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+        batch.setConsistencyLevel( ConsistencyLevel.QUORUM );
+        schedules.forEach( schedule -> batch.add( toStatement.apply( schedule ) ) );
+
+        return executeAsync( batch );
+    }
+
+    private ResultSetFuture executeAsync( Statement statement )
+    {
+        requestPermits.acquireUninterruptibly();
+        ResultSetFuture future = session.executeAsync( statement );
+        future.addListener( requestPermits::release, Runnable::run );
+        return future;
+    }
+
+    private DtxExpiration toExpiration( DtxSchedule schedule )
+    {
+        Date expirationTime = calculateExpirationTime( schedule.getScheduleTime(), schedule.getLifespan() );
+        return new DtxExpiration( calculateExpirationPID( expirationTime ), schedule.getScheduleUID(), expirationTime,
+                                  schedule.getStoreKey(), schedule.getJobName() );
+    }
+
     private Long calculateExpirationPID( Date date )
     {
         return date.getTime() / config.getPartitionKeyRange();
@@ -248,27 +358,146 @@ public class ScheduleDB
         return expirations;
     }
 
+    /**
+     * Sweep the expiration time range (partition) containing the given date. The range is read in pages of
+     * {@link ScheduleDBConfig#getSweepFetchSize()} rows, and each page is handled before the next one is consumed: the
+     * due entries are checked against their schedules with one query per store (and chunk of
+     * {@link ScheduleDBConfig#getWriteBatchSize()} job names), the live ones are marked expired with one update per
+     * store and chunk, and one {@link ScheduleTriggerBatchEvent} is fired per store and job type.
+     */
     public void queryAndSetExpiredSchedule( Date date )
     {
-        Collection<DtxExpiration> expirations = queryExpirations( date );
-        expirations.forEach( expiration -> {
-            if ( expiration.getExpirationTime().before( new Date() ) )
+        final Date now = new Date();
+        final int chunkSize = Math.max( 1, config.getWriteBatchSize() );
+
+        BoundStatement bound = preparedExpiredQuery.bind( calculateExpirationPID( date ) );
+        bound.setFetchSize( Math.max( 1, config.getSweepFetchSize() ) );
+        ResultSet resultSet = session.execute( bound );
+        while ( !resultSet.isExhausted() )
+        {
+            int available = resultSet.getAvailableWithoutFetching();
+            if ( !resultSet.isFullyFetched() )
             {
-                DtxSchedule schedule = querySchedule( expiration.getStorekey(), expiration.getJobName() );
+                // let the next page load while this one is handled
+                resultSet.fetchMoreResults();
+            }
 
-                if ( schedule != null && !schedule.getExpired() && schedule.getScheduleUID()
-                                                                           .equals( expiration.getScheduleUID() ) )
+            // store key -> job name -> due expiration
+            final Map<String, Map<String, DtxExpiration>> due = new LinkedHashMap<>();
+            for ( int i = 0; i < available; i++ )
+            {
+                DtxExpiration expiration = toDtxExpiration( resultSet.one() );
+                if ( expiration.getExpirationTime().before( now ) )
                 {
-                    BoundStatement boundU = preparedExpiredUpdate.bind( schedule.getStoreKey(), schedule.getJobName() );
-                    session.execute( boundU );
+                    due.computeIfAbsent( expiration.getStorekey(), k -> new LinkedHashMap<>() )
+                       .put( expiration.getJobName(), expiration );
+                }
+            }
+
+            if ( !due.isEmpty() )
+            {
+                expire( due, chunkSize );
+            }
+        }
+    }
 
-                    logger.debug( "Expired entry: {}", schedule );
-                    eventDispatcher.fire( new ScheduleTriggerEvent( schedule.getJobType(), schedule.getPayload() ) );
+    private void expire( final Map<String, Map<String, DtxExpiration>> due, final int chunkSize )
+    {
+        final List<ResultSetFuture> queries = new ArrayList<>();
+        final List<Map<String, DtxExpiration>> queried = new ArrayList<>();
+        due.forEach( ( storeKey, expirations ) -> {
+            List<String> jobNames = new ArrayList<>( expirations.keySet() );
+            for ( int i = 0; i < jobNames.size(); i += chunkSize )
+            {
+                List<String> chunk = jobNames.subList( i, Math.min( jobNames.size(), i + chunkSize ) );
+                BoundStatement query = preparedSchedulesByJobNamesQuery.bind( storeKey, new ArrayList<>( chunk ) );
+                queries.add( executeAsync( query ) );
+                queried.add( expirations );
+            }
+        } );
+
+        // store key -> schedules to expire
+        final Map<String, List<DtxSchedule>> expired = new LinkedHashMap<>();
+        for ( int i = 0; i < queries.size(); i++ )
+        {
+            ResultSet resultSet;
+            try
+            {
+                resultSet = queries.get( i ).getUninterruptibly();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to query due schedules. Will retry in the next sweep. Reason: {}",
+                             e.getMessage() );
+                continue;
+            }
+
+            Map<String, DtxExpiration> expirations = queried.get( i );
+            for ( Row row : resultSet )
+            {
+                DtxSchedule schedule = toDtxSchedule( row );
+                DtxExpiration expiration = expirations.get( schedule.getJobName() );
+                if ( expiration != null && !schedule.getExpired() && schedule.getScheduleUID()
+                                                                             .equals( expiration.getScheduleUID() ) )
+                {
+                    expired.computeIfAbsent( schedule.getStoreKey(), k -> new ArrayList<>() ).add( schedule );
                 }
             }
+        }
+
+        expired.forEach( ( storeKey, schedules ) -> {
+            List<DtxSchedule> marked = markExpired( storeKey, schedules, chunkSize );
+            if ( marked.isEmpty() )
+            {
+                return;
+            }
+
+            logger.debug( "Expired {} entries of: {}", marked.size(), storeKey );
+            if ( eventDispatcher == null )
+            {
+                return;
+            }
+
+            Map<String, List<String>> payloadsByType = new LinkedHashMap<>();
+            marked.forEach( schedule -> payloadsByType.computeIfAbsent( schedule.getJobType(), k -> new ArrayList<>() )
+                                                      .add( schedule.getPayload() ) );
+            payloadsByType.forEach( ( jobType, payloads ) -> eventDispatcher.fire(
+                            new ScheduleTriggerBatchEvent( storeKey, jobType, payloads ) ) );
         } );
     }
 
+    private List<DtxSchedule> markExpired( String storeKey, List<DtxSchedule> schedules, int chunkSize )
+    {
+        List<List<DtxSchedule>> chunks = new ArrayList<>();
+        List<ResultSetFuture> updates = new ArrayList<>();
+        for ( int i = 0; i < schedules.size(); i += chunkSize )
+        {
+            List<DtxSchedule> chunk = schedules.subList( i, Math.min( schedules.size(), i + chunkSize ) );
+            List<String> jobNames = new ArrayList<>( chunk.size() );
+            chunk.forEach( schedule -> jobNames.add( schedule.getJobName() ) );
+
+            chunks.add( chunk );
+            updates.add( executeAsync( preparedExpiredBulkUpdate.bind( storeKey, jobNames ) ) );
+        }
+
+        List<DtxSchedule> marked = new ArrayList<>( schedules.size() );
+        for ( int i = 0; i < updates.size(); i++ )
+        {
+            try
+            {
+                updates.get( i ).getUninterruptibly();
+                marked.addAll( chunks.get( i ) );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to mark {} schedules of: {} expired. Will retry in the next sweep. Reason: {}",
+                             chunks.get( i ).size(), storeKey, e.getMessage() );
+            }
+        }
+
+        return marked;
+    }
+
     public Collection<DtxSchedule> querySchedulesByJobType( String jobType )
     {
         Collection<DtxSchedule> schedules = new ArrayList<>(  );
@@ -41,6 +41,22 @@ public class ScheduleDBConfig implements IndyConfigInfo
 
     private Boolean enabled;
 
+    private Long writeFlushMillis;
+
+    private Integer writeBatchSize;
+
+    private Integer writeConcurrency;
+
+    private Integer sweepFetchSize;
+
+    public static final long DEFAULT_WRITE_FLUSH_MILLIS = 1000;
+
+    public static final int DEFAULT_WRITE_BATCH_SIZE = 50;
+
+    public static final int DEFAULT_WRITE_CONCURRENCY = 8;
+
+    public static final int DEFAULT_SWEEP_FETCH_SIZE = 1000;
+
     public ScheduleDBConfig () {}
 
     public ScheduleDBConfig( String keyspace, int replicationFactor, long partitionKeyRange, long period )
@@ -94,6 +110,57 @@ public class ScheduleDBConfig implements IndyConfigInfo
         this.offsetHours = offsetHours;
     }
 
+    /**
+     * How long new schedules are buffered (and coalesced per store and job) before they are written. 0 or less writes
+     * every schedule right away.
+     */
+    public long getWriteFlushMillis()
+    {
+        return writeFlushMillis == null ? DEFAULT_WRITE_FLUSH_MILLIS : writeFlushMillis;
+    }
+
+    @ConfigName( "schedule.write.flush.millis" )
+    public void setWriteFlushMillis( Long writeFlushMillis )
+    {
+        this.writeFlushMillis = writeFlushMillis;
+    }
+
+    public int getWriteBatchSize()
+    {
+        return writeBatchSize == null ? DEFAULT_WRITE_BATCH_SIZE : writeBatchSize;
+    }
+
+    @ConfigName( "schedule.write.batch.size" )
+    public void setWriteBatchSize( Integer writeBatchSize )
+    {
+        this.writeBatchSize = writeBatchSize;
+    }
+
+    public int getWriteConcurrency()
+    {
+        return writeConcurrency == null ? DEFAULT_WRITE_CONCURRENCY : writeConcurrency;
+    }
+
+    @ConfigName( "schedule.write.concurrency" )
+    public void setWriteConcurrency( Integer writeConcurrency )
+    {
+        this.writeConcurrency = writeConcurrency;
+    }
+
+    /**
+     * Page size used when the expiry sweep reads an expiration time range.
+     */
+    public int getSweepFetchSize()
+    {
+        return sweepFetchSize == null ? DEFAULT_SWEEP_FETCH_SIZE : sweepFetchSize;
+    }
+
+    @ConfigName( "schedule.sweep.fetch.size" )
+    public void setSweepFetchSize( Integer sweepFetchSize )
+    {
+        this.sweepFetchSize = sweepFetchSize;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
@@ -15,17 +15,31 @@
  */
 package org.commonjava.indy.schedule.event;
 
-public class ScheduleTriggerEvent
+import java.util.List;
+
+/**
+ * Fired for the schedules of one store and job type that expired in the same sweep, so the handlers can work on them
+ * per store instead of one schedule at a time.
+ */
+public class ScheduleTriggerBatchEvent
 {
 
+    private final String storeKey;
+
     private final String jobType;
 
-    private final String payload;
+    private final List<String> payloads;
 
-    public ScheduleTriggerEvent( final String jobType, final String payload )
+    public ScheduleTriggerBatchEvent( final String storeKey, final String jobType, final List<String> payloads )
     {
+        this.storeKey = storeKey;
         this.jobType = jobType;
-        this.payload = payload;
+        this.payloads = payloads;
+    }
+
+    public String getStoreKey()
+    {
+        return storeKey;
     }
 
     public String getJobType()
@@ -33,15 +47,16 @@ public class ScheduleTriggerEvent
         return jobType;
     }
 
-    public String getPayload()
+    public List<String> getPayloads()
     {
-        return payload;
+        return payloads;
     }
 
     @Override
     public String toString()
     {
-        return String.format( "SchedulerTriggerEvent [eventType=%s, jobType=%s, payload=%s]", getClass().getName(), jobType, payload );
+        return String.format( "ScheduleTriggerBatchEvent [storeKey=%s, jobType=%s, size=%s]", storeKey, jobType,
+                              payloads.size() );
     }
 
 }
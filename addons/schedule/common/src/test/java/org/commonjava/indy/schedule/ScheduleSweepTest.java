@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.schedule;
+
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.commonjava.indy.cassandra.testcat.CassandraTest;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.schedule.conf.ScheduleDBConfig;
+import org.commonjava.indy.schedule.datastax.JobType;
+import org.commonjava.indy.schedule.event.ScheduleTriggerBatchEvent;
+import org.commonjava.indy.subsys.cassandra.CassandraClient;
+import org.commonjava.indy.subsys.cassandra.config.CassandraConfig;
+import org.commonjava.indy.subsys.infinispan.CacheProducer;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import javax.enterprise.event.Event;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+@Category( CassandraTest.class )
+public class ScheduleSweepTest
+{
+    private static final String STORE_A = "maven:hosted:a";
+
+    private static final String STORE_B = "maven:hosted:b";
+
+    private static final String CONTENT = JobType.CONTENT.getJobType();
+
+    private static final String DISABLE = JobType.DisabledTIMEOUT.getJobType();
+
+    private final List<ScheduleTriggerBatchEvent> fired = Collections.synchronizedList( new ArrayList<>() );
+
+    private CassandraClient client;
+
+    private ScheduleDB scheduleDB;
+
+    @Before
+    public void start()
+            throws Exception
+    {
+        EmbeddedCassandraServerHelper.startEmbeddedCassandra();
+
+        CassandraConfig config = new CassandraConfig();
+        config.setEnabled( true );
+        config.setCassandraHost( "localhost" );
+        config.setCassandraPort( 9142 );
+        client = new CassandraClient( config );
+    }
+
+    @After
+    public void stop()
+            throws Exception
+    {
+        client.close();
+        EmbeddedCassandraServerHelper.cleanEmbeddedCassandra();
+    }
+
+    @Test
+    public void queriesUpdatesAndEventsAreGroupedPerStoreAndType()
+            throws Exception
+    {
+        init( 2, 1000 );
+
+        for ( int i = 1; i <= 5; i++ )
+        {
+            scheduleDB.createSchedule( STORE_A, CONTENT, "a" + i, "a" + i, 1L );
+        }
+        scheduleDB.createSchedule( STORE_A, CONTENT, "live", "live", 3600L );
+        // rescheduled: the expiration entry of the first schedule is due, but no longer matches the schedule
+        scheduleDB.createSchedule( STORE_A, CONTENT, "rescheduled", "rescheduled", 1L );
+        scheduleDB.createSchedule( STORE_A, CONTENT, "rescheduled", "rescheduled", 3600L );
+        scheduleDB.createSchedule( STORE_B, CONTENT, "b1", "b1", 1L );
+        scheduleDB.createSchedule( STORE_B, DISABLE, "d1", "d1", 1L );
+
+        Thread.sleep( 2000 );
+        scheduleDB.queryAndSetExpiredSchedule( new Date() );
+
+        assertThat( fired.size(), equalTo( 3 ) );
+        assertFired( STORE_A, CONTENT, "a1", "a2", "a3", "a4", "a5" );
+        assertFired( STORE_B, CONTENT, "b1" );
+        assertFired( STORE_B, DISABLE, "d1" );
+
+        for ( int i = 1; i <= 5; i++ )
+        {
+            assertThat( scheduleDB.querySchedule( STORE_A, "a" + i ).getExpired(), equalTo( true ) );
+        }
+        assertThat( scheduleDB.querySchedule( STORE_A, "live" ).getExpired(), equalTo( false ) );
+        assertThat( scheduleDB.querySchedule( STORE_A, "rescheduled" ).getExpired(), equalTo( false ) );
+        assertThat( scheduleDB.querySchedule( STORE_B, "d1" ).getExpired(), equalTo( true ) );
+    }
+
+    @Test
+    public void everyPageIsSweptAndNothingFiresTwice()
+            throws Exception
+    {
+        init( 2, 2 );
+
+        Set<String> expected = new HashSet<>();
+        for ( int i = 0; i < 7; i++ )
+        {
+            String store = i % 2 == 0 ? STORE_A : STORE_B;
+            scheduleDB.createSchedule( store, CONTENT, "path" + i, store + "/path" + i, 1L );
+            expected.add( store + "/path" + i );
+        }
+
+        Thread.sleep( 2000 );
+        scheduleDB.queryAndSetExpiredSchedule( new Date() );
+
+        Set<String> payloads = new HashSet<>();
+        fired.forEach( event -> {
+            // events are fired per page, so none holds more than a page
+            assertTrue( event.getPayloads().size() <= 2 );
+            event.getPayloads().forEach( payload -> assertTrue( payload.startsWith( event.getStoreKey() ) ) );
+            payloads.addAll( event.getPayloads() );
+        } );
+        assertThat( payloads, equalTo( expected ) );
+
+        fired.clear();
+        scheduleDB.queryAndSetExpiredSchedule( new Date() );
+        assertThat( fired.isEmpty(), equalTo( true ) );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void init( final int batchSize, final int fetchSize )
+    {
+        // one expiration partition for the whole test, so no sweep can miss an hour boundary
+        ScheduleDBConfig scheduleDBConfig = new ScheduleDBConfig( "schedule", 1, Long.MAX_VALUE / 2, 3600 );
+        scheduleDBConfig.setWriteBatchSize( batchSize );
+        scheduleDBConfig.setSweepFetchSize( fetchSize );
+
+        DefaultIndyConfiguration indyConfig = new DefaultIndyConfiguration();
+        indyConfig.setKeyspaceReplicas( 1 );
+
+        DefaultCacheManager cacheManager =
+                        new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+        scheduleDB = new ScheduleDB( indyConfig, scheduleDBConfig, client, new CacheProducer( null, cacheManager,
+                                                                                              null ) );
+        // the test runs the sweeps itself
+        scheduleDB.service.shutdownNow();
+
+        scheduleDB.eventDispatcher = (Event<ScheduleTriggerBatchEvent>) Proxy.newProxyInstance(
+                        getClass().getClassLoader(), new Class<?>[] { Event.class }, ( proxy, method, args ) -> {
+                            if ( "fire".equals( method.getName() ) )
+                            {
+                                fired.add( (ScheduleTriggerBatchEvent) args[0] );
+                            }
+                            return null;
+                        } );
+    }
+
+    private void assertFired( final String storeKey, final String jobType, final String... payloads )
+    {
+        List<ScheduleTriggerBatchEvent> matching = new ArrayList<>();
+        fired.stream()
+             .filter( e -> e.getStoreKey().equals( storeKey ) && e.getJobType().equals( jobType ) )
+             .forEach( matching::add );
+
+        assertThat( matching.size(), equalTo( 1 ) );
+        assertThat( new HashSet<>( matching.get( 0 ).getPayloads() ),
+                    equalTo( new HashSet<>( Arrays.asList( payloads ) ) ) );
+    }
+}
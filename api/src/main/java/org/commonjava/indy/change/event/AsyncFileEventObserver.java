@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.change.event;
+
+import org.commonjava.maven.galley.event.FileEvent;
+
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+
+/**
+ * Marks a {@link FileEventBatchListener} for asynchronous delivery of file events (storage, access, deletion, etc.).
+ * Each annotated listener gets its own bounded queue, so a slow listener never holds up the request thread that
+ * fired the event, nor the other listeners. Events for the same store and path are always delivered in the order
+ * they were fired.
+ * <p>
+ * Listeners that need to see an event before the request completes should keep using plain CDI observers instead.
+ */
+@Inherited
+@Retention( RetentionPolicy.RUNTIME )
+@Target( { TYPE } )
+public @interface AsyncFileEventObserver
+{
+    /**
+     * Name used in logs and metrics. Defaults to the simple class name of the listener.
+     */
+    String name() default "";
+
+    /**
+     * Event types delivered to this listener. Other events are never queued for it, so they neither take up room in
+     * the queue nor make the firing thread wait.
+     */
+    Class<? extends FileEvent>[] eventTypes() default { FileEvent.class };
+
+    /**
+     * Maximum number of events waiting for delivery to this listener.
+     */
+    int queueSize() default 10000;
+
+    /**
+     * Maximum number of events handed to the listener at once.
+     */
+    int batchSize() default 100;
+
+    /**
+     * Number of independent delivery lanes. Events are assigned to lanes by store key and path, so ordering is only
+     * guaranteed per store key and path.
+     */
+    int lanes() default 1;
+
+    /**
+     * What to do with a new event when the queue is full.
+     */
+    OverflowPolicy overflow() default OverflowPolicy.BLOCK;
+
+    enum OverflowPolicy
+    {
+        /**
+         * Wait (at most {@link #blockMillis()}) for room in the queue, then drop the event.
+         */
+        BLOCK,
+
+        /**
+         * Drop the event right away.
+         */
+        DROP
+    }
+
+    /**
+     * Longest time a firing thread waits for room in a full queue, when the policy is {@link OverflowPolicy#BLOCK}.
+     * The firing thread is usually serving a request, so keep this short. Negative means the configured
+     * file.event.block.millis (50ms unless set otherwise).
+     */
+    long blockMillis() default -1;
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.change.event;
+
+import org.commonjava.maven.galley.event.FileEvent;
+
+import java.util.List;
+
+/**
+ * Receives file events in batches, off the request thread that fired them. Implementations must be annotated with
+ * {@link AsyncFileEventObserver}, which configures the delivery queue.
+ */
+public interface FileEventBatchListener
+{
+    /**
+     * @param events file events in the order they were fired (per store key and path). This may contain any of the
+     * {@link FileEvent} subtypes, so implementations should pick out the ones they care about.
+     */
+    void onFileEvents( List<FileEvent> events );
+}
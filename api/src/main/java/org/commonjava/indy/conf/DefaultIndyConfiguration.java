@@ -46,6 +46,10 @@ public class DefaultIndyConfiguration
 
     public static final int DEFAULT_NFC_MAX_RESULT_SET_SIZE = 5000;
 
+    public static final int DEFAULT_NFC_MEMORY_MAX_ENTRIES = 2000000;
+
+    public static final long DEFAULT_FILE_EVENT_BLOCK_MILLIS = 50;
+
     public static final Boolean DEFAULT_ALLOW_REMOTE_LIST_DOWNLOAD = false;
 
     public static final int DEFAULT_REMOTE_METADATA_TIMEOUT_SECONDS = 86400;
@@ -80,6 +84,10 @@ public class DefaultIndyConfiguration
 
     private Integer nfcMaxResultSetSize;
 
+    private Integer nfcMemoryMaxEntries;
+
+    private Long fileEventBlockMillis;
+
     private Integer remoteMetadataTimeoutSeconds;
 
     private String mdcHeaders;
@@ -234,6 +242,12 @@ public class DefaultIndyConfiguration
         this.nfcMaxResultSetSize = size;
     }
 
+    @ConfigName( "nfc.memory.max.entries" )
+    public void setNfcMemoryMaxEntries( final int entries )
+    {
+        this.nfcMemoryMaxEntries = entries;
+    }
+
     @Override
     public int getNfcExpirationSweepMinutes()
     {
@@ -246,6 +260,12 @@ public class DefaultIndyConfiguration
         return nfcMaxResultSetSize == null ? DEFAULT_NFC_MAX_RESULT_SET_SIZE : nfcMaxResultSetSize;
     }
 
+    @Override
+    public int getNfcMemoryMaxEntries()
+    {
+        return nfcMemoryMaxEntries == null ? DEFAULT_NFC_MEMORY_MAX_ENTRIES : nfcMemoryMaxEntries;
+    }
+
     @Override
     public File getIndyHomeDir()
     {
@@ -294,6 +314,18 @@ public class DefaultIndyConfiguration
         this.storeDisableTimeoutSeconds = storeDisableTimeoutSeconds;
     }
 
+    @Override
+    public long getFileEventBlockMillis()
+    {
+        return fileEventBlockMillis == null ? DEFAULT_FILE_EVENT_BLOCK_MILLIS : fileEventBlockMillis;
+    }
+
+    @ConfigName( "file.event.block.millis" )
+    public void setFileEventBlockMillis( final long fileEventBlockMillis )
+    {
+        this.fileEventBlockMillis = fileEventBlockMillis;
+    }
+
     @Override
     public int getRemoteMetadataTimeoutSeconds()
     {
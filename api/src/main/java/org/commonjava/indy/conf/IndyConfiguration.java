@@ -69,6 +69,20 @@ public interface IndyConfiguration
      */
     int getNfcMaxResultSetSize();
 
+    /**
+     * Maximum number of entries the in-memory NFC will hold. Once it is full, new entries are not admitted until
+     * expired ones are swept.
+     * @since 2.7.0
+     */
+    int getNfcMemoryMaxEntries();
+
+    /**
+     * Longest time a request thread waits for room in the full queue of an asynchronous file-event listener, before
+     * the event is dropped. Listeners may set their own wait instead.
+     * @since 2.7.0
+     */
+    long getFileEventBlockMillis();
+
     File getIndyHomeDir();
 
     File getIndyConfDir();
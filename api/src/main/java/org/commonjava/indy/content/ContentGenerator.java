@@ -16,6 +16,7 @@
 package org.commonjava.indy.content;
 
 import java.util.List;
+import java.util.Set;
 
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.model.core.ArtifactStore;
@@ -77,4 +78,24 @@ public interface ContentGenerator
      */
     boolean canProcess( String path );
 
+    /**
+     * Package types of the stores this generator works with, or null for any package type. The generator is not
+     * consulted at all for stores of other package types.
+     */
+    default Set<String> getHandledPackageTypes()
+    {
+        return null;
+    }
+
+    /**
+     * Suffixes (file names or extensions) of the paths {@link #generateFileContent(ArtifactStore, String, EventMetadata)}
+     * and {@link #generateGroupFileContent(Group, List, String, EventMetadata)} can produce anything for, or null if
+     * that can't be told from the path. The generator is not asked to generate paths with other suffixes. Storage,
+     * deletion and directory listing are not filtered by path.
+     */
+    default Set<String> getHandledPathSuffixes()
+    {
+        return null;
+    }
+
 }
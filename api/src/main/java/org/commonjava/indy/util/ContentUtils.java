@@ -15,12 +15,22 @@
  */
 package org.commonjava.indy.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.commonjava.indy.content.StoreResource;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public final class ContentUtils
 {
@@ -57,4 +67,85 @@ public final class ContentUtils
         return result;
     }
 
+    /**
+     * Return the plain local file that holds the content of the transfer, or null if there is none (or the storage
+     * can't expose it). The file is only returned if its size matches the transfer, i.e. it isn't still being written.
+     * <p>
+     * Sending the file directly bypasses the transfer's read decorators, so it is only returned when none of them
+     * would change the bytes for this transfer and metadata. The decorator chain is asked to decorate an empty probe
+     * stream; the file is returned only if it comes back as the probe itself, or wrapped only in
+     * {@link ObservingInputStream}s. The probe is never read or closed, so decorators that act on close (checksums)
+     * see nothing.
+     */
+    public static File getLocalFile( final Transfer transfer, final EventMetadata metadata )
+    {
+        if ( transfer == null || !isUndecoratedRead( transfer, metadata ) )
+        {
+            return null;
+        }
+
+        File file;
+        try
+        {
+            file = transfer.getDetachedFile();
+        }
+        catch ( RuntimeException e )
+        {
+            // not every cache provider is backed by local files
+            return null;
+        }
+
+        if ( file == null || !file.isFile() || file.length() != transfer.length() )
+        {
+            return null;
+        }
+
+        return file;
+    }
+
+    /**
+     * Hand each {@link ObservingInputStream} the stream is wrapped in to the action, outermost first. Content sent
+     * from the file {@link #getLocalFile} returned is never read through its stream, so its observers are told about
+     * the transfer this way.
+     */
+    public static void forEachObserver( final InputStream stream, final Consumer<ObservingInputStream> action )
+    {
+        InputStream current = stream;
+        while ( current instanceof ObservingInputStream )
+        {
+            action.accept( (ObservingInputStream) current );
+            current = ( (ObservingInputStream) current ).getObservedStream();
+        }
+    }
+
+    private static boolean isUndecoratedRead( final Transfer transfer, final EventMetadata metadata )
+    {
+        TransferDecoratorManager decorator = transfer.getDecorator();
+        if ( decorator == null )
+        {
+            return true;
+        }
+
+        InputStream probe = new ByteArrayInputStream( new byte[0] );
+        InputStream decorated;
+        try
+        {
+            decorated = decorator.decorateRead( probe, transfer, metadata == null ? new EventMetadata() : metadata );
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            Logger logger = LoggerFactory.getLogger( ContentUtils.class );
+            logger.debug( "Cannot tell whether reads of: {} are decorated. Streaming it. Reason: {}", transfer,
+                          e.getMessage() );
+            return false;
+        }
+
+        while ( decorated != probe && decorated instanceof ObservingInputStream )
+        {
+            decorated = ( (ObservingInputStream) decorated ).getObservedStream();
+        }
+
+        return decorated == probe;
+    }
+
 }
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.util;
+
+import java.io.InputStream;
+
+/**
+ * Implemented by read decorations that only observe the bytes passing through them (timers, counters) and hand them
+ * on unchanged. Content wrapped only by these may be sent straight from its local file, see
+ * {@link ContentUtils#getLocalFile}.
+ */
+public interface ObservingInputStream
+{
+    /**
+     * @return the stream this one reads from
+     */
+    InputStream getObservedStream();
+
+    /**
+     * The content is about to be sent straight from its local file, around this stream; start observing as if it
+     * was being read.
+     */
+    void transferStarted();
+
+    /**
+     * @param bytes sent straight from the local file since {@link #transferStarted()}, to be counted as if they had
+     * been read through this stream
+     */
+    void transferred( long bytes );
+}
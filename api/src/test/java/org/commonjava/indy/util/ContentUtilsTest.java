@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.util;
+
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.HashedLocationPathGenerator;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.spi.io.TransferDecorator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ContentUtilsTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void undecoratedTransferExposesItsFile()
+            throws IOException
+    {
+        Transfer transfer = store( new NoOpTransferDecorator() );
+        EventMetadata metadata = new EventMetadata();
+
+        // the same way the content handlers open it; galley wraps the cache stream to fire the access event
+        try (InputStream in = transfer.openInputStream( true, metadata ))
+        {
+            assertThat( in instanceof FileInputStream, equalTo( false ) );
+
+            File file = ContentUtils.getLocalFile( transfer, metadata );
+            assertThat( file, equalTo( transfer.getDetachedFile() ) );
+        }
+    }
+
+    @Test
+    public void observedTransferExposesItsFile()
+            throws IOException
+    {
+        Transfer transfer = store( new AbstractTransferDecorator()
+        {
+            @Override
+            public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                             final EventMetadata metadata )
+            {
+                return new ObservedStream( stream );
+            }
+        } );
+
+        EventMetadata metadata = new EventMetadata();
+        try (InputStream in = transfer.openInputStream( true, metadata ))
+        {
+            File file = ContentUtils.getLocalFile( transfer, metadata );
+            assertThat( file, equalTo( transfer.getDetachedFile() ) );
+
+            // sent from the file instead of read; the observer still counts it
+            ContentUtils.forEachObserver( in, ObservingInputStream::transferStarted );
+            ContentUtils.forEachObserver( in, o -> o.transferred( file.length() ) );
+
+            ObservedStream observed = (ObservedStream) in;
+            assertThat( observed.started, equalTo( true ) );
+            assertThat( observed.transferred, equalTo( file.length() ) );
+        }
+    }
+
+    @Test
+    public void decoratedTransferIsReadThroughTheStream()
+            throws IOException
+    {
+        Transfer transfer = store( new AbstractTransferDecorator()
+        {
+            @Override
+            public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                             final EventMetadata metadata )
+            {
+                return new ObservedStream( new FilterInputStream( stream )
+                {
+                } );
+            }
+        } );
+
+        EventMetadata metadata = new EventMetadata();
+        try (InputStream in = transfer.openInputStream( true, metadata ))
+        {
+            assertThat( ContentUtils.getLocalFile( transfer, metadata ), nullValue() );
+        }
+    }
+
+    @Test
+    public void missingTransferMeansNoFile()
+    {
+        assertThat( ContentUtils.getLocalFile( null, new EventMetadata() ), nullValue() );
+    }
+
+    private Transfer store( final TransferDecorator decorator )
+            throws IOException
+    {
+        FileCacheProvider cache = new FileCacheProvider( temp.newFolder( "cache" ), new HashedLocationPathGenerator(),
+                                                         new NoOpFileEventManager(),
+                                                         new TransferDecoratorManager( decorator ), false );
+
+        Transfer transfer = cache.getTransfer(
+                new ConcreteResource( new SimpleLocation( "test", "http://foo.bar" ), "path/to/foo.jar" ) );
+        try (OutputStream out = transfer.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( "This is a test".getBytes() );
+        }
+
+        return transfer;
+    }
+
+    private static final class ObservedStream
+            extends FilterInputStream
+            implements ObservingInputStream
+    {
+        private boolean started;
+
+        private long transferred;
+
+        ObservedStream( final InputStream stream )
+        {
+            super( stream );
+        }
+
+        @Override
+        public InputStream getObservedStream()
+        {
+            return in;
+        }
+
+        @Override
+        public void transferStarted()
+        {
+            started = true;
+        }
+
+        @Override
+        public void transferred( final long bytes )
+        {
+            transferred += bytes;
+        }
+    }
+}
@@ -56,6 +56,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -67,6 +68,7 @@ import java.util.function.Supplier;
 
 import static org.commonjava.indy.IndyRequestConstants.TRANSFER_SIZE;
 import static org.commonjava.indy.core.bind.jaxrs.util.RequestUtils.isDirectoryPath;
+import static org.commonjava.indy.util.ContentUtils.getLocalFile;
 import static org.commonjava.indy.util.RequestContextHelper.CONTENT_ENTRY_POINT;
 import static org.commonjava.indy.util.RequestContextHelper.HTTP_STATUS;
 import static org.commonjava.indy.util.RequestContextHelper.METADATA_CONTENT;
@@ -508,8 +510,13 @@ public class ContentAccessHandler
 
                         addFieldToActiveSpan( TRANSFER_SIZE, item.length() );
                         InputStream in = item.openInputStream( true, eventMetadata );
+
+                        // content locked by another writer may still be growing, and decorated content has to be
+                        // read through its decorators; both go through the stream.
+                        File localFile = handleLocking ? getLocalFile( item, eventMetadata ) : null;
+
                         final ResponseBuilder builder = Response.ok(
-                                new TransferStreamingOutput( in, metricsManager, metricsConfig ) );
+                                new TransferStreamingOutput( in, localFile, metricsManager, metricsConfig ) );
 
                         responseHelper.setInfoHeaders( builder, item, sk, path, true, contentController.getContentType( path ),
                                         contentController.getHttpMetadata( item ) );
@@ -15,9 +15,11 @@
  */
 package org.commonjava.indy.core.bind.jaxrs.util;
 
+import io.undertow.servlet.spec.ServletOutputStreamImpl;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.CountingOutputStream;
 import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.indy.util.ObservingInputStream;
 import org.commonjava.o11yphant.metrics.MetricsManager;
 import org.commonjava.o11yphant.metrics.RequestContextHelper;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
@@ -30,12 +32,16 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.StreamingOutput;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 
 import static org.commonjava.indy.IndyContentConstants.NANOS_PER_SEC;
+import static org.commonjava.indy.util.ContentUtils.forEachObserver;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.METER;
 import static org.commonjava.o11yphant.metrics.RequestContextConstants.RAW_IO_WRITE_NANOS;
 import static org.commonjava.o11yphant.metrics.util.NameUtils.getDefaultName;
@@ -53,12 +59,16 @@ public class TransferStreamingOutput
 
     private static final String WRITE_SIZE = "write.kb";
 
+    private static final String ZERO_COPY = "write.zero_copy";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final Optional<SpanAdapter> rootSpan;
 
     private final InputStream stream;
 
+    private final File localFile;
+
     private final MetricsManager metricsManager;
 
     private final IndyMetricsConfig metricsConfig;
@@ -67,14 +77,29 @@ public class TransferStreamingOutput
 
     private CountingOutputStream cout;
 
+    private boolean zeroCopy;
+
     private double kbCount;
 
     private long writeSpeed;
 
     public TransferStreamingOutput( final InputStream stream, final MetricsManager metricsManager,
                                     final IndyMetricsConfig metricsConfig )
+    {
+        this( stream, null, metricsManager, metricsConfig );
+    }
+
+    /**
+     * @param localFile plain local file holding exactly the bytes the stream would return (see
+     * {@link org.commonjava.indy.util.ContentUtils#getLocalFile}). If given, the body is sent straight from the file
+     * with {@link FileChannel#transferTo} when the output is the Undertow servlet stream itself, and the stream is
+     * then only held open (and closed) to keep the content locked. Either way the same write counters are fed.
+     */
+    public TransferStreamingOutput( final InputStream stream, final File localFile,
+                                    final MetricsManager metricsManager, final IndyMetricsConfig metricsConfig )
     {
         this.stream = stream;
+        this.localFile = localFile;
         this.metricsManager = metricsManager;
         this.metricsConfig = metricsConfig;
 
@@ -94,9 +119,16 @@ public class TransferStreamingOutput
         try
         {
             cout = new CountingOutputStream( out );
-            IOUtils.copy( stream, cout );
 
-            kbCount = (double) cout.getByteCount() / 1024;
+            long transferred = localFile == null ? -1 : transferLocalFile( out );
+            zeroCopy = transferred > -1;
+            if ( !zeroCopy )
+            {
+                IOUtils.copy( stream, cout );
+                transferred = cout.getByteCount();
+            }
+
+            kbCount = (double) transferred / 1024;
 
             Logger logger = LoggerFactory.getLogger( getClass() );
             logger.trace( "Wrote: {} bytes", kbCount );
@@ -136,6 +168,50 @@ public class TransferStreamingOutput
         }
     }
 
+    /**
+     * Send the local file straight into the Undertow servlet stream, which hands the file channel to the socket
+     * without copying it through heap buffers. This is only done when that stream is the one we were asked to write
+     * to; anything in between (a response wrapper that filters or replaces the body, a counting stream) has to see
+     * the bytes, so then this returns -1 without writing anything and the content is copied through the stream.
+     * <p>
+     * The observers the stream is wrapped in (read timers) are told about the transfer, since they never see a read.
+     */
+    private long transferLocalFile( final OutputStream out )
+            throws IOException
+    {
+        if ( !( out instanceof ServletOutputStreamImpl ) )
+        {
+            return -1;
+        }
+
+        FileChannel channel;
+        try
+        {
+            channel = FileChannel.open( localFile.toPath(), StandardOpenOption.READ );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Cannot open: {} for zero-copy transfer. Streaming instead. Reason: {}", localFile,
+                          e.getMessage() );
+            return -1;
+        }
+
+        try
+        {
+            long size = channel.size();
+            forEachObserver( stream, ObservingInputStream::transferStarted );
+            ( (ServletOutputStreamImpl) out ).transferFrom( channel );
+            forEachObserver( stream, o -> o.transferred( size ) );
+
+            logger.trace( "Transferred: {} bytes from: {} without copying", size, localFile );
+            return size;
+        }
+        finally
+        {
+            IOUtils.closeQuietly( channel );
+        }
+    }
+
     private class TransferFieldInjector
                     implements CloseBlockingDecorator
     {
@@ -155,6 +231,7 @@ public class TransferStreamingOutput
                 logger.trace( "Decorating span with write speed / size metrics." );
                 span.addField( WRITE_SPEED, writeSpeed );
                 span.addField( WRITE_SIZE, kbCount );
+                span.addField( ZERO_COPY, zeroCopy );
             }
         }
     }
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.core.content.PathMaskChecker;
+import org.commonjava.indy.model.core.ArtifactStore;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+
+/**
+ * Drops the compiled path masks of stores that were updated or deleted, so {@link PathMaskChecker} doesn't hold on to
+ * them.
+ */
+@ApplicationScoped
+public class PathMaskCacheListener
+{
+    public void onStoreUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        for ( ArtifactStore store : event.getChanges() )
+        {
+            PathMaskChecker.invalidate( store.getKey() );
+        }
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        for ( ArtifactStore store : event )
+        {
+            PathMaskChecker.invalidate( store.getKey() );
+        }
+    }
+}
@@ -31,7 +31,7 @@ import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
-import org.commonjava.indy.schedule.event.ScheduleTriggerEvent;
+import org.commonjava.indy.schedule.event.ScheduleTriggerBatchEvent;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -135,15 +135,11 @@ public class StoreEnablementManager
     }
 
     @Measure
-    public void onDisableTimeout( @Observes ScheduleTriggerEvent evt )
+    public void onDisableTimeout( @Observes ScheduleTriggerBatchEvent evt )
     {
-        Logger logger = LoggerFactory.getLogger( getClass() );
-        logger.debug( "Checking for store-reenable event in: {} (trigger? {} Disable-Timeout? {})", evt,
-                      true, DISABLE_TIMEOUT.equals( evt.getJobType() ) );
-
         if ( DISABLE_TIMEOUT.equals( evt.getJobType() ) )
         {
-            handleDisableTimeout( evt.getPayload() );
+            evt.getPayloads().forEach( this::handleDisableTimeout );
         }
     }
 
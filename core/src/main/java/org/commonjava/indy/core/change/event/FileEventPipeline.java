@@ -0,0 +1,411 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change.event;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.change.event.AsyncFileEventObserver;
+import org.commonjava.indy.change.event.CoreEventManagerConstants;
+import org.commonjava.indy.change.event.FileEventBatchListener;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.maven.galley.event.FileEvent;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
+
+/**
+ * Delivers file events to {@link FileEventBatchListener}s annotated with {@link AsyncFileEventObserver}, off the
+ * thread that fired them.
+ * <p>
+ * Every listener has its own bounded queue, split into lanes by store key and path. A lane is drained by at most one
+ * dispatch thread at a time, in batches, which keeps the events for any store key and path in order while letting
+ * unrelated lanes (and listeners) proceed in parallel. When a queue is full, the listener's overflow policy decides
+ * whether the firing thread waits (briefly, see {@link IndyConfiguration#getFileEventBlockMillis()}) for room or the
+ * event is dropped right away.
+ * <p>
+ * Queue depth and delivery lag (the age of the oldest event in the last delivered batch) are exposed as gauges for
+ * each listener; delivered, dropped and blocked events (those the firing thread had to wait for) are metered.
+ */
+@ApplicationScoped
+public class FileEventPipeline
+{
+    private static final String METRIC_NAME = "indy.file.event.pipeline.";
+
+    private static final String DELIVERED = "delivered";
+
+    private static final String DROPPED = "dropped";
+
+    private static final String BLOCKED = "blocked";
+
+    private static final int MAX_BATCHES_PER_DRAIN = 10;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    @Any
+    private Instance<FileEventBatchListener> listenerInstances;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = CoreEventManagerConstants.DISPATCH_EXECUTOR_NAME,
+                     threads = CoreEventManagerConstants.DISPATCH_EXECUTOR_THREADS,
+                     priority = CoreEventManagerConstants.DISPATCH_EXECUTOR_PRIORITY )
+    private WeftExecutorService dispatchExecutor;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    @Inject
+    private IndyConfiguration indyConfig;
+
+    private List<ListenerQueue> queues = Collections.emptyList();
+
+    private long defaultBlockMillis = DefaultIndyConfiguration.DEFAULT_FILE_EVENT_BLOCK_MILLIS;
+
+    protected FileEventPipeline()
+    {
+    }
+
+    public FileEventPipeline( final List<FileEventBatchListener> listeners,
+                              final WeftExecutorService dispatchExecutor )
+    {
+        this.dispatchExecutor = dispatchExecutor;
+        this.queues = createQueues( listeners );
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( indyConfig != null )
+        {
+            defaultBlockMillis = indyConfig.getFileEventBlockMillis();
+        }
+
+        List<FileEventBatchListener> listeners = new ArrayList<>();
+        if ( listenerInstances != null )
+        {
+            listenerInstances.forEach( listeners::add );
+        }
+
+        queues = createQueues( listeners );
+        queues.forEach( this::registerGauges );
+    }
+
+    public boolean hasListeners()
+    {
+        return !queues.isEmpty();
+    }
+
+    /**
+     * Queue the event for every asynchronous listener.
+     */
+    public void dispatch( final FileEvent event )
+    {
+        if ( queues.isEmpty() )
+        {
+            return;
+        }
+
+        final String laneKey = getLaneKey( event );
+        for ( ListenerQueue queue : queues )
+        {
+            if ( !queue.accepts( event ) )
+            {
+                continue;
+            }
+
+            Lane lane = queue.laneFor( laneKey );
+            if ( enqueue( queue, lane, event ) )
+            {
+                schedule( queue, lane );
+            }
+            else
+            {
+                logger.warn( "File-event queue of: {} is full. Dropping: {}", queue.name, event );
+                mark( metricsManager, metricsConfig, FileEventPipeline.class, METRIC_NAME,
+                      queue.name + "." + DROPPED, 1 );
+            }
+        }
+    }
+
+    private boolean enqueue( final ListenerQueue queue, final Lane lane, final FileEvent event )
+    {
+        QueuedEvent queued = new QueuedEvent( event );
+        if ( lane.events.offer( queued ) )
+        {
+            return true;
+        }
+
+        long blockMillis = getBlockMillis( queue.config );
+        if ( queue.config.overflow() == AsyncFileEventObserver.OverflowPolicy.DROP || blockMillis <= 0 )
+        {
+            return false;
+        }
+
+        mark( metricsManager, metricsConfig, FileEventPipeline.class, METRIC_NAME, queue.name + "." + BLOCKED, 1 );
+        try
+        {
+            return lane.events.offer( queued, blockMillis, TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private long getBlockMillis( final AsyncFileEventObserver config )
+    {
+        return config.blockMillis() < 0 ? defaultBlockMillis : config.blockMillis();
+    }
+
+    private void schedule( final ListenerQueue queue, final Lane lane )
+    {
+        if ( !lane.draining.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        try
+        {
+            dispatchExecutor.execute( () -> drain( queue, lane ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            // the events stay queued, and are picked up by the next dispatch to this lane.
+            lane.draining.set( false );
+            logger.warn( "Cannot schedule delivery of file events to: {}. Reason: {}", queue.name, e.getMessage() );
+        }
+    }
+
+    private void drain( final ListenerQueue queue, final Lane lane )
+    {
+        try
+        {
+            final List<QueuedEvent> batch = new ArrayList<>( queue.config.batchSize() );
+            for ( int i = 0; i < MAX_BATCHES_PER_DRAIN; i++ )
+            {
+                lane.events.drainTo( batch, queue.config.batchSize() );
+                if ( batch.isEmpty() )
+                {
+                    break;
+                }
+
+                deliver( queue, batch );
+                batch.clear();
+            }
+        }
+        finally
+        {
+            lane.draining.set( false );
+        }
+
+        // either we stopped early to give other lanes a turn, or events arrived while we were finishing up.
+        if ( !lane.events.isEmpty() )
+        {
+            schedule( queue, lane );
+        }
+    }
+
+    private void deliver( final ListenerQueue queue, final List<QueuedEvent> batch )
+    {
+        queue.lagMillis.set( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - batch.get( 0 ).queuedNanos ) );
+
+        final List<FileEvent> events = new ArrayList<>( batch.size() );
+        batch.forEach( q -> events.add( q.event ) );
+
+        try
+        {
+            queue.listener.onFileEvents( events );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.error( String.format( "Error delivering %d file events to: %s. Reason: %s", events.size(),
+                                         queue.name, e.getMessage() ), e );
+        }
+
+        mark( metricsManager, metricsConfig, FileEventPipeline.class, METRIC_NAME, queue.name + "." + DELIVERED,
+              events.size() );
+    }
+
+    private List<ListenerQueue> createQueues( final List<FileEventBatchListener> listeners )
+    {
+        List<ListenerQueue> result = new ArrayList<>();
+        for ( FileEventBatchListener listener : listeners )
+        {
+            AsyncFileEventObserver config = listener.getClass().getAnnotation( AsyncFileEventObserver.class );
+            if ( config == null )
+            {
+                logger.warn( "File-event batch listener: {} is not annotated with @{}. It will not receive events.",
+                             listener.getClass().getName(), AsyncFileEventObserver.class.getSimpleName() );
+                continue;
+            }
+
+            ListenerQueue queue = new ListenerQueue( listener, config );
+            logger.info( "Asynchronous file-event delivery to: {} (events: {}, queue size: {}, batch size: {}, lanes: {}, "
+                                         + "overflow: {}, block: {}ms)", queue.name,
+                         Arrays.toString( config.eventTypes() ), config.queueSize(), config.batchSize(),
+                         config.lanes(), config.overflow(), getBlockMillis( config ) );
+            result.add( queue );
+        }
+
+        return Collections.unmodifiableList( result );
+    }
+
+    private void registerGauges( final ListenerQueue queue )
+    {
+        if ( metricsManager == null )
+        {
+            return;
+        }
+
+        Map<String, Gauge<Integer>> gauges = new HashMap<>();
+        gauges.put( "depth", queue::depth );
+        gauges.put( "lag", () -> (int) Math.min( Integer.MAX_VALUE, queue.lagMillis.get() ) );
+        metricsManager.addGauges( getClass(), queue.name, gauges );
+    }
+
+    private static String getLaneKey( final FileEvent event )
+    {
+        Transfer transfer = event.getTransfer();
+        if ( transfer == null )
+        {
+            return "";
+        }
+
+        Location location = transfer.getLocation();
+        Object locationKey = location instanceof KeyedLocation ? ( (KeyedLocation) location ).getKey() : location;
+        return locationKey + "#" + transfer.getPath();
+    }
+
+    private static final class ListenerQueue
+    {
+        private final String name;
+
+        private final FileEventBatchListener listener;
+
+        private final AsyncFileEventObserver config;
+
+        private final Lane[] lanes;
+
+        private final AtomicLong lagMillis = new AtomicLong();
+
+        ListenerQueue( final FileEventBatchListener listener, final AsyncFileEventObserver config )
+        {
+            this.listener = listener;
+            this.config = config;
+
+            String listenerName = config.name();
+            if ( listenerName.isEmpty() )
+            {
+                // strip any CDI proxy suffix
+                listenerName = listener.getClass().getSimpleName();
+                int idx = listenerName.indexOf( '$' );
+                listenerName = idx > 0 ? listenerName.substring( 0, idx ) : listenerName;
+            }
+            this.name = listenerName;
+
+            int laneCount = Math.max( 1, config.lanes() );
+            int laneCapacity = Math.max( 1, config.queueSize() / laneCount );
+            this.lanes = new Lane[laneCount];
+            for ( int i = 0; i < laneCount; i++ )
+            {
+                lanes[i] = new Lane( laneCapacity );
+            }
+        }
+
+        boolean accepts( final FileEvent event )
+        {
+            for ( Class<? extends FileEvent> type : config.eventTypes() )
+            {
+                if ( type.isInstance( event ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Lane laneFor( final String laneKey )
+        {
+            return lanes[( laneKey.hashCode() & Integer.MAX_VALUE ) % lanes.length];
+        }
+
+        int depth()
+        {
+            int depth = 0;
+            for ( Lane lane : lanes )
+            {
+                depth += lane.events.size();
+            }
+            return depth;
+        }
+    }
+
+    private static final class Lane
+    {
+        private final BlockingQueue<QueuedEvent> events;
+
+        private final AtomicBoolean draining = new AtomicBoolean( false );
+
+        Lane( final int capacity )
+        {
+            this.events = new ArrayBlockingQueue<>( capacity );
+        }
+    }
+
+    private static final class QueuedEvent
+    {
+        private final FileEvent event;
+
+        private final long queuedNanos = System.nanoTime();
+
+        QueuedEvent( final FileEvent event )
+        {
+            this.event = event;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileAccessEvent;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
 import org.commonjava.maven.galley.event.FileErrorEvent;
+import org.commonjava.maven.galley.event.FileEvent;
 import org.commonjava.maven.galley.event.FileNotFoundEvent;
 import org.commonjava.maven.galley.event.FileStorageEvent;
 import org.slf4j.Logger;
@@ -34,6 +35,8 @@ import static org.commonjava.indy.change.EventUtils.fireEvent;
 
 /**
  * Helper class to provide simple methods to handle null-checking, etc. around the firing of Indy filesystem events.
+ * File events are delivered to CDI observers synchronously, then queued for any asynchronous listeners via
+ * {@link FileEventPipeline}.
  */
 @ApplicationScoped
 public class IndyFileEventManager
@@ -60,12 +63,8 @@ public class IndyFileEventManager
     @Inject
     private Event<IndyStoreErrorEvent> storeErrorEvent;
 
-//    @ExecutorConfig( named = CoreEventManagerConstants.DISPATCH_EXECUTOR_NAME,
-//                     threads = CoreEventManagerConstants.DISPATCH_EXECUTOR_THREADS,
-//                     priority = CoreEventManagerConstants.DISPATCH_EXECUTOR_PRIORITY )
-//    @WeftManaged
-//    @Inject
-//    private Executor executor;
+    @Inject
+    private FileEventPipeline pipeline;
 
     @Override
     public void fire( final FileNotFoundEvent evt )
@@ -81,6 +80,7 @@ public class IndyFileEventManager
         if ( shouldFireEvent( evt.getEventMetadata() ) )
         {
             fireEvent( storageEvent, evt );
+            dispatchAsync( evt );
         }
     }
 
@@ -90,6 +90,7 @@ public class IndyFileEventManager
         if ( shouldFireEvent( evt.getEventMetadata() ) )
         {
             fireEvent( accessEvent, evt );
+            dispatchAsync( evt );
         }
     }
 
@@ -99,6 +100,7 @@ public class IndyFileEventManager
         if ( shouldFireEvent( evt.getEventMetadata() ) )
         {
             fireEvent( deleteEvent, evt );
+            dispatchAsync( evt );
         }
     }
 
@@ -108,6 +110,7 @@ public class IndyFileEventManager
         if ( shouldFireEvent( evt.getEventMetadata() ) )
         {
             fireEvent( errorEvent, evt );
+            dispatchAsync( evt );
         }
     }
 
@@ -116,6 +119,14 @@ public class IndyFileEventManager
         fireEvent( storeErrorEvent, evt );
     }
 
+    private void dispatchAsync( final FileEvent evt )
+    {
+        if ( pipeline != null )
+        {
+            pipeline.dispatch( evt );
+        }
+    }
+
     private boolean shouldFireEvent( EventMetadata eventMetadata )
     {
         return ( eventMetadata == null || !Boolean.TRUE.equals( eventMetadata.get( ContentManager.SUPPRESS_EVENTS ) ) );
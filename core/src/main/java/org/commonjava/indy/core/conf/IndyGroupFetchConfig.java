@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.conf;
+
+import org.apache.commons.lang3.StringUtils;
+import org.commonjava.indy.conf.IndyConfigInfo;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.propulsor.config.annotation.SectionName;
+import org.commonjava.propulsor.config.section.MapSectionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Configures speculative (parallel) retrieval of content from group members. This is opt-in per group, either by
+ * matching the group name against one of the configured patterns, or by setting the group metadata key
+ * {@link #SPECULATIVE_FETCH_METADATA} to true / false (which overrides the patterns).
+ */
+@ApplicationScoped
+@SectionName( IndyGroupFetchConfig.SECTION_NAME )
+public class IndyGroupFetchConfig
+        extends MapSectionListener
+        implements IndyConfigInfo
+{
+    public static final String SECTION_NAME = "group-fetch";
+
+    public static final String SPECULATIVE_FETCH_METADATA = "speculative-fetch";
+
+    private static final String ENABLED = "speculative.enabled";
+
+    private static final String GROUPS = "speculative.groups";
+
+    private static final String WAVE_SIZE = "speculative.wave.size";
+
+    private static final int DEFAULT_WAVE_SIZE = 4;
+
+    private boolean enabled;
+
+    private List<Pattern> groupPatterns = new ArrayList<>();
+
+    private int waveSize = DEFAULT_WAVE_SIZE;
+
+    public IndyGroupFetchConfig()
+    {
+    }
+
+    public IndyGroupFetchConfig( final boolean enabled, final int waveSize, final String... groupPatterns )
+    {
+        this.enabled = enabled;
+        this.waveSize = waveSize;
+        for ( String pattern : groupPatterns )
+        {
+            this.groupPatterns.add( Pattern.compile( pattern ) );
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public int getWaveSize()
+    {
+        return waveSize < 1 ? 1 : waveSize;
+    }
+
+    public boolean isSpeculativeFetchEnabled( final Group group )
+    {
+        if ( !enabled )
+        {
+            return false;
+        }
+
+        String override = group.getMetadata( SPECULATIVE_FETCH_METADATA );
+        if ( StringUtils.isNotBlank( override ) )
+        {
+            return Boolean.parseBoolean( override.trim() );
+        }
+
+        return groupPatterns.stream().anyMatch( p -> p.matcher( group.getName() ).matches() );
+    }
+
+    @Override
+    public void parameter( final String name, final String value )
+    {
+        Logger logger = LoggerFactory.getLogger( getClass() );
+        logger.trace( "Got group-fetch config parameter: '{}' with value: '{}'", name, value );
+        switch ( name )
+        {
+            case ENABLED:
+            {
+                this.enabled = Boolean.parseBoolean( value.trim() );
+                break;
+            }
+            case GROUPS:
+            {
+                List<Pattern> patterns = new ArrayList<>();
+                for ( String pattern : value.split( "\\s*,\\s*" ) )
+                {
+                    if ( StringUtils.isBlank( pattern ) )
+                    {
+                        continue;
+                    }
+
+                    try
+                    {
+                        patterns.add( Pattern.compile( pattern.trim() ) );
+                    }
+                    catch ( PatternSyntaxException e )
+                    {
+                        logger.warn( "Invalid group name pattern for speculative fetch: '{}'. Skipping.", pattern );
+                    }
+                }
+                this.groupPatterns = patterns;
+                break;
+            }
+            case WAVE_SIZE:
+            {
+                this.waveSize = Integer.parseInt( value.trim() );
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public String getDefaultConfigFileName()
+    {
+        return "conf.d/group-fetch.conf";
+    }
+
+    @Override
+    public InputStream getDefaultConfig()
+    {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream( "default-group-fetch.conf" );
+    }
+}
@@ -27,8 +27,12 @@ import java.io.InputStream;
 public class IndyStoreManagerConfig implements IndyConfigInfo
 {
 
+    public static final long DEFAULT_NEAR_CACHE_SYNC_MILLIS = 1000;
+
     private String keyspace;
 
+    private Long nearCacheSyncMillis;
+
     private int replicationFactor;
 
     public IndyStoreManagerConfig() {}
@@ -50,6 +54,21 @@ public class IndyStoreManagerConfig implements IndyConfigInfo
         this.keyspace = keyspace;
     }
 
+    /**
+     * How often a node checks the store change log for stores changed by other nodes, and drops them from its local
+     * store cache.
+     */
+    public long getNearCacheSyncMillis()
+    {
+        return nearCacheSyncMillis == null ? DEFAULT_NEAR_CACHE_SYNC_MILLIS : nearCacheSyncMillis;
+    }
+
+    @ConfigName( "store.manager.near.cache.sync.millis" )
+    public void setNearCacheSyncMillis( Long nearCacheSyncMillis )
+    {
+        this.nearCacheSyncMillis = nearCacheSyncMillis;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
@@ -92,6 +92,7 @@ public abstract class AbstractMergedContentGenerator
                                              final EventMetadata eventMetadata )
         throws IndyWorkflowException
     {
+        contentDeleted( store, path, eventMetadata );
         if ( path.endsWith( getMergedMetadataName() ) )
         {
             clearAllMerged( store, path );
@@ -103,12 +104,28 @@ public abstract class AbstractMergedContentGenerator
                                             final EventMetadata eventMetadata )
         throws IndyWorkflowException
     {
+        contentStored( store, path, result, eventMetadata );
         if ( path.endsWith( getMergedMetadataName() ) )
         {
             clearAllMerged( store, path );
         }
     }
 
+    /**
+     * Called for every path stored in any store, before merged files are cleared. Does nothing by default.
+     */
+    protected void contentStored( final ArtifactStore store, final String path, final Transfer result,
+                                  final EventMetadata eventMetadata )
+    {
+    }
+
+    /**
+     * Called for every path deleted from any store, before merged files are cleared. Does nothing by default.
+     */
+    protected void contentDeleted( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
+    {
+    }
+
     protected abstract String getMergedMetadataName();
 
     @Measure
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.commonjava.indy.core.content.PathMaskChecker.isRegexPattern;
+
+/**
+ * Compiled form of the path-mask patterns of one {@link org.commonjava.indy.model.core.ArtifactStore}. Plain patterns
+ * are prefixes, and go into a character trie. Regex patterns (<code>r|...|</code>) are compiled once, into a single
+ * alternation where possible.
+ * <p>
+ * The instance remembers which pattern set instance it was compiled from, so {@link PathMaskChecker} can tell by
+ * reference when the store's masks were replaced and it needs recompiling. Changes made to the same set instance are
+ * picked up when the store update drops the cached mask.
+ */
+final class CompiledPathMask
+{
+    private static final Pattern BACKREFERENCE = Pattern.compile( "\\\\([1-9]|k<)" );
+
+    private final Set<String> source;
+
+    private final PrefixNode prefixes = new PrefixNode();
+
+    private final List<Pattern> regexes;
+
+    private final boolean regexPatterns;
+
+    private CompiledPathMask( final Set<String> source, final List<Pattern> regexes, final boolean regexPatterns )
+    {
+        this.source = source;
+        this.regexes = regexes;
+        this.regexPatterns = regexPatterns;
+    }
+
+    static CompiledPathMask compile( final Set<String> maskPatterns )
+    {
+        final Logger logger = LoggerFactory.getLogger( CompiledPathMask.class );
+
+        final List<String> rawRegexes = new ArrayList<>();
+        final List<String> plain = new ArrayList<>();
+        for ( String pattern : new HashSet<>( maskPatterns ) )
+        {
+            if ( isRegexPattern( pattern ) )
+            {
+                rawRegexes.add( pattern.length() > 2 ? pattern.substring( 2, pattern.length() - 1 ) : "" );
+            }
+            else if ( pattern != null )
+            {
+                plain.add( pattern );
+            }
+        }
+
+        final List<Pattern> regexes = new ArrayList<>();
+        final List<Pattern> individual = new ArrayList<>();
+        boolean combinable = true;
+        for ( String regex : rawRegexes )
+        {
+            try
+            {
+                individual.add( Pattern.compile( regex ) );
+                if ( BACKREFERENCE.matcher( regex ).find() )
+                {
+                    // group numbers / names would shift inside an alternation
+                    combinable = false;
+                }
+            }
+            catch ( PatternSyntaxException e )
+            {
+                logger.warn( "Invalid path-mask regex: '{}' will never match. Reason: {}", regex, e.getMessage() );
+            }
+        }
+
+        if ( combinable && individual.size() > 1 )
+        {
+            StringBuilder sb = new StringBuilder();
+            for ( Pattern p : individual )
+            {
+                if ( sb.length() > 0 )
+                {
+                    sb.append( '|' );
+                }
+                sb.append( "(?:" ).append( p.pattern() ).append( ')' );
+            }
+
+            try
+            {
+                regexes.add( Pattern.compile( sb.toString() ) );
+            }
+            catch ( PatternSyntaxException e )
+            {
+                logger.debug( "Cannot combine path-mask regexes. Matching them one by one. Reason: {}",
+                              e.getMessage() );
+                regexes.addAll( individual );
+            }
+        }
+        else
+        {
+            regexes.addAll( individual );
+        }
+
+        CompiledPathMask mask = new CompiledPathMask( maskPatterns, regexes, !rawRegexes.isEmpty() );
+        plain.forEach( mask.prefixes::add );
+        return mask;
+    }
+
+    boolean isCompiledFrom( final Set<String> maskPatterns )
+    {
+        return maskPatterns == source;
+    }
+
+    /**
+     * True if any of the patterns is a regex (<code>r|...|</code>), even one that failed to compile.
+     */
+    boolean hasRegexPatterns()
+    {
+        return regexPatterns;
+    }
+
+    /**
+     * True if one of the plain patterns is a prefix of the path, or one of the regexes matches the whole path.
+     */
+    boolean matches( final String path )
+    {
+        if ( prefixes.hasPrefixOf( path ) )
+        {
+            return true;
+        }
+
+        for ( Pattern regex : regexes )
+        {
+            if ( regex.matcher( path ).matches() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * True if one of the plain patterns is a prefix of the path, or the path is a prefix of one of the plain patterns.
+     */
+    boolean matchesListing( final String path )
+    {
+        PrefixNode node = prefixes;
+        for ( int i = 0; i < path.length(); i++ )
+        {
+            if ( node.terminal )
+            {
+                return true;
+            }
+
+            node = node.children.get( path.charAt( i ) );
+            if ( node == null )
+            {
+                return false;
+            }
+        }
+
+        // path is consumed: either it equals a pattern, or it is a prefix of at least one.
+        return true;
+    }
+
+    private static final class PrefixNode
+    {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+
+        private boolean terminal;
+
+        void add( final String prefix )
+        {
+            PrefixNode node = this;
+            for ( int i = 0; i < prefix.length(); i++ )
+            {
+                node = node.children.computeIfAbsent( prefix.charAt( i ), c -> new PrefixNode() );
+            }
+            node.terminal = true;
+        }
+
+        boolean hasPrefixOf( final String path )
+        {
+            PrefixNode node = this;
+            for ( int i = 0; i < path.length(); i++ )
+            {
+                if ( node.terminal )
+                {
+                    return true;
+                }
+
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+
+            return node.terminal;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.content.ContentGenerator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dispatch index of the {@link ContentGenerator}s, compiled once from what they declare in
+ * {@link ContentGenerator#getHandledPackageTypes()} and {@link ContentGenerator#getHandledPathSuffixes()}. Per package
+ * type it keeps the generators for that type (in registration order), plus a trie of their path suffixes (keyed by
+ * the path characters read backwards), so a lookup only walks the end of the path once, whatever the number of
+ * generators.
+ */
+final class ContentGeneratorIndex
+{
+    private final Map<String, Selection> byPackageType = new HashMap<>();
+
+    // for package types no generator declared: only the generators that take any package type
+    private final Selection anyPackageType;
+
+    ContentGeneratorIndex( final Collection<ContentGenerator> generators )
+    {
+        final List<ContentGenerator> untyped = new ArrayList<>();
+        final Set<String> packageTypes = new HashSet<>();
+        for ( ContentGenerator generator : generators )
+        {
+            Set<String> types = generator.getHandledPackageTypes();
+            if ( types == null )
+            {
+                untyped.add( generator );
+            }
+            else
+            {
+                packageTypes.addAll( types );
+            }
+        }
+
+        for ( String packageType : packageTypes )
+        {
+            final List<ContentGenerator> selected = new ArrayList<>();
+            for ( ContentGenerator generator : generators )
+            {
+                Set<String> types = generator.getHandledPackageTypes();
+                if ( types == null || types.contains( packageType ) )
+                {
+                    selected.add( generator );
+                }
+            }
+            byPackageType.put( packageType, new Selection( selected ) );
+        }
+
+        anyPackageType = new Selection( untyped );
+    }
+
+    /**
+     * Generators that work with stores of the package type.
+     */
+    List<ContentGenerator> select( final String packageType )
+    {
+        return selection( packageType ).generators;
+    }
+
+    /**
+     * Generators that work with stores of the package type and may generate one of the paths (e.g. the request path
+     * and its storage path).
+     */
+    List<ContentGenerator> select( final String packageType, final String... paths )
+    {
+        return selection( packageType ).select( paths );
+    }
+
+    private Selection selection( final String packageType )
+    {
+        Selection selection = packageType == null ? null : byPackageType.get( packageType );
+        return selection == null ? anyPackageType : selection;
+    }
+
+    private static final class Selection
+    {
+        private final List<ContentGenerator> generators;
+
+        // generators that can't be filtered by path
+        private final BitSet anyPath = new BitSet();
+
+        private final SuffixNode suffixes = new SuffixNode();
+
+        private Selection( final List<ContentGenerator> generators )
+        {
+            this.generators = Collections.unmodifiableList( generators );
+            for ( int i = 0; i < generators.size(); i++ )
+            {
+                Set<String> handled = generators.get( i ).getHandledPathSuffixes();
+                if ( handled == null )
+                {
+                    anyPath.set( i );
+                }
+                else
+                {
+                    for ( String suffix : handled )
+                    {
+                        suffixes.add( suffix, i );
+                    }
+                }
+            }
+        }
+
+        private List<ContentGenerator> select( final String... paths )
+        {
+            final BitSet selected = (BitSet) anyPath.clone();
+            for ( String path : paths )
+            {
+                if ( path != null )
+                {
+                    suffixes.collect( path, selected );
+                }
+            }
+
+            if ( selected.cardinality() == generators.size() )
+            {
+                return generators;
+            }
+
+            final List<ContentGenerator> result = new ArrayList<>( selected.cardinality() );
+            for ( int i = selected.nextSetBit( 0 ); i >= 0; i = selected.nextSetBit( i + 1 ) )
+            {
+                result.add( generators.get( i ) );
+            }
+            return result;
+        }
+    }
+
+    private static final class SuffixNode
+    {
+        private final Map<Character, SuffixNode> children = new HashMap<>();
+
+        private final BitSet terminal = new BitSet();
+
+        void add( final String suffix, final int generator )
+        {
+            SuffixNode node = this;
+            for ( int i = suffix.length() - 1; i >= 0; i-- )
+            {
+                node = node.children.computeIfAbsent( suffix.charAt( i ), c -> new SuffixNode() );
+            }
+            node.terminal.set( generator );
+        }
+
+        void collect( final String path, final BitSet selected )
+        {
+            SuffixNode node = this;
+            for ( int i = path.length() - 1; i >= 0; i-- )
+            {
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return;
+                }
+                selected.or( node.terminal );
+            }
+        }
+    }
+}
@@ -21,11 +21,14 @@ import org.commonjava.indy.content.StoreResource;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.spi.io.PathGenerator;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,27 +36,43 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.function.Consumer;
 
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Runs the {@link ContentGenerator}s for a store and path. Generators are only asked to generate content when they
+ * declare the store's package type and (for file content) one of the path suffixes they handle, see
+ * {@link ContentGeneratorIndex}. Each generator call is timed separately, under
+ * <code>indy.content.generator.&lt;generator&gt;.&lt;operation&gt;</code>.
+ */
 @ApplicationScoped
 public class ContentGeneratorManager
 {
+    private static final String METRIC_NAME = "indy.content.generator";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
     private Instance<ContentGenerator> contentGeneratorInstance;
 
-    private Set<ContentGenerator> contentGenerators;
+    private ContentGeneratorIndex contentGenerators;
 
     @Inject
     private PathGenerator pathGenerator;
 
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
     public ContentGeneratorManager()
     {
-        contentGenerators = new HashSet<>();
+        contentGenerators = new ContentGeneratorIndex( Collections.emptyList() );
     }
 
     @PostConstruct
@@ -61,10 +80,15 @@ public class ContentGeneratorManager
     {
         if ( contentGeneratorInstance != null )
         {
+            final List<ContentGenerator> generators = new ArrayList<>();
             for ( final ContentGenerator producer : contentGeneratorInstance )
             {
-                contentGenerators.add( producer );
+                if ( !generators.contains( producer ) )
+                {
+                    generators.add( producer );
+                }
             }
+            contentGenerators = new ContentGeneratorIndex( generators );
         }
     }
 
@@ -74,10 +98,19 @@ public class ContentGeneratorManager
                     throws IndyWorkflowException
     {
         Transfer item = null;
-        for ( final ContentGenerator generator : contentGenerators )
+        for ( final ContentGenerator generator : contentGenerators.select( packageType( store ), path ) )
         {
             logger.trace( "Attempting to generate content, path: {}, store: {}, via: {}", path, store, generator );
-            item = generator.generateFileContent( store, path, eventMetadata );
+            final Timer.Context timer = startTimer( generator, "generateFileContent" );
+            try
+            {
+                item = generator.generateFileContent( store, path, eventMetadata );
+            }
+            finally
+            {
+                stopTimer( timer );
+            }
+
             if ( item != null )
             {
                 consumer.accept( item );
@@ -94,12 +127,21 @@ public class ContentGeneratorManager
         Transfer item = null;
         String storagePath =
                         pathGenerator.getPath( new ConcreteResource( LocationUtils.toLocation( group ), path ) );
-        for ( final ContentGenerator generator : contentGenerators )
+        for ( final ContentGenerator generator : contentGenerators.select( packageType( group ), path, storagePath ) )
         {
             final boolean canProcess =  generator.canProcess( path ) || generator.canProcess( storagePath );
             if ( canProcess )
             {
-                item = generator.generateGroupFileContent( group, members, path, eventMetadata );
+                final Timer.Context timer = startTimer( generator, "generateGroupFileContent" );
+                try
+                {
+                    item = generator.generateGroupFileContent( group, members, path, eventMetadata );
+                }
+                finally
+                {
+                    stopTimer( timer );
+                }
+
                 logger.trace( "From content {}.generateGroupFileContent: {} (exists? {})",
                               generator.getClass().getSimpleName(), item, item != null && item.exists() );
                 if ( item != null && item.exists() )
@@ -116,9 +158,19 @@ public class ContentGeneratorManager
                                              EventMetadata eventMetadata, Consumer<Transfer> consumer )
                     throws IndyWorkflowException
     {
-        for ( final ContentGenerator generator : contentGenerators )
+        for ( final ContentGenerator generator : contentGenerators.select( packageType( group ) ) )
         {
-            final Transfer txfr = generator.generateGroupFileContent( group, members, path, eventMetadata );
+            final Timer.Context timer = startTimer( generator, "generateGroupFileContent" );
+            final Transfer txfr;
+            try
+            {
+                txfr = generator.generateGroupFileContent( group, members, path, eventMetadata );
+            }
+            finally
+            {
+                stopTimer( timer );
+            }
+
             if ( txfr != null )
             {
                 consumer.accept( txfr );
@@ -130,10 +182,18 @@ public class ContentGeneratorManager
     public void handleContentStorage( ArtifactStore transferStore, String path, Transfer txfr,
                                       EventMetadata eventMetadata ) throws IndyWorkflowException
     {
-        for ( final ContentGenerator generator : contentGenerators )
+        for ( final ContentGenerator generator : contentGenerators.select( packageType( transferStore ) ) )
         {
             logger.debug( "{} Handling content storage of: {} in: {}", generator, path, transferStore.getKey() );
-            generator.handleContentStorage( transferStore, path, txfr, eventMetadata );
+            final Timer.Context timer = startTimer( generator, "handleContentStorage" );
+            try
+            {
+                generator.handleContentStorage( transferStore, path, txfr, eventMetadata );
+            }
+            finally
+            {
+                stopTimer( timer );
+            }
         }
     }
 
@@ -141,9 +201,17 @@ public class ContentGeneratorManager
     public void handleContentDeletion( ArtifactStore member, String path, EventMetadata eventMetadata )
                     throws IndyWorkflowException
     {
-        for ( final ContentGenerator generator : contentGenerators )
+        for ( final ContentGenerator generator : contentGenerators.select( packageType( member ) ) )
         {
-            generator.handleContentDeletion( member, path, eventMetadata );
+            final Timer.Context timer = startTimer( generator, "handleContentDeletion" );
+            try
+            {
+                generator.handleContentDeletion( member, path, eventMetadata );
+            }
+            finally
+            {
+                stopTimer( timer );
+            }
         }
     }
 
@@ -152,10 +220,19 @@ public class ContentGeneratorManager
                                                   EventMetadata eventMetadata, Consumer<List<StoreResource>> consumer )
                     throws IndyWorkflowException
     {
-        for ( final ContentGenerator generator : contentGenerators )
+        for ( final ContentGenerator generator : contentGenerators.select( packageType( group ) ) )
         {
-            final List<StoreResource> generated =
-                            generator.generateGroupDirectoryContent( group, members, path, eventMetadata );
+            final Timer.Context timer = startTimer( generator, "generateGroupDirectoryContent" );
+            final List<StoreResource> generated;
+            try
+            {
+                generated = generator.generateGroupDirectoryContent( group, members, path, eventMetadata );
+            }
+            finally
+            {
+                stopTimer( timer );
+            }
+
             if ( generated != null )
             {
                 consumer.accept( generated );
@@ -168,13 +245,55 @@ public class ContentGeneratorManager
                                              EventMetadata metadata, Consumer<List<StoreResource>> consumer )
                     throws IndyWorkflowException
     {
-        for ( final ContentGenerator producer : contentGenerators )
+        for ( final ContentGenerator producer : contentGenerators.select( packageType( store ) ) )
         {
-            final List<StoreResource> produced = producer.generateDirectoryContent( store, path, listed, metadata );
+            final Timer.Context timer = startTimer( producer, "generateDirectoryContent" );
+            final List<StoreResource> produced;
+            try
+            {
+                produced = producer.generateDirectoryContent( store, path, listed, metadata );
+            }
+            finally
+            {
+                stopTimer( timer );
+            }
+
             if ( produced != null )
             {
                 consumer.accept( produced );
             }
         }
     }
+
+    private static String packageType( final ArtifactStore store )
+    {
+        return store == null ? null : store.getKey().getPackageType();
+    }
+
+    private Timer.Context startTimer( final ContentGenerator generator, final String operation )
+    {
+        if ( metricsManager == null || metricsConfig == null )
+        {
+            return null;
+        }
+
+        return metricsManager.startTimer(
+                        name( metricsConfig.getNodePrefix(), METRIC_NAME, generatorName( generator ), operation ) );
+    }
+
+    private static void stopTimer( final Timer.Context timer )
+    {
+        if ( timer != null )
+        {
+            timer.stop();
+        }
+    }
+
+    // CDI proxies are subclasses named like Foo$Proxy$_$$_WeldClientProxy
+    private static String generatorName( final ContentGenerator generator )
+    {
+        String name = generator.getClass().getSimpleName();
+        int idx = name.indexOf( '$' );
+        return idx > 0 ? name.substring( 0, idx ) : name;
+    }
 }
@@ -137,6 +137,12 @@ public class ContentMetadataGenerator
         } );
     }
 
+    @Override
+    public Set<String> getHandledPathSuffixes()
+    {
+        return HANDLED_FILENAMES;
+    }
+
     @Override
     public boolean canProcess( final String path )
     {
@@ -15,7 +15,6 @@
  */
 package org.commonjava.indy.core.content;
 
-import org.apache.commons.io.IOUtils;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.content.DirectContentAccess;
@@ -23,9 +22,11 @@ import org.commonjava.indy.core.inject.ContentMetadataCache;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,7 +35,12 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
 import static org.commonjava.maven.galley.io.ChecksummingTransferDecorator.FORCE_CHECKSUM;
 
 /**
@@ -47,10 +53,31 @@ public class DefaultContentDigester
         implements ContentDigester
 
 {
+    private static final int DRAIN_BUFFER_SIZE = 64 * 1024;
+
+    private static final String METRIC_NAME = "indy.content.digest.";
+
+    private static final String DIGESTS = "calculated";
+
+    private static final String BYTES = "bytes";
+
+    private static final String COALESCED = "coalesced";
 
     @Inject
     private DirectContentAccess directContentAccess;
 
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    /**
+     * Digest passes currently in progress, by cache key. Concurrent requests for the same content wait for the pass
+     * that is already running instead of reading the content again.
+     */
+    private final Map<String, CompletableFuture<TransferMetadata>> inProgress = new ConcurrentHashMap<>();
+
     @Inject
     @ContentMetadataCache
     private BasicCacheHandle<String, TransferMetadata> metadataCache;
@@ -135,15 +162,60 @@ public class DefaultContentDigester
         }
 
         String cacheKey = generateCacheKey( transfer );
+
+        CompletableFuture<TransferMetadata> mine = new CompletableFuture<>();
+        CompletableFuture<TransferMetadata> running = inProgress.putIfAbsent( cacheKey, mine );
+        if ( running != null )
+        {
+            logger.debug( "Checksum calculation for: {} is already running. Waiting for it.", cacheKey );
+            mark( metricsManager, metricsConfig, DefaultContentDigester.class, METRIC_NAME, COALESCED, 1 );
+            return await( cacheKey, running );
+        }
+
+        try
+        {
+            meta = calculate( transfer, cacheKey, eventMetadata );
+            mine.complete( meta );
+            return meta;
+        }
+        catch ( IndyWorkflowException | RuntimeException | Error e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inProgress.remove( cacheKey, mine );
+        }
+    }
+
+    private TransferMetadata calculate( final Transfer transfer, final String cacheKey,
+                                        final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        // another caller may have finished its pass between our cache check and registering this one.
+        TransferMetadata meta = getContentMetadata( transfer );
+        if ( meta != null )
+        {
+            return meta;
+        }
+
         logger.debug( "TransferMetadata missing for: {}. Re-reading with FORCE_CHECKSUM now to calculate it.",
                       cacheKey );
 
+        long total = 0;
         EventMetadata forcedEventMetadata = new EventMetadata( eventMetadata ).set( FORCE_CHECKSUM, Boolean.TRUE );
         try(InputStream stream = transfer.openInputStream( false, forcedEventMetadata ) )
         {
             // depend on ChecksummingTransferDecorator to calculate / store metadata as this gets read, using
-            // the FORCE_CHECKSUM metadata key to control its generation.
-            IOUtils.toByteArray( stream );
+            // the FORCE_CHECKSUM metadata key to control its generation. The bytes themselves are discarded, so we
+            // never hold more than one buffer of the content in memory.
+            final byte[] buf = new byte[DRAIN_BUFFER_SIZE];
+            int read;
+            while ( ( read = stream.read( buf ) ) > -1 )
+            {
+                total += read;
+            }
         }
         catch ( IOException e )
         {
@@ -151,8 +223,37 @@ public class DefaultContentDigester
                                              e, transfer, e.getMessage() );
         }
 
-        logger.debug( "Retrying TransferMetadata retrieval from cache for: {} after recalculating", cacheKey );
+        mark( metricsManager, metricsConfig, DefaultContentDigester.class, METRIC_NAME, DIGESTS, 1 );
+        mark( metricsManager, metricsConfig, DefaultContentDigester.class, METRIC_NAME, BYTES, total );
+
+        logger.debug( "Retrying TransferMetadata retrieval from cache for: {} after recalculating ({} bytes read)",
+                      cacheKey, total );
 
         return getContentMetadata( transfer );
     }
+
+    private TransferMetadata await( final String cacheKey, final CompletableFuture<TransferMetadata> running )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            return running.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Interrupted while waiting for checksums of: %s", e, cacheKey );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IndyWorkflowException )
+            {
+                throw (IndyWorkflowException) cause;
+            }
+
+            throw new IndyWorkflowException( "Failed to calculate checksums (MD5, SHA-256, etc.) for: %s. Reason: %s",
+                                             cause, cacheKey, cause.getMessage() );
+        }
+    }
 }
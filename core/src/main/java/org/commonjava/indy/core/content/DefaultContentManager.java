@@ -24,6 +24,7 @@ import org.commonjava.indy.content.ContentManager;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.core.content.group.SpeculativeGroupRetriever;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
@@ -96,6 +97,9 @@ public class DefaultContentManager
     @Inject
     private GroupRepositoryFilterManager repositoryFilterManager;
 
+    @Inject
+    private SpeculativeGroupRetriever speculativeGroupRetriever;
+
     protected DefaultContentManager()
     {
     }
@@ -220,9 +224,14 @@ public class DefaultContentManager
             item = contentGeneratorManager.generateGroupFileContent( (Group) store, members, path, eventMetadata );
             boolean generated = ( item != null );
 
-            if ( !generated )
+            if ( !generated && PathMaskChecker.checkMask( store, path ) )
             {
-                if ( PathMaskChecker.checkMask( store, path ) )
+                if ( speculativeGroupRetriever != null && speculativeGroupRetriever.isEnabledFor( (Group) store ) )
+                {
+                    item = speculativeGroupRetriever.retrieve( (Group) store, members, path, eventMetadata,
+                                                               this::doRetrieve );
+                }
+                else
                 {
                     for ( final ArtifactStore member : members )
                     {
@@ -38,6 +38,7 @@ import org.commonjava.indy.model.galley.CacheOnlyLocation;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.spi.pkg.ContentAdvisor;
 import org.commonjava.indy.spi.pkg.ContentQuality;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
 import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.indy.util.PathUtils;
@@ -60,6 +61,7 @@ import org.commonjava.maven.galley.model.VirtualResource;
 import org.commonjava.maven.galley.spi.io.SpecialPathManager;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import org.commonjava.maven.galley.spi.transport.LocationExpander;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,9 +84,11 @@ import java.util.stream.StreamSupport;
 import static org.commonjava.cdi.util.weft.ExecutorConfig.BooleanLiteral.TRUE;
 import static org.commonjava.indy.IndyContentConstants.CHECK_CACHE_ONLY;
 import static org.commonjava.indy.change.EventUtils.fireEvent;
+import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_REQUEST_TIMEOUT_SECONDS;
 import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
 import static org.commonjava.indy.data.StoreDataManager.IGNORE_READONLY;
 import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
 import static org.commonjava.indy.util.ContentUtils.dedupeListing;
 import static org.commonjava.maven.galley.model.TransferOperation.DOWNLOAD;
 import static org.commonjava.maven.galley.model.TransferOperation.LISTING;
@@ -94,6 +98,10 @@ public class DefaultDownloadManager
         implements DownloadManager
 {
 
+    private static final String DOWNLOAD_METRIC_NAME = "indy.download.singleflight.";
+
+    private static final String COALESCED = "coalesced";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -129,6 +137,14 @@ public class DefaultDownloadManager
     @Any
     private Instance<ContentAdvisor> contentAdvisors;
 
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    private final DownloadFlights<DownloadKey> downloads = new DownloadFlights<>();
+
     protected DefaultDownloadManager()
     {
     }
@@ -446,7 +462,7 @@ public class DefaultDownloadManager
         {
             if ( store instanceof RemoteRepository )
             {
-                target = transfers.retrieve( res, suppressFailures, eventMetadata );
+                target = retrieveSingleFlight( store, res, suppressFailures, eventMetadata );
             }
             else
             {
@@ -481,6 +497,62 @@ public class DefaultDownloadManager
         return target;
     }
 
+    /**
+     * Only one upstream download runs per (store, path). Concurrent requests for the same path wait for it, then read
+     * the cached copy it left (or share its failure), rather than queueing on the transfer lock and re-downloading.
+     * They wait for the flight for at most the timeout of the remote repository (or the default request timeout); a
+     * large artifact can take longer than that, so then they retrieve it themselves, which waits on the transfer lock
+     * for the leader and reads what it left. Callers suppressing failures never share a flight with callers that
+     * don't.
+     */
+    private Transfer retrieveSingleFlight( final ArtifactStore store, final ConcreteResource res,
+                                           final boolean suppressFailures, final EventMetadata eventMetadata )
+            throws IndyWorkflowException, TransferException
+    {
+        final DownloadKey key = new DownloadKey( store.getKey(), res.getPath(), suppressFailures );
+        final TransferException[] transferError = new TransferException[1];
+        try
+        {
+            return downloads.run( key, getFlightWaitSeconds( store ), () -> {
+                try
+                {
+                    return transfers.retrieve( res, suppressFailures, eventMetadata );
+                }
+                catch ( final TransferException e )
+                {
+                    transferError[0] = e;
+                    throw new IndyWorkflowException( "Failed to retrieve path: {} from: {}. Reason: {}", e,
+                                                     res.getPath(), store, e.getMessage() );
+                }
+            }, found -> {
+                mark( metricsManager, metricsConfig, DefaultDownloadManager.class, DOWNLOAD_METRIC_NAME, COALESCED, 1 );
+                if ( !found )
+                {
+                    return null;
+                }
+
+                Transfer target = transfers.getCacheReference( res );
+                return target != null && target.exists() ? target : null;
+            } );
+        }
+        catch ( final IndyWorkflowException e )
+        {
+            if ( transferError[0] != null )
+            {
+                // the leader keeps its original error handling (store error events, logging)
+                throw transferError[0];
+            }
+
+            if ( suppressFailures )
+            {
+                logger.debug( "Suppressing failure of coalesced download: {}. Reason: {}", res, e.getMessage() );
+                return null;
+            }
+
+            throw e;
+        }
+    }
+
     @Override
     @Measure
     public boolean exists(final ArtifactStore store, String path)
@@ -1200,5 +1272,56 @@ public class DefaultDownloadManager
         fileEventManager.fire( new IndyStoreErrorEvent( kl.getKey(), e ) );
     }
 
+    private static long getFlightWaitSeconds( final ArtifactStore store )
+    {
+        if ( store instanceof RemoteRepository && ( (RemoteRepository) store ).getTimeoutSeconds() > 0 )
+        {
+            return ( (RemoteRepository) store ).getTimeoutSeconds();
+        }
+        return DEFAULT_REQUEST_TIMEOUT_SECONDS;
+    }
+
+    private static final class DownloadKey
+    {
+        private final StoreKey storeKey;
+
+        private final String path;
+
+        private final boolean suppressFailures;
+
+        DownloadKey( final StoreKey storeKey, final String path, final boolean suppressFailures )
+        {
+            this.storeKey = storeKey;
+            this.path = path;
+            this.suppressFailures = suppressFailures;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof DownloadKey ) )
+            {
+                return false;
+            }
+            DownloadKey that = (DownloadKey) o;
+            return suppressFailures == that.suppressFailures && storeKey.equals( that.storeKey )
+                            && path.equals( that.path );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * ( 31 * storeKey.hashCode() + path.hashCode() ) + Boolean.hashCode( suppressFailures );
+        }
 
+        @Override
+        public String toString()
+        {
+            return storeKey + ":" + path + ( suppressFailures ? " (suppressing failures)" : "" );
+        }
+    }
 }
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single-flight bookkeeping for upstream downloads. The first caller for a key (the leader) runs the download; callers
+ * that arrive while it is in flight wait for it to finish, then share its outcome instead of going upstream again. A
+ * failure of the leader is rethrown to every waiter. Waiters only wait for a bounded time; when it runs out they stop
+ * waiting on the flight and run the download themselves, outside of it (the leader carries on). For a transfer, that
+ * means queueing on its lock and reading what the leader left, as every caller did before downloads were coalesced.
+ *
+ * @param <K> the download key, e.g. store key + path. Callers that can't share an outcome (e.g. because they handle
+ *            failures differently) must use different keys.
+ */
+final class DownloadFlights<K>
+{
+    private final ConcurrentHashMap<K, CompletableFuture<Boolean>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Run the download, or wait for the one already running for the same key.
+     *
+     * @param waitSeconds how long to wait for a download already running before running the download anyway.
+     * @return the result of the download, or the result of the waiter callback when this caller joined another flight.
+     */
+    <T> T run( final K key, final long waitSeconds, final Download<T> download, final Waiter<T> waiter )
+            throws IndyWorkflowException
+    {
+        final CompletableFuture<Boolean> mine = new CompletableFuture<>();
+        final CompletableFuture<Boolean> flight = flights.putIfAbsent( key, mine );
+        if ( flight != null )
+        {
+            Boolean found = await( key, flight, waitSeconds );
+            return found == null ? download.run() : waiter.joined( found );
+        }
+
+        try
+        {
+            T result = download.run();
+            mine.complete( result != null );
+            return result;
+        }
+        catch ( IndyWorkflowException | RuntimeException | Error e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            flights.remove( key, mine );
+        }
+    }
+
+    int getInFlight()
+    {
+        return flights.size();
+    }
+
+    /**
+     * @return whether the flight found something, or null if it is still running after the wait.
+     */
+    private Boolean await( final K key, final CompletableFuture<Boolean> flight, final long waitSeconds )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            return flight.get( waitSeconds, TimeUnit.SECONDS );
+        }
+        catch ( TimeoutException e )
+        {
+            Logger logger = LoggerFactory.getLogger( getClass() );
+            logger.debug( "Download of: {} still running after {}s. Not waiting on it any longer.", key,
+                          waitSeconds );
+            return null;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Interrupted while waiting for the download of: {}", e, key );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IndyWorkflowException )
+            {
+                IndyWorkflowException failure = (IndyWorkflowException) cause;
+                throw new IndyWorkflowException( failure.getStatus(), "Download of: {} failed: {}", failure, key,
+                                                 failure.getMessage() );
+            }
+
+            throw new IndyWorkflowException( "Download of: {} failed: {}", cause, key,
+                                             Objects.toString( cause.getMessage(), cause.toString() ) );
+        }
+    }
+
+    @FunctionalInterface
+    interface Download<T>
+    {
+        T run()
+                throws IndyWorkflowException;
+    }
+
+    @FunctionalInterface
+    interface Waiter<T>
+    {
+        /**
+         * Called on a caller that joined a flight, after the leader finished successfully.
+         *
+         * @param found whether the leader's download produced a result.
+         */
+        T joined( boolean found )
+                throws IndyWorkflowException;
+    }
+}
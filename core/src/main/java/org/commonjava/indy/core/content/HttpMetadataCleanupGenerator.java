@@ -16,7 +16,9 @@
 package org.commonjava.indy.core.content;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 
@@ -117,4 +119,13 @@ public class HttpMetadataCleanupGenerator
         return false;
     }
 
+    /**
+     * Only cleans up on deletion; never generates anything.
+     */
+    @Override
+    public Set<String> getHandledPathSuffixes()
+    {
+        return Collections.emptySet();
+    }
+
 }
@@ -16,15 +16,39 @@
 package org.commonjava.indy.core.content;
 
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Checks paths against the path-mask patterns of a store. The patterns of each store are compiled once (see
+ * {@link CompiledPathMask}) and cached by store key, for the most recently used stores only. A cached mask is
+ * recompiled whenever the store holds a different pattern set instance than the one it was compiled from, and is
+ * dropped by {@link #invalidate(StoreKey)} when the store is updated or deleted.
+ */
 public class PathMaskChecker
 {
     private static final Logger logger = LoggerFactory.getLogger( PathMaskChecker.class );
 
+    private static final int MAX_COMPILED_MASKS = 10000;
+
+    private static final Map<StoreKey, CompiledPathMask> compiledMasks =
+            Collections.synchronizedMap( new LinkedHashMap<StoreKey, CompiledPathMask>( 16, 0.75f, true )
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry( final Map.Entry<StoreKey, CompiledPathMask> eldest )
+                {
+                    return size() > MAX_COMPILED_MASKS;
+                }
+            } );
+
     public static boolean checkMask(final ArtifactStore repo, final String path){
         Set<String> maskPatterns = repo.getPathMaskPatterns();
 
@@ -39,23 +63,10 @@ public class PathMaskChecker
 
         String pathForCheck = path.startsWith( "/" ) ? path.substring( 1 ) : path;
 
-        for ( String pattern : maskPatterns )
+        if ( getCompiledMask( repo.getKey(), maskPatterns ).matches( pathForCheck ) )
         {
-            // adding allPlaintext to the condition to reduce the number of isRegexPattern() calls
-            if ( isRegexPattern( pattern ) )
-            {
-                final String realRegex = pattern.substring( 2, pattern.length() - 1 );
-                if ( pathForCheck.matches( realRegex ) )
-                {
-                    logger.trace( "Checking mask in: {}, pattern with regex: {} - MATCH", repo.getName(), realRegex );
-                    return true;
-                }
-            }
-            else if ( pathForCheck.startsWith( pattern ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", repo.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", repo.getName(), pathForCheck );
+            return true;
         }
 
         logger.debug( "Path {} not available in path mask {} of repo {}", path, maskPatterns, repo );
@@ -77,24 +88,19 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        CompiledPathMask mask = getCompiledMask( store.getKey(), maskPatterns );
+        if ( mask.hasRegexPatterns() )
         {
-            if ( isRegexPattern( pattern ) )
-            {
-                // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
-                // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
-                // present
-                return true;
-            }
+            // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
+            // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
+            // present
+            return true;
         }
 
-        for ( String pattern : maskPatterns )
+        if ( mask.matchesListing( path ) )
         {
-            if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Listing for path {} not enabled by path mask {} of repo {}", path, maskPatterns, store.getKey() );
@@ -102,6 +108,30 @@ public class PathMaskChecker
         return false;
     }
 
+    /**
+     * Drop the compiled path mask of the given store, so it is recompiled from the store's patterns on next use.
+     */
+    public static void invalidate( final StoreKey key )
+    {
+        if ( key != null && compiledMasks.remove( key ) != null )
+        {
+            logger.trace( "Dropped compiled path mask of: {}", key );
+        }
+    }
+
+    private static CompiledPathMask getCompiledMask( final StoreKey key, final Set<String> maskPatterns )
+    {
+        CompiledPathMask mask = compiledMasks.get( key );
+        if ( mask == null || !mask.isCompiledFrom( maskPatterns ) )
+        {
+            logger.trace( "Compiling path mask of: {}", key );
+            mask = CompiledPathMask.compile( maskPatterns );
+            compiledMasks.put( key, mask );
+        }
+
+        return mask;
+    }
+
     public static boolean isRegexPattern( String pattern )
     {
         return pattern != null && pattern.startsWith( "r|" ) && pattern.endsWith( "|" );
@@ -0,0 +1,380 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.cdi.util.weft.exception.PoolOverloadException;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.core.conf.IndyGroupFetchConfig;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
+import static org.commonjava.o11yphant.trace.TraceManager.addFieldToActiveSpan;
+
+/**
+ * Retrieves a path from the ordered concrete members of a group without paying for every upstream timeout in turn.
+ * <ol>
+ *     <li>The NFC and local storage of every member are probed in parallel. Members that either have the content
+ *     locally, are known to be missing it, or are not remote, are cheap to check and are tried inline.</li>
+ *     <li>The remaining (remote) members are fetched in parallel waves of at most
+ *     {@link IndyGroupFetchConfig#getWaveSize()} members.</li>
+ *     <li>Results are still evaluated in group order, so the first member (in order) that has the content wins. Once
+ *     it is found, the lower-priority fetches still in flight are cancelled.</li>
+ * </ol>
+ * Remote fetches that were started but lost to a higher-priority member are counted as wasted. If the fetch pool is
+ * overloaded, the members that could not be handed to it are probed / retrieved inline, in order, as a sequential group
+ * retrieval would.
+ */
+@ApplicationScoped
+public class SpeculativeGroupRetriever
+{
+    private static final String METRIC_NAME = "indy.group.speculative.";
+
+    private static final String WAVES = "waves";
+
+    private static final String WASTED = "wasted";
+
+    private static final String CANCELLED = "cancelled";
+
+    private static final String OVERLOADED = "overloaded";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private DownloadManager downloadManager;
+
+    @Inject
+    private NotFoundCache nfc;
+
+    @Inject
+    private IndyGroupFetchConfig config;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "speculative-group-fetch", threads = 32, priority = 8, maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService fetchService;
+
+    protected SpeculativeGroupRetriever()
+    {
+    }
+
+    public SpeculativeGroupRetriever( final DownloadManager downloadManager, final NotFoundCache nfc,
+                                      final IndyGroupFetchConfig config, final WeftExecutorService fetchService )
+    {
+        this.downloadManager = downloadManager;
+        this.nfc = nfc;
+        this.config = config;
+        this.fetchService = fetchService;
+    }
+
+    public boolean isEnabledFor( final Group group )
+    {
+        return config != null && config.isSpeculativeFetchEnabled( group );
+    }
+
+    /**
+     * Retrieve the path from the first of the given (ordered, concrete) group members that has it.
+     *
+     * @param memberRetrieval retrieves the path from a single member, normally the same way a sequential group
+     * retrieval would.
+     */
+    public Transfer retrieve( final Group group, final List<ArtifactStore> members, final String path,
+                              final EventMetadata eventMetadata, final MemberRetrieval memberRetrieval )
+            throws IndyWorkflowException
+    {
+        final boolean[] needsFetch = probe( members, path );
+
+        boolean overloaded = false;
+        int idx = 0;
+        while ( idx < members.size() )
+        {
+            if ( !needsFetch[idx] )
+            {
+                Transfer item = retrieveQuietly( group, members.get( idx ), path, eventMetadata, memberRetrieval );
+                if ( item != null )
+                {
+                    return item;
+                }
+
+                idx++;
+                continue;
+            }
+
+            // collect the next wave: remote fetches in parallel, interleaved with any cheap members between them
+            final int waveStart = idx;
+            final List<Future<Transfer>> futures = new ArrayList<>();
+            int fetches = 0;
+            while ( idx < members.size() && ( fetches < config.getWaveSize() || !needsFetch[idx] ) )
+            {
+                if ( needsFetch[idx] && !overloaded )
+                {
+                    Future<Transfer> future = submit( group, members.get( idx ), path, eventMetadata, memberRetrieval );
+                    if ( future == null )
+                    {
+                        // the rest of the members are retrieved inline, in order, like a sequential group retrieval
+                        overloaded = true;
+                    }
+                    futures.add( future );
+                    fetches++;
+                }
+                else
+                {
+                    futures.add( null );
+                }
+                idx++;
+            }
+
+            mark( metricsManager, metricsConfig, SpeculativeGroupRetriever.class, METRIC_NAME, WAVES, 1 );
+            logger.debug( "Speculative fetch wave for: {} in: {} covers members {}..{} with {} remote fetches", path,
+                          group.getKey(), waveStart, idx - 1, fetches );
+
+            int i = 0;
+            try
+            {
+                for ( ; i < futures.size(); i++ )
+                {
+                    ArtifactStore member = members.get( waveStart + i );
+                    Future<Transfer> future = futures.get( i );
+
+                    Transfer item = future == null ?
+                            retrieveQuietly( group, member, path, eventMetadata, memberRetrieval ) :
+                            await( group, member, path, future );
+
+                    if ( item != null )
+                    {
+                        cancelRemaining( group, path, futures.subList( i + 1, futures.size() ) );
+                        return item;
+                    }
+                }
+            }
+            catch ( IndyWorkflowException | RuntimeException e )
+            {
+                cancel( futures.subList( Math.min( i + 1, futures.size() ), futures.size() ) );
+                throw e;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean[] probe( final List<ArtifactStore> members, final String path )
+            throws IndyWorkflowException
+    {
+        final boolean[] needsFetch = new boolean[members.size()];
+        final List<Future<Boolean>> probes = new ArrayList<>( members.size() );
+
+        boolean overloaded = false;
+        for ( ArtifactStore member : members )
+        {
+            if ( member.getType() != remote )
+            {
+                probes.add( null );
+                continue;
+            }
+
+            final FutureTask<Boolean> probe = new FutureTask<>( () -> {
+                if ( nfc.isMissing( new ConcreteResource( LocationUtils.toLocation( member ), path ) ) )
+                {
+                    return false;
+                }
+
+                Transfer local = downloadManager.getStorageReference( member, path );
+                return local == null || !local.exists();
+            } );
+
+            if ( !overloaded )
+            {
+                try
+                {
+                    fetchService.execute( probe );
+                    probes.add( probe );
+                    continue;
+                }
+                catch ( PoolOverloadException | RejectedExecutionException e )
+                {
+                    logger.debug( "Fetch pool is busy, probing the rest of the members of: {} inline", path );
+                    mark( metricsManager, metricsConfig, SpeculativeGroupRetriever.class, METRIC_NAME, OVERLOADED, 1 );
+                    overloaded = true;
+                }
+            }
+
+            probe.run();
+            probes.add( probe );
+        }
+
+        for ( int i = 0; i < probes.size(); i++ )
+        {
+            Future<Boolean> probe = probes.get( i );
+            if ( probe == null )
+            {
+                continue;
+            }
+
+            try
+            {
+                needsFetch[i] = probe.get();
+            }
+            catch ( InterruptedException e )
+            {
+                cancel( probes.subList( i + 1, probes.size() ) );
+                Thread.currentThread().interrupt();
+                throw new IndyWorkflowException( "Probe of %s in %s was interrupted", e, path, members.get( i ) );
+            }
+            catch ( ExecutionException e )
+            {
+                // we can't tell, so assume we have to go upstream for it.
+                logger.debug( "Failed to probe: {} in: {}. Reason: {}", path, members.get( i ).getKey(),
+                              e.getMessage() );
+                needsFetch[i] = true;
+            }
+        }
+
+        return needsFetch;
+    }
+
+    /**
+     * @return the future of the fetch, or null if the fetch pool is overloaded and the member has to be retrieved
+     * inline instead.
+     */
+    private Future<Transfer> submit( final Group group, final ArtifactStore member, final String path,
+                                     final EventMetadata eventMetadata, final MemberRetrieval memberRetrieval )
+    {
+        try
+        {
+            return fetchService.submit( () -> {
+                addFieldToActiveSpan( "storekey", member.getKey().toString() );
+                addFieldToActiveSpan( "path", path );
+                addFieldToActiveSpan( "activity", "speculativeGroupFetch" );
+
+                return retrieveQuietly( group, member, path, eventMetadata, memberRetrieval );
+            } );
+        }
+        catch ( PoolOverloadException | RejectedExecutionException e )
+        {
+            logger.debug( "Fetch pool is busy, falling back to sequential retrieval of: {} in: {}", path,
+                          group.getKey() );
+            mark( metricsManager, metricsConfig, SpeculativeGroupRetriever.class, METRIC_NAME, OVERLOADED, 1 );
+            return null;
+        }
+    }
+
+    private Transfer await( final Group group, final ArtifactStore member, final String path,
+                            final Future<Transfer> future )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Retrieval of %s from %s in %s was interrupted", e, path, member,
+                                             group.getKey() );
+        }
+        catch ( ExecutionException | CancellationException e )
+        {
+            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}", path,
+                          member, group, e.getMessage() );
+            return null;
+        }
+    }
+
+    private Transfer retrieveQuietly( final Group group, final ArtifactStore member, final String path,
+                                      final EventMetadata eventMetadata, final MemberRetrieval memberRetrieval )
+    {
+        try
+        {
+            return memberRetrieval.retrieve( member, path, eventMetadata );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}", path,
+                          member, group, e.getMessage() );
+        }
+        return null;
+    }
+
+    private void cancelRemaining( final Group group, final String path, final List<Future<Transfer>> remaining )
+    {
+        int wasted = 0;
+        int cancelled = 0;
+        for ( Future<Transfer> future : remaining )
+        {
+            if ( future == null )
+            {
+                continue;
+            }
+
+            wasted++;
+            if ( future.cancel( true ) )
+            {
+                cancelled++;
+            }
+        }
+
+        if ( wasted > 0 )
+        {
+            logger.debug( "Speculative fetch of: {} in: {} wasted {} remote fetches ({} cancelled in flight)", path,
+                          group.getKey(), wasted, cancelled );
+            mark( metricsManager, metricsConfig, SpeculativeGroupRetriever.class, METRIC_NAME, WASTED, wasted );
+            mark( metricsManager, metricsConfig, SpeculativeGroupRetriever.class, METRIC_NAME, CANCELLED, cancelled );
+        }
+    }
+
+    private static void cancel( final List<? extends Future<?>> futures )
+    {
+        futures.stream().filter( Objects::nonNull ).forEach( f -> f.cancel( true ) );
+    }
+
+    @FunctionalInterface
+    public interface MemberRetrieval
+    {
+        Transfer retrieve( ArtifactStore member, String path, EventMetadata eventMetadata )
+                throws IndyWorkflowException;
+    }
+}
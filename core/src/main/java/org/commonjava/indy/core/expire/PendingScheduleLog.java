@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only log of the schedules {@link ScheduleWriteCoalescer} holds in memory, so they survive a restart. The log
+ * is split in numbered segments: each flush rolls over to a new segment, and deletes the old one once its schedules
+ * are written. On startup, {@link #replay()} reads back whatever segments are left.
+ * <p>
+ * Records are binary (<code>DataOutput</code>), one per schedule. Each record is flushed to its segment as it is
+ * appended, so a crashed process loses none of them; a record cut off by the crash ends the replay of its segment.
+ */
+final class PendingScheduleLog
+{
+    private static final String PREFIX = "pending-";
+
+    private static final String SUFFIX = ".log";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final File dir;
+
+    private long segment;
+
+    private DataOutputStream out;
+
+    PendingScheduleLog( final File dir )
+    {
+        this.dir = dir;
+    }
+
+    /**
+     * Read the schedules of all segments left from the last run, oldest first. For each store key and job name only
+     * the latest schedule is returned.
+     */
+    synchronized Collection<DtxSchedule> replay()
+    {
+        final Map<String, DtxSchedule> schedules = new LinkedHashMap<>();
+        for ( File file : segments() )
+        {
+            try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) ) )
+            {
+                while ( true )
+                {
+                    DtxSchedule schedule;
+                    try
+                    {
+                        schedule = read( in );
+                    }
+                    catch ( EOFException e )
+                    {
+                        break;
+                    }
+
+                    schedules.merge( key( schedule ), schedule, ( old, cur ) -> cur.getScheduleTime()
+                                                                                  .before( old.getScheduleTime() ) ?
+                            old :
+                            cur );
+                }
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to read pending schedules from: {}. Reason: {}", file, e.getMessage() );
+            }
+
+            segment = Math.max( segment, sequence( file ) );
+        }
+
+        return new ArrayList<>( schedules.values() );
+    }
+
+    synchronized void append( final DtxSchedule schedule )
+    {
+        try
+        {
+            if ( out == null )
+            {
+                open();
+            }
+
+            write( schedule );
+        }
+        catch ( UTFDataFormatException e )
+        {
+            logger.warn( "Not logging pending schedule: {}. Reason: {}", schedule, e.getMessage() );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to log pending schedule: {}. Reason: {}", schedule, e.getMessage() );
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Close the current segment, so new schedules go to a new one.
+     *
+     * @return the segments written so far (to be deleted once their schedules are written), oldest first.
+     */
+    synchronized List<File> roll()
+    {
+        closeQuietly();
+        return segments();
+    }
+
+    void delete( final List<File> segments )
+    {
+        for ( File file : segments )
+        {
+            if ( file.exists() && !file.delete() )
+            {
+                logger.warn( "Failed to delete pending schedule log: {}", file );
+            }
+        }
+    }
+
+    synchronized void close()
+    {
+        closeQuietly();
+    }
+
+    private void open()
+            throws IOException
+    {
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory: " + dir );
+        }
+
+        segment++;
+        out = new DataOutputStream(
+                new BufferedOutputStream( new FileOutputStream( new File( dir, PREFIX + segment + SUFFIX ) ) ) );
+    }
+
+    private void write( final DtxSchedule schedule )
+            throws IOException
+    {
+        // encode the whole record first, so a failure can't leave half of it in the segment
+        ByteArrayOutputStream record = new ByteArrayOutputStream( 256 );
+        DataOutputStream data = new DataOutputStream( record );
+        data.writeUTF( schedule.getStoreKey() );
+        data.writeUTF( schedule.getJobType() );
+        data.writeUTF( schedule.getJobName() );
+        data.writeLong( schedule.getScheduleUID().getMostSignificantBits() );
+        data.writeLong( schedule.getScheduleUID().getLeastSignificantBits() );
+        data.writeLong( schedule.getScheduleTime().getTime() );
+        data.writeLong( schedule.getLifespan() );
+        data.writeUTF( schedule.getPayload() == null ? "" : schedule.getPayload() );
+
+        record.writeTo( out );
+        out.flush();
+    }
+
+    private static DtxSchedule read( final DataInputStream in )
+            throws IOException
+    {
+        String storeKey = in.readUTF();
+        String jobType = in.readUTF();
+        String jobName = in.readUTF();
+        UUID uid = new UUID( in.readLong(), in.readLong() );
+        Date scheduleTime = new Date( in.readLong() );
+        long lifespan = in.readLong();
+        String payload = in.readUTF();
+        return new DtxSchedule( storeKey, jobType, jobName, uid, scheduleTime, payload, lifespan );
+    }
+
+    private void closeQuietly()
+    {
+        if ( out != null )
+        {
+            try
+            {
+                out.close();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to close pending schedule log. Reason: {}", e.getMessage() );
+            }
+            out = null;
+        }
+    }
+
+    private List<File> segments()
+    {
+        File[] files = dir.listFiles( ( d, name ) -> name.startsWith( PREFIX ) && name.endsWith( SUFFIX )
+                && sequence( new File( d, name ) ) > 0 );
+        if ( files == null )
+        {
+            return new ArrayList<>();
+        }
+
+        Arrays.sort( files, ( a, b ) -> Long.compare( sequence( a ), sequence( b ) ) );
+        return new ArrayList<>( Arrays.asList( files ) );
+    }
+
+    private static long sequence( final File file )
+    {
+        String name = file.getName();
+        try
+        {
+            return Long.parseLong( name.substring( PREFIX.length(), name.length() - SUFFIX.length() ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    static String key( final DtxSchedule schedule )
+    {
+        return schedule.getStoreKey() + '#' + schedule.getJobName();
+    }
+}
@@ -32,10 +32,12 @@ import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor;
 import org.commonjava.indy.schedule.ScheduleDB;
+import org.commonjava.indy.schedule.conf.ScheduleDBConfig;
 import org.commonjava.indy.schedule.datastax.JobType;
 import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
 import org.commonjava.indy.spi.pkg.ContentAdvisor;
 import org.commonjava.indy.spi.pkg.ContentQuality;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.SpecialPathInfo;
@@ -49,6 +51,7 @@ import javax.enterprise.event.Event;
 import javax.enterprise.inject.Any;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.io.File;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -60,6 +63,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.UUID;
 import java.util.stream.StreamSupport;
 
 import static org.commonjava.indy.core.change.StoreEnablementManager.DISABLE_TIMEOUT;
@@ -81,6 +85,8 @@ public class ScheduleDBManager
 
     public static final String ANY = "__ANY__";
 
+    private static final String PENDING_SCHEDULES_DIR = "schedule-pending";
+
     @Inject
     private StoreDataManager dataManager;
 
@@ -109,6 +115,14 @@ public class ScheduleDBManager
     @Inject
     private IndySchedulerConfig schedulerConfig;
 
+    @Inject
+    private ScheduleDBConfig scheduleDBConfig;
+
+    @Inject
+    private DataFileManager dataFileManager;
+
+    private ScheduleWriteCoalescer writeCoalescer;
+
     @PostConstruct
     public void init()
     {
@@ -117,6 +131,15 @@ public class ScheduleDBManager
             logger.info( "Scheduler disabled. Skipping initialization" );
             return;
         }
+
+        long flushMillis = scheduleDBConfig.getWriteFlushMillis();
+        if ( flushMillis > 0 )
+        {
+            File logDir = new File( dataFileManager.getDetachedWorkBasedir(), PENDING_SCHEDULES_DIR );
+            writeCoalescer = new ScheduleWriteCoalescer( scheduleDB::createSchedules, new PendingScheduleLog( logDir ),
+                                                         flushMillis );
+            writeCoalescer.start();
+        }
     }
 
     public void rescheduleSnapshotTimeouts( final HostedRepository deploy )
@@ -137,6 +160,7 @@ public class ScheduleDBManager
         if ( timeout > 0 )
         {
 
+            flushPending( deploy.getKey() );
             final Collection<DtxSchedule> schedules = scheduleDB.querySchedules( deploy.getKey().toString(), JobType.CONTENT.getJobType(), Boolean.FALSE );
 
             final Set<DtxSchedule> rescheduled = rescheduleAllBefore( schedules, timeout );
@@ -169,7 +193,7 @@ public class ScheduleDBManager
 
         if ( timeout > 0 )
         {
-
+            flushPending( repo.getKey() );
             final Collection<DtxSchedule> schedules =
                             scheduleDB.querySchedules( repo.getKey().toString(), JobType.CONTENT.getJobType(),
                                                        Boolean.FALSE );
@@ -270,7 +294,15 @@ public class ScheduleDBManager
             throw new IndySchedulerException( "Failed to serialize JSON payload: " + payload, e );
         }
 
-        scheduleDB.createSchedule( key.toString(), jobType, jobName, payloadStr, Long.valueOf( startSeconds ) );
+        if ( writeCoalescer != null )
+        {
+            writeCoalescer.schedule( new DtxSchedule( key.toString(), jobType, jobName, UUID.randomUUID(), new Date(),
+                                                      payloadStr, Long.valueOf( startSeconds ) ) );
+        }
+        else
+        {
+            scheduleDB.createSchedule( key.toString(), jobType, jobName, payloadStr, Long.valueOf( startSeconds ) );
+        }
         logger.debug( "Scheduled for the key {} with timeout: {} seconds", key, startSeconds );
     }
 
@@ -390,6 +422,17 @@ public class ScheduleDBManager
         }
     }
 
+    /**
+     * Write the schedules of the store that are still buffered, so a query sees them.
+     */
+    private void flushPending( final StoreKey key )
+    {
+        if ( writeCoalescer != null )
+        {
+            writeCoalescer.flush( key.toString() );
+        }
+    }
+
     private HostedRepository findDeployPoint( final Group group )
             throws IndyDataException
     {
@@ -445,6 +488,7 @@ public class ScheduleDBManager
             return null;
         }
 
+        flushPending( key );
         final Collection<DtxSchedule> schedules =
                         scheduleDB.querySchedules( key.toString(), jobType,
                                                    Boolean.FALSE );
@@ -468,6 +512,11 @@ public class ScheduleDBManager
             return null;
         }
 
+        if ( writeCoalescer != null )
+        {
+            writeCoalescer.flushAll();
+        }
+
         final Collection<DtxSchedule> schedules = scheduleDB.querySchedulesByJobType( jobType );
         Set<Expiration> expirations = new HashSet<>( schedules.size() );
         if ( !schedules.isEmpty() )
@@ -489,6 +538,7 @@ public class ScheduleDBManager
             return null;
         }
 
+        flushPending( key );
         final Collection<DtxSchedule> schedules = scheduleDB.querySchedules( key.toString(), jobType, Boolean.FALSE );
         Set<Expiration> expirations = new HashSet<>( schedules.size() );
         if ( !schedules.isEmpty() )
@@ -602,6 +652,10 @@ public class ScheduleDBManager
             return;
         }
 
+        if ( writeCoalescer != null )
+        {
+            writeCoalescer.stop();
+        }
     }
 
 }
@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Buffers new schedules in memory and writes them in batches, instead of doing two synchronous writes on the caller's
+ * thread for every one of them. Only the latest schedule per store key and job name is kept, since it would overwrite
+ * the earlier rows anyway. Pending schedules are written every flush interval, before the schedules of a store are
+ * read, and on shutdown. They are also appended to a {@link PendingScheduleLog}, so the ones not written yet are
+ * picked up again after a restart.
+ * <p>
+ * A schedule that fails to write is retried with an exponential backoff, and dropped after
+ * {@link #MAX_WRITE_ATTEMPTS} failed writes. A newer schedule for the same store and job replaces it.
+ */
+final class ScheduleWriteCoalescer
+{
+    static final int MAX_WRITE_ATTEMPTS = 10;
+
+    private static final long MAX_RETRY_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    // store key -> job name -> latest schedule
+    private final Map<String, Map<String, DtxSchedule>> pending = new ConcurrentHashMap<>();
+
+    // failed schedules waiting for their next attempt, by PendingScheduleLog.key()
+    private final Map<String, Retry> retries = new ConcurrentHashMap<>();
+
+    // failed writes so far, by PendingScheduleLog.key()
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    // store key -> completes once the batch flushAll() is writing for that store is done
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    private final Function<Collection<DtxSchedule>, Collection<DtxSchedule>> writer;
+
+    private final PendingScheduleLog log;
+
+    private final long flushMillis;
+
+    private final long retryMillis;
+
+    // held shared by store flushes while they write; held exclusively by flushAll() only to roll the log and take
+    // the pending schedules, and to delete the rolled segments, never while it writes
+    private final ReadWriteLock logLock = new ReentrantReadWriteLock();
+
+    // keeps the periodic flushAll() and the one on shutdown apart
+    private final Object flushAllLock = new Object();
+
+    private ScheduledExecutorService flushService;
+
+    /**
+     * @param writer writes the given schedules, and returns the ones it failed to write.
+     */
+    ScheduleWriteCoalescer( final Function<Collection<DtxSchedule>, Collection<DtxSchedule>> writer,
+                            final PendingScheduleLog log, final long flushMillis )
+    {
+        this( writer, log, flushMillis, flushMillis );
+    }
+
+    /**
+     * @param retryMillis wait before the first retry of a failed schedule; it doubles on each further failure.
+     */
+    ScheduleWriteCoalescer( final Function<Collection<DtxSchedule>, Collection<DtxSchedule>> writer,
+                            final PendingScheduleLog log, final long flushMillis, final long retryMillis )
+    {
+        this.writer = writer;
+        this.log = log;
+        this.flushMillis = flushMillis;
+        this.retryMillis = retryMillis;
+    }
+
+    void start()
+    {
+        Collection<DtxSchedule> replayed = log.replay();
+        if ( !replayed.isEmpty() )
+        {
+            logger.info( "Recovered {} pending schedules from the last run", replayed.size() );
+            replayed.forEach( this::putIfAbsent );
+        }
+
+        flushService = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "schedule-write-flush" );
+            t.setDaemon( true );
+            return t;
+        } );
+        flushService.scheduleWithFixedDelay( this::flushAll, flushMillis, flushMillis, TimeUnit.MILLISECONDS );
+    }
+
+    void stop()
+    {
+        if ( flushService != null )
+        {
+            flushService.shutdown();
+        }
+
+        flushAll();
+        log.close();
+    }
+
+    void schedule( final DtxSchedule schedule )
+    {
+        pending.compute( schedule.getStoreKey(), ( k, schedules ) -> {
+            Map<String, DtxSchedule> result = schedules == null ? new LinkedHashMap<>() : schedules;
+            result.put( schedule.getJobName(), schedule );
+            return result;
+        } );
+
+        // the new schedule replaces any failed one for the same job
+        String key = PendingScheduleLog.key( schedule );
+        retries.remove( key );
+        attempts.remove( key );
+
+        // logged after it is pending, so a flush in between can't delete the only record of it
+        log.append( schedule );
+    }
+
+    /**
+     * Write the pending schedules of the given store (including the ones waiting for a retry), and return once they
+     * are written. If flushAll() is writing schedules of the store at the same time, wait for that write too, but not
+     * for the rest of its batch.
+     */
+    void flush( final String storeKey )
+    {
+        logLock.readLock().lock();
+        try
+        {
+            List<DtxSchedule> schedules = new ArrayList<>();
+            Map<String, DtxSchedule> removed = pending.remove( storeKey );
+            if ( removed != null )
+            {
+                schedules.addAll( removed.values() );
+            }
+
+            retries.forEach( ( key, retry ) -> {
+                if ( storeKey.equals( retry.schedule.getStoreKey() ) && retries.remove( key, retry ) )
+                {
+                    schedules.add( retry.schedule );
+                }
+            } );
+
+            if ( !schedules.isEmpty() )
+            {
+                write( schedules );
+            }
+        }
+        finally
+        {
+            logLock.readLock().unlock();
+        }
+
+        CompletableFuture<Void> written = inFlight.get( storeKey );
+        if ( written != null )
+        {
+            written.join();
+        }
+    }
+
+    /**
+     * Write all pending schedules and the retries that are due, and drop the log segments that recorded them.
+     */
+    void flushAll()
+    {
+        synchronized ( flushAllLock )
+        {
+            List<File> segments;
+            List<DtxSchedule> schedules = new ArrayList<>();
+            Set<String> stores = new HashSet<>();
+            CompletableFuture<Void> written = new CompletableFuture<>();
+
+            logLock.writeLock().lock();
+            try
+            {
+                segments = log.roll();
+
+                for ( String storeKey : new ArrayList<>( pending.keySet() ) )
+                {
+                    Map<String, DtxSchedule> removed = pending.remove( storeKey );
+                    if ( removed != null )
+                    {
+                        schedules.addAll( removed.values() );
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                retries.forEach( ( key, retry ) -> {
+                    if ( retry.notBefore > now )
+                    {
+                        // not due yet; log it again, since the segment that has it is about to be deleted
+                        log.append( retry.schedule );
+                    }
+                    else if ( retries.remove( key, retry ) )
+                    {
+                        schedules.add( retry.schedule );
+                    }
+                } );
+
+                schedules.forEach( schedule -> stores.add( schedule.getStoreKey() ) );
+                stores.forEach( storeKey -> inFlight.put( storeKey, written ) );
+            }
+            finally
+            {
+                logLock.writeLock().unlock();
+            }
+
+            try
+            {
+                if ( !schedules.isEmpty() )
+                {
+                    write( schedules );
+                }
+            }
+            finally
+            {
+                written.complete( null );
+                stores.forEach( storeKey -> inFlight.remove( storeKey, written ) );
+            }
+
+            // failed schedules were logged again in the current segment; waits for store flushes still writing
+            // schedules recorded in the rolled segments
+            logLock.writeLock().lock();
+            try
+            {
+                log.delete( segments );
+            }
+            finally
+            {
+                logLock.writeLock().unlock();
+            }
+        }
+    }
+
+    int getPendingCount()
+    {
+        return pending.values().stream().mapToInt( Map::size ).sum() + retries.size();
+    }
+
+    private void write( final Collection<DtxSchedule> schedules )
+    {
+        Collection<DtxSchedule> failed;
+        try
+        {
+            failed = writer.apply( schedules );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.error( String.format( "Failed to write %d schedules. Reason: %s", schedules.size(),
+                                         e.getMessage() ), e );
+            failed = schedules;
+        }
+
+        if ( failed == null )
+        {
+            failed = Collections.emptyList();
+        }
+
+        Set<DtxSchedule> retried = Collections.newSetFromMap( new IdentityHashMap<>() );
+        retried.addAll( failed );
+        schedules.stream()
+                 .filter( schedule -> !retried.contains( schedule ) )
+                 .forEach( schedule -> attempts.remove( PendingScheduleLog.key( schedule ) ) );
+
+        if ( !failed.isEmpty() )
+        {
+            logger.warn( "{} of {} schedules were not written, will retry.", failed.size(), schedules.size() );
+            failed.forEach( this::retry );
+        }
+
+        logger.debug( "Wrote {} schedules", schedules.size() - failed.size() );
+    }
+
+    /**
+     * Wait before trying the schedule again, unless a newer one for the same store and job is pending, or it failed
+     * too often already.
+     */
+    private void retry( final DtxSchedule schedule )
+    {
+        String key = PendingScheduleLog.key( schedule );
+        Map<String, DtxSchedule> newer = pending.get( schedule.getStoreKey() );
+        if ( newer != null && newer.containsKey( schedule.getJobName() ) )
+        {
+            attempts.remove( key );
+            return;
+        }
+
+        int attempt = attempts.merge( key, 1, Integer::sum );
+        if ( attempt >= MAX_WRITE_ATTEMPTS )
+        {
+            attempts.remove( key );
+            logger.error( "Giving up on schedule: {} for: {} after {} failed writes.", schedule.getJobName(),
+                          schedule.getStoreKey(), attempt );
+            return;
+        }
+
+        long wait = Math.min( retryMillis << Math.min( attempt - 1, 20 ), MAX_RETRY_MILLIS );
+        retries.put( key, new Retry( schedule, System.currentTimeMillis() + wait ) );
+        log.append( schedule );
+    }
+
+    /**
+     * Make the schedule pending, unless one for the same store and job already is.
+     */
+    private void putIfAbsent( final DtxSchedule schedule )
+    {
+        pending.compute( schedule.getStoreKey(), ( k, schedules ) -> {
+            Map<String, DtxSchedule> result = schedules == null ? new LinkedHashMap<>() : schedules;
+            result.putIfAbsent( schedule.getJobName(), schedule );
+            return result;
+        } );
+    }
+
+    private static final class Retry
+    {
+        private final DtxSchedule schedule;
+
+        private final long notBefore;
+
+        private Retry( final DtxSchedule schedule, final long notBefore )
+        {
+            this.schedule = schedule;
+            this.notBefore = notBefore;
+        }
+    }
+}
@@ -28,7 +28,7 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.schedule.datastax.JobType;
-import org.commonjava.indy.schedule.event.ScheduleTriggerEvent;
+import org.commonjava.indy.schedule.event.ScheduleTriggerBatchEvent;
 import org.commonjava.maven.galley.event.FileAccessEvent;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
 import org.commonjava.maven.galley.event.FileStorageEvent;
@@ -80,27 +80,85 @@ public class TimeoutEventListener
         handleExpiration( event.getPayload() );
     }
 
-    public void onExpirationEvent( @Observes final ScheduleTriggerEvent event )
+    /**
+     * Delete the content of one store that expired in the same sweep. The store is looked up once for all of them.
+     */
+    public void onExpirationEvent( @Observes final ScheduleTriggerBatchEvent event )
     {
         if ( !event.getJobType().equals( JobType.CONTENT.getJobType() ) )
         {
             return;
         }
 
-        handleExpiration( event.getPayload() );
+        final StoreKey key = StoreKey.fromString( event.getStoreKey() );
+        final ArtifactStore store;
+        try
+        {
+            store = storeManager.getArtifactStore( key );
+        }
+        catch ( IndyDataException e )
+        {
+            logger.error( String.format( "Failed to retrieve ArtifactStore for: %s (for content timeout). Reason: %s",
+                                         key, e ), e );
+            return;
+        }
 
+        if ( store == null )
+        {
+            logger.warn( "Store: {} is no longer available. Nothing to do for {} expired paths.", key,
+                         event.getPayloads().size() );
+            return;
+        }
+
+        int deleted = 0;
+        for ( String payload : event.getPayloads() )
+        {
+            final ContentExpiration expiration = readExpiration( payload );
+            if ( expiration == null )
+            {
+                continue;
+            }
+
+            final String path = expiration.getPath();
+            try
+            {
+                if ( contentManager.delete( store, path ) )
+                {
+                    deleted++;
+                }
+                else
+                {
+                    logger.error( "Failed to delete Transfer for: {} in: {} (for content timeout).", path, key );
+                }
+            }
+            catch ( IndyWorkflowException e )
+            {
+                logger.error( String.format( "Failed to retrieve Transfer for: %s in: %s (for content timeout). Reason: %s",
+                                             path, key, e ), e );
+            }
+        }
+
+        logger.debug( "Deleted {} of {} expired paths in: {}", deleted, event.getPayloads().size(), key );
     }
 
-    private void handleExpiration( String payload )
+    private ContentExpiration readExpiration( String payload )
     {
-        ContentExpiration expiration;
         try
         {
-            expiration = objectMapper.readValue( payload, ContentExpiration.class );
+            return objectMapper.readValue( payload, ContentExpiration.class );
         }
         catch ( final IOException e )
         {
             logger.error( "Failed to read ContentExpiration from event payload.", e );
+            return null;
+        }
+    }
+
+    private void handleExpiration( String payload )
+    {
+        final ContentExpiration expiration = readExpiration( payload );
+        if ( expiration == null )
+        {
             return;
         }
 
@@ -18,9 +18,13 @@ package org.commonjava.indy.core.inject;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
 import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
@@ -37,16 +41,44 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_NOT_FOUND_CACHE_TIMEOUT_SECONDS;
 import static org.commonjava.indy.subsys.cassandra.util.SchemaUtils.getSchemaCreateKeyspace;
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
 
+/**
+ * NFC backed by Cassandra, with two tiers in front of it:
+ * <ul>
+ *     <li>an in-memory cache of paths known to be missing, and</li>
+ *     <li>a {@link PathBloomFilter} per store, loaded from Cassandra the first time the store is checked and kept
+ *     current on add. A path the filter has never seen is not in the NFC, so the Cassandra query is skipped.
+ *     While a store's filter is loading, checks go to Cassandra as before.</li>
+ * </ul>
+ * Other cluster nodes add entries the filter doesn't know about. After each insert, a node stamps its own row of
+ * the store in the <code>nfc_changes</code> table. A filter remembers the stamps of the other nodes as they were
+ * before its paths were read; at most every five seconds, a miss in the filter reads them again. If
+ * another node has stamped the store since, misses go to Cassandra until the filter is reloaded.
+ * <p>
+ * Filters are also reloaded after {@link IndyConfiguration#getNfcExpirationSweepMinutes()}, which drops expired and
+ * cleared entries, or sooner if they grew well beyond their size. Failed loads are retried with a growing delay,
+ * instead of on every check.
+ * <p>
+ * Inserts are written asynchronously, with a bound on the writes in flight; beyond it, the caller waits for a write
+ * to finish.
+ */
 @ApplicationScoped
 @Alternative
 public class CassandraNotFoundCache
@@ -68,6 +100,38 @@ public class CassandraNotFoundCache
 
     private PreparedStatement preparedQueryByStore;
 
+    private PreparedStatement preparedPathsByStore;
+
+    private PreparedStatement preparedChangeStamp;
+
+    private PreparedStatement preparedChangesByStore;
+
+    private static final int MAX_INFLIGHT_WRITES = 256;
+
+    private static final int MIN_FILTER_ENTRIES = 1000;
+
+    private static final long MIN_LOAD_RETRY_MILLIS = TimeUnit.SECONDS.toMillis( 10 );
+
+    private static final String FILTERED = "filtered";
+
+    private static final long CHANGE_CHECK_MILLIS = TimeUnit.SECONDS.toMillis( 5 );
+
+    private static final String WRITES_THROTTLED = "writes.throttled";
+
+    private static final String CHANGED_ELSEWHERE = "changed.elsewhere";
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Semaphore writePermits = new Semaphore( MAX_INFLIGHT_WRITES );
+
+    private final Map<StoreKey, StoreFilter> filters = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, FilterLoad> filterLoads = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, FailedLoad> failedLoads = new ConcurrentHashMap<>();
+
+    private final Set<StoreKey> changeChecks = ConcurrentHashMap.newKeySet();
+
     // @formatter:off
     private static String getSchemaCreateTable( String keyspace )
     {
@@ -79,6 +143,16 @@ public class CassandraNotFoundCache
                         + "PRIMARY KEY (storekey, path)"
                         + ");";
     }
+
+    private static String getSchemaCreateChangesTable( String keyspace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keyspace + ".nfc_changes ("
+                        + "storekey varchar,"
+                        + "node varchar,"
+                        + "changed timeuuid,"
+                        + "PRIMARY KEY (storekey, node)"
+                        + ");";
+    }
     // @formatter:on
 
     @Inject
@@ -87,6 +161,14 @@ public class CassandraNotFoundCache
     @Inject
     private CacheProducer cacheProducer;
 
+    private WeftExecutorService filterLoader;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
     private CacheHandle<ConcreteResource, Object> inMemoryCache;
 
     private final static Object DUMB_CACHE_VALUE = new Object();
@@ -106,10 +188,23 @@ public class CassandraNotFoundCache
 
     public CassandraNotFoundCache( final IndyConfiguration config, final CacheProducer cacheProducer,
                                    final CassandraClient cassandraClient )
+    {
+        this( config, cacheProducer, cassandraClient, null, null, null );
+    }
+
+    /**
+     * @param filterLoader loads the per-store filters in the background; without it they are loaded inline
+     */
+    public CassandraNotFoundCache( final IndyConfiguration config, final CacheProducer cacheProducer,
+                                   final CassandraClient cassandraClient, final WeftExecutorService filterLoader,
+                                   final DefaultMetricsManager metricsManager, final IndyMetricsConfig metricsConfig )
     {
         this.config = config;
         this.cacheProducer = cacheProducer;
         this.cassandraClient = cassandraClient;
+        this.filterLoader = filterLoader;
+        this.metricsManager = metricsManager;
+        this.metricsConfig = metricsConfig;
         start();
     }
 
@@ -130,6 +225,7 @@ public class CassandraNotFoundCache
 
         session.execute( getSchemaCreateKeyspace( keyspace, config.getKeyspaceReplicas() ) );
         session.execute( getSchemaCreateTable( keyspace ) );
+        session.execute( getSchemaCreateChangesTable( keyspace ) );
 
         preparedExistQuery =
                         session.prepare( "SELECT expiration FROM " + keyspace + ".nfc WHERE storekey=? and path=?;" );
@@ -138,12 +234,20 @@ public class CassandraNotFoundCache
 
         preparedQueryByStore = session.prepare( "SELECT * FROM " + keyspace + ".nfc WHERE storekey=?;" );
 
+        preparedPathsByStore = session.prepare( "SELECT path FROM " + keyspace + ".nfc WHERE storekey=?;" );
+
         preparedDeleteByStore = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=?;" );
 
         preparedDelete = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=? AND path=?;" );
 
         preparedInsert = session.prepare( "INSERT INTO " + keyspace
                                                           + ".nfc (storekey,path,creation,expiration) VALUES (?,?,?,?) USING TTL ?;" ); // ttl in seconds
+
+        preparedChangeStamp = session.prepare( "INSERT INTO " + keyspace
+                                                               + ".nfc_changes (storekey,node,changed) VALUES (?,?,now()) USING TTL ?;" );
+
+        preparedChangesByStore =
+                        session.prepare( "SELECT node, changed FROM " + keyspace + ".nfc_changes WHERE storekey=?;" );
     }
 
     @Override
@@ -172,8 +276,47 @@ public class CassandraNotFoundCache
 
         BoundStatement bound = preparedInsert.bind( key.toString(), resource.getPath(), curDate, timeoutDate,
                                                     timeoutInSeconds );
-        session.execute( bound );
+
+        // the in-memory cache answers for this path until the write lands
         inMemoryCache.put( resource, DUMB_CACHE_VALUE, timeoutInSeconds, TimeUnit.SECONDS );
+        filterAdd( key, resource.getPath() );
+
+        if ( !writePermits.tryAcquire() )
+        {
+            logger.debug( "[NFC] Too many writes in flight, waiting to store {}", resource );
+            mark( metricsManager, metricsConfig, CassandraNotFoundCache.class, NFCMetricsDecorator.METRIC_NAME,
+                  WRITES_THROTTLED, 1 );
+            writePermits.acquireUninterruptibly();
+        }
+
+        ResultSetFuture future = session.executeAsync( bound );
+        future.addListener( () -> {
+            try
+            {
+                future.getUninterruptibly();
+            }
+            catch ( RuntimeException e )
+            {
+                writePermits.release();
+                logger.warn( "[NFC] Failed to store {}, reason: {}", resource, e.getMessage() );
+                return;
+            }
+
+            // stamped only once the entry is stored, so a node that sees the stamp also finds the entry
+            ResultSetFuture stamp =
+                            session.executeAsync( preparedChangeStamp.bind( key.toString(), nodeId, timeoutInSeconds ) );
+            stamp.addListener( () -> {
+                writePermits.release();
+                try
+                {
+                    stamp.getUninterruptibly();
+                }
+                catch ( RuntimeException e )
+                {
+                    logger.warn( "[NFC] Failed to stamp the change of {}, reason: {}", key, e.getMessage() );
+                }
+            }, Runnable::run );
+        }, Runnable::run );
     }
 
     @Override
@@ -185,6 +328,13 @@ public class CassandraNotFoundCache
             return true;
         }
         StoreKey key = getResourceKey( resource );
+        if ( !filterMightContain( key, resource.getPath() ) )
+        {
+            mark( metricsManager, metricsConfig, CassandraNotFoundCache.class, NFCMetricsDecorator.METRIC_NAME,
+                  FILTERED, 1 );
+            return false;
+        }
+
         BoundStatement bound = preparedExistQuery.bind( key.toString(), resource.getPath() );
         ResultSet result = session.execute( bound );
         Row row = result.one();
@@ -214,6 +364,16 @@ public class CassandraNotFoundCache
         BoundStatement bound = preparedDeleteByStore.bind( key.toString() );
         session.execute( bound );
         clearInMemoryCache( location );
+
+        // the store has no entries now; no need to load anything
+        FilterLoad load = filterLoads.get( key );
+        if ( load != null )
+        {
+            load.cancelled = true;
+        }
+        StoreFilter previous = filters.get( key );
+        filters.put( key, new StoreFilter( new PathBloomFilter( MIN_FILTER_ENTRIES ),
+                                           previous == null ? Collections.emptyMap() : previous.changes ) );
     }
 
     private void clearInMemoryCache( final Location location )
@@ -243,6 +403,8 @@ public class CassandraNotFoundCache
         BoundStatement bound = preparedDelete.bind( key.toString(), resource.getPath() );
         session.execute( bound );
         inMemoryCache.remove( resource );
+
+        // the path stays in the store's filter until it is reloaded; until then checking it costs a query
     }
 
     @Override
@@ -251,6 +413,11 @@ public class CassandraNotFoundCache
     {
         session.execute( "TRUNCATE " + keyspace + ".nfc;" );
         clearInMemoryCache();
+
+        filterLoads.values().forEach( load -> load.cancelled = true );
+        filters.clear();
+        failedLoads.clear();
+        changeChecks.clear();
     }
 
     @Override
@@ -326,4 +493,227 @@ public class CassandraNotFoundCache
         KeyedLocation location = (KeyedLocation) resource.getLocation();
         return location.getKey();
     }
+
+    /**
+     * @return false if the path is definitely not in the NFC of the store
+     */
+    private boolean filterMightContain( final StoreKey key, final String path )
+    {
+        StoreFilter filter = filters.get( key );
+        if ( filter == null || filter.isStale( TimeUnit.MINUTES.toMillis( config.getNfcExpirationSweepMinutes() ) ) )
+        {
+            loadFilter( key );
+        }
+
+        if ( filter == null || filter.changedElsewhere || filter.filter.mightContain( path ) )
+        {
+            return true;
+        }
+
+        if ( filter.isChangeCheckDue( CHANGE_CHECK_MILLIS ) )
+        {
+            checkChanges( key, filter );
+        }
+        return !filter.changedElsewhere;
+    }
+
+    /**
+     * Reads the stamps other nodes left on the store, and starts a reload of its filter if any of them changed since
+     * the filter was loaded.
+     */
+    private void checkChanges( final StoreKey key, final StoreFilter filter )
+    {
+        if ( !changeChecks.add( key ) )
+        {
+            return;
+        }
+
+        final Runnable task = () -> {
+            try
+            {
+                filter.changesCheckedAt = System.currentTimeMillis();
+                if ( !filter.changes.equals( readChanges( key ) ) )
+                {
+                    logger.debug( "[NFC] {} was changed by another node, reloading its filter", key );
+                    mark( metricsManager, metricsConfig, CassandraNotFoundCache.class,
+                          NFCMetricsDecorator.METRIC_NAME, CHANGED_ELSEWHERE, 1 );
+                    filter.changedElsewhere = true;
+                    loadFilter( key );
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "[NFC] Failed to check the changes of {}, reason: {}", key, e.getMessage() );
+            }
+            finally
+            {
+                changeChecks.remove( key );
+            }
+        };
+
+        if ( filterLoader == null )
+        {
+            task.run();
+            return;
+        }
+
+        try
+        {
+            filterLoader.execute( task );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            changeChecks.remove( key );
+        }
+    }
+
+    private Map<String, UUID> readChanges( final StoreKey key )
+    {
+        Map<String, UUID> changes = new HashMap<>();
+        for ( Row row : session.execute( preparedChangesByStore.bind( key.toString() ) ) )
+        {
+            String node = row.getString( 0 );
+            if ( !nodeId.equals( node ) )
+            {
+                changes.put( node, row.getUUID( 1 ) );
+            }
+        }
+        return changes;
+    }
+
+    private void filterAdd( final StoreKey key, final String path )
+    {
+        // a load in progress adds these once it is done with Cassandra; see loadFilter()
+        FilterLoad load = filterLoads.get( key );
+        if ( load != null )
+        {
+            load.added.add( path );
+        }
+
+        StoreFilter filter = filters.get( key );
+        if ( filter != null )
+        {
+            filter.filter.add( path );
+        }
+    }
+
+    private void loadFilter( final StoreKey key )
+    {
+        FailedLoad failed = failedLoads.get( key );
+        if ( failed != null && System.currentTimeMillis() < failed.retryAt )
+        {
+            return;
+        }
+
+        final FilterLoad load = new FilterLoad();
+        if ( filterLoads.putIfAbsent( key, load ) != null )
+        {
+            return;
+        }
+
+        final Runnable task = () -> {
+            try
+            {
+                // read before the paths: whatever is stamped later makes the next check reload the filter
+                Map<String, UUID> changes = readChanges( key );
+
+                List<String> paths = new ArrayList<>();
+                for ( Row row : session.execute( preparedPathsByStore.bind( key.toString() ) ) )
+                {
+                    paths.add( row.getString( 0 ) );
+                }
+
+                PathBloomFilter filter = new PathBloomFilter( Math.max( paths.size() * 2, MIN_FILTER_ENTRIES ) );
+                paths.forEach( filter::add );
+
+                if ( !load.cancelled )
+                {
+                    // publish first, then replay the concurrent adds: an add either lands in 'added' before the
+                    // replay, or finds the new filter already published.
+                    filters.put( key, new StoreFilter( filter, changes ) );
+                    load.added.forEach( filter::add );
+                    logger.debug( "[NFC] Loaded filter for {} with {} entries", key, paths.size() );
+                }
+                failedLoads.remove( key );
+            }
+            catch ( RuntimeException e )
+            {
+                FailedLoad last = failedLoads.get( key );
+                long maxDelay = Math.max( MIN_LOAD_RETRY_MILLIS,
+                                          TimeUnit.MINUTES.toMillis( config.getNfcExpirationSweepMinutes() ) );
+                long delay = last == null ? MIN_LOAD_RETRY_MILLIS : Math.min( last.delay * 2, maxDelay );
+                failedLoads.put( key, new FailedLoad( delay ) );
+                logger.warn( "[NFC] Failed to load filter for {}, retrying in {}s, reason: {}", key,
+                             TimeUnit.MILLISECONDS.toSeconds( delay ), e.getMessage() );
+            }
+            finally
+            {
+                filterLoads.remove( key, load );
+            }
+        };
+
+        if ( filterLoader == null )
+        {
+            task.run();
+            return;
+        }
+
+        try
+        {
+            filterLoader.execute( task );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            filterLoads.remove( key, load );
+        }
+    }
+
+    private static final class StoreFilter
+    {
+        private final PathBloomFilter filter;
+
+        private final Map<String, UUID> changes;
+
+        private final long loaded = System.currentTimeMillis();
+
+        private volatile long changesCheckedAt = loaded;
+
+        private volatile boolean changedElsewhere;
+
+        private StoreFilter( final PathBloomFilter filter, final Map<String, UUID> changes )
+        {
+            this.filter = filter;
+            this.changes = changes;
+        }
+
+        private boolean isStale( final long maxAge )
+        {
+            return System.currentTimeMillis() - loaded > maxAge || filter.isOverloaded();
+        }
+
+        private boolean isChangeCheckDue( final long interval )
+        {
+            return System.currentTimeMillis() - changesCheckedAt > interval;
+        }
+    }
+
+    private static final class FailedLoad
+    {
+        private final long delay;
+
+        private final long retryAt;
+
+        private FailedLoad( final long delay )
+        {
+            this.delay = delay;
+            this.retryAt = System.currentTimeMillis() + delay;
+        }
+    }
+
+    private static final class FilterLoad
+    {
+        private final Set<String> added = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean cancelled;
+    }
 }
@@ -16,13 +16,18 @@
 package org.commonjava.indy.core.inject;
 
 import com.fasterxml.jackson.databind.Module;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.core.io.ModuleSet;
 import org.commonjava.indy.subsys.cassandra.CassandraClient;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +54,17 @@ public class CoreProvider
     @Inject
     private CacheProducer cacheProducer;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "nfc-filter-loader", threads = 2, priority = 4, loadSensitive = ExecutorConfig.BooleanLiteral.FALSE )
+    private WeftExecutorService nfcFilterLoader;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
     @Inject
     @NfcCache
     private BasicCacheHandle<String, NfcConcreteResourceWrapper> nfcCache;
@@ -74,8 +90,8 @@ public class CoreProvider
         logger.info( "Apply nfc provider: {}", nfcProvider );
         if ( CASSANDRA_NFC_PROVIDER.equals( nfcProvider ) )
         {
-            notFoundCache = new CassandraNotFoundCache( indyConfiguration, cacheProducer,
-                                                        cassandraClient );
+            notFoundCache = new CassandraNotFoundCache( indyConfiguration, cacheProducer, cassandraClient,
+                                                        nfcFilterLoader, metricsManager, metricsConfig );
         }
         else
         {
@@ -15,20 +15,20 @@
  */
 package org.commonjava.indy.core.inject;
 
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
 
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -37,12 +37,23 @@ import javax.inject.Inject;
 
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.model.galley.RepositoryLocation;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * In-memory NFC. Entries are kept per location (i.e. per store) in a {@link MissingPathTable}, so checking a path
+ * only touches the table of its store, and clearing a whole store just drops its table. Expired entries are removed
+ * lazily when they are checked, and by a periodic sweep that only visits tables that have something due.
+ * <p>
+ * The total number of entries is bounded by {@link IndyConfiguration#getNfcMemoryMaxEntries()}. When the cache is
+ * full, new paths are not admitted (existing ones can still be refreshed) until the sweep makes room.
+ */
 @ApplicationScoped
 @Alternative
 public class ExpiringMemoryNotFoundCache
@@ -51,13 +62,24 @@ public class ExpiringMemoryNotFoundCache
 
     private static final String TIMEOUT_FORMAT = "yyyy-MM-dd hh:mm:ss z";
 
+    private static final String EVICTED = "evicted";
+
+    private static final String REJECTED = "rejected";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
     protected IndyConfiguration config;
 
-    // TODO: Now using a simple hashmap, need to take attention here to see if need ISPN instead if it is a mem eater.
-    protected final Map<ConcreteResource, Long> missingWithTimeout = new ConcurrentHashMap<>();
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    private final Map<Location, MissingPathTable> missing = new ConcurrentHashMap<>();
+
+    private final AtomicLong size = new AtomicLong();
 
     private final ScheduledExecutorService evictionService = Executors.newScheduledThreadPool( 1 );
 
@@ -112,17 +134,56 @@ public class ExpiringMemoryNotFoundCache
             }
         } );
 
-        missingWithTimeout.put( resource, timeout );
+        final long maxEntries = config.getNfcMemoryMaxEntries();
+        while ( true )
+        {
+            final MissingPathTable table = missing.computeIfAbsent( loc, l -> new MissingPathTable() );
+            synchronized ( table )
+            {
+                if ( table.isDetached() )
+                {
+                    // the store was cleared meanwhile; retry with a fresh table
+                    continue;
+                }
+
+                if ( maxEntries > 0 && size.get() >= maxEntries && !table.contains( resource.getPath() ) )
+                {
+                    logger.debug( "[NFC] Full ({} entries), not admitting: {}", size.get(), resource );
+                    mark( metricsManager, metricsConfig, ExpiringMemoryNotFoundCache.class,
+                          NFCMetricsDecorator.METRIC_NAME, REJECTED, 1 );
+                    return;
+                }
+
+                if ( table.put( resource.getPath(), timeout ) )
+                {
+                    size.incrementAndGet();
+                }
+                return;
+            }
+        }
     }
 
     @Override
     public boolean isMissing( final ConcreteResource resource )
     {
-        final Long timeout = missingWithTimeout.get( resource );
         boolean result = false;
-        if ( timeout != null && System.currentTimeMillis() < timeout )
+        final MissingPathTable table = missing.get( resource.getLocation() );
+        if ( table != null )
         {
-            result = true;
+            synchronized ( table )
+            {
+                final long timeout = table.getExpiration( resource.getPath() );
+                if ( System.currentTimeMillis() < timeout )
+                {
+                    result = true;
+                }
+                else if ( timeout > 0 && table.remove( resource.getPath() ) )
+                {
+                    size.decrementAndGet();
+                    mark( metricsManager, metricsConfig, ExpiringMemoryNotFoundCache.class,
+                          NFCMetricsDecorator.METRIC_NAME, EVICTED, 1 );
+                }
+            }
         }
 
         logger.debug( "NFC check: {} result is: {}", resource, result );
@@ -132,40 +193,50 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public void clearMissing( final Location location )
     {
-        Set<ConcreteResource> paths = keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .collect( Collectors.toSet() );
-
-        if ( !paths.isEmpty() )
-        {
-            paths.forEach( r -> missingWithTimeout.remove( r ) );
-        }
+        detach( missing.remove( location ) );
     }
 
     @Override
     public void clearMissing( final ConcreteResource resource )
     {
-        missingWithTimeout.remove( resource );
+        final MissingPathTable table = missing.get( resource.getLocation() );
+        if ( table != null )
+        {
+            synchronized ( table )
+            {
+                if ( table.remove( resource.getPath() ) )
+                {
+                    size.decrementAndGet();
+                }
+            }
+        }
     }
 
     @Override
     public void clearAllMissing()
     {
-        this.missingWithTimeout.clear();
+        for ( Location location : missing.keySet() )
+        {
+            clearMissing( location );
+        }
     }
 
     @Override
     public Map<Location, Set<String>> getAllMissing()
     {
-        clearAllExpiredMissing();
-        Set<ConcreteResource> paths = keys();
-
+        final long now = System.currentTimeMillis();
         final Map<Location, Set<String>> result = new HashMap<>();
-        paths.forEach( resource->{
-            final Location loc = resource.getLocation();
-            Set<String> locationPaths = result.computeIfAbsent( loc, k -> new HashSet<>() );
+        missing.forEach( ( loc, table ) -> {
+            final Set<String> paths;
+            synchronized ( table )
+            {
+                paths = table.getPaths( now );
+            }
 
-            locationPaths.add( resource.getPath() );
+            if ( !paths.isEmpty() )
+            {
+                result.put( loc, paths );
+            }
         } );
 
         return result;
@@ -174,41 +245,53 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public Set<String> getMissing( final Location location )
     {
-        clearAllExpiredMissing();
-        return keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .map( r -> r.getPath() )
-                    .collect( Collectors.toSet() );
+        final MissingPathTable table = missing.get( location );
+        if ( table == null )
+        {
+            return Collections.emptySet();
+        }
+
+        synchronized ( table )
+        {
+            return table.getPaths( System.currentTimeMillis() );
+        }
     }
 
-    private Set<ConcreteResource> keys()
+    private void detach( final MissingPathTable table )
     {
-        Set<ConcreteResource> paths;
-        paths = new HashSet<>(missingWithTimeout.keySet());
-
-        return paths;
+        if ( table != null )
+        {
+            synchronized ( table )
+            {
+                size.addAndGet( -table.detach() );
+            }
+        }
     }
 
-    private synchronized void clearAllExpiredMissing()
+    private void clearAllExpiredMissing()
     {
         try
         {
-            long tstamp = System.currentTimeMillis();
-            Set<ConcreteResource> paths = keys().stream().filter( r ->
-                                   {
-                                       if ( r == null )
-                                       {
-                                           return false;
-                                       }
-
-                                       Long timeout = missingWithTimeout.get( r );
-                                       return timeout != null && timeout < tstamp;
-                                   } ).collect( Collectors.toSet() );
-
-            if ( !paths.isEmpty() )
+            final long tstamp = System.currentTimeMillis();
+            long evicted = 0;
+            for ( MissingPathTable table : missing.values() )
             {
-                paths.forEach( r -> missingWithTimeout.remove( r ) );
+                if ( table.getEarliestExpiration() > tstamp )
+                {
+                    continue;
+                }
+
+                synchronized ( table )
+                {
+                    final int removed = table.removeExpired( tstamp );
+                    size.addAndGet( -removed );
+                    evicted += removed;
+                }
             }
+
+            mark( metricsManager, metricsConfig, ExpiringMemoryNotFoundCache.class, NFCMetricsDecorator.METRIC_NAME,
+                  EVICTED, evicted );
+            logger.debug( "[NFC] Swept {} expired entries, {} left", evicted, size.get() );
         }
         catch ( Throwable error )
         {
@@ -220,13 +303,25 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public long getSize( StoreKey storeKey )
     {
-        return 0; // Not support
+        long result = 0;
+        for ( Map.Entry<Location, MissingPathTable> entry : missing.entrySet() )
+        {
+            final Location loc = entry.getKey();
+            if ( loc instanceof KeyedLocation && storeKey.equals( ( (KeyedLocation) loc ).getKey() ) )
+            {
+                synchronized ( entry.getValue() )
+                {
+                    result += entry.getValue().size();
+                }
+            }
+        }
+        return result;
     }
 
     @Override
     public long getSize()
     {
-        return missingWithTimeout.size();
+        return size.get();
     }
 
     @Override
@@ -0,0 +1,255 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Missing paths of one store with their expiration times, for {@link ExpiringMemoryNotFoundCache}. It is an open
+ * addressing table (linear probing on the path hash) over a path array and a parallel <code>long</code> array of
+ * expiration timestamps, so an entry costs two array slots instead of a map entry and a boxed Long.
+ * <p>
+ * It also tracks a lower bound of the earliest expiration it holds, so the sweeper can skip tables with nothing due.
+ * <p>
+ * Not thread-safe; callers synchronize on the table.
+ */
+final class MissingPathTable
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] paths = new String[INITIAL_CAPACITY];
+
+    private long[] expirations = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    private long earliestExpiration = Long.MAX_VALUE;
+
+    private boolean detached;
+
+    int size()
+    {
+        return size;
+    }
+
+    long getEarliestExpiration()
+    {
+        return earliestExpiration;
+    }
+
+    /**
+     * True once the table was dropped from the cache. Writers that still hold a reference must look it up again.
+     */
+    boolean isDetached()
+    {
+        return detached;
+    }
+
+    /**
+     * Drop all entries and mark the table detached.
+     *
+     * @return the number of entries dropped
+     */
+    int detach()
+    {
+        int dropped = size;
+        paths = new String[INITIAL_CAPACITY];
+        expirations = new long[INITIAL_CAPACITY];
+        size = 0;
+        earliestExpiration = Long.MAX_VALUE;
+        detached = true;
+        return dropped;
+    }
+
+    boolean contains( final String path )
+    {
+        return paths[indexOf( path )] != null;
+    }
+
+    /**
+     * @return the expiration time of the path, or 0 if it isn't in the table
+     */
+    long getExpiration( final String path )
+    {
+        int idx = indexOf( path );
+        return paths[idx] == null ? 0 : expirations[idx];
+    }
+
+    /**
+     * @return true if the path was not in the table yet
+     */
+    boolean put( final String path, final long expiration )
+    {
+        earliestExpiration = Math.min( earliestExpiration, expiration );
+
+        int idx = indexOf( path );
+        if ( paths[idx] != null )
+        {
+            expirations[idx] = expiration;
+            return false;
+        }
+
+        paths[idx] = path;
+        expirations[idx] = expiration;
+        if ( ++size > paths.length * 3 / 4 )
+        {
+            rehash( paths.length * 2 );
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the path was in the table
+     */
+    boolean remove( final String path )
+    {
+        int idx = indexOf( path );
+        if ( paths[idx] == null )
+        {
+            return false;
+        }
+
+        deleteAt( idx );
+        return true;
+    }
+
+    /**
+     * Remove all entries that expired before the given time, and recompute the earliest expiration.
+     *
+     * @return the number of entries removed
+     */
+    int removeExpired( final long now )
+    {
+        if ( earliestExpiration > now )
+        {
+            return 0;
+        }
+
+        int capacity = paths.length;
+        String[] oldPaths = paths;
+        long[] oldExpirations = expirations;
+        int live = 0;
+        for ( int i = 0; i < oldPaths.length; i++ )
+        {
+            if ( oldPaths[i] != null && oldExpirations[i] > now )
+            {
+                live++;
+            }
+        }
+
+        int removed = size - live;
+        while ( capacity > INITIAL_CAPACITY && live < capacity / 4 )
+        {
+            capacity /= 2;
+        }
+
+        paths = new String[capacity];
+        expirations = new long[capacity];
+        size = 0;
+        earliestExpiration = Long.MAX_VALUE;
+        for ( int i = 0; i < oldPaths.length; i++ )
+        {
+            if ( oldPaths[i] != null && oldExpirations[i] > now )
+            {
+                insert( oldPaths[i], oldExpirations[i] );
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * @return the paths that have not expired at the given time
+     */
+    Set<String> getPaths( final long now )
+    {
+        Set<String> result = new HashSet<>();
+        for ( int i = 0; i < paths.length; i++ )
+        {
+            if ( paths[i] != null && expirations[i] > now )
+            {
+                result.add( paths[i] );
+            }
+        }
+        return result;
+    }
+
+    private int indexOf( final String path )
+    {
+        int mask = paths.length - 1;
+        int idx = slot( path, mask );
+        while ( paths[idx] != null && !paths[idx].equals( path ) )
+        {
+            idx = ( idx + 1 ) & mask;
+        }
+        return idx;
+    }
+
+    private void deleteAt( int idx )
+    {
+        int mask = paths.length - 1;
+        paths[idx] = null;
+        size--;
+
+        // shift the following entries of the probe run back, so lookups don't stop at the hole
+        int next = ( idx + 1 ) & mask;
+        while ( paths[next] != null )
+        {
+            int home = slot( paths[next], mask );
+            boolean movable = next > idx ? ( home <= idx || home > next ) : ( home <= idx && home > next );
+            if ( movable )
+            {
+                paths[idx] = paths[next];
+                expirations[idx] = expirations[next];
+                paths[next] = null;
+                idx = next;
+            }
+            next = ( next + 1 ) & mask;
+        }
+    }
+
+    private void rehash( final int capacity )
+    {
+        String[] oldPaths = paths;
+        long[] oldExpirations = expirations;
+        paths = new String[capacity];
+        expirations = new long[capacity];
+        size = 0;
+        for ( int i = 0; i < oldPaths.length; i++ )
+        {
+            if ( oldPaths[i] != null )
+            {
+                insert( oldPaths[i], oldExpirations[i] );
+            }
+        }
+    }
+
+    private void insert( final String path, final long expiration )
+    {
+        int idx = indexOf( path );
+        paths[idx] = path;
+        expirations[idx] = expiration;
+        size++;
+        earliestExpiration = Math.min( earliestExpiration, expiration );
+    }
+
+    private static int slot( final String path, final int mask )
+    {
+        int h = path.hashCode() * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & mask;
+    }
+}
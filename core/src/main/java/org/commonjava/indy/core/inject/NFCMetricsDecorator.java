@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.core.inject;
 
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
@@ -27,15 +29,33 @@ import javax.inject.Inject;
 import java.util.Map;
 import java.util.Set;
 
+import static org.commonjava.indy.subsys.metrics.IndyMeters.mark;
+
+/**
+ * Times the NFC operations, and counts NFC hits and misses. Implementations that evict entries mark their evictions
+ * under the same {@link #METRIC_NAME} prefix.
+ */
 @Decorator
 public abstract class NFCMetricsDecorator
         implements NotFoundCache
 {
+    public static final String METRIC_NAME = "indy.nfc.";
+
+    private static final String HIT = "hit";
+
+    private static final String MISS = "miss";
+
     @Delegate
     @Any
     @Inject
     private NotFoundCache delegate;
 
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
     @Measure
     @Override
     public void addMissing( final ConcreteResource resource )
@@ -47,7 +67,9 @@ public abstract class NFCMetricsDecorator
     @Override
     public boolean isMissing( final ConcreteResource resource )
     {
-        return delegate.isMissing( resource );
+        boolean missing = delegate.isMissing( resource );
+        mark( metricsManager, metricsConfig, NFCMetricsDecorator.class, METRIC_NAME, missing ? HIT : MISS, 1 );
+        return missing;
     }
 
     @Measure
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+/**
+ * Bloom filter over paths, sized for an expected number of entries at about 1% false positives. Entries can't be
+ * removed: clearing a bit could also drop other paths hashing to it, and the filter must never miss a path that was
+ * added. A removed path simply stays a (false) positive until the filter is rebuilt.
+ * <p>
+ * Writes are synchronized. {@link #mightContain(String)} reads without locking: a concurrent write may not be
+ * visible to it yet, so callers must cover paths they just added some other way (see
+ * {@link CassandraNotFoundCache}).
+ */
+final class PathBloomFilter
+{
+    private static final int HASHES = 7;
+
+    // ~9.6 bits per entry with 7 hashes gives about 1% false positives
+    private static final double BITS_PER_ENTRY = 9.6;
+
+    private static final int MIN_BITS = 1024;
+
+    private final long[] bits;
+
+    private final long bitCount;
+
+    private final int capacity;
+
+    private int size;
+
+    PathBloomFilter( final int expectedEntries )
+    {
+        this.capacity = Math.max( expectedEntries, 1 );
+        long wanted = Math.max( MIN_BITS, (long) Math.ceil( capacity * BITS_PER_ENTRY ) );
+        this.bits = new long[(int) Math.min( ( wanted + 63 ) / 64, Integer.MAX_VALUE - 8 )];
+        this.bitCount = bits.length * 64L;
+    }
+
+    /**
+     * True once more entries were added than the filter was sized for, and its false positive rate is going up.
+     */
+    synchronized boolean isOverloaded()
+    {
+        return size > capacity * 2L;
+    }
+
+    synchronized void add( final String path )
+    {
+        int h1 = path.hashCode();
+        int h2 = secondHash( path );
+        for ( int i = 0; i < HASHES; i++ )
+        {
+            long idx = index( h1, h2, i );
+            bits[(int) ( idx >>> 6 )] |= 1L << idx;
+        }
+        size++;
+    }
+
+    /**
+     * @return false if the path was definitely not added
+     */
+    boolean mightContain( final String path )
+    {
+        int h1 = path.hashCode();
+        int h2 = secondHash( path );
+        for ( int i = 0; i < HASHES; i++ )
+        {
+            long idx = index( h1, h2, i );
+            if ( ( bits[(int) ( idx >>> 6 )] & ( 1L << idx ) ) == 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index( final int h1, final int h2, final int i )
+    {
+        int combined = h1 + i * h2;
+        return ( combined & Integer.MAX_VALUE ) % bitCount;
+    }
+
+    // FNV-1a over the chars; independent enough from String.hashCode() for double hashing
+    private static int secondHash( final String path )
+    {
+        int h = 0x811C9DC5;
+        for ( int i = 0; i < path.length(); i++ )
+        {
+            h ^= path.charAt( i );
+            h *= 0x01000193;
+        }
+        return h | 1;
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change.event;
+
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.indy.change.event.AsyncFileEventObserver;
+import org.commonjava.indy.change.event.FileEventBatchListener;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileAccessEvent;
+import org.commonjava.maven.galley.event.FileEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.change.event.AsyncFileEventObserver.OverflowPolicy.DROP;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class FileEventPipelineTest
+{
+    private static final String INDEX = "test-index";
+
+    private ThreadPoolExecutor threads;
+
+    private PoolWeftExecutorService dispatchExecutor;
+
+    @Before
+    public void setup()
+    {
+        threads = (ThreadPoolExecutor) Executors.newFixedThreadPool( 2 );
+        dispatchExecutor = new PoolWeftExecutorService( "test-dispatch", threads, 2, 10f, false, null, null );
+    }
+
+    @After
+    public void teardown()
+    {
+        threads.shutdownNow();
+    }
+
+    @Test
+    public void deliversInFiringOrderInBoundedBatches()
+            throws Exception
+    {
+        BatchingListener listener = new BatchingListener();
+        FileEventPipeline pipeline = new FileEventPipeline( Collections.singletonList( listener ), dispatchExecutor );
+
+        // the first event is delivered alone, and holds the lane while the rest pile up behind it
+        pipeline.dispatch( access( 0 ) );
+        assertTrue( listener.entered.await( 5, TimeUnit.SECONDS ) );
+        for ( int i = 1; i < 10; i++ )
+        {
+            pipeline.dispatch( access( i ) );
+        }
+        listener.release.countDown();
+
+        assertTrue( listener.awaitEvents( 10 ) );
+        assertThat( listener.indexes(), equalTo( Arrays.asList( 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 ) ) );
+        assertThat( listener.batchSizes(), equalTo( Arrays.asList( 1, 3, 3, 3 ) ) );
+    }
+
+    @Test
+    public void onlyQueuesTheListenersEventTypes()
+            throws Exception
+    {
+        StorageListener listener = new StorageListener();
+        listener.release.countDown();
+        FileEventPipeline pipeline = new FileEventPipeline( Collections.singletonList( listener ), dispatchExecutor );
+
+        pipeline.dispatch( access( 0 ) );
+        pipeline.dispatch( storage( 1 ) );
+        pipeline.dispatch( access( 2 ) );
+        pipeline.dispatch( storage( 3 ) );
+
+        assertTrue( listener.awaitEvents( 2 ) );
+        assertThat( listener.indexes(), equalTo( Arrays.asList( 1, 3 ) ) );
+    }
+
+    @Test
+    public void dropPolicyDropsWhenQueueIsFull()
+            throws Exception
+    {
+        DroppingListener listener = new DroppingListener();
+        FileEventPipeline pipeline = new FileEventPipeline( Collections.singletonList( listener ), dispatchExecutor );
+
+        pipeline.dispatch( access( 0 ) );
+        assertTrue( listener.entered.await( 5, TimeUnit.SECONDS ) );
+
+        long start = System.nanoTime();
+        for ( int i = 1; i < 5; i++ )
+        {
+            pipeline.dispatch( access( i ) );
+        }
+        long waited = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertTrue( "Firing thread waited " + waited + "ms for room", waited < 1000 );
+
+        listener.release.countDown();
+
+        assertTrue( listener.awaitEvents( 3 ) );
+        assertThat( listener.indexes(), equalTo( Arrays.asList( 0, 1, 2 ) ) );
+    }
+
+    @Test
+    public void blockPolicyWaitsForRoomThenDrops()
+            throws Exception
+    {
+        BlockingListener listener = new BlockingListener();
+        FileEventPipeline pipeline = new FileEventPipeline( Collections.singletonList( listener ), dispatchExecutor );
+
+        pipeline.dispatch( access( 0 ) );
+        assertTrue( listener.entered.await( 5, TimeUnit.SECONDS ) );
+        pipeline.dispatch( access( 1 ) );
+
+        long start = System.nanoTime();
+        pipeline.dispatch( access( 2 ) );
+        long waited = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertTrue( "Firing thread returned after " + waited + "ms", waited >= 200 );
+
+        listener.release.countDown();
+
+        assertTrue( listener.awaitEvents( 2 ) );
+        assertThat( listener.indexes(), equalTo( Arrays.asList( 0, 1 ) ) );
+    }
+
+    @Test
+    public void blockPolicyWaitsOnlyBrieflyByDefault()
+            throws Exception
+    {
+        ShortBlockingListener listener = new ShortBlockingListener();
+        FileEventPipeline pipeline = new FileEventPipeline( Collections.singletonList( listener ), dispatchExecutor );
+
+        pipeline.dispatch( access( 0 ) );
+        assertTrue( listener.entered.await( 5, TimeUnit.SECONDS ) );
+        pipeline.dispatch( access( 1 ) );
+
+        long start = System.nanoTime();
+        pipeline.dispatch( access( 2 ) );
+        long waited = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        assertTrue( "Firing thread returned after " + waited + "ms", waited >= 50 && waited < 1000 );
+
+        listener.release.countDown();
+
+        assertTrue( listener.awaitEvents( 2 ) );
+        assertThat( listener.indexes(), equalTo( Arrays.asList( 0, 1 ) ) );
+    }
+
+    private static FileEvent access( final int index )
+    {
+        return new FileAccessEvent( null, new EventMetadata().set( INDEX, index ) );
+    }
+
+    private static FileEvent storage( final int index )
+    {
+        return new FileStorageEvent( TransferOperation.UPLOAD, null, new EventMetadata().set( INDEX, index ) );
+    }
+
+    private static abstract class RecordingListener
+            implements FileEventBatchListener
+    {
+        final CountDownLatch entered = new CountDownLatch( 1 );
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        private final List<List<FileEvent>> batches = new ArrayList<>();
+
+        @Override
+        public void onFileEvents( final List<FileEvent> events )
+        {
+            entered.countDown();
+            try
+            {
+                release.await( 5, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized ( batches )
+            {
+                batches.add( new ArrayList<>( events ) );
+                batches.notifyAll();
+            }
+        }
+
+        boolean awaitEvents( final int count )
+                throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 5 );
+            synchronized ( batches )
+            {
+                while ( indexes().size() < count )
+                {
+                    long left = end - System.currentTimeMillis();
+                    if ( left <= 0 )
+                    {
+                        return false;
+                    }
+                    batches.wait( left );
+                }
+            }
+
+            // give stray deliveries a moment to show up, so the assertions catch them
+            Thread.sleep( 100 );
+            return true;
+        }
+
+        List<Integer> indexes()
+        {
+            List<Integer> result = new ArrayList<>();
+            synchronized ( batches )
+            {
+                batches.forEach( b -> b.forEach( e -> result.add( (Integer) e.getEventMetadata().get( INDEX ) ) ) );
+            }
+            return result;
+        }
+
+        List<Integer> batchSizes()
+        {
+            List<Integer> result = new ArrayList<>();
+            synchronized ( batches )
+            {
+                batches.forEach( b -> result.add( b.size() ) );
+            }
+            return result;
+        }
+    }
+
+    @AsyncFileEventObserver( name = "batching", batchSize = 3 )
+    private static final class BatchingListener
+            extends RecordingListener
+    {
+    }
+
+    @AsyncFileEventObserver( name = "storage", eventTypes = FileStorageEvent.class )
+    private static final class StorageListener
+            extends RecordingListener
+    {
+    }
+
+    @AsyncFileEventObserver( name = "dropping", queueSize = 2, overflow = DROP )
+    private static final class DroppingListener
+            extends RecordingListener
+    {
+    }
+
+    @AsyncFileEventObserver( name = "blocking", queueSize = 1, blockMillis = 200 )
+    private static final class BlockingListener
+            extends RecordingListener
+    {
+    }
+
+    @AsyncFileEventObserver( name = "short-blocking", queueSize = 1 )
+    private static final class ShortBlockingListener
+            extends RecordingListener
+    {
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.content.ContentGenerator;
+import org.commonjava.indy.content.StoreResource;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ContentGeneratorIndexTest
+{
+    private final ContentGenerator metadata = new TestGenerator( set( "maven" ), set( "maven-metadata.xml" ) );
+
+    private final ContentGenerator checksums = new TestGenerator( null, set( ".md5", ".sha1" ) );
+
+    private final ContentGenerator npm = new TestGenerator( set( "npm" ), null );
+
+    private final ContentGenerator cleanup = new TestGenerator( null, Collections.emptySet() );
+
+    private final ContentGeneratorIndex index =
+            new ContentGeneratorIndex( Arrays.asList( metadata, checksums, npm, cleanup ) );
+
+    @Test
+    public void selectByPackageType()
+    {
+        assertThat( index.select( "maven" ), equalTo( Arrays.asList( metadata, checksums, cleanup ) ) );
+        assertThat( index.select( "npm" ), equalTo( Arrays.asList( checksums, npm, cleanup ) ) );
+        assertThat( index.select( "generic-http" ), equalTo( Arrays.asList( checksums, cleanup ) ) );
+        assertThat( index.select( null ), equalTo( Arrays.asList( checksums, cleanup ) ) );
+    }
+
+    @Test
+    public void selectByPathSuffix()
+    {
+        assertThat( index.select( "maven", "org/foo/maven-metadata.xml" ), equalTo( list( metadata ) ) );
+        assertThat( index.select( "maven", "org/foo/maven-metadata.xml.sha1" ), equalTo( list( checksums ) ) );
+        assertThat( index.select( "maven", "org/foo/1.0/foo-1.0.jar" ), equalTo( Collections.emptyList() ) );
+        assertThat( index.select( "npm", "jquery/-/jquery-1.0.tgz.md5" ), equalTo( Arrays.asList( checksums, npm ) ) );
+        assertThat( index.select( "npm", "jquery" ), equalTo( list( npm ) ) );
+    }
+
+    @Test
+    public void selectByAnyOfThePaths()
+    {
+        assertThat( index.select( "maven", "org/foo/", "org/foo/maven-metadata.xml" ), equalTo( list( metadata ) ) );
+        assertThat( index.select( "maven", "org/foo/maven-metadata.xml", null ), equalTo( list( metadata ) ) );
+    }
+
+    private static Set<String> set( final String... values )
+    {
+        return new HashSet<>( Arrays.asList( values ) );
+    }
+
+    private static List<ContentGenerator> list( final ContentGenerator generator )
+    {
+        return Collections.singletonList( generator );
+    }
+
+    private static final class TestGenerator
+            implements ContentGenerator
+    {
+        private final Set<String> packageTypes;
+
+        private final Set<String> pathSuffixes;
+
+        private TestGenerator( final Set<String> packageTypes, final Set<String> pathSuffixes )
+        {
+            this.packageTypes = packageTypes;
+            this.pathSuffixes = pathSuffixes;
+        }
+
+        @Override
+        public Set<String> getHandledPackageTypes()
+        {
+            return packageTypes;
+        }
+
+        @Override
+        public Set<String> getHandledPathSuffixes()
+        {
+            return pathSuffixes;
+        }
+
+        @Override
+        public Transfer generateFileContent( final ArtifactStore store, final String path,
+                                             final EventMetadata eventMetadata )
+        {
+            return null;
+        }
+
+        @Override
+        public List<StoreResource> generateDirectoryContent( final ArtifactStore store, final String path,
+                                                             final List<StoreResource> existing,
+                                                             final EventMetadata eventMetadata )
+        {
+            return null;
+        }
+
+        @Override
+        public Transfer generateGroupFileContent( final Group group, final List<ArtifactStore> members,
+                                                  final String path, final EventMetadata eventMetadata )
+        {
+            return null;
+        }
+
+        @Override
+        public List<StoreResource> generateGroupDirectoryContent( final Group group,
+                                                                  final List<ArtifactStore> members,
+                                                                  final String path,
+                                                                  final EventMetadata eventMetadata )
+        {
+            return null;
+        }
+
+        @Override
+        public void handleContentStorage( final ArtifactStore store, final String path, final Transfer result,
+                                          final EventMetadata eventMetadata )
+        {
+        }
+
+        @Override
+        public void handleContentDeletion( final ArtifactStore store, final String path,
+                                           final EventMetadata eventMetadata )
+        {
+        }
+
+        @Override
+        public boolean canProcess( final String path )
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.HashedLocationPathGenerator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfiguration;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.util.LocationUtils.toLocation;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultContentDigesterTest
+{
+    private static final String PATH = "org/foo/bar/1/bar-1.jar";
+
+    private static final byte[] CONTENT = "This is the jar".getBytes();
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static DefaultCacheManager cacheManager;
+
+    private static Cache<String, TransferMetadata> contentMetadata;
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private volatile CountDownLatch readGate;
+
+    private final CountDownLatch readStarted = new CountDownLatch( 1 );
+
+    private HostedRepository repo;
+
+    private Transfer transfer;
+
+    private DefaultContentDigester digester;
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        GlobalConfiguration globalConfiguration =
+                new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains( true ).build();
+        cacheManager =
+                new DefaultCacheManager( globalConfiguration, new ConfigurationBuilder().simpleCache( true ).build() );
+
+        contentMetadata = cacheManager.getCache( "content-metadata", true );
+    }
+
+    @AfterClass
+    public static void teardownClass()
+    {
+        cacheManager.stop();
+    }
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        contentMetadata.clear();
+
+        repo = new HostedRepository( "maven", "test" );
+
+        // stands in for ChecksummingTransferDecorator: records the metadata once the content has been read through
+        FileCacheProvider cacheProvider =
+                new FileCacheProvider( temp.newFolder( "storage" ), new HashedLocationPathGenerator(),
+                                       new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( new MetadataRecorder() ), false );
+
+        transfer = cacheProvider.getTransfer( new ConcreteResource( toLocation( repo ), PATH ) );
+        try (OutputStream out = transfer.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( CONTENT );
+        }
+
+        digester = new DefaultContentDigester( new DefaultDirectContentAccess()
+        {
+            @Override
+            public Transfer getTransfer( final StoreKey key, final String path )
+            {
+                return key.equals( repo.getKey() ) && PATH.equals( path ) ? transfer : null;
+            }
+        }, new BasicCacheHandle<>( "content-metadata", contentMetadata ) );
+    }
+
+    @Test
+    public void digestReadsContentOnceThenUsesCachedMetadata()
+            throws Exception
+    {
+        TransferMetadata first = digester.digest( repo.getKey(), PATH, new EventMetadata() );
+        assertThat( first.getSize(), equalTo( (long) CONTENT.length ) );
+
+        TransferMetadata second = digester.digest( repo.getKey(), PATH, new EventMetadata() );
+        assertThat( second, sameInstance( first ) );
+        assertThat( reads.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void concurrentDigestsShareOnePass()
+            throws Exception
+    {
+        readGate = new CountDownLatch( 1 );
+
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try
+        {
+            Future<TransferMetadata> leader =
+                    executor.submit( () -> digester.digest( repo.getKey(), PATH, new EventMetadata() ) );
+            assertTrue( readStarted.await( 5, TimeUnit.SECONDS ) );
+
+            Thread[] waiterThread = new Thread[1];
+            Future<TransferMetadata> waiter = executor.submit( () -> {
+                waiterThread[0] = Thread.currentThread();
+                return digester.digest( repo.getKey(), PATH, new EventMetadata() );
+            } );
+
+            awaitParked( waiterThread );
+            readGate.countDown();
+
+            assertThat( waiter.get( 5, TimeUnit.SECONDS ), sameInstance( leader.get( 5, TimeUnit.SECONDS ) ) );
+            assertThat( reads.get(), equalTo( 1 ) );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void missingContentHasEmptyMetadata()
+            throws Exception
+    {
+        TransferMetadata meta = digester.digest( repo.getKey(), "org/foo/bar/1/missing.jar", new EventMetadata() );
+        assertThat( meta.getSize(), equalTo( 0L ) );
+        assertThat( meta.getDigests().isEmpty(), equalTo( true ) );
+        assertThat( reads.get(), equalTo( 0 ) );
+    }
+
+    private static void awaitParked( final Thread[] thread )
+            throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 5 );
+        while ( System.currentTimeMillis() < end )
+        {
+            Thread t = thread[0];
+            if ( t != null && t.getState() == Thread.State.WAITING )
+            {
+                return;
+            }
+
+            Thread.sleep( 10 );
+        }
+
+        throw new AssertionError( "Second digest never started waiting" );
+    }
+
+    private final class MetadataRecorder
+            extends AbstractTransferDecorator
+    {
+        @Override
+        public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                         final EventMetadata metadata )
+                throws IOException
+        {
+            reads.incrementAndGet();
+            readStarted.countDown();
+            return new FilterInputStream( stream )
+            {
+                private long size;
+
+                @Override
+                public int read( final byte[] b, final int off, final int len )
+                        throws IOException
+                {
+                    awaitGate();
+                    int read = super.read( b, off, len );
+                    size += Math.max( read, 0 );
+                    return read;
+                }
+
+                @Override
+                public void close()
+                        throws IOException
+                {
+                    super.close();
+                    digester.addMetadata( transfer, new TransferMetadata( Collections.emptyMap(), size ) );
+                }
+            };
+        }
+
+        private void awaitGate()
+                throws IOException
+        {
+            CountDownLatch gate = readGate;
+            if ( gate == null )
+            {
+                return;
+            }
+
+            try
+            {
+                gate.await( 5, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException( e );
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DownloadFlightsTest
+{
+    private static final int WAITERS = 10;
+
+    private static final long WAIT_SECONDS = 60;
+
+    private final DownloadFlights<String> flights = new DownloadFlights<>();
+
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    @Test
+    public void concurrentCallersShareOneDownload()
+            throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger joined = new AtomicInteger();
+        final List<String> results = new ArrayList<>();
+
+        Thread leader = new Thread( () -> call( "key", () -> {
+            downloads.incrementAndGet();
+            await( release );
+            return "downloaded";
+        }, results, joined ) );
+        leader.start();
+        waitForDownloads( 1 );
+
+        List<Thread> waiters = startWaiters( results, joined );
+        waitUntilParked( waiters );
+        release.countDown();
+
+        leader.join();
+        for ( Thread waiter : waiters )
+        {
+            waiter.join();
+        }
+
+        assertThat( downloads.get(), equalTo( 1 ) );
+        assertThat( joined.get(), equalTo( WAITERS ) );
+        assertThat( results.size(), equalTo( WAITERS + 1 ) );
+        assertThat( results.stream().allMatch( "downloaded"::equals ), equalTo( true ) );
+        assertThat( flights.getInFlight(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void failureIsFannedOutToWaiters()
+            throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger joined = new AtomicInteger();
+        final List<String> results = new ArrayList<>();
+
+        Thread leader = new Thread( () -> call( "key", () -> {
+            downloads.incrementAndGet();
+            await( release );
+            throw new IndyWorkflowException( 502, "Upstream failed" );
+        }, results, joined ) );
+        leader.start();
+        waitForDownloads( 1 );
+
+        List<Thread> waiters = startWaiters( results, joined );
+        waitUntilParked( waiters );
+        release.countDown();
+
+        leader.join();
+        for ( Thread waiter : waiters )
+        {
+            waiter.join();
+        }
+
+        assertThat( downloads.get(), equalTo( 1 ) );
+        assertThat( joined.get(), equalTo( 0 ) );
+        assertThat( results.size(), equalTo( WAITERS + 1 ) );
+        assertThat( results.stream().allMatch( "failed: 502"::equals ), equalTo( true ) );
+    }
+
+    @Test
+    public void nextCallAfterFlightDownloadsAgain()
+            throws Exception
+    {
+        DownloadFlights.Download<String> download = () -> "download-" + downloads.incrementAndGet();
+
+        assertThat( flights.run( "key", WAIT_SECONDS, download, found -> "joined" ), equalTo( "download-1" ) );
+        assertThat( flights.run( "key", WAIT_SECONDS, download, found -> "joined" ), equalTo( "download-2" ) );
+        assertThat( flights.run( "other", WAIT_SECONDS, download, found -> "joined" ), equalTo( "download-3" ) );
+        assertThat( flights.getInFlight(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void waiterRunsItsOwnDownloadAfterWaiting()
+            throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final List<String> results = new ArrayList<>();
+
+        Thread leader = new Thread( () -> call( "key", () -> {
+            downloads.incrementAndGet();
+            await( release );
+            return "downloaded";
+        }, results, new AtomicInteger() ) );
+        leader.start();
+        waitForDownloads( 1 );
+
+        try
+        {
+            // a slow leader doesn't fail the waiter; it stops waiting on the flight and downloads itself
+            String result = flights.run( "key", 1, () -> "download-" + downloads.incrementAndGet(),
+                                         found -> "joined" );
+            assertThat( result, equalTo( "download-2" ) );
+        }
+        finally
+        {
+            release.countDown();
+            leader.join();
+        }
+
+        assertThat( results, equalTo( Collections.singletonList( "downloaded" ) ) );
+        assertThat( flights.getInFlight(), equalTo( 0 ) );
+    }
+
+    private List<Thread> startWaiters( final List<String> results, final AtomicInteger joined )
+    {
+        List<Thread> waiters = new ArrayList<>();
+        for ( int i = 0; i < WAITERS; i++ )
+        {
+            Thread waiter = new Thread( () -> call( "key", () -> {
+                downloads.incrementAndGet();
+                return "duplicate";
+            }, results, joined ) );
+            waiters.add( waiter );
+            waiter.start();
+        }
+        return waiters;
+    }
+
+    private void call( final String key, final DownloadFlights.Download<String> download, final List<String> results,
+                       final AtomicInteger joined )
+    {
+        String result;
+        try
+        {
+            result = flights.run( key, WAIT_SECONDS, download, found -> {
+                joined.incrementAndGet();
+                return found ? "downloaded" : null;
+            } );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            result = "failed: " + e.getStatus();
+        }
+
+        synchronized ( results )
+        {
+            results.add( result );
+        }
+    }
+
+    private static void await( final CountDownLatch latch )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            latch.await();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new IndyWorkflowException( "Interrupted", e );
+        }
+    }
+
+    private void waitForDownloads( final int count )
+            throws InterruptedException
+    {
+        while ( downloads.get() < count )
+        {
+            Thread.sleep( 10 );
+        }
+    }
+
+    private void waitUntilParked( final List<Thread> threads )
+            throws InterruptedException
+    {
+        for ( Thread thread : threads )
+        {
+            while ( thread.getState() != Thread.State.TIMED_WAITING )
+            {
+                Thread.sleep( 10 );
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.commonjava.indy.core.content.PathMaskChecker.checkListingMask;
+import static org.commonjava.indy.core.content.PathMaskChecker.checkMask;
+import static org.commonjava.indy.core.content.PathMaskChecker.invalidate;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathMaskCheckerTest
+{
+    @Test
+    public void checkPrefixAndRegexPatterns()
+    {
+        RemoteRepository repo = new RemoteRepository( "test", "http://localhost/" );
+        repo.setPathMaskPatterns(
+                new HashSet<>( Arrays.asList( "org/foo/", "org/bar/baz", "r|.+/[^/]+-sources\\.jar|" ) ) );
+
+        assertTrue( checkMask( repo, "/org/foo/1.0/foo-1.0.pom" ) );
+        assertTrue( checkMask( repo, "org/bar/baz-1.0.jar" ) );
+        assertTrue( checkMask( repo, "com/other/1.0/other-1.0-sources.jar" ) );
+        assertFalse( checkMask( repo, "org/fo" ) );
+        assertFalse( checkMask( repo, "com/other/1.0/other-1.0.jar" ) );
+    }
+
+    @Test
+    public void checkListingPatterns()
+    {
+        RemoteRepository repo = new RemoteRepository( "test", "http://localhost/" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/", "org/bar/baz" ) ) );
+
+        assertTrue( checkListingMask( repo, "org/" ) );
+        assertTrue( checkListingMask( repo, "org/foo/1.0/" ) );
+        assertTrue( checkListingMask( repo, "org/bar/baz" ) );
+        assertFalse( checkListingMask( repo, "com/" ) );
+        assertFalse( checkListingMask( repo, "org/bar/qux/" ) );
+
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/", "r|com/.*|" ) ) );
+        assertTrue( checkListingMask( repo, "net/" ) );
+    }
+
+    @Test
+    public void recompileWhenPatternsChange()
+    {
+        RemoteRepository repo = new RemoteRepository( "test", "http://localhost/" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/" ) ) );
+        assertTrue( checkMask( repo, "org/foo/foo.pom" ) );
+
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/bar/" ) ) );
+        assertFalse( checkMask( repo, "org/foo/foo.pom" ) );
+        assertTrue( checkMask( repo, "org/bar/bar.pom" ) );
+
+        // edits to the same set are picked up once the store update drops the compiled mask
+        repo.getPathMaskPatterns().add( "org/foo/" );
+        invalidate( repo.getKey() );
+        assertTrue( checkMask( repo, "org/foo/foo.pom" ) );
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.core.conf.IndyGroupFetchConfig;
+import org.commonjava.indy.core.content.DefaultDownloadManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.maven.galley.GalleyCore;
+import org.commonjava.maven.galley.GalleyCoreBuilder;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SpeculativeGroupRetrieverTest
+{
+    private static final String PATH = "org/foo/bar/1/bar-1.pom";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private DefaultDownloadManager downloadManager;
+
+    private ThreadPoolExecutor pool;
+
+    private List<ArtifactStore> members;
+
+    private Group group;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        GalleyCore core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) ).build();
+        MemoryStoreDataManager storeManager = new MemoryStoreDataManager( true );
+
+        members = new ArrayList<>();
+        for ( int i = 0; i < 3; i++ )
+        {
+            RemoteRepository remote = new RemoteRepository( MAVEN_PKG_KEY, "remote" + i, "http://remote" + i + ".test/" );
+            storeManager.storeArtifactStore( remote, new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" ), false,
+                                             false, new EventMetadata() );
+            members.add( remote );
+        }
+        group = new Group( MAVEN_PKG_KEY, "test", members.get( 0 ).getKey(), members.get( 1 ).getKey(),
+                           members.get( 2 ).getKey() );
+
+        pool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        downloadManager = new DefaultDownloadManager( storeManager, core.getTransferManager(),
+                                                      new IndyLocationExpander( storeManager ), null,
+                                                      new MemoryNotFoundCache(), weft( pool ) );
+    }
+
+    @After
+    public void teardown()
+    {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void firstMemberInGroupOrderWins()
+            throws Exception
+    {
+        Transfer result = retriever( weft( pool ) ).retrieve( group, members, PATH, new EventMetadata(),
+                                                              ( member, path, em ) -> {
+            if ( member == members.get( 0 ) )
+            {
+                return null;
+            }
+            if ( member == members.get( 1 ) )
+            {
+                sleep( 200 );
+            }
+            return transfer( member );
+        } );
+
+        assertThat( keyOf( result ), equalTo( members.get( 1 ).getKey() ) );
+    }
+
+    @Test
+    public void lowerPriorityFetchesAreCancelledOnceWinnerIsFound()
+            throws Exception
+    {
+        CountDownLatch lastStarted = new CountDownLatch( 1 );
+        CountDownLatch lastInterrupted = new CountDownLatch( 1 );
+
+        Transfer result = retriever( weft( pool ) ).retrieve( group, members, PATH, new EventMetadata(),
+                                                              ( member, path, em ) -> {
+            if ( member == members.get( 2 ) )
+            {
+                lastStarted.countDown();
+                try
+                {
+                    Thread.sleep( TimeUnit.SECONDS.toMillis( 30 ) );
+                }
+                catch ( InterruptedException e )
+                {
+                    lastInterrupted.countDown();
+                }
+                return transfer( member );
+            }
+
+            await( lastStarted );
+            return member == members.get( 0 ) ? transfer( member ) : null;
+        } );
+
+        assertThat( keyOf( result ), equalTo( members.get( 0 ).getKey() ) );
+        assertThat( lastInterrupted.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+    }
+
+    @Test
+    public void busyPoolFallsBackToSequentialRetrieval()
+            throws Exception
+    {
+        ThreadPoolExecutor stopped = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        stopped.shutdown();
+
+        List<String> calls = Collections.synchronizedList( new ArrayList<>() );
+        Thread caller = Thread.currentThread();
+
+        Transfer result = retriever( weft( stopped ) ).retrieve( group, members, PATH, new EventMetadata(),
+                                                                 ( member, path, em ) -> {
+            assertThat( Thread.currentThread(), equalTo( caller ) );
+            calls.add( member.getName() );
+            return member == members.get( 1 ) ? transfer( member ) : null;
+        } );
+
+        assertThat( keyOf( result ), equalTo( members.get( 1 ).getKey() ) );
+        assertThat( calls, equalTo( Arrays.asList( "remote0", "remote1" ) ) );
+    }
+
+    @Test
+    public void nothingFound()
+            throws Exception
+    {
+        Transfer result = retriever( weft( pool ) ).retrieve( group, members, PATH, new EventMetadata(),
+                                                              ( member, path, em ) -> null );
+
+        assertThat( result, nullValue() );
+    }
+
+    private SpeculativeGroupRetriever retriever( final WeftExecutorService fetchService )
+    {
+        return new SpeculativeGroupRetriever( downloadManager, new MemoryNotFoundCache(),
+                                              new IndyGroupFetchConfig( true, 4 ), fetchService );
+    }
+
+    private Transfer transfer( final ArtifactStore member )
+    {
+        return downloadManager.getStorageReference( member, PATH );
+    }
+
+    private static StoreKey keyOf( final Transfer transfer )
+    {
+        return ( (KeyedLocation) transfer.getLocation() ).getKey();
+    }
+
+    private static WeftExecutorService weft( final ThreadPoolExecutor executor )
+    {
+        return new PoolWeftExecutorService( "test-speculative-fetch", executor, 4, 10f, false, null, null );
+    }
+
+    private static void sleep( final long millis )
+    {
+        try
+        {
+            Thread.sleep( millis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await( final CountDownLatch latch )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            latch.await();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new IndyWorkflowException( "Interrupted", e );
+        }
+    }
+}
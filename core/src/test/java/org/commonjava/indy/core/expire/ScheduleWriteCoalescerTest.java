@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ScheduleWriteCoalescerTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void keepLatestScheduleOfEachPath()
+            throws Exception
+    {
+        List<DtxSchedule> written = new ArrayList<>();
+        ScheduleWriteCoalescer coalescer = new ScheduleWriteCoalescer( schedules -> {
+            written.addAll( schedules );
+            return Collections.emptyList();
+        }, new PendingScheduleLog( temp.newFolder() ), 60000 );
+
+        coalescer.schedule( schedule( "maven:remote:central", "/org/foo/foo.pom", 10 ) );
+        coalescer.schedule( schedule( "maven:remote:central", "/org/foo/foo.jar", 10 ) );
+        coalescer.schedule( schedule( "maven:remote:central", "/org/foo/foo.pom", 20 ) );
+        coalescer.schedule( schedule( "maven:remote:other", "/org/foo/foo.pom", 30 ) );
+
+        assertThat( coalescer.getPendingCount(), equalTo( 3 ) );
+
+        coalescer.flush( "maven:remote:other" );
+        assertThat( written.size(), equalTo( 1 ) );
+        assertThat( written.get( 0 ).getLifespan(), equalTo( 30L ) );
+
+        coalescer.flushAll();
+        assertThat( written.size(), equalTo( 3 ) );
+        assertThat( written.get( 1 ).getJobName(), equalTo( "/org/foo/foo.pom" ) );
+        assertThat( written.get( 1 ).getLifespan(), equalTo( 20L ) );
+        assertThat( coalescer.getPendingCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void retryFailedWrites()
+            throws Exception
+    {
+        List<DtxSchedule> written = new ArrayList<>();
+        boolean[] fail = { true };
+        ScheduleWriteCoalescer coalescer = new ScheduleWriteCoalescer( schedules -> {
+            if ( fail[0] )
+            {
+                return schedules;
+            }
+            written.addAll( schedules );
+            return Collections.emptyList();
+        }, new PendingScheduleLog( temp.newFolder() ), 60000, 0 );
+
+        coalescer.schedule( schedule( "maven:remote:central", "/org/foo/foo.pom", 10 ) );
+        coalescer.flushAll();
+        assertThat( coalescer.getPendingCount(), equalTo( 1 ) );
+
+        fail[0] = false;
+        coalescer.flushAll();
+        assertThat( written.size(), equalTo( 1 ) );
+        assertThat( coalescer.getPendingCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void backOffBeforeRetryingFailedWrites()
+            throws Exception
+    {
+        List<DtxSchedule> written = new ArrayList<>();
+        boolean[] fail = { true };
+        ScheduleWriteCoalescer coalescer = new ScheduleWriteCoalescer( schedules -> {
+            if ( fail[0] )
+            {
+                return schedules;
+            }
+            written.addAll( schedules );
+            return Collections.emptyList();
+        }, new PendingScheduleLog( temp.newFolder() ), 60000 );
+
+        coalescer.schedule( schedule( "maven:remote:central", "/org/foo/foo.pom", 10 ) );
+        coalescer.flushAll();
+
+        fail[0] = false;
+        coalescer.flushAll();
+        assertThat( written.isEmpty(), equalTo( true ) );
+        assertThat( coalescer.getPendingCount(), equalTo( 1 ) );
+
+        // reading the store's schedules doesn't wait for the backoff
+        coalescer.flush( "maven:remote:central" );
+        assertThat( written.size(), equalTo( 1 ) );
+        assertThat( coalescer.getPendingCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void giveUpAfterTooManyFailedWrites()
+            throws Exception
+    {
+        int[] writes = { 0 };
+        ScheduleWriteCoalescer coalescer = new ScheduleWriteCoalescer( schedules -> {
+            writes[0]++;
+            return schedules;
+        }, new PendingScheduleLog( temp.newFolder() ), 60000, 0 );
+
+        coalescer.schedule( schedule( "maven:remote:central", "/org/foo/foo.pom", 10 ) );
+        for ( int i = 0; i < ScheduleWriteCoalescer.MAX_WRITE_ATTEMPTS * 2; i++ )
+        {
+            coalescer.flushAll();
+        }
+
+        assertThat( writes[0], equalTo( ScheduleWriteCoalescer.MAX_WRITE_ATTEMPTS ) );
+        assertThat( coalescer.getPendingCount(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void recoverPendingSchedulesFromUnclosedLog()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+
+        // a node that crashes: nothing is flushed, stopped or closed
+        ScheduleWriteCoalescer crashed = new ScheduleWriteCoalescer( schedules -> schedules,
+                                                                     new PendingScheduleLog( dir ), 60000 );
+        crashed.schedule( schedule( "maven:remote:central", "/org/foo/foo.pom", 10 ) );
+        crashed.schedule( schedule( "maven:remote:central", "/org/foo/foo.jar", 20 ) );
+
+        List<DtxSchedule> written = new ArrayList<>();
+        ScheduleWriteCoalescer after = new ScheduleWriteCoalescer( schedules -> {
+            written.addAll( schedules );
+            return Collections.emptyList();
+        }, new PendingScheduleLog( dir ), 60000 );
+        after.start();
+        after.flushAll();
+        after.stop();
+
+        assertThat( written.size(), equalTo( 2 ) );
+        assertThat( written.get( 0 ).getJobName(), equalTo( "/org/foo/foo.pom" ) );
+        assertThat( written.get( 1 ).getLifespan(), equalTo( 20L ) );
+    }
+
+    @Test
+    public void recoverPendingSchedulesAfterRestart()
+            throws Exception
+    {
+        File dir = temp.newFolder();
+        ScheduleWriteCoalescer before = new ScheduleWriteCoalescer( schedules -> schedules,
+                                                                    new PendingScheduleLog( dir ), 60000 );
+
+        DtxSchedule pom = schedule( "maven:remote:central", "/org/foo/foo.pom", 10 );
+        before.schedule( pom );
+        before.schedule( schedule( "maven:remote:central", "/org/foo/foo.jar", 10 ) );
+        before.flushAll();
+        before.schedule( schedule( "maven:remote:central", "/org/foo/foo.jar", 20 ) );
+        before.stop();
+
+        List<DtxSchedule> written = new ArrayList<>();
+        ScheduleWriteCoalescer after = new ScheduleWriteCoalescer( schedules -> {
+            written.addAll( schedules );
+            return Collections.emptyList();
+        }, new PendingScheduleLog( dir ), 60000 );
+        after.start();
+        after.flushAll();
+        after.stop();
+
+        assertThat( written.size(), equalTo( 2 ) );
+        DtxSchedule first = written.get( 0 );
+        assertThat( first.getJobName(), equalTo( pom.getJobName() ) );
+        assertThat( first.getScheduleUID(), equalTo( pom.getScheduleUID() ) );
+        assertThat( first.getScheduleTime(), equalTo( pom.getScheduleTime() ) );
+        assertThat( first.getPayload(), equalTo( pom.getPayload() ) );
+        assertThat( written.get( 1 ).getLifespan(), equalTo( 20L ) );
+
+        assertThat( dir.list().length, equalTo( 0 ) );
+    }
+
+    private static DtxSchedule schedule( final String storeKey, final String path, final long timeout )
+    {
+        return new DtxSchedule( storeKey, "CONTENT", path, UUID.randomUUID(), new Date(),
+                                "{\"key\":\"" + storeKey + "\",\"path\":\"" + path + "\"}", timeout );
+    }
+}
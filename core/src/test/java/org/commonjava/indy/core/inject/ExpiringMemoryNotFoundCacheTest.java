@@ -88,4 +88,39 @@ public class ExpiringMemoryNotFoundCacheTest
         assertThat( allMissing == null || allMissing.isEmpty(), equalTo( true ) );
     }
 
+    @Test
+    public void clearStoreAndBoundSize()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNfcMemoryMaxEntries( 2 );
+
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( config );
+
+        final Location first = new SimpleLocation( "test:first" );
+        final Location second = new SimpleLocation( "test:second" );
+        final ConcreteResource a = new ConcreteResource( first, "/path/a" );
+        final ConcreteResource b = new ConcreteResource( first, "/path/b" );
+        final ConcreteResource c = new ConcreteResource( second, "/path/c" );
+
+        nfc.addMissing( a );
+        nfc.addMissing( b );
+        nfc.addMissing( c );
+
+        // full; the third one is not admitted, but refreshing an existing one is fine
+        nfc.addMissing( a );
+        assertThat( nfc.getSize(), equalTo( 2L ) );
+        assertThat( nfc.isMissing( a ), equalTo( true ) );
+        assertThat( nfc.isMissing( c ), equalTo( false ) );
+
+        nfc.clearMissing( first );
+        assertThat( nfc.getSize(), equalTo( 0L ) );
+        assertThat( nfc.isMissing( b ), equalTo( false ) );
+        assertThat( nfc.getMissing( first ).isEmpty(), equalTo( true ) );
+
+        nfc.addMissing( c );
+        assertThat( nfc.isMissing( c ), equalTo( true ) );
+        assertThat( nfc.getAllMissing().get( second ).contains( "/path/c" ), equalTo( true ) );
+    }
+
 }
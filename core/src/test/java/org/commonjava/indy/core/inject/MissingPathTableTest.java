@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MissingPathTableTest
+{
+    @Test
+    public void matchesMapBehavior()
+    {
+        final Random random = new Random( 42 );
+        final MissingPathTable table = new MissingPathTable();
+        final Map<String, Long> expected = new HashMap<>();
+
+        for ( int i = 0; i < 100000; i++ )
+        {
+            final String path = "/org/foo/" + random.nextInt( 5000 ) + "/foo.pom";
+            switch ( random.nextInt( 3 ) )
+            {
+                case 0:
+                {
+                    final long expiration = random.nextInt( 1000 ) + 1;
+                    assertThat( table.put( path, expiration ), equalTo( !expected.containsKey( path ) ) );
+                    expected.put( path, expiration );
+                    break;
+                }
+                case 1:
+                {
+                    assertThat( table.remove( path ), equalTo( expected.remove( path ) != null ) );
+                    break;
+                }
+                default:
+                {
+                    final Long expiration = expected.get( path );
+                    assertThat( table.getExpiration( path ), equalTo( expiration == null ? 0L : expiration ) );
+                }
+            }
+        }
+
+        assertThat( table.size(), equalTo( expected.size() ) );
+        assertThat( table.getPaths( 0 ), equalTo( expected.keySet() ) );
+
+        final long now = 500;
+        expected.values().removeIf( expiration -> expiration <= now );
+        table.removeExpired( now );
+        assertThat( table.size(), equalTo( expected.size() ) );
+        assertThat( table.getPaths( 0 ), equalTo( expected.keySet() ) );
+        assertThat( table.getEarliestExpiration() > now, equalTo( true ) );
+    }
+
+    @Test
+    public void detachDropsEverything()
+    {
+        final MissingPathTable table = new MissingPathTable();
+        table.put( "/a", 10 );
+        table.put( "/b", 20 );
+
+        assertThat( table.detach(), equalTo( 2 ) );
+        assertThat( table.isDetached(), equalTo( true ) );
+        assertThat( table.size(), equalTo( 0 ) );
+        assertThat( table.contains( "/a" ), equalTo( false ) );
+    }
+}
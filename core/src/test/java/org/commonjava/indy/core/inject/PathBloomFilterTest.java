@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PathBloomFilterTest
+{
+    @Test
+    public void noFalseNegativesAndFewFalsePositives()
+    {
+        final int entries = 10000;
+        final PathBloomFilter filter = new PathBloomFilter( entries );
+        for ( int i = 0; i < entries; i++ )
+        {
+            filter.add( "/org/foo/" + i + "/foo-" + i + ".pom" );
+        }
+
+        for ( int i = 0; i < entries; i++ )
+        {
+            assertThat( filter.mightContain( "/org/foo/" + i + "/foo-" + i + ".pom" ), equalTo( true ) );
+        }
+
+        int falsePositives = 0;
+        for ( int i = 0; i < entries; i++ )
+        {
+            if ( filter.mightContain( "/org/bar/" + i + "/bar-" + i + ".jar" ) )
+            {
+                falsePositives++;
+            }
+        }
+        assertTrue( "Too many false positives: " + falsePositives, falsePositives < entries / 50 );
+    }
+
+    @Test
+    public void overloadedOnceFarBeyondExpectedEntries()
+    {
+        final PathBloomFilter filter = new PathBloomFilter( 10 );
+        for ( int i = 0; i < 20; i++ )
+        {
+            filter.add( "/c/" + i );
+        }
+        assertThat( filter.isOverloaded(), equalTo( false ) );
+
+        filter.add( "/c/20" );
+        assertThat( filter.isOverloaded(), equalTo( true ) );
+    }
+}
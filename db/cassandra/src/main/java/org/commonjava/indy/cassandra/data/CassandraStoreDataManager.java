@@ -17,6 +17,7 @@ package org.commonjava.indy.cassandra.data;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.core.conf.IndyStoreManagerConfig;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.db.common.AbstractStoreDataManager;
@@ -32,15 +33,16 @@ import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -53,6 +55,8 @@ import static org.commonjava.indy.model.core.StoreType.group;
 public class CassandraStoreDataManager extends AbstractStoreDataManager
 {
 
+    private static final long GROUP_MEMBERSHIP_EXPIRATION_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -61,6 +65,11 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
     @Inject
     IndyObjectMapper objectMapper;
 
+    @Inject
+    IndyStoreManagerConfig storeManagerConfig;
+
+    private volatile StoreNearCache nearCache;
+
     protected CassandraStoreDataManager()
     {
     }
@@ -77,8 +86,65 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
         return null;
     }
 
+    /**
+     * Stores may be updated by other nodes in the cluster. Those changes are normally picked up from the store change
+     * log (see {@link StoreNearCache}); the expiration is a backstop, so flattened memberships are not kept for long.
+     */
+    @Override
+    protected long getGroupMembershipExpirationMillis()
+    {
+        return GROUP_MEMBERSHIP_EXPIRATION_MILLIS;
+    }
+
+    private StoreNearCache getNearCache()
+    {
+        if ( nearCache == null )
+        {
+            synchronized ( this )
+            {
+                if ( nearCache == null )
+                {
+                    long syncMillis = storeManagerConfig == null ?
+                                    IndyStoreManagerConfig.DEFAULT_NEAR_CACHE_SYNC_MILLIS :
+                                    storeManagerConfig.getNearCacheSyncMillis();
+
+                    nearCache = new StoreNearCache( storeQuery, this::loadArtifactStore, this::loadAllArtifactStores,
+                                                    this::storeChangedElsewhere, syncMillis );
+                }
+            }
+        }
+        return nearCache;
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        StoreNearCache cache = nearCache;
+        if ( cache != null )
+        {
+            cache.stop();
+        }
+    }
+
+    private void storeChangedElsewhere( StoreKey key )
+    {
+        if ( key == null )
+        {
+            groupMembershipCache.clear();
+        }
+        else
+        {
+            groupMembershipCache.invalidate( key );
+        }
+    }
+
     @Override
     protected ArtifactStore getArtifactStoreInternal( StoreKey key )
+    {
+        return getNearCache().get( key );
+    }
+
+    private ArtifactStore loadArtifactStore( StoreKey key )
     {
 
         logger.trace( "Get artifact store: {}", key.toString() );
@@ -95,18 +161,25 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
         logger.trace( "Remove artifact store: {}", key.toString() );
 
         DtxArtifactStore dtxArtifactStore = storeQuery.removeArtifactStore( key.getPackageType(), key.getType(), key.getName() );
+        getNearCache().removed( key );
         return toArtifactStore( dtxArtifactStore );
     }
 
     @Override
     public void clear( ChangeSummary summary ) throws IndyDataException
     {
-
+        getNearCache().clear();
+        groupMembershipCache.clear();
     }
 
     @Override
     @Measure
     public Set<ArtifactStore> getAllArtifactStores()
+    {
+        return new HashSet<>( getNearCache().getAll().values() );
+    }
+
+    private Set<ArtifactStore> loadAllArtifactStores()
     {
         Set<DtxArtifactStore> dtxArtifactStoreSet = storeQuery.getAllArtifactStores();
         Set<ArtifactStore> artifactStoreSet = new HashSet<>(  );
@@ -120,10 +193,7 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
     @Measure
     public Map<StoreKey, ArtifactStore> getArtifactStoresByKey()
     {
-        Map<StoreKey, ArtifactStore> ret = new HashMap<>();
-        Set<ArtifactStore> artifactStoreSet = getAllArtifactStores();
-        artifactStoreSet.forEach( store -> ret.put( store.getKey(), store ) );
-        return ret;
+        return new HashMap<>( getNearCache().getAll() );
     }
 
     @Override
@@ -145,10 +215,11 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
 
         logger.trace( "Get storeKeys: {}/{}", pkg, type );
 
-        Set<DtxArtifactStore> dtxArtifactStoreSet = storeQuery.getArtifactStoresByPkgAndType( pkg, type );
-        Set<StoreKey> storeKeySet = new HashSet<>(  );
-        dtxArtifactStoreSet.forEach( dtxArtifactStore -> storeKeySet.add( new StoreKey( pkg, type, dtxArtifactStore.getName() ) ) );
-        return storeKeySet;
+        return getNearCache().getAll()
+                             .keySet()
+                             .stream()
+                             .filter( key -> type == key.getType() && pkg.equals( key.getPackageType() ) )
+                             .collect( Collectors.toSet() );
     }
 
     @Override
@@ -157,10 +228,11 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
 
         logger.trace( "Get stores: {}/{}", pkg, type );
 
-        Set<DtxArtifactStore> dtxArtifactStoreSet = storeQuery.getArtifactStoresByPkgAndType( pkg, type );
-        Set<ArtifactStore> storeSet = new HashSet<>(  );
-        dtxArtifactStoreSet.forEach( dtxArtifactStore -> storeSet.add( toArtifactStore( dtxArtifactStore ) ) );
-        return storeSet;
+        return getNearCache().getAll()
+                             .values()
+                             .stream()
+                             .filter( store -> type == store.getType() && pkg.equals( store.getPackageType() ) )
+                             .collect( Collectors.toSet() );
     }
 
     @Override
@@ -190,7 +262,7 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
     @Override
     public Stream<StoreKey> streamArtifactStoreKeys()
     {
-        return getAllArtifactStores().stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() ).stream();
+        return new HashSet<>( getNearCache().getAll().keySet() ).stream();
     }
 
     @Override
@@ -199,71 +271,23 @@ public class CassandraStoreDataManager extends AbstractStoreDataManager
         DtxArtifactStore dtxArtifactStore = toDtxArtifactStore( storeKey, store );
         storeQuery.createDtxArtifactStore( dtxArtifactStore );
 
-        return toArtifactStore( dtxArtifactStore );
+        // cache a copy converted from the row, not the caller's instance
+        ArtifactStore stored = toArtifactStore( dtxArtifactStore );
+        getNearCache().stored( storeKey, stored );
+        return stored;
     }
 
     @Override
-    @Measure
-    public Set<Group> affectedBy( Collection<StoreKey> keys ) throws IndyDataException
+    protected Set<StoreKey> getAffectedBy( StoreKey key )
     {
-
-        final Set<Group> result = new HashSet<>();
-
-        // use these to avoid recursion
-        final Set<StoreKey> processed = new HashSet<>();
-        final LinkedList<StoreKey> toProcess = new LinkedList<>( keys );
-
-        while ( !toProcess.isEmpty() )
+        DtxAffectedStore affectedStore = storeQuery.getAffectedStore( key );
+        if ( affectedStore == null || affectedStore.getAffectedStoreKeys() == null )
         {
-            StoreKey key = toProcess.removeFirst();
-            if ( key == null )
-            {
-                continue;
-            }
-
-            if ( processed.add( key ) )
-            {
-                DtxAffectedStore affectedStore = storeQuery.getAffectedStore( key );
-                if ( affectedStore == null )
-                {
-                    processed.add( key );
-                    continue;
-                }
-                Set<StoreKey> affected = affectedStore.getAffectedStoreKeys();
-                if ( affected != null )
-                {
-                    logger.debug( "Get affectedByStores, key: {}, affected: {}", key, affected );
-                    affected = affected.stream().filter( k -> k.getType() == group ).collect( Collectors.toSet() );
-                    for ( StoreKey gKey : affected )
-                    {
-                        // avoid loading the ArtifactStore instance again and again
-                        if ( !processed.contains( gKey ) && !toProcess.contains( gKey ) )
-                        {
-                            ArtifactStore store = getArtifactStoreInternal( gKey );
-
-                            // if this group is disabled, we don't want to keep loading it again and again.
-                            if ( store.isDisabled() )
-                            {
-                                processed.add( gKey );
-                            }
-                            else
-                            {
-                                // add the group to the toProcess list so we can find any result that might include it in their own membership
-                                toProcess.addLast( gKey );
-                                result.add( (Group) store );
-                            }
-                        }
-                    }
-                }
-            }
+            return Collections.emptySet();
         }
 
-        if ( logger.isTraceEnabled() )
-        {
-            logger.trace( "Groups affected by {} are: {}", keys,
-                          result.stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() ) );
-        }
-        return filterAffectedGroups( result );
+        logger.debug( "Get affectedByStores, key: {}, affected: {}", key, affectedStore.getAffectedStoreKeys() );
+        return affectedStore.getAffectedStoreKeys();
     }
 
     @Override
@@ -20,6 +20,7 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.utils.UUIDs;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
 import org.commonjava.indy.conf.IndyConfiguration;
@@ -34,11 +35,17 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import static org.commonjava.indy.cassandra.data.CassandraStoreUtil.TABLE_AFFECTED_STORE;
 import static org.commonjava.indy.cassandra.data.CassandraStoreUtil.TABLE_STORE;
+import static org.commonjava.indy.cassandra.data.CassandraStoreUtil.TABLE_STORE_CHANGE;
+import static org.commonjava.indy.cassandra.data.CassandraStoreUtil.getChangeBucket;
 
 @ApplicationScoped
 public class CassandraStoreQuery
@@ -79,6 +86,10 @@ public class CassandraStoreQuery
 
     private PreparedStatement preparedAffectedStoreDel;
 
+    private PreparedStatement preparedStoreChangeInsert;
+
+    private PreparedStatement preparedStoreChangesQuery;
+
     public CassandraStoreQuery() {}
 
     public CassandraStoreQuery( CassandraClient client, IndyStoreManagerConfig config, IndyConfiguration indyConfig )
@@ -101,6 +112,7 @@ public class CassandraStoreQuery
         session.execute( CassandraStoreUtil.getSchemaCreateTableStore( keySpace ) );
         session.execute( CassandraStoreUtil.getSchemaCreateIndex4Store( keySpace ) );
         session.execute( CassandraStoreUtil.getSchemaCreateTableAffectedStore( keySpace ) );
+        session.execute( CassandraStoreUtil.getSchemaCreateTableStoreChange( keySpace ) );
 
         MappingManager manager = new MappingManager( session );
 
@@ -133,6 +145,12 @@ public class CassandraStoreQuery
         preparedAffectedStoreExistedQuery = session.prepare( "SELECT key FROM " + keySpace + "." + TABLE_AFFECTED_STORE + " LIMIT 1");
 
         preparedAffectedStoreDel = session.prepare( "DELETE FROM " + keySpace + "." + TABLE_AFFECTED_STORE + " WHERE key=? " );
+
+        preparedStoreChangeInsert = session.prepare( "INSERT INTO " + keySpace + "." + TABLE_STORE_CHANGE
+                                                                     + " (bucket, revision, storekey) VALUES (?, ?, ?)" );
+
+        preparedStoreChangesQuery = session.prepare( "SELECT revision, storekey FROM " + keySpace + "." + TABLE_STORE_CHANGE
+                                                                     + " WHERE bucket=? AND revision > maxTimeuuid(?)" );
     }
 
     public DtxArtifactStore getArtifactStore( String packageType, StoreType type, String name )
@@ -280,4 +298,33 @@ public class CassandraStoreQuery
             session.execute( bound );
         }
     }
+
+    /**
+     * Record that the store was changed (stored or deleted), so other nodes can drop their cached copy of it.
+     *
+     * @param revision time-based UUID of the change
+     */
+    public void logStoreChange( StoreKey key, UUID revision )
+    {
+        BoundStatement bound = preparedStoreChangeInsert.bind( getChangeBucket( UUIDs.unixTimestamp( revision ) ),
+                                                               revision, key.toString() );
+        session.execute( bound );
+    }
+
+    /**
+     * Return the stores changed after the given time, keyed (and ordered) by change revision.
+     */
+    public Map<UUID, StoreKey> getStoreChangesSince( long sinceMillis )
+    {
+        Map<UUID, StoreKey> changes = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for ( long bucket = getChangeBucket( sinceMillis ); bucket <= getChangeBucket( now ); bucket++ )
+        {
+            BoundStatement bound = preparedStoreChangesQuery.bind( bucket, new Date( sinceMillis ) );
+            ResultSet result = session.execute( bound );
+            result.forEach( row -> changes.put( row.getUUID( CassandraStoreUtil.REVISION ),
+                                                StoreKey.fromString( row.getString( CassandraStoreUtil.STORE_KEY ) ) ) );
+        }
+        return changes;
+    }
 }
@@ -22,6 +22,7 @@ public class CassandraStoreUtil
 
     public static final String TABLE_STORE = "artifactstore";
     public static final String TABLE_AFFECTED_STORE = "affected_store";
+    public static final String TABLE_STORE_CHANGE = "artifactstore_change";
 
     public static final String PACKAGE_TYPE = "packageType";
     public static final String STORE_TYPE = "storeType";
@@ -78,6 +79,14 @@ public class CassandraStoreUtil
     public static final String KEY = "key";
     public static final String AFFECTED_STORES = "affectedStores";
 
+    public static final String BUCKET = "bucket";
+    public static final String REVISION = "revision";
+    public static final String STORE_KEY = "storeKey";
+
+    // store change log rows live for a day, and are bucketed by hour to keep partitions small
+    public static final int STORE_CHANGE_TTL_SECONDS = 24 * 60 * 60;
+    public static final long STORE_CHANGE_BUCKET_MILLIS = 60 * 60 * 1000;
+
     public static final int MODULO_VALUE = 10;
 
     public static String getSchemaCreateTableStore( String keySpace )
@@ -112,6 +121,21 @@ public class CassandraStoreUtil
                         + ");";
     }
 
+    public static String getSchemaCreateTableStoreChange( String keyspace )
+    {
+        return "CREATE TABLE IF NOT EXISTS " + keyspace + "." + TABLE_STORE_CHANGE + " ("
+                        + "bucket bigint,"
+                        + "revision timeuuid,"
+                        + "storekey varchar,"
+                        + "PRIMARY KEY ( bucket, revision )"
+                        + ") WITH default_time_to_live = " + STORE_CHANGE_TTL_SECONDS + ";";
+    }
+
+    public static long getChangeBucket( final long timeMillis )
+    {
+        return timeMillis / STORE_CHANGE_BUCKET_MILLIS;
+    }
+
     public static String getSchemaCreateIndex4Store( String keyspace )
     {
         return "CREATE INDEX IF NOT EXISTS typekey_idx on " + keyspace + "." + TABLE_STORE + " (typekey)";
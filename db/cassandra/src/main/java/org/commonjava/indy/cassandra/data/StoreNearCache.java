@@ -0,0 +1,393 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.cassandra.data;
+
+import com.datastax.driver.core.utils.UUIDs;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.commonjava.indy.cassandra.data.CassandraStoreUtil.STORE_CHANGE_TTL_SECONDS;
+
+/**
+ * Local read-through cache of the stores held in Cassandra, so store lookups (which group resolution and path-mask
+ * checks do many times per request) don't each run a query and convert the row.
+ * <p>
+ * Single stores are cached as they are read (including misses). Full scans are served from an in-memory snapshot of
+ * every store, which is loaded once and then patched: changed stores are marked dirty, and only those are re-read the
+ * next time the snapshot is used (without holding the lock, so nothing waits on the database for it).
+ * <p>
+ * Every store / delete done through this node is written to the store change log, under a time-based revision. A
+ * background thread reads the changes logged since its last check (less {@link #CHANGE_WINDOW_MILLIS}, as the nodes'
+ * clocks differ) every {@code syncMillis}, and invalidates the stores changed by other nodes. Reads are versioned the
+ * same way as in {@link org.commonjava.indy.db.common.GroupMembershipCache}: a value read from the database is only
+ * cached if no invalidation happened while it was read.
+ * <p>
+ * Single-store lookups return a copy, so callers can change and store it without touching the cached instance. The
+ * stores of a full scan are shared; as with any store read from the data manager, call copyOf() before changing one.
+ */
+class StoreNearCache
+{
+    // tolerated clock skew between nodes, plus delay between taking a revision and the change log write becoming
+    // visible; revisions come from the writer's clock, and we look for them by ours. Store changes are rare, so reading
+    // this much of the log on every check is cheap.
+    private static final long CHANGE_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis( 2 );
+
+    // past this, the change log may have expired under us, so we can't trust anything we hold
+    private static final long MAX_SYNC_GAP_MILLIS = TimeUnit.SECONDS.toMillis( STORE_CHANGE_TTL_SECONDS ) / 2;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<StoreKey, CachedStore> stores = new ConcurrentHashMap<>();
+
+    private final Set<StoreKey> dirty = ConcurrentHashMap.newKeySet();
+
+    // stores being re-read for the snapshot, and whether they changed again meanwhile; guarded by this
+    private final Map<StoreKey, Boolean> refreshing = new HashMap<>();
+
+    // revisions already applied (including our own), with the time we saw them
+    private final Map<UUID, Long> seenRevisions = new ConcurrentHashMap<>();
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private final CassandraStoreQuery storeQuery;
+
+    private final Function<StoreKey, ArtifactStore> loader;
+
+    private final Supplier<Set<ArtifactStore>> fullLoader;
+
+    private final Consumer<StoreKey> invalidationListener;
+
+    private final ScheduledExecutorService syncService;
+
+    private volatile Map<StoreKey, ArtifactStore> snapshot;
+
+    private volatile long version;
+
+    private volatile long lastSync = System.currentTimeMillis();
+
+    /**
+     * @param invalidationListener called with each store key changed by another node, or with null if all cached
+     * stores were dropped.
+     */
+    StoreNearCache( final CassandraStoreQuery storeQuery, final Function<StoreKey, ArtifactStore> loader,
+                    final Supplier<Set<ArtifactStore>> fullLoader, final Consumer<StoreKey> invalidationListener,
+                    final long syncMillis )
+    {
+        this.storeQuery = storeQuery;
+        this.loader = loader;
+        this.fullLoader = fullLoader;
+        this.invalidationListener = invalidationListener;
+
+        this.syncService = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "store-near-cache-sync" );
+            t.setDaemon( true );
+            return t;
+        } );
+        syncService.scheduleWithFixedDelay( this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS );
+    }
+
+    void stop()
+    {
+        syncService.shutdown();
+    }
+
+    ArtifactStore get( final StoreKey key )
+    {
+        CachedStore cached = stores.get( key );
+        if ( cached != null )
+        {
+            return copy( cached.store );
+        }
+
+        long expectedVersion = version;
+        ArtifactStore store = loader.apply( key );
+        synchronized ( this )
+        {
+            if ( expectedVersion == version )
+            {
+                stores.put( key, new CachedStore( store ) );
+            }
+        }
+
+        return copy( store );
+    }
+
+    /**
+     * Return an unmodifiable map of all stores, refreshing any stores changed since it was last used.
+     */
+    Map<StoreKey, ArtifactStore> getAll()
+    {
+        Map<StoreKey, ArtifactStore> current = snapshot;
+        if ( current == null )
+        {
+            return loadSnapshot();
+        }
+
+        if ( dirty.isEmpty() )
+        {
+            return current;
+        }
+
+        return refreshSnapshot();
+    }
+
+    /**
+     * A store was written through this node.
+     */
+    void stored( final StoreKey key, final ArtifactStore store )
+    {
+        changed( key, store );
+    }
+
+    /**
+     * A store was deleted through this node.
+     */
+    void removed( final StoreKey key )
+    {
+        changed( key, null );
+    }
+
+    synchronized void clear()
+    {
+        version++;
+        refreshing.replaceAll( ( k, v ) -> Boolean.TRUE );
+        stores.clear();
+        dirty.clear();
+        snapshot = null;
+    }
+
+    private void changed( final StoreKey key, final ArtifactStore store )
+    {
+        UUID revision = UUIDs.timeBased();
+        seenRevisions.put( revision, System.currentTimeMillis() );
+
+        synchronized ( this )
+        {
+            version++;
+            refreshing.replace( key, Boolean.TRUE );
+            // neither the single-store cache nor the snapshot keep the caller's instance
+            stores.put( key, new CachedStore( copy( store ) ) );
+
+            Map<StoreKey, ArtifactStore> current = snapshot;
+            if ( current != null )
+            {
+                Map<StoreKey, ArtifactStore> updated = new HashMap<>( current );
+                if ( store == null )
+                {
+                    updated.remove( key );
+                }
+                else
+                {
+                    updated.put( key, copy( store ) );
+                }
+                snapshot = Collections.unmodifiableMap( updated );
+            }
+        }
+
+        storeQuery.logStoreChange( key, revision );
+    }
+
+    private synchronized void invalidate( final StoreKey key )
+    {
+        version++;
+        refreshing.replace( key, Boolean.TRUE );
+        stores.remove( key );
+        if ( snapshot != null )
+        {
+            dirty.add( key );
+        }
+    }
+
+    private Map<StoreKey, ArtifactStore> loadSnapshot()
+    {
+        long expectedVersion = version;
+        Map<StoreKey, ArtifactStore> loaded = new HashMap<>();
+        fullLoader.get().forEach( store -> loaded.put( store.getKey(), store ) );
+
+        Map<StoreKey, ArtifactStore> result = Collections.unmodifiableMap( loaded );
+        synchronized ( this )
+        {
+            if ( expectedVersion == version )
+            {
+                snapshot = result;
+                dirty.clear();
+                loaded.forEach( ( k, v ) -> stores.putIfAbsent( k, new CachedStore( copy( v ) ) ) );
+                logger.debug( "Loaded store snapshot with {} stores", loaded.size() );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Re-read the dirty stores and patch them into the snapshot. The stores are read without holding the lock, so
+     * writes and invalidations don't wait for the database; a store that changes again while it's read keeps the
+     * newer state (a local write is already in the snapshot, and an invalidation marks it dirty again).
+     */
+    private Map<StoreKey, ArtifactStore> refreshSnapshot()
+    {
+        Set<StoreKey> keys = new HashSet<>();
+        synchronized ( this )
+        {
+            if ( snapshot == null )
+            {
+                keys = null;
+            }
+            else
+            {
+                Iterator<StoreKey> it = dirty.iterator();
+                while ( it.hasNext() )
+                {
+                    StoreKey key = it.next();
+                    it.remove();
+                    refreshing.put( key, Boolean.FALSE );
+                    keys.add( key );
+                }
+            }
+        }
+
+        if ( keys == null )
+        {
+            return loadSnapshot();
+        }
+
+        Map<StoreKey, ArtifactStore> loaded = new HashMap<>();
+        Map<StoreKey, ArtifactStore> result;
+        try
+        {
+            keys.forEach( key -> loaded.put( key, loader.apply( key ) ) );
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                Map<StoreKey, ArtifactStore> updated = snapshot == null ? null : new HashMap<>( snapshot );
+                for ( StoreKey key : keys )
+                {
+                    boolean changedMeanwhile = Boolean.TRUE.equals( refreshing.remove( key ) );
+                    if ( changedMeanwhile || updated == null )
+                    {
+                        continue;
+                    }
+
+                    if ( !loaded.containsKey( key ) )
+                    {
+                        // the read failed, so it's still dirty
+                        dirty.add( key );
+                    }
+                    else if ( loaded.get( key ) == null )
+                    {
+                        updated.remove( key );
+                    }
+                    else
+                    {
+                        updated.put( key, loaded.get( key ) );
+                    }
+                }
+
+                if ( updated != null )
+                {
+                    logger.trace( "Refreshed {} stores of the store snapshot", loaded.size() );
+                    snapshot = Collections.unmodifiableMap( updated );
+                }
+                result = snapshot;
+            }
+        }
+
+        return result == null ? loadSnapshot() : result;
+    }
+
+    private static ArtifactStore copy( final ArtifactStore store )
+    {
+        return store == null ? null : store.copyOf();
+    }
+
+    void sync()
+    {
+        long now = System.currentTimeMillis();
+        syncLock.lock();
+        try
+        {
+            if ( now - lastSync > MAX_SYNC_GAP_MILLIS )
+            {
+                logger.info( "Store change log not checked for {}ms. Dropping all cached stores.", now - lastSync );
+                clear();
+                invalidationListener.accept( null );
+            }
+            else
+            {
+                Map<UUID, StoreKey> changes = storeQuery.getStoreChangesSince( lastSync - CHANGE_WINDOW_MILLIS );
+                changes.forEach( ( revision, key ) -> {
+                    if ( seenRevisions.putIfAbsent( revision, now ) == null )
+                    {
+                        logger.debug( "Store: {} changed on another node (revision: {})", key, revision );
+                        long age = now - UUIDs.unixTimestamp( revision );
+                        if ( Math.abs( age ) > CHANGE_WINDOW_MILLIS / 2 )
+                        {
+                            // a bit more and changes like this one would be missed
+                            logger.warn( "Store change: {} of: {} seen {}ms from its revision time. Check the clocks "
+                                                 + "of the nodes.", revision, key, age );
+                        }
+                        invalidate( key );
+                        invalidationListener.accept( key );
+                    }
+                } );
+            }
+
+            // later checks only look back CHANGE_WINDOW_MILLIS before this one, so older revisions won't show up again
+            seenRevisions.keySet().removeIf( rev -> now - UUIDs.unixTimestamp( rev ) > 2 * CHANGE_WINDOW_MILLIS );
+            lastSync = now;
+        }
+        catch ( RuntimeException e )
+        {
+            // keep lastSync where it is, so the next check covers these changes too (this also keeps the executor
+            // from cancelling the task)
+            logger.warn( "Failed to read store change log: {}", e.getMessage() );
+        }
+        finally
+        {
+            syncLock.unlock();
+        }
+    }
+
+    private static final class CachedStore
+    {
+        private final ArtifactStore store;
+
+        CachedStore( final ArtifactStore store )
+        {
+            this.store = store;
+        }
+    }
+}
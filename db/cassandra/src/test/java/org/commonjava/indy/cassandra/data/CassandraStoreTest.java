@@ -15,10 +15,12 @@
  */
 package org.commonjava.indy.cassandra.data;
 
+import com.datastax.driver.core.utils.UUIDs;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
 import org.commonjava.indy.conf.DefaultIndyConfiguration;
 import org.commonjava.indy.core.conf.IndyStoreManagerConfig;
+import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.pkg.PackageTypeConstants;
 import org.commonjava.indy.cassandra.testcat.CassandraTest;
@@ -30,7 +32,9 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -110,6 +114,23 @@ public class CassandraStoreTest
         assertThat(artifactStoreSet.size(), equalTo( 1 ));
     }
 
+    @Test
+    public void testStoreChangeLog()
+    {
+        long start = System.currentTimeMillis();
+        StoreKey key = new StoreKey( PackageTypeConstants.PKG_TYPE_MAVEN, StoreType.hosted, "build-001" );
+        UUID revision = UUIDs.timeBased();
+
+        storeQuery.logStoreChange( key, revision );
+
+        Map<UUID, StoreKey> changes = storeQuery.getStoreChangesSince( start - 1000 );
+        assertThat( changes.size(), equalTo( 1 ) );
+        assertThat( changes.get( revision ), equalTo( key ) );
+
+        assertThat( storeQuery.getStoreChangesSince( System.currentTimeMillis() + 1000 ).isEmpty(),
+                    equalTo( true ) );
+    }
+
     @Test
     public void testHashPrefix()
     {
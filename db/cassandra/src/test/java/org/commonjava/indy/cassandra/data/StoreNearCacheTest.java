@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.cassandra.data;
+
+import com.datastax.driver.core.utils.UUIDs;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class StoreNearCacheTest
+{
+    private static final String PKG = "maven";
+
+    private final Map<StoreKey, ArtifactStore> db = new ConcurrentHashMap<>();
+
+    private final Map<UUID, StoreKey> changeLog = new ConcurrentHashMap<>();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    // if set, single-store reads wait for it
+    private volatile CountDownLatch readGate;
+
+    private final CountDownLatch reading = new CountDownLatch( 1 );
+
+    private StoreNearCache cache;
+
+    @Before
+    public void setup()
+    {
+        CassandraStoreQuery query = new CassandraStoreQuery()
+        {
+            @Override
+            public void logStoreChange( final StoreKey key, final UUID revision )
+            {
+                changeLog.put( revision, key );
+            }
+
+            @Override
+            public Map<UUID, StoreKey> getStoreChangesSince( final long sinceMillis )
+            {
+                Map<UUID, StoreKey> changes = new HashMap<>();
+                changeLog.forEach( ( revision, key ) -> {
+                    if ( UUIDs.unixTimestamp( revision ) > sinceMillis )
+                    {
+                        changes.put( revision, key );
+                    }
+                } );
+                return changes;
+            }
+        };
+
+        // a long sync interval, so only the explicit sync() calls below check the change log
+        cache = new StoreNearCache( query, key -> {
+            loads.incrementAndGet();
+            CountDownLatch gate = readGate;
+            if ( gate != null )
+            {
+                reading.countDown();
+                try
+                {
+                    gate.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    throw new IllegalStateException( e );
+                }
+            }
+
+            ArtifactStore store = db.get( key );
+            return store == null ? null : store.copyOf();
+        }, () -> new HashSet<>( db.values() ), key -> {
+        }, 60000L );
+    }
+
+    @After
+    public void teardown()
+    {
+        cache.stop();
+    }
+
+    @Test
+    public void lookupsReturnCopiesOfTheCachedStore()
+    {
+        HostedRepository repo = new HostedRepository( PKG, "test" );
+        repo.setDescription( "original" );
+        db.put( repo.getKey(), repo );
+
+        ArtifactStore first = cache.get( repo.getKey() );
+        first.setDescription( "changed by caller" );
+
+        ArtifactStore second = cache.get( repo.getKey() );
+        assertThat( second, not( sameInstance( first ) ) );
+        assertThat( second.getDescription(), equalTo( "original" ) );
+        assertThat( loads.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void storedInstanceIsNotKept()
+    {
+        // load the (empty) snapshot first, so the store is patched into it
+        assertThat( cache.getAll().isEmpty(), equalTo( true ) );
+
+        HostedRepository repo = new HostedRepository( PKG, "test" );
+        repo.setDescription( "stored" );
+        cache.stored( repo.getKey(), repo );
+
+        repo.setDescription( "changed after store" );
+
+        ArtifactStore cached = cache.get( repo.getKey() );
+        assertThat( cached, not( sameInstance( repo ) ) );
+        assertThat( cached.getDescription(), equalTo( "stored" ) );
+        assertThat( cache.getAll().get( repo.getKey() ).getDescription(), equalTo( "stored" ) );
+    }
+
+    @Test
+    public void changeFromAnotherNodeIsPickedUpBySync()
+    {
+        HostedRepository repo = new HostedRepository( PKG, "test" );
+        repo.setDescription( "original" );
+        db.put( repo.getKey(), repo );
+        assertThat( cache.get( repo.getKey() ).getDescription(), equalTo( "original" ) );
+
+        HostedRepository changed = repo.copyOf();
+        changed.setDescription( "changed elsewhere" );
+        db.put( repo.getKey(), changed );
+        changeLog.put( UUIDs.timeBased(), repo.getKey() );
+
+        // not seen until the background check runs
+        assertThat( cache.get( repo.getKey() ).getDescription(), equalTo( "original" ) );
+
+        cache.sync();
+        assertThat( cache.get( repo.getKey() ).getDescription(), equalTo( "changed elsewhere" ) );
+    }
+
+    @Test
+    public void changeLoggedByNodeWithSlowerClockIsPickedUpBySync()
+    {
+        HostedRepository repo = new HostedRepository( PKG, "test" );
+        repo.setDescription( "original" );
+        db.put( repo.getKey(), repo );
+        assertThat( cache.get( repo.getKey() ).getDescription(), equalTo( "original" ) );
+
+        HostedRepository changed = repo.copyOf();
+        changed.setDescription( "changed elsewhere" );
+        db.put( repo.getKey(), changed );
+        // logged by a node whose clock is 90s behind ours
+        changeLog.put( UUIDs.startOf( System.currentTimeMillis() - 90000 ), repo.getKey() );
+
+        cache.sync();
+        assertThat( cache.get( repo.getKey() ).getDescription(), equalTo( "changed elsewhere" ) );
+    }
+
+    @Test( timeout = 10000 )
+    public void writesDontWaitForSnapshotRefresh()
+            throws Exception
+    {
+        HostedRepository repo = new HostedRepository( PKG, "test" );
+        repo.setDescription( "original" );
+        db.put( repo.getKey(), repo );
+        assertThat( cache.getAll().get( repo.getKey() ).getDescription(), equalTo( "original" ) );
+
+        // changed on another node, so the next full scan re-reads it
+        HostedRepository changed = repo.copyOf();
+        changed.setDescription( "changed elsewhere" );
+        db.put( repo.getKey(), changed );
+        changeLog.put( UUIDs.timeBased(), repo.getKey() );
+        cache.sync();
+
+        CountDownLatch gate = new CountDownLatch( 1 );
+        readGate = gate;
+        Map<StoreKey, ArtifactStore> refreshed = new ConcurrentHashMap<>();
+        Thread refresher = new Thread( () -> refreshed.putAll( cache.getAll() ) );
+        refresher.start();
+        reading.await();
+
+        // the refresh is stuck reading the database; writes go through anyway
+        HostedRepository local = repo.copyOf();
+        local.setDescription( "stored here" );
+        cache.stored( local.getKey(), local );
+
+        HostedRepository other = new HostedRepository( PKG, "other" );
+        cache.stored( other.getKey(), other );
+
+        readGate = null;
+        gate.countDown();
+        refresher.join();
+
+        // the value read while the store was written here is older, so it's not patched in
+        assertThat( refreshed.get( repo.getKey() ).getDescription(), equalTo( "stored here" ) );
+        assertThat( cache.getAll().get( repo.getKey() ).getDescription(), equalTo( "stored here" ) );
+        assertThat( cache.getAll().containsKey( other.getKey() ), equalTo( true ) );
+    }
+
+    @Test
+    public void missesAreCached()
+    {
+        StoreKey key = new StoreKey( PKG, StoreType.hosted, "missing" );
+        assertThat( cache.get( key ), nullValue() );
+        assertThat( cache.get( key ), nullValue() );
+        assertThat( loads.get(), equalTo( 1 ) );
+        assertThat( cache.getAll(), equalTo( Collections.emptyMap() ) );
+    }
+}
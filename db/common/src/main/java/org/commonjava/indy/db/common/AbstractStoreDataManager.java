@@ -44,13 +44,11 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedList;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
@@ -77,6 +75,9 @@ public abstract class AbstractStoreDataManager
 
     protected final Locker<StoreKey> opLocks = new Locker<>(); // used internally
 
+    protected final GroupMembershipCache groupMembershipCache =
+            new GroupMembershipCache( getGroupMembershipExpirationMillis() );
+
     abstract protected StoreEventDispatcher getStoreEventDispatcher();
 
     @Inject
@@ -108,11 +109,22 @@ public abstract class AbstractStoreDataManager
     @Override
     public ArtifactStoreQuery<ArtifactStore> query()
     {
-        return new DefaultArtifactStoreQuery<>( this );
+        return new DefaultArtifactStoreQuery<>( this, groupMembershipCache );
     }
 
     protected abstract ArtifactStore getArtifactStoreInternal( final StoreKey key );
 
+    /**
+     * Maximum age of flattened group memberships held in {@link #groupMembershipCache}. Zero (the default) means they
+     * are only recalculated when a member store is stored or deleted through this data manager.
+     * <p>
+     * NOTE: This is called during construction, so it must not depend on instance state.
+     */
+    protected long getGroupMembershipExpirationMillis()
+    {
+        return 0;
+    }
+
     @Override
     @Measure
     public ArtifactStore getArtifactStore( final StoreKey key )
@@ -285,6 +297,11 @@ public abstract class AbstractStoreDataManager
         }
     }
 
+    /**
+     * Return the keys of the groups that directly contain the given store, according to the affected-by reverse mapping.
+     */
+    protected abstract Set<StoreKey> getAffectedBy( StoreKey key );
+
     protected abstract void removeAffectedBy( StoreKey key, StoreKey affected );
 
     protected abstract void addAffectedBy( StoreKey key, StoreKey affected );
@@ -320,6 +337,7 @@ public abstract class AbstractStoreDataManager
                 preDelete( store, summary, true, eventMetadata );
 
                 ArtifactStore removed = removeArtifactStoreInternal( k );
+                groupMembershipCache.invalidate( k );
                 logger.info( "REMOVED store: {}", removed );
 
                 postDelete( store, summary, true, eventMetadata );
@@ -497,6 +515,7 @@ public abstract class AbstractStoreDataManager
 
         logger.debug( "Put {} to stores map", k );
         final ArtifactStore old = putArtifactStoreInternal( store.getKey(), store );
+        groupMembershipCache.invalidate( store.getKey() );
 
         try
         {
@@ -510,6 +529,7 @@ public abstract class AbstractStoreDataManager
             {
                 logger.error( "postStore() failed for {}. Rollback to old value: {}", store, old );
                 putArtifactStoreInternal( old.getKey(), old );
+                groupMembershipCache.invalidate( old.getKey() );
             }
             error.set( e );
             return false;
@@ -566,78 +586,77 @@ public abstract class AbstractStoreDataManager
         return groups;
     }
 
+    /**
+     * Calculate the upward closure of groups containing the given keys, by walking the affected-by reverse mapping
+     * maintained in {@link #refreshAffectedBy(ArtifactStore, ArtifactStore, StoreUpdateAction)}. Disabled groups are
+     * neither included nor traversed.
+     */
+    @Override
+    @Measure
     public Set<Group> affectedBy( final Collection<StoreKey> keys )
             throws IndyDataException
     {
-        return affectedByFromStores( keys );
-    }
-
-    @Override
-    public void asyncGroupAffectedBy( ContextualTask contextualTask )
-    {
-        if ( StringUtils.isNotBlank( contextualTask.getTaskContext() ) )
-        {
-            MDC.put( "group-affected-runner-context", contextualTask.getTaskContext() );
-        }
-        affectedByAsyncRunner.execute( () -> {
-            Thread.currentThread()
-                  .setName( String.format( "%s::%s", AFFECTED_BY_ASYNC_RUNNER_NAME, contextualTask.getThreadName() ) );
-            contextualTask.getTask().run();
-        } );
-    }
+        logger.debug( "Calculate affectedBy for keys: {}", keys );
 
-    protected Set<Group> affectedByFromStores( final Collection<StoreKey> keys )
-    {
-        Logger logger = LoggerFactory.getLogger( getClass() );
-        logger.debug( "Getting groups affected by: {}", keys );
+        final Set<Group> result = new HashSet<>();
 
-        List<StoreKey> toProcess = new ArrayList<>( new HashSet<>( keys ) );
-
-        Set<Group> groups = new HashSet<>();
-        if ( toProcess.isEmpty() )
-        {
-            return groups;
-        }
-
-        Set<StoreKey> processed = new HashSet<>();
-        final String packageType = toProcess.get( 0 ).getPackageType();
-
-        Set<ArtifactStore> all = this.getStoreKeysByPkgAndType( packageType, group )
-                                     .stream()
-                                     .map( this::getArtifactStoreInternal )
-                                     .filter( Objects::nonNull )
-                                     .collect( Collectors.toSet() );
+        // use these to avoid recursion
+        final Set<StoreKey> processed = new HashSet<>();
+        final LinkedList<StoreKey> toProcess = new LinkedList<>( keys );
+        final Set<StoreKey> queued = new HashSet<>( keys );
 
         while ( !toProcess.isEmpty() )
         {
-            // as long as we have another key to process, pop it off the list (remove it) and process it.
-            StoreKey next = toProcess.remove( 0 );
-            if ( processed.contains( next ) )
+            StoreKey key = toProcess.removeFirst();
+            if ( key == null || !processed.add( key ) )
             {
-                // if we've already handled this group (via another branch in the group membership tree, etc. then don't bother.
                 continue;
             }
 
-            // use this to avoid reprocessing groups we've already encountered.
-            processed.add( next );
-
-            for ( ArtifactStore store : all )
+            for ( StoreKey gKey : getAffectedBy( key ) )
             {
-                if ( ( store instanceof Group ) && !processed.contains( store.getKey() )  )
+                // avoid loading the ArtifactStore instance again and again
+                if ( gKey.getType() != group || processed.contains( gKey ) || !queued.add( gKey ) )
                 {
-                    Group g = (Group) store;
-                    if ( g.getConstituents() != null && g.getConstituents().contains( next ) )
-                    {
-                        groups.add( g );
+                    continue;
+                }
 
-                        // add this group as another one to process for groups that contain it...and recurse upwards
-                        toProcess.add( g.getKey() );
-                    }
+                ArtifactStore store = getArtifactStoreInternal( gKey );
+
+                // if this group is gone or disabled, we don't want to keep loading it again and again.
+                if ( store == null || store.isDisabled() )
+                {
+                    processed.add( gKey );
+                }
+                else
+                {
+                    // add the group to the toProcess list so we can find any result that might include it in their own membership
+                    toProcess.addLast( gKey );
+                    result.add( (Group) store );
                 }
             }
         }
 
-        return filterAffectedGroups( groups );
+        if ( logger.isTraceEnabled() )
+        {
+            logger.trace( "Groups affected by {} are: {}", keys,
+                          result.stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() ) );
+        }
+        return filterAffectedGroups( result );
+    }
+
+    @Override
+    public void asyncGroupAffectedBy( ContextualTask contextualTask )
+    {
+        if ( StringUtils.isNotBlank( contextualTask.getTaskContext() ) )
+        {
+            MDC.put( "group-affected-runner-context", contextualTask.getTaskContext() );
+        }
+        affectedByAsyncRunner.execute( () -> {
+            Thread.currentThread()
+                  .setName( String.format( "%s::%s", AFFECTED_BY_ASYNC_RUNNER_NAME, contextualTask.getThreadName() ) );
+            contextualTask.getTask().run();
+        } );
     }
 
     /**
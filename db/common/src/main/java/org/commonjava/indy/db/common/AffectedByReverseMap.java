@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory affected-by reverse mapping (member {@link StoreKey} to the keys of the groups that directly contain it),
+ * for data managers that don't have a persistent store of their own for it. It is maintained by
+ * {@link AbstractStoreDataManager#refreshAffectedBy}, so it is rebuilt as stores are loaded on startup.
+ */
+public class AffectedByReverseMap
+{
+    private final Map<StoreKey, Set<StoreKey>> affectedBy = new ConcurrentHashMap<>();
+
+    public void add( final StoreKey key, final StoreKey affected )
+    {
+        affectedBy.computeIfAbsent( key, k -> ConcurrentHashMap.newKeySet() ).add( affected );
+    }
+
+    public void remove( final StoreKey key, final StoreKey affected )
+    {
+        affectedBy.computeIfPresent( key, ( k, groups ) -> {
+            groups.remove( affected );
+            return groups.isEmpty() ? null : groups;
+        } );
+    }
+
+    public void removeAll( final StoreKey key )
+    {
+        affectedBy.remove( key );
+    }
+
+    public Set<StoreKey> get( final StoreKey key )
+    {
+        Set<StoreKey> groups = affectedBy.get( key );
+        return groups == null ? Collections.emptySet() : new HashSet<>( groups );
+    }
+
+    public void clear()
+    {
+        affectedBy.clear();
+    }
+}
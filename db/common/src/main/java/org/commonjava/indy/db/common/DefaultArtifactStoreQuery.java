@@ -77,12 +77,20 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
     private Boolean enabled;
 
+    private GroupMembershipCache membershipCache;
+
     public DefaultArtifactStoreQuery( StoreDataManager dataManager )
     {
         logger.info( "CREATE new default store query with data manager only" );
         this.dataManager = dataManager;
     }
 
+    public DefaultArtifactStoreQuery( StoreDataManager dataManager, GroupMembershipCache membershipCache )
+    {
+        this( dataManager );
+        this.membershipCache = membershipCache;
+    }
+
     private DefaultArtifactStoreQuery( final StoreDataManager dataManager, final String packageType,
                                        final Boolean enabled, final Class<T> storeCls )
     {
@@ -391,7 +399,26 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         logger.trace( "START: default store-query ordered-concrete-stores-in-group" );
         try
         {
-            return getGroupOrdering( packageType, groupName, enabled, false, true );
+            if ( membershipCache == null || packageType == null )
+            {
+                return getGroupOrdering( packageType, groupName, enabled, false, true, null );
+            }
+
+            final StoreKey groupKey = new StoreKey( packageType, group, groupName );
+            final boolean enabledOnly = Boolean.TRUE.equals( this.enabled );
+
+            List<ArtifactStore> cached = membershipCache.get( groupKey, enabledOnly );
+            if ( cached != null )
+            {
+                return cached;
+            }
+
+            final long generation = membershipCache.getGeneration();
+            final Set<StoreKey> visited = new HashSet<>();
+            List<ArtifactStore> result = getGroupOrdering( packageType, groupName, enabled, false, true, visited );
+
+            membershipCache.put( groupKey, enabledOnly, result, visited, generation );
+            return result;
         }
         finally
         {
@@ -412,7 +439,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     public List<ArtifactStore> getOrderedStoresInGroup( final String packageType, final String groupName, final Boolean enabled )
             throws IndyDataException
     {
-        return getGroupOrdering( packageType, groupName, enabled, true, false );
+        return getGroupOrdering( packageType, groupName, enabled, true, false, null );
     }
 
     @Override
@@ -533,8 +560,13 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                           .collect( Collectors.toList() );
     }
 
+    /**
+     * @param visited if not null, collects the key of every store looked up while walking the membership tree, so the
+     *                result can be invalidated when any of them changes.
+     */
     private List<ArtifactStore> getGroupOrdering( final String packageType, final String groupName, final Boolean enabled,
-                                                  final boolean includeGroups, final boolean recurseGroups )
+                                                  final boolean includeGroups, final boolean recurseGroups,
+                                                  final Set<StoreKey> visited )
             throws IndyDataException
     {
         if ( packageType == null )
@@ -542,7 +574,13 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             throw new IndyDataException( "packageType must be set on the query before calling this method!" );
         }
 
-        final Group master = (Group) dataManager.getArtifactStore( new StoreKey( packageType, group, groupName ) );
+        final StoreKey masterKey = new StoreKey( packageType, group, groupName );
+        if ( visited != null )
+        {
+            visited.add( masterKey );
+        }
+
+        final Group master = (Group) dataManager.getArtifactStore( masterKey );
         if ( master == null )
         {
             return emptyList();
@@ -575,6 +613,10 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                                  if ( !seen.contains( key ) )
                                  {
                                      seen.add( key );
+                                     if ( visited != null )
+                                     {
+                                         visited.add( key );
+                                     }
                                      final StoreType type = key.getType();
                                      try
                                      {
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Materialized view of flattened group membership, as calculated by
+ * {@link DefaultArtifactStoreQuery#getOrderedConcreteStoresInGroup(String, String)}. Each entry holds an immutable,
+ * ordered array of the concrete members of a group, along with the keys of every store (groups included) that was
+ * visited while flattening it.
+ * <p>
+ * Entries are dropped whenever any store visited during the flattening is stored or deleted (which also covers
+ * enabling / disabling a store), so the next query for that group walks the membership tree again. This happens in
+ * {@link AbstractStoreDataManager}, so all data manager implementations share the same behavior.
+ * <p>
+ * To avoid caching a membership that was calculated concurrently with an invalidation, callers must capture
+ * {@link #getGeneration()} before walking the tree and pass it to
+ * {@link #put(StoreKey, boolean, List, Set, long)}. The result is discarded if any invalidation happened in between.
+ * <p>
+ * Data managers whose stores can be modified by other nodes (where local store / delete calls don't see every change)
+ * should set an expiration, so entries are eventually recalculated.
+ */
+public class GroupMembershipCache
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<FlattenedKey, FlattenedMembers> flattened = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<FlattenedKey>> dependents = new ConcurrentHashMap<>();
+
+    private final long expirationMillis;
+
+    private volatile long generation;
+
+    public GroupMembershipCache()
+    {
+        this( 0 );
+    }
+
+    /**
+     * @param expirationMillis maximum age of a cached membership; entries never expire if this is zero or less.
+     */
+    public GroupMembershipCache( final long expirationMillis )
+    {
+        this.expirationMillis = expirationMillis;
+    }
+
+    /**
+     * Return a (mutable) copy of the cached, ordered concrete membership for the given group, or null if it is not
+     * cached.
+     */
+    public List<ArtifactStore> get( final StoreKey groupKey, final boolean enabledOnly )
+    {
+        FlattenedKey key = new FlattenedKey( groupKey, enabledOnly );
+        FlattenedMembers members = flattened.get( key );
+        if ( members == null )
+        {
+            return null;
+        }
+
+        if ( expirationMillis > 0 && System.currentTimeMillis() - members.created > expirationMillis )
+        {
+            flattened.remove( key, members );
+            return null;
+        }
+
+        logger.trace( "Flattened membership cache hit for: {} (enabled only? {})", groupKey, enabledOnly );
+        return new ArrayList<>( Arrays.asList( members.stores ) );
+    }
+
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Cache the ordered concrete membership of a group.
+     *
+     * @param visited every store key (group or concrete) that was looked up while flattening the group.
+     * @param expectedGeneration the value of {@link #getGeneration()} before the flattening started.
+     */
+    public synchronized void put( final StoreKey groupKey, final boolean enabledOnly,
+                                  final List<ArtifactStore> members, final Set<StoreKey> visited,
+                                  final long expectedGeneration )
+    {
+        if ( expectedGeneration != generation )
+        {
+            logger.debug( "Membership of: {} changed while flattening. Not caching.", groupKey );
+            return;
+        }
+
+        FlattenedKey key = new FlattenedKey( groupKey, enabledOnly );
+        flattened.put( key, new FlattenedMembers( members.toArray( new ArtifactStore[0] ) ) );
+
+        dependents.computeIfAbsent( groupKey, k -> new HashSet<>() ).add( key );
+        visited.forEach( v -> dependents.computeIfAbsent( v, k -> new HashSet<>() ).add( key ) );
+    }
+
+    /**
+     * Drop every flattened membership that includes the given store, either directly or via a nested group.
+     */
+    public synchronized void invalidate( final StoreKey storeKey )
+    {
+        generation++;
+
+        Set<FlattenedKey> affected = dependents.remove( storeKey );
+        if ( affected == null )
+        {
+            return;
+        }
+
+        affected.forEach( flattened::remove );
+        logger.debug( "Invalidated {} flattened group memberships affected by: {}", affected.size(), storeKey );
+    }
+
+    public synchronized void clear()
+    {
+        generation++;
+        flattened.clear();
+        dependents.clear();
+    }
+
+    private static final class FlattenedMembers
+    {
+        private final ArtifactStore[] stores;
+
+        private final long created = System.currentTimeMillis();
+
+        FlattenedMembers( final ArtifactStore[] stores )
+        {
+            this.stores = stores;
+        }
+    }
+
+    private static final class FlattenedKey
+    {
+        private final StoreKey groupKey;
+
+        private final boolean enabledOnly;
+
+        FlattenedKey( final StoreKey groupKey, final boolean enabledOnly )
+        {
+            this.groupKey = groupKey;
+            this.enabledOnly = enabledOnly;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            FlattenedKey that = (FlattenedKey) o;
+            return enabledOnly == that.enabledOnly && Objects.equals( groupKey, that.groupKey );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( groupKey, enabledOnly );
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class AffectedByReverseMapTest
+{
+    private final StoreKey remote = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" );
+
+    private final StoreKey groupA = new StoreKey( MAVEN_PKG_KEY, StoreType.group, "a" );
+
+    private final StoreKey groupB = new StoreKey( MAVEN_PKG_KEY, StoreType.group, "b" );
+
+    private final AffectedByReverseMap map = new AffectedByReverseMap();
+
+    @Test
+    public void addAndRemoveGroups()
+    {
+        map.add( remote, groupA );
+        map.add( remote, groupB );
+        map.add( remote, groupA );
+
+        assertThat( map.get( remote ), equalTo( new HashSet<>( asList( groupA, groupB ) ) ) );
+
+        map.remove( remote, groupA );
+        assertThat( map.get( remote ), equalTo( Collections.singleton( groupB ) ) );
+
+        map.remove( remote, groupB );
+        assertThat( map.get( remote ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void removeAllAndClear()
+    {
+        map.add( remote, groupA );
+        map.add( groupA, groupB );
+
+        map.removeAll( remote );
+        assertThat( map.get( remote ).isEmpty(), equalTo( true ) );
+        assertThat( map.get( groupA ), equalTo( Collections.singleton( groupB ) ) );
+
+        map.clear();
+        assertThat( map.get( groupA ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void returnedSetIsASnapshot()
+    {
+        map.add( remote, groupA );
+        Set<StoreKey> groups = map.get( remote );
+
+        map.add( remote, groupB );
+        groups.add( new StoreKey( MAVEN_PKG_KEY, StoreType.group, "c" ) );
+
+        assertThat( groups.contains( groupB ), equalTo( false ) );
+        assertThat( map.get( remote ), equalTo( new HashSet<>( asList( groupA, groupB ) ) ) );
+    }
+}
@@ -17,6 +17,7 @@ package org.commonjava.indy.infinispan.data;
 
 import org.commonjava.indy.audit.ChangeSummary;
 import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.NoOpStoreEventDispatcher;
 import org.commonjava.indy.data.StandaloneStoreDataManager;
 import org.commonjava.indy.data.StoreEventDispatcher;
@@ -37,7 +38,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -125,6 +125,7 @@ public class InfinispanStoreDataManager
         storesByPkg.clear();
         affectedByStores.clear();
         storesByPkg.clear();
+        groupMembershipCache.clear();
     }
 
     @Override
@@ -219,61 +220,10 @@ public class InfinispanStoreDataManager
 
     @Override
     public Set<Group> affectedBy( final Collection<StoreKey> keys )
+            throws IndyDataException
     {
-        logger.debug( "Calculate affectedBy for keys: {}", keys );
         checkAffectedByCacheHealth();
-
-        final Set<Group> result = new HashSet<>();
-
-        // use these to avoid recursion
-        final Set<StoreKey> processed = new HashSet<>();
-        final LinkedList<StoreKey> toProcess = new LinkedList<>( keys );
-
-        while ( !toProcess.isEmpty() )
-        {
-            StoreKey key = toProcess.removeFirst();
-            if ( key == null )
-            {
-                continue;
-            }
-
-            if ( processed.add( key ) )
-            {
-                Set<StoreKey> affected = affectedByStores.get( key );
-                if ( affected != null )
-                {
-                    logger.debug( "Get affectedByStores, key: {}, affected: {}", key, affected );
-                    affected = affected.stream().filter( k -> k.getType() == group ).collect( Collectors.toSet() );
-                    for ( StoreKey gKey : affected )
-                    {
-                        // avoid loading the ArtifactStore instance again and again
-                        if ( !processed.contains( gKey ) && !toProcess.contains( gKey ) )
-                        {
-                            ArtifactStore store = getArtifactStoreInternal( gKey );
-
-                            // if this group is disabled, we don't want to keep loading it again and again.
-                            if ( store.isDisabled() )
-                            {
-                                processed.add( gKey );
-                            }
-                            else
-                            {
-                                // add the group to the toProcess list so we can find any result that might include it in their own membership
-                                toProcess.addLast( gKey );
-                                result.add( (Group) store );
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        if ( logger.isTraceEnabled() )
-        {
-            logger.trace( "Groups affected by {} are: {}", keys,
-                          result.stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() ) );
-        }
-        return filterAffectedGroups( result );
+        return super.affectedBy( keys );
     }
 
     @Override
@@ -286,6 +236,14 @@ public class InfinispanStoreDataManager
                      .collect( Collectors.toSet() );
     }
 
+    @Override
+    protected Set<StoreKey> getAffectedBy( StoreKey key )
+    {
+        Set<StoreKey> affected = affectedByStores.get( key );
+        logger.debug( "Get affectedByStores, key: {}, affected: {}", key, affected );
+        return affected == null ? Collections.emptySet() : affected;
+    }
+
     @Override
     protected void removeAffectedStore( StoreKey key )
     {
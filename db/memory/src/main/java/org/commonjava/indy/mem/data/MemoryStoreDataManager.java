@@ -21,6 +21,7 @@ import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.NoOpStoreEventDispatcher;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.db.common.AbstractStoreDataManager;
+import org.commonjava.indy.db.common.AffectedByReverseMap;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
@@ -48,6 +49,8 @@ public class MemoryStoreDataManager
 
     private final Map<StoreKey, ArtifactStore> stores = new ConcurrentHashMap<>();
 
+    private final AffectedByReverseMap affectedByStores = new AffectedByReverseMap();
+
     @Inject
     private StoreEventDispatcher dispatcher;
 
@@ -84,21 +87,27 @@ public class MemoryStoreDataManager
     }
 
     @Override
-    protected void removeAffectedBy( StoreKey key, StoreKey affected )
+    protected Set<StoreKey> getAffectedBy( StoreKey key )
     {
+        return affectedByStores.get( key );
+    }
 
+    @Override
+    protected void removeAffectedBy( StoreKey key, StoreKey affected )
+    {
+        affectedByStores.remove( key, affected );
     }
 
     @Override
     protected void addAffectedBy( StoreKey key, StoreKey affected )
     {
-
+        affectedByStores.add( key, affected );
     }
 
     @Override
     protected void removeAffectedStore( StoreKey key )
     {
-
+        affectedByStores.removeAll( key );
     }
 
     @Override
@@ -118,6 +127,8 @@ public class MemoryStoreDataManager
             throws IndyDataException
     {
         stores.clear();
+        affectedByStores.clear();
+        groupMembershipCache.clear();
     }
 
     @Override
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.mem.data;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks {@link MemoryStoreDataManager#affectedBy(java.util.Collection)} as group membership changes, which is served
+ * from the affected-by reverse mapping.
+ */
+public class MemoryAffectedByTest
+{
+    private final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" );
+
+    private MemoryStoreDataManager dataManager;
+
+    private RemoteRepository central;
+
+    @Before
+    public void setup()
+            throws IndyDataException
+    {
+        dataManager = new MemoryStoreDataManager( true );
+        central = new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2" );
+        store( central );
+    }
+
+    @Test
+    public void nestedGroupsAreAffected()
+            throws IndyDataException
+    {
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", central.getKey() );
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", inner.getKey() );
+        Group other = new Group( MAVEN_PKG_KEY, "other" );
+        store( inner );
+        store( outer );
+        store( other );
+
+        assertThat( affectedBy( central.getKey() ), equalTo( keys( inner, outer ) ) );
+        assertThat( affectedBy( inner.getKey() ), equalTo( keys( outer ) ) );
+    }
+
+    @Test
+    public void membershipChangesUpdateReverseMapping()
+            throws IndyDataException
+    {
+        Group group = new Group( MAVEN_PKG_KEY, "public", central.getKey() );
+        store( group );
+        assertThat( affectedBy( central.getKey() ), equalTo( keys( group ) ) );
+
+        Group updated = group.copyOf();
+        updated.removeConstituent( central.getKey() );
+        store( updated );
+        assertThat( affectedBy( central.getKey() ).isEmpty(), equalTo( true ) );
+
+        Group readded = updated.copyOf();
+        readded.addConstituent( central.getKey() );
+        store( readded );
+        assertThat( affectedBy( central.getKey() ), equalTo( keys( group ) ) );
+
+        dataManager.deleteArtifactStore( group.getKey(), summary, new EventMetadata() );
+        assertThat( affectedBy( central.getKey() ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void disabledGroupsAreNotTraversed()
+            throws IndyDataException
+    {
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", central.getKey() );
+        inner.setDisabled( true );
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", inner.getKey() );
+        store( inner );
+        store( outer );
+
+        assertThat( affectedBy( central.getKey() ).isEmpty(), equalTo( true ) );
+    }
+
+    private void store( final ArtifactStore store )
+            throws IndyDataException
+    {
+        dataManager.storeArtifactStore( store, summary, false, false, new EventMetadata() );
+    }
+
+    private Set<StoreKey> affectedBy( final StoreKey key )
+            throws IndyDataException
+    {
+        return dataManager.affectedBy( Collections.singleton( key ) )
+                          .stream()
+                          .map( ArtifactStore::getKey )
+                          .collect( Collectors.toSet() );
+    }
+
+    private static Set<StoreKey> keys( final ArtifactStore... stores )
+    {
+        return Arrays.stream( stores ).map( ArtifactStore::getKey ).collect( Collectors.toSet() );
+    }
+}
@@ -15,7 +15,6 @@
  */
 package org.commonjava.indy.filer.def;
 
-import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.io.output.CountingOutputStream;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.AbstractTransferDecorator;
@@ -52,7 +51,7 @@ public class IOLatencyDecorator
     public InputStream decorateRead( final InputStream stream, final Transfer transfer, final EventMetadata metadata )
             throws IOException
     {
-        return new TimingInputStream( new CountingInputStream( stream ), timerProvider, meterProvider, cumulativeTimer );
+        return new TimingInputStream( stream, timerProvider, meterProvider, cumulativeTimer );
     }
 
     @Override
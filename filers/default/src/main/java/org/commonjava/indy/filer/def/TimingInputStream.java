@@ -16,12 +16,14 @@
 package org.commonjava.indy.filer.def;
 
 import org.apache.commons.io.input.CountingInputStream;
+import org.commonjava.indy.util.ObservingInputStream;
 import org.commonjava.indy.util.RequestContextHelper;
 import org.commonjava.maven.galley.spi.metrics.TimingProvider;
 import org.commonjava.maven.galley.util.IdempotentCloseInputStream;
 import org.commonjava.o11yphant.metrics.api.Meter;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
@@ -30,14 +32,19 @@ import static org.commonjava.indy.IndyContentConstants.NANOS_PER_SEC;
 
 public class TimingInputStream
         extends IdempotentCloseInputStream
+        implements ObservingInputStream
 {
     private static final String RAW_IO_READ = "io.raw.read";
     private static final String RAW_IO_READ_TIMER = RAW_IO_READ + ".timer";
 
     private static final String RAW_IO_READ_RATE = RAW_IO_READ + ".rate";
 
+    private final InputStream observed;
+
     private Long nanos;
 
+    private long transferred;
+
     private Function<String, TimingProvider> timerProvider;
 
     private final Function<String, Meter> meterProvider;
@@ -48,11 +55,12 @@ public class TimingInputStream
 
     private Meter meter;
 
-    public TimingInputStream( final CountingInputStream stream, final Function<String, TimingProvider> timerProvider,
+    public TimingInputStream( final InputStream stream, final Function<String, TimingProvider> timerProvider,
                               final Function<String, Meter> meterProvider,
                               final BiConsumer<String, Double> cumulativeTimer )
     {
-        super( stream );
+        super( new CountingInputStream( stream ) );
+        this.observed = stream;
         this.timerProvider = timerProvider == null ? ( s ) -> null : timerProvider;
         this.meterProvider = meterProvider;
         this.cumulativeTimer = cumulativeTimer;
@@ -100,13 +108,32 @@ public class TimingInputStream
 
             if ( meter != null )
             {
-                meter.mark( (long) ( ( (CountingInputStream) this.in ).getByteCount() / ( elapsed / NANOS_PER_SEC ) ) );
+                long bytes = ( (CountingInputStream) this.in ).getByteCount() + transferred;
+                meter.mark( (long) ( bytes / ( elapsed / NANOS_PER_SEC ) ) );
             }
 
             cumulativeTimer.accept( RAW_IO_READ, elapsed / NANOS_PER_MILLISECOND );
         }
     }
 
+    @Override
+    public InputStream getObservedStream()
+    {
+        return observed;
+    }
+
+    @Override
+    public void transferStarted()
+    {
+        initMetrics();
+    }
+
+    @Override
+    public void transferred( final long bytes )
+    {
+        transferred += bytes;
+    }
+
     private void initMetrics()
     {
         if ( nanos == null )
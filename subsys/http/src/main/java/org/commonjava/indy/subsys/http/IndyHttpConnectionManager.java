@@ -16,12 +16,20 @@
 package org.commonjava.indy.subsys.http;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import javax.enterprise.context.ApplicationScoped;
 
 import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.commonjava.o11yphant.metrics.api.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,35 +42,113 @@ public class IndyHttpConnectionManager
 
     private final boolean closeConnectionsOnRelease;
 
+    private final Supplier<Timer.Context> leaseTimer;
+
+    private final Map<HttpClientConnection, Timer.Context> leases = new ConcurrentHashMap<>();
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
     protected IndyHttpConnectionManager()
     {
         closeConnectionsOnRelease = true;
+        leaseTimer = null;
     }
 
     public IndyHttpConnectionManager( final boolean closeConnectionsOnRelease )
     {
         this.closeConnectionsOnRelease = closeConnectionsOnRelease;
+        this.leaseTimer = null;
+    }
+
+    /**
+     * Keep-alive pool: released connections go back to the pool (for as long as the server's keep-alive allows, and
+     * never longer than the given time-to-live) instead of being closed.
+     *
+     * @param leaseTimer started when a connection is leased and stopped when it is released; may be null.
+     */
+    public IndyHttpConnectionManager( final long timeToLive, final TimeUnit unit,
+                                      final Supplier<Timer.Context> leaseTimer )
+    {
+        super( timeToLive, unit );
+        this.closeConnectionsOnRelease = false;
+        this.leaseTimer = leaseTimer;
     }
 
     @Override
-    public void releaseConnection( final HttpClientConnection conn, final Object state, final long keepalive,
-                                   final TimeUnit tunit )
+    public ConnectionRequest requestConnection( final HttpRoute route, final Object state )
     {
-        logger.info( "RELEASE: {}, keepalive: {}, tunit: {}", conn, keepalive, tunit );
+        lastUsed = System.currentTimeMillis();
+        final ConnectionRequest request = super.requestConnection( route, state );
+        if ( leaseTimer == null )
+        {
+            return request;
+        }
 
-        super.releaseConnection( conn, state, 0, TimeUnit.MILLISECONDS );
-        if ( closeConnectionsOnRelease )
+        return new ConnectionRequest()
         {
-            try
+            @Override
+            public HttpClientConnection get( final long timeout, final TimeUnit tunit )
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
             {
-                logger.info( "CLOSING: {}", conn );
-                conn.close();
+                HttpClientConnection conn = request.get( timeout, tunit );
+                Timer.Context timer = leaseTimer.get();
+                if ( timer != null )
+                {
+                    leases.put( conn, timer );
+                }
+                return conn;
             }
-            catch ( final IOException e )
+
+            @Override
+            public boolean cancel()
             {
-                logger.debug( "I/O error closing connection", e );
+                return request.cancel();
             }
+        };
+    }
+
+    @Override
+    public void releaseConnection( final HttpClientConnection conn, final Object state, final long keepalive,
+                                   final TimeUnit tunit )
+    {
+        logger.debug( "RELEASE: {}, keepalive: {}, tunit: {}", conn, keepalive, tunit );
+
+        lastUsed = System.currentTimeMillis();
+        Timer.Context timer = leases.remove( conn );
+        if ( timer != null )
+        {
+            timer.stop();
+        }
+
+        if ( !closeConnectionsOnRelease )
+        {
+            super.releaseConnection( conn, state, keepalive, tunit );
+            return;
+        }
+
+        super.releaseConnection( conn, state, 0, TimeUnit.MILLISECONDS );
+        try
+        {
+            logger.debug( "CLOSING: {}", conn );
+            conn.close();
         }
+        catch ( final IOException e )
+        {
+            logger.debug( "I/O error closing connection", e );
+        }
+    }
+
+    void touch()
+    {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Time of the last lease or release, in milliseconds since the epoch.
+     */
+    public long getLastUsed()
+    {
+        return lastUsed;
     }
 
 }
@@ -22,7 +22,6 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.commonjava.indy.subsys.http.util.IndySiteConfigLookup;
 import org.commonjava.maven.galley.spi.auth.PasswordManager;
 import org.commonjava.maven.galley.transport.htcli.Http;
-import org.commonjava.maven.galley.transport.htcli.HttpImpl;
 import org.commonjava.o11yphant.jhttpc.SpanningHttpFactory;
 import org.commonjava.o11yphant.trace.TraceManager;
 import org.commonjava.util.jhttpc.HttpFactory;
@@ -53,6 +52,9 @@ public class IndyHttpProvider
     @Inject
     private TraceManager traceManager;
 
+    @Inject
+    private RemoteConnectionPools connectionPools;
+
     private PasswordManager passwordManager;
 
     protected IndyHttpProvider()
@@ -70,7 +72,7 @@ public class IndyHttpProvider
     {
         passwordManager = new org.commonjava.maven.galley.auth.AttributePasswordManager();
         Optional<TraceManager> traceManagerOptional = traceManager == null ? Optional.empty() : Optional.of( traceManager );
-        http = new HttpImpl( passwordManager, traceManagerOptional );
+        http = new PooledHttpImpl( passwordManager, traceManagerOptional, connectionPools );
 
         httpFactory = new SpanningHttpFactory( new HttpFactory( new AttributePasswordManager( siteConfigLookup ) ), traceManagerOptional );
     }
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.http;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.commonjava.maven.galley.GalleyException;
+import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.transport.htcli.HttpImpl;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.o11yphant.trace.TraceManager;
+
+import java.util.Optional;
+
+/**
+ * {@link HttpImpl} that hands out clients over the keep-alive pool of the remote repository, when the remote can be
+ * pooled (see {@link RemoteConnectionPools#isPooled(HttpLocation)}). Everything else goes through {@link HttpImpl}.
+ */
+public class PooledHttpImpl
+        extends HttpImpl
+{
+    private final RemoteConnectionPools pools;
+
+    public PooledHttpImpl( final PasswordManager passwordManager, final Optional<TraceManager> traceManager,
+                           final RemoteConnectionPools pools )
+    {
+        super( passwordManager, traceManager );
+        this.pools = pools;
+    }
+
+    @Override
+    public CloseableHttpClient createClient( final HttpLocation location )
+            throws GalleyException
+    {
+        if ( pools != null && pools.isPooled( location ) )
+        {
+            return pools.createClient( location );
+        }
+
+        return super.createClient( location );
+    }
+}
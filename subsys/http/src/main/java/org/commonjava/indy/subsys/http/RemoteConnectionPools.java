@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.http;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.pool.PoolStats;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.subsys.http.conf.IndyConnectionPoolConfig;
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.maven.galley.auth.AttributePasswordManager;
+import org.commonjava.maven.galley.auth.PasswordEntry;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.spi.auth.PasswordManager;
+import org.commonjava.maven.galley.transport.htcli.model.HttpLocation;
+import org.commonjava.maven.galley.transport.htcli.model.LocationTrustType;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Keep-alive connection pools for remote repositories, one {@link IndyHttpConnectionManager} per remote repository.
+ * Downloads from the same remote reuse its pooled connections (and TLS sessions) instead of connecting again for
+ * every request.
+ * <p>
+ * Only remotes that use the default TLS setup, connect directly and don't log in are pooled (see
+ * {@link #isPooled(HttpLocation)}); client certificates, custom server certificates, proxies and credentials are still
+ * handled by the per-request clients.
+ * <p>
+ * A background thread evicts expired and idle connections, and shuts down the pools of remotes that haven't been used
+ * for a while. The pools report lease time per remote, and leased / available / pending / max connection and
+ * utilization gauges overall.
+ */
+@ApplicationScoped
+public class RemoteConnectionPools
+{
+    private static final String METRIC_NAME = "indy.http.pool";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConnectionPoolConfig config;
+
+    @Inject
+    private DefaultMetricsManager metricsManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    private final PasswordManager passwords = new AttributePasswordManager();
+
+    private final Map<String, IndyHttpConnectionManager> pools = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService evictor;
+
+    protected RemoteConnectionPools()
+    {
+    }
+
+    public RemoteConnectionPools( final IndyConnectionPoolConfig config )
+    {
+        this.config = config;
+        start();
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        if ( !config.isEnabled() )
+        {
+            logger.info( "Remote connection pooling is disabled" );
+            return;
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "http-pool-evictor" );
+            t.setDaemon( true );
+            return t;
+        } );
+
+        long period = config.getEvictionPeriodSeconds();
+        evictor.scheduleWithFixedDelay( this::evict, period, period, TimeUnit.SECONDS );
+
+        if ( metricsManager != null )
+        {
+            Map<String, Gauge<Integer>> gauges = new HashMap<>();
+            gauges.put( "sites", pools::size );
+            gauges.put( "leased", () -> total( PoolStats::getLeased ) );
+            gauges.put( "available", () -> total( PoolStats::getAvailable ) );
+            gauges.put( "pending", () -> total( PoolStats::getPending ) );
+            gauges.put( "max", () -> total( PoolStats::getMax ) );
+            gauges.put( "utilization", this::getUtilization );
+            metricsManager.addGauges( getClass(), "connections", gauges );
+        }
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( evictor != null )
+        {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+
+        pools.values().forEach( IndyHttpConnectionManager::shutdown );
+        pools.clear();
+    }
+
+    public boolean isEnabled()
+    {
+        return evictor != null;
+    }
+
+    /**
+     * True if downloads from this location can use a pooled client: plain connections with the default trust setup,
+     * and no user or password. The pooled clients don't set up credentials, so remotes that log in stay with the
+     * per-request clients.
+     */
+    public boolean isPooled( final HttpLocation location )
+    {
+        return isEnabled() && location != null && isBlank( location.getKeyCertPem() )
+                && isBlank( location.getServerCertPem() ) && isBlank( location.getProxyHost() )
+                && location.getTrustType() != LocationTrustType.SELF_SIGNED
+                && !location.isIgnoreHostnameVerification() && isBlank( location.getUser() )
+                && isBlank( passwords.getPassword( new PasswordEntry( location, PasswordEntry.USER_PASSWORD ) ) );
+    }
+
+    /**
+     * Create a client over the location's pool. Closing the client releases its connection back to the pool but
+     * leaves the pool itself open.
+     */
+    public CloseableHttpClient createClient( final HttpLocation location )
+    {
+        int timeoutMillis = (int) TimeUnit.SECONDS.toMillis(
+                positive( location.getAttribute( Location.CONNECTION_TIMEOUT_SECONDS, Integer.class ),
+                          config.getRequestTimeoutSeconds() ) );
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                                                   .setConnectTimeout( timeoutMillis )
+                                                   .setSocketTimeout( timeoutMillis )
+                                                   .setConnectionRequestTimeout( timeoutMillis )
+                                                   .build();
+
+        return HttpClients.custom()
+                          .setConnectionManager( getConnectionManager( location ) )
+                          .setConnectionManagerShared( true )
+                          .setDefaultRequestConfig( requestConfig )
+                          .build();
+    }
+
+    IndyHttpConnectionManager getConnectionManager( final HttpLocation location )
+    {
+        final String siteId = getSiteId( location );
+        final int maxPerRoute =
+                positive( location.getAttribute( Location.MAX_CONNECTIONS, Integer.class ), config.getMaxPerRoute() );
+
+        return pools.compute( siteId, ( k, pool ) -> {
+            if ( pool == null )
+            {
+                logger.debug( "Creating connection pool for: {} with max per route: {}", siteId, maxPerRoute );
+                pool = new IndyHttpConnectionManager( config.getTtlSeconds(), TimeUnit.SECONDS,
+                                                      () -> startLeaseTimer( siteId ) );
+                pool.setMaxTotal( Math.max( config.getMaxTotal(), maxPerRoute ) );
+                pool.setValidateAfterInactivity( config.getValidateAfterInactivityMillis() );
+            }
+
+            if ( pool.getDefaultMaxPerRoute() != maxPerRoute )
+            {
+                pool.setDefaultMaxPerRoute( maxPerRoute );
+                pool.setMaxTotal( Math.max( config.getMaxTotal(), maxPerRoute ) );
+            }
+
+            pool.touch();
+            return pool;
+        } );
+    }
+
+    /**
+     * Connections leased across all pools, as a percentage of their maximum.
+     */
+    public int getUtilization()
+    {
+        int max = total( PoolStats::getMax );
+        return max < 1 ? 0 : (int) ( 100L * total( PoolStats::getLeased ) / max );
+    }
+
+    void evict()
+    {
+        long now = System.currentTimeMillis();
+        long unusedTimeout = TimeUnit.SECONDS.toMillis( config.getUnusedPoolTimeoutSeconds() );
+
+        for ( String siteId : pools.keySet() )
+        {
+            pools.computeIfPresent( siteId, ( k, pool ) -> {
+                try
+                {
+                    pool.closeExpiredConnections();
+                    if ( config.getIdleTimeoutSeconds() > 0 )
+                    {
+                        pool.closeIdleConnections( config.getIdleTimeoutSeconds(), TimeUnit.SECONDS );
+                    }
+
+                    if ( unusedTimeout > 0 && now - pool.getLastUsed() > unusedTimeout
+                            && pool.getTotalStats().getLeased() == 0 )
+                    {
+                        logger.debug( "Shutting down unused connection pool for: {}", siteId );
+                        pool.shutdown();
+                        return null;
+                    }
+                }
+                catch ( RuntimeException e )
+                {
+                    logger.warn( "Failed to evict connections for: {}. Reason: {}", siteId, e.getMessage() );
+                }
+
+                return pool;
+            } );
+        }
+    }
+
+    private Timer.Context startLeaseTimer( final String siteId )
+    {
+        if ( metricsManager == null || metricsConfig == null )
+        {
+            return null;
+        }
+
+        return metricsManager.startTimer(
+                name( metricsConfig.getNodePrefix(), METRIC_NAME, siteId.replace( ':', '.' ), "lease" ) );
+    }
+
+    private int total( final ToIntFunction<PoolStats> field )
+    {
+        int total = 0;
+        for ( IndyHttpConnectionManager pool : pools.values() )
+        {
+            total += field.applyAsInt( pool.getTotalStats() );
+        }
+        return total;
+    }
+
+    private static String getSiteId( final HttpLocation location )
+    {
+        if ( location instanceof KeyedLocation && ( (KeyedLocation) location ).getKey() != null )
+        {
+            return ( (KeyedLocation) location ).getKey().toString();
+        }
+
+        return location.getName();
+    }
+
+    private static int positive( final Integer value, final int defaultValue )
+    {
+        return value == null || value < 1 ? defaultValue : value;
+    }
+}
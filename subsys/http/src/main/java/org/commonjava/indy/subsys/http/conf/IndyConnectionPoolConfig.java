@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.http.conf;
+
+import org.commonjava.indy.conf.IndyConfigInfo;
+import org.commonjava.propulsor.config.annotation.ConfigName;
+import org.commonjava.propulsor.config.annotation.SectionName;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * Settings of the keep-alive connection pools kept for each remote repository.
+ */
+@SectionName( IndyConnectionPoolConfig.SECTION_NAME )
+@ApplicationScoped
+public class IndyConnectionPoolConfig
+        implements IndyConfigInfo
+{
+    public static final String SECTION_NAME = "http-pool";
+
+    private static final String MAX_PER_ROUTE = "max.per.route";
+
+    private static final String MAX_TOTAL = "max.total";
+
+    private static final String IDLE_TIMEOUT_SECONDS = "idle.timeout.seconds";
+
+    private static final String TTL_SECONDS = "ttl.seconds";
+
+    private static final String VALIDATE_AFTER_INACTIVITY_MILLIS = "validate.after.inactivity.millis";
+
+    private static final String EVICTION_PERIOD_SECONDS = "eviction.period.seconds";
+
+    private static final String UNUSED_POOL_TIMEOUT_SECONDS = "unused.pool.timeout.seconds";
+
+    private static final String REQUEST_TIMEOUT_SECONDS = "request.timeout.seconds";
+
+    private static final boolean DEFAULT_ENABLED = true;
+
+    private static final int DEFAULT_MAX_PER_ROUTE = 20;
+
+    private static final int DEFAULT_MAX_TOTAL = 40;
+
+    private static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+
+    private static final int DEFAULT_TTL_SECONDS = 300;
+
+    private static final int DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private static final int DEFAULT_EVICTION_PERIOD_SECONDS = 30;
+
+    private static final int DEFAULT_UNUSED_POOL_TIMEOUT_SECONDS = 1800;
+
+    private static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 30;
+
+    private Boolean enabled;
+
+    private Integer maxPerRoute;
+
+    private Integer maxTotal;
+
+    private Integer idleTimeoutSeconds;
+
+    private Integer ttlSeconds;
+
+    private Integer validateAfterInactivityMillis;
+
+    private Integer evictionPeriodSeconds;
+
+    private Integer unusedPoolTimeoutSeconds;
+
+    private Integer requestTimeoutSeconds;
+
+    public IndyConnectionPoolConfig()
+    {
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled == null ? DEFAULT_ENABLED : enabled;
+    }
+
+    @ConfigName( "enabled" )
+    public void setEnabled( Boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Used for remote repositories that don't set their own max connections.
+     */
+    public int getMaxPerRoute()
+    {
+        return maxPerRoute == null || maxPerRoute < 1 ? DEFAULT_MAX_PER_ROUTE : maxPerRoute;
+    }
+
+    @ConfigName( MAX_PER_ROUTE )
+    public void setMaxPerRoute( Integer maxPerRoute )
+    {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * Upper bound of one remote repository's pool, across all its routes (redirects may add routes).
+     */
+    public int getMaxTotal()
+    {
+        return maxTotal == null || maxTotal < 1 ? DEFAULT_MAX_TOTAL : maxTotal;
+    }
+
+    @ConfigName( MAX_TOTAL )
+    public void setMaxTotal( Integer maxTotal )
+    {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getIdleTimeoutSeconds()
+    {
+        return idleTimeoutSeconds == null ? DEFAULT_IDLE_TIMEOUT_SECONDS : idleTimeoutSeconds;
+    }
+
+    @ConfigName( IDLE_TIMEOUT_SECONDS )
+    public void setIdleTimeoutSeconds( Integer idleTimeoutSeconds )
+    {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    /**
+     * Pooled connections are never reused once they are older than this; 0 or less means no limit.
+     */
+    public int getTtlSeconds()
+    {
+        return ttlSeconds == null ? DEFAULT_TTL_SECONDS : ttlSeconds;
+    }
+
+    @ConfigName( TTL_SECONDS )
+    public void setTtlSeconds( Integer ttlSeconds )
+    {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public int getValidateAfterInactivityMillis()
+    {
+        return validateAfterInactivityMillis == null ?
+                DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS :
+                validateAfterInactivityMillis;
+    }
+
+    @ConfigName( VALIDATE_AFTER_INACTIVITY_MILLIS )
+    public void setValidateAfterInactivityMillis( Integer validateAfterInactivityMillis )
+    {
+        this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+    }
+
+    public int getEvictionPeriodSeconds()
+    {
+        return evictionPeriodSeconds == null || evictionPeriodSeconds < 1 ?
+                DEFAULT_EVICTION_PERIOD_SECONDS :
+                evictionPeriodSeconds;
+    }
+
+    @ConfigName( EVICTION_PERIOD_SECONDS )
+    public void setEvictionPeriodSeconds( Integer evictionPeriodSeconds )
+    {
+        this.evictionPeriodSeconds = evictionPeriodSeconds;
+    }
+
+    /**
+     * A remote repository's pool is shut down after it has had no leases for this long.
+     */
+    public int getUnusedPoolTimeoutSeconds()
+    {
+        return unusedPoolTimeoutSeconds == null ? DEFAULT_UNUSED_POOL_TIMEOUT_SECONDS : unusedPoolTimeoutSeconds;
+    }
+
+    @ConfigName( UNUSED_POOL_TIMEOUT_SECONDS )
+    public void setUnusedPoolTimeoutSeconds( Integer unusedPoolTimeoutSeconds )
+    {
+        this.unusedPoolTimeoutSeconds = unusedPoolTimeoutSeconds;
+    }
+
+    /**
+     * Used for remote repositories that don't set their own timeout.
+     */
+    public int getRequestTimeoutSeconds()
+    {
+        return requestTimeoutSeconds == null || requestTimeoutSeconds < 1 ?
+                DEFAULT_REQUEST_TIMEOUT_SECONDS :
+                requestTimeoutSeconds;
+    }
+
+    @ConfigName( REQUEST_TIMEOUT_SECONDS )
+    public void setRequestTimeoutSeconds( Integer requestTimeoutSeconds )
+    {
+        this.requestTimeoutSeconds = requestTimeoutSeconds;
+    }
+
+    @Override
+    public String getDefaultConfigFileName()
+    {
+        return new File( IndyConfigInfo.CONF_INCLUDES_DIR, "http-pool.conf" ).getPath();
+    }
+
+    @Override
+    public InputStream getDefaultConfig()
+    {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream( "default-http-pool.conf" );
+    }
+}
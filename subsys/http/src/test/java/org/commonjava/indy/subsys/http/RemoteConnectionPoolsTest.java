@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.galley.RepositoryLocation;
+import org.commonjava.indy.subsys.http.conf.IndyConnectionPoolConfig;
+import org.commonjava.maven.galley.auth.AttributePasswordManager;
+import org.commonjava.maven.galley.auth.PasswordEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class RemoteConnectionPoolsTest
+{
+    private HttpServer server;
+
+    private RemoteConnectionPools pools;
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/", exchange -> {
+            clientPorts.add( exchange.getRemoteAddress().getPort() );
+            byte[] body = "OK".getBytes();
+            exchange.sendResponseHeaders( 200, body.length );
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write( body );
+            }
+        } );
+        server.start();
+
+        pools = new RemoteConnectionPools( new IndyConnectionPoolConfig() );
+    }
+
+    @After
+    public void teardown()
+    {
+        pools.stop();
+        server.stop( 0 );
+    }
+
+    @Test
+    public void reuseConnectionAcrossClients()
+            throws Exception
+    {
+        RepositoryLocation location = new RepositoryLocation( remote( "test" ) );
+        assertThat( pools.isPooled( location ), equalTo( true ) );
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            try (CloseableHttpClient client = pools.createClient( location );
+                 CloseableHttpResponse response = client.execute(
+                         new HttpGet( location.getUri() + "/path/" + i + ".jar" ) ))
+            {
+                assertThat( response.getStatusLine().getStatusCode(), equalTo( 200 ) );
+                EntityUtils.consume( response.getEntity() );
+            }
+        }
+
+        assertThat( clientPorts.size(), equalTo( 1 ) );
+        assertThat( pools.getConnectionManager( location ).getTotalStats().getAvailable(), equalTo( 1 ) );
+        assertThat( pools.getConnectionManager( location ).getTotalStats().getLeased(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void separatePoolPerRemote()
+            throws Exception
+    {
+        RepositoryLocation first = new RepositoryLocation( remote( "first" ) );
+        RepositoryLocation second = new RepositoryLocation( remote( "second" ) );
+
+        for ( RepositoryLocation location : new RepositoryLocation[] { first, second } )
+        {
+            try (CloseableHttpClient client = pools.createClient( location );
+                 CloseableHttpResponse response = client.execute( new HttpGet( location.getUri() + "/file" ) ))
+            {
+                EntityUtils.consume( response.getEntity() );
+            }
+        }
+
+        assertThat( pools.getConnectionManager( first ) == pools.getConnectionManager( second ), equalTo( false ) );
+        assertThat( clientPorts.size(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void customTlsOrProxyIsNotPooled()
+    {
+        RemoteRepository certified = remote( "certified" );
+        certified.setServerCertPem( "AAAAFFFFFSDADFADSFASDFASDFASDFASDFASDFsa" );
+        assertThat( pools.isPooled( new RepositoryLocation( certified ) ), equalTo( false ) );
+
+        RemoteRepository proxied = remote( "proxied" );
+        proxied.setProxyHost( "proxy.test.com" );
+        proxied.setProxyPort( 8001 );
+        assertThat( pools.isPooled( new RepositoryLocation( proxied ) ), equalTo( false ) );
+
+        RemoteRepository selfSigned = remote( "self-signed" );
+        selfSigned.setServerTrustPolicy( "self-signed" );
+        assertThat( pools.isPooled( new RepositoryLocation( selfSigned ) ), equalTo( false ) );
+    }
+
+    @Test
+    public void credentialsAreNotPooled()
+    {
+        RemoteRepository withUser = remote( "with-user" );
+        withUser.setUser( "user" );
+        assertThat( pools.isPooled( new RepositoryLocation( withUser ) ), equalTo( false ) );
+
+        RepositoryLocation withPassword = new RepositoryLocation( remote( "with-password" ) );
+        AttributePasswordManager.bind( withPassword, PasswordEntry.USER_PASSWORD, "secret" );
+        assertThat( pools.isPooled( withPassword ), equalTo( false ) );
+    }
+
+    private RemoteRepository remote( final String name )
+    {
+        return new RemoteRepository( MAVEN_PKG_KEY, name,
+                                     "http://127.0.0.1:" + server.getAddress().getPort() + "/" + name );
+    }
+}
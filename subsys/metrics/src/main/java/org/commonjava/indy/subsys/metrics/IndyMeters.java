@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.metrics;
+
+import org.commonjava.indy.subsys.metrics.conf.IndyMetricsConfig;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+
+import static org.commonjava.o11yphant.metrics.MetricsConstants.METER;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.getDefaultName;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.getName;
+
+/**
+ * Helpers for components that mark their own meters. The metrics manager and config are optional, since most of
+ * these components can also be constructed outside CDI (tests, tooling); when either is missing nothing is recorded.
+ */
+public final class IndyMeters
+{
+    private IndyMeters()
+    {
+    }
+
+    /**
+     * Name of a metric of the given type, built from the node prefix, the component's metric prefix (e.g.
+     * <code>indy.nfc.</code>) and the metric name. The default name is derived from the owning class.
+     */
+    public static String getMetricName( final IndyMetricsConfig metricsConfig, final Class<?> owner,
+                                        final String prefix, final String metric, final String type )
+    {
+        return getName( metricsConfig.getNodePrefix(), prefix + metric, getDefaultName( owner, metric ), type );
+    }
+
+    /**
+     * Mark the meter <code>prefix + metric</code> by count. Counts below one are ignored.
+     */
+    public static void mark( final DefaultMetricsManager metricsManager, final IndyMetricsConfig metricsConfig,
+                             final Class<?> owner, final String prefix, final String metric, final long count )
+    {
+        if ( metricsManager == null || metricsConfig == null || count < 1 )
+        {
+            return;
+        }
+
+        metricsManager.getMeter( getMetricName( metricsConfig, owner, prefix, metric, METER ) ).mark( count );
+    }
+}
@@ -212,6 +212,40 @@ public abstract class GroupDataManagerTCK
         assertThat( repo.getName(), equalTo( "repo2" ) );
     }
 
+    @Test
+    public void retrieveNestedGroupOrderingAfterMembershipChanges()
+        throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+        final StoreKey central = new StoreKey( remote, "central" );
+        final StoreKey repo2 = new StoreKey( remote, "repo2" );
+        final HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "hosted" );
+
+        final Group inner = new Group( "inner", central );
+        final Group outer = new Group( "outer", inner.getKey(), repo2 );
+        store( hosted, inner, outer );
+
+        assertThat( names( manager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, outer.getName() ) ),
+                    equalTo( asList( "central", "repo2" ) ) );
+
+        final Group innerCopy = inner.copyOf();
+        innerCopy.setConstituents( asList( hosted.getKey(), central ) );
+        store( innerCopy );
+
+        assertThat( names( manager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, outer.getName() ) ),
+                    equalTo( asList( "hosted", "central", "repo2" ) ) );
+
+        manager.deleteArtifactStore( central, summary, new EventMetadata() );
+
+        assertThat( names( manager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, outer.getName() ) ),
+                    equalTo( asList( "hosted", "repo2" ) ) );
+    }
+
+    private List<String> names( final List<ArtifactStore> stores )
+    {
+        return stores.stream().map( ArtifactStore::getName ).collect( Collectors.toList() );
+    }
+
     @Test
     public void createSameGroupTwiceAndRetrieveOne()
         throws Exception